@@ -9,12 +9,22 @@ package me.sedlar.bytecode;
 import me.sedlar.bytecode.structure.MethodInfo;
 
 /**
+ * An instruction that jumps to another instruction.
+ * <p>
+ * Decoded branches refer to the instruction they jump to, so that they keep
+ * jumping to it when instructions are added or removed before writing; the
+ * offset is worked out from the offsets of both instructions, which are
+ * laid out again whenever the code is written. A branch given a plain
+ * offset through <tt>setBranchOffset</tt> jumps by that offset until it is
+ * given a target.
+ *
  * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
  * @author <a href="mailto:jclasslib@ej-technologies.com">Ingo Kegel</a>
  */
 public abstract class AbstractBranchInstruction extends AbstractInstruction {
 
 	private int branchOffset;
+	private AbstractInstruction target;
 
 	/**
 	 * Constructor.
@@ -49,7 +59,7 @@ public abstract class AbstractBranchInstruction extends AbstractInstruction {
 	 * @return the relative offset
 	 */
 	public int branchOffset() {
-		return branchOffset;
+		return target != null ? target.offset() - offset() : branchOffset;
 	}
 
 	/**
@@ -68,6 +78,31 @@ public abstract class AbstractBranchInstruction extends AbstractInstruction {
 	 *            the offset
 	 */
 	public void setBranchOffset(int branchOffset) {
+		markDirty();
 		this.branchOffset = branchOffset;
+		this.target = null;
+	}
+
+	/**
+	 * Get the instruction this instruction jumps to.
+	 *
+	 * @return the target, or <t>null</t> if this instruction jumps by a plain
+	 *         offset
+	 */
+	public AbstractInstruction target() {
+		return target;
+	}
+
+	/**
+	 * Set the instruction this instruction jumps to.
+	 *
+	 * @param target
+	 *            the target, or <t>null</t> to jump by the current offset
+	 */
+	public void setTarget(AbstractInstruction target) {
+		markDirty();
+		if (target == null)
+			this.branchOffset = branchOffset();
+		this.target = target;
 	}
 }
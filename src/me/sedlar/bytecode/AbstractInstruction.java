@@ -21,7 +21,7 @@ import me.sedlar.util.Filter;
 public abstract class AbstractInstruction {
 
 	private MethodInfo methodInfo;
-	private int offset;
+	private int offset = -1;
 	private Opcode opcode;
 
 	private AbstractInstruction previous, next;
@@ -48,6 +48,16 @@ public abstract class AbstractInstruction {
 		return methodInfo;
 	}
 
+	/**
+	 * Marks the method that this instruction is within as modified. The
+	 * setters of an instruction do this on their own; call it after changing
+	 * an object that was obtained from one of its getters.
+	 */
+	public void markDirty() {
+		if (methodInfo != null)
+			methodInfo.markDirty();
+	}
+
 	/**
 	 * Gets the index of this instruction.
 	 *
@@ -129,13 +139,15 @@ public abstract class AbstractInstruction {
 	 *            the opcode
 	 */
 	public void setOpcode(Opcode opcode) {
+		markDirty();
 		this.opcode = opcode;
 	}
 
 	/**
 	 * Get the offset of this instruction in its parent <tt>Code</tt> attribute.
 	 *
-	 * @return the offset
+	 * @return the offset, or <t>-1</t> for an instruction that was created
+	 *         and has not been written yet
 	 */
 	public int offset() {
 		return offset;
@@ -148,6 +160,7 @@ public abstract class AbstractInstruction {
 	 *            the offset
 	 */
 	public void setOffset(int offset) {
+		markDirty();
 		this.offset = offset;
 	}
 
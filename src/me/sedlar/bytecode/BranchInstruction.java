@@ -13,6 +13,11 @@ import me.sedlar.bytecode.io.BytecodeOutput;
 import me.sedlar.bytecode.structure.MethodInfo;
 
 /**
+ * A branch with a 16-bit offset. When the offset it needs does not fit,
+ * <tt>goto</tt> and <tt>jsr</tt> are turned into <tt>goto_w</tt> and
+ * <tt>jsr_w</tt> on write, which this class then writes with a 32-bit
+ * offset.
+ *
  * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
  * @author <a href="mailto:jclasslib@ej-technologies.com">Ingo Kegel</a>
  */
@@ -44,9 +49,19 @@ public class BranchInstruction extends AbstractBranchInstruction {
 		super(methodInfo, opcode, branchOffset);
 	}
 
+	/**
+	 * Checks whether this branch is written with a 32-bit offset.
+	 *
+	 * @return <t>true</t> if its opcode is <tt>goto_w</tt> or
+	 *         <tt>jsr_w</tt>, otherwise <t>false</t>.
+	 */
+	public boolean wide() {
+		return opcode() == Opcode.GOTO_W || opcode() == Opcode.JSR_W;
+	}
+
 	@Override
 	public int size() {
-		return super.size() + 2;
+		return super.size() + (wide() ? 4 : 2);
 	}
 
 	@Override
@@ -58,6 +73,9 @@ public class BranchInstruction extends AbstractBranchInstruction {
 	@Override
 	public void write(BytecodeOutput out) throws IOException {
 		super.write(out);
-		out.writeShort(branchOffset());
+		if (wide())
+			out.writeInt(branchOffset());
+		else
+			out.writeShort(branchOffset());
 	}
 }
@@ -14,6 +14,7 @@ import me.sedlar.bytecode.io.BytecodeInput;
 import me.sedlar.bytecode.io.BytecodeOutput;
 import me.sedlar.bytecode.structure.ClassInfo;
 import me.sedlar.bytecode.structure.ConstantPool;
+import me.sedlar.bytecode.structure.MethodInfo;
 import me.sedlar.bytecode.structure.constants.*;
 
 /**
@@ -21,38 +22,64 @@ import me.sedlar.bytecode.structure.constants.*;
  */
 public class ConstantInstruction extends AbstractInstruction {
 
-	private AbstractInstruction instruction;
+	private int index;
 
 	/**
 	 * Constructor.
 	 *
+	 * @param methodInfo
+	 *            the MethodInfo that this instruction is within.
+	 * @param opcode
+	 *            the opcode, <tt>ldc</tt>, <tt>ldc_w</tt> or <tt>ldc2_w</tt>.
+	 */
+	public ConstantInstruction(MethodInfo methodInfo, Opcode opcode) {
+		super(methodInfo, opcode);
+	}
+
+	/**
+	 * Constructor. The opcode and index of the given instruction are copied.
+	 *
 	 * @param ibi
 	 *            an ImmediateByteInstruction for namesake an LDC* that pushes a
 	 *            byte.
 	 */
 	public ConstantInstruction(ImmediateByteInstruction ibi) {
-		super(ibi.methodInfo(), ibi.opcode());
-		this.instruction = ibi;
+		this(ibi.methodInfo(), ibi.opcode());
+		this.index = ibi.value() & 0xff;
 	}
 
 	/**
-	 * Constructor.
+	 * Constructor. The opcode and index of the given instruction are copied.
 	 *
 	 * @param isi
 	 *            an ImmediateShortInstruction for namesake an LDC* that pushes
 	 *            a short
 	 */
 	public ConstantInstruction(ImmediateShortInstruction isi) {
-		super(isi.methodInfo(), isi.opcode());
-		this.instruction = isi;
+		this(isi.methodInfo(), isi.opcode());
+		this.index = isi.value() & 0xffff;
+	}
+
+	private boolean narrow() {
+		return opcode() == Opcode.LDC;
 	}
 
 	private int value() {
-		if (instruction instanceof ImmediateByteInstruction) {
-			return ((ImmediateByteInstruction) instruction).value();
-		} else {
-			return ((ImmediateShortInstruction) instruction).value();
-		}
+		return index;
+	}
+
+	@Override
+	public int size() {
+		return super.size() + (narrow() ? 1 : 2);
+	}
+
+	/**
+	 * Get the constant pool index of the constant.
+	 *
+	 * @return the index
+	 */
+	public int index() {
+		return index;
 	}
 
 	/**
@@ -61,28 +88,11 @@ public class ConstantInstruction extends AbstractInstruction {
 	 * @return the constant variable
 	 */
 	public Object constant() {
-		try {
-			int value = value();
-			ConstantPool pool = classInfo().constantPoolAt(value);
-			if (pool.tag() == ConstantPool.CONSTANT_STRING) {
-				return pool.verbose();
-			} else {
-				if (pool instanceof ConstantIntegerInfo) {
-					return ((ConstantIntegerInfo) pool).value();
-				} else if (pool instanceof ConstantDoubleInfo) {
-					return ((ConstantDoubleInfo) pool).value();
-				}else if (pool instanceof ConstantFloatInfo) {
-					return ((ConstantFloatInfo) pool).value();
-				}else {
-					return ((ConstantLongInfo) pool).value();
-				}
-			}
-		} catch (Exception e) {
-			return null;
-		}
+		return classInfo().constantValue(value());
 	}
 
 	public void setClassInfo(String name, int index) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_CLASS) {
@@ -93,10 +103,12 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setClassInfo(ClassInfo ci) {
+		markDirty();
 		setClassInfo(ci.name(), ci.index());
 	}
 
 	public void setFieldrefInfo(int nameAndTypeIndex) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_FIELDREF) {
@@ -106,6 +118,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setMethodrefInfo(int nameAndTypeIndex) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_METHODREF) {
@@ -115,6 +128,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setInterfaceMethodrefInfo(int nameAndTypeIndex) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_INTERFACE_METHODREF) {
@@ -124,6 +138,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setString(int stringIndex) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_STRING) {
@@ -133,6 +148,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setInt(int value) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_INTEGER) {
@@ -142,6 +158,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setFloat(float value) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_FLOAT) {
@@ -151,6 +168,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setLong(long value) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_LONG) {
@@ -160,6 +178,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setDouble(double value) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_DOUBLE) {
@@ -169,6 +188,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setNameAndType(int nameIndex, int descriptorIndex) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_NAME_AND_TYPE) {
@@ -179,6 +199,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setMethodType(int descriptorIndex) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_METHOD_TYPE) {
@@ -188,6 +209,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setMethodHandle(int index, int type) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_METHOD_HANDLE) {
@@ -198,6 +220,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setInvokeDynamic(int nameAndTypeIndex, int bootstrapMethodAttributeIndex) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_INVOKE_DYNAMIC) {
@@ -208,6 +231,7 @@ public class ConstantInstruction extends AbstractInstruction {
 	}
 
 	public void setUtf(String utf) {
+		markDirty();
 		ConstantPool pool = classInfo().constantPoolAt(value());
 		byte tag = pool.tag();
 		if (tag == CONSTANT_UTF8) {
@@ -225,11 +249,17 @@ public class ConstantInstruction extends AbstractInstruction {
 
 	@Override
 	public void read(BytecodeInput input) throws IOException {
-		instruction.read(input);
+		super.read(input);
+		index = narrow() ? input.readUnsignedByte() : input.readUnsignedShort();
 	}
 
 	@Override
 	public void write(BytecodeOutput output) throws IOException {
-		instruction.write(output);
+		super.write(output);
+		if (narrow()) {
+			output.writeByte(index);
+		} else {
+			output.writeShort(index);
+		}
 	}
 }
@@ -7,8 +7,9 @@
 package me.sedlar.bytecode;
 
 import me.sedlar.bytecode.structure.InvalidByteCodeException;
+import me.sedlar.bytecode.structure.MemberReference;
 import me.sedlar.bytecode.structure.MethodInfo;
-import me.sedlar.bytecode.structure.constants.ConstantFieldrefInfo;
+import me.sedlar.bytecode.structure.constants.ConstantReference;
 
 /**
  * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
@@ -42,25 +43,34 @@ public class FieldInstruction extends ImmediateShortInstruction {
 		super(methodInfo, opcode, immediateShort);
 	}
 
-	private ConstantFieldrefInfo info() {
+	private ConstantReference info() {
 		try {
-			return (ConstantFieldrefInfo) classInfo().constantPoolAt(value(), ConstantFieldrefInfo.class);
+			return (ConstantReference) classInfo().constantPoolAt(value(), ConstantReference.class);
 		} catch (InvalidByteCodeException e) {
 			return null;
 		}
 	}
 
+	/**
+	 * Get the resolved reference of this instruction, which is cached by the
+	 * class until its constant pool changes.
+	 *
+	 * @return the reference, or <tt>null</tt> if the index does not point at
+	 *         a valid <tt>CONSTANT_Fieldref_info</tt>.
+	 * @see me.sedlar.bytecode.structure.ClassInfo#memberReference(Opcode, int)
+	 */
+	public MemberReference reference() {
+		return classInfo().memberReference(opcode(), value());
+	}
+
 	/**
 	 * Get the owner of the field invoke
 	 *
 	 * @return the owner of the field invoke
 	 */
 	public String owner() {
-		try {
-			return info().constantClassInfo().name();
-		} catch (InvalidByteCodeException e) {
-			return null;
-		}
+		MemberReference reference = reference();
+		return reference != null ? reference.owner() : null;
 	}
 
 	/**
@@ -69,6 +79,7 @@ public class FieldInstruction extends ImmediateShortInstruction {
 	 * @param owner the new owner of the field invoke
 	 */
 	public void setOwner(String owner) {
+		markDirty();
 		try {
 			info().constantClassInfo().setName(owner);
 		} catch (InvalidByteCodeException e) {
@@ -82,11 +93,8 @@ public class FieldInstruction extends ImmediateShortInstruction {
 	 * @return the physical field name being invoked
 	 */
 	public String name() {
-		try {
-			return info().nameAndTypeInfo().name();
-		} catch (InvalidByteCodeException e) {
-			return null;
-		}
+		MemberReference reference = reference();
+		return reference != null ? reference.name() : null;
 	}
 
 	/**
@@ -95,6 +103,7 @@ public class FieldInstruction extends ImmediateShortInstruction {
 	 * @param name the physical field name being invoked
 	 */
 	public void setName(String name) {
+		markDirty();
 		try {
 			info().nameAndTypeInfo().setName(name);
 		} catch (InvalidByteCodeException e) {
@@ -108,17 +117,15 @@ public class FieldInstruction extends ImmediateShortInstruction {
 	 * @return the physical field name being invoked
 	 */
 	public String descriptor() {
-		try {
-			return info().nameAndTypeInfo().descriptor();
-		} catch (InvalidByteCodeException e) {
-			return null;
-		}
+		MemberReference reference = reference();
+		return reference != null ? reference.descriptor() : null;
 	}
 
 	/**
 	 * Set the physical field descriptor being invoked
 	 */
 	public void setDescriptor(String descriptor) {
+		markDirty();
 		try {
 			info().nameAndTypeInfo().setDescriptor(descriptor);
 		} catch (InvalidByteCodeException e) {
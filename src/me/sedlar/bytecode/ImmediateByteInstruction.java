@@ -79,6 +79,7 @@ public class ImmediateByteInstruction extends AbstractInstruction {
 	 *            the byte
 	 */
 	public void setValue(int immediateByte) {
+		markDirty();
 		this.immediateByte = immediateByte;
 	}
 
@@ -98,6 +99,7 @@ public class ImmediateByteInstruction extends AbstractInstruction {
 	 *            wide or not
 	 */
 	public void setWide(boolean wide) {
+		markDirty();
 		this.wide = wide;
 	}
 
@@ -68,6 +68,7 @@ public class ImmediateShortInstruction extends AbstractInstruction {
 	 *            the short
 	 */
 	public void setValue(int immediateShort) {
+		markDirty();
 		this.immediateShort = immediateShort;
 	}
 
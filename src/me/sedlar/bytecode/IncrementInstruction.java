@@ -75,6 +75,7 @@ public class IncrementInstruction extends ImmediateByteInstruction {
 	 *            the increment
 	 */
 	public void setIncrement(int incrementConst) {
+		markDirty();
 		this.incrementConst = incrementConst;
 	}
 
@@ -70,6 +70,7 @@ public class InvokeInterfaceInstruction extends ImmediateShortInstruction {
 	 *            the argument count
 	 */
 	public void setCount(int count) {
+		markDirty();
 		this.count = count;
 	}
 
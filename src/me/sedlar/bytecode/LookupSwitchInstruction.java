@@ -21,6 +21,7 @@ import me.sedlar.bytecode.structure.MethodInfo;
 public class LookupSwitchInstruction extends PaddedInstruction {
 
 	private int defaultOffset;
+	private AbstractInstruction defaultTarget;
 	private List<OffsetPair> offsetPairs = new ArrayList<OffsetPair>();
 
 	/**
@@ -46,7 +47,7 @@ public class LookupSwitchInstruction extends PaddedInstruction {
 	 * @return the offset
 	 */
 	public int defaultOffset() {
-		return defaultOffset;
+		return defaultTarget != null ? defaultTarget.offset() - offset() : defaultOffset;
 	}
 
 	/**
@@ -56,12 +57,38 @@ public class LookupSwitchInstruction extends PaddedInstruction {
 	 *            the offset
 	 */
 	public void setDefaultOffset(int defaultOffset) {
+		markDirty();
 		this.defaultOffset = defaultOffset;
+		this.defaultTarget = null;
+	}
+
+	/**
+	 * Get the instruction this instruction jumps to when no key matches.
+	 *
+	 * @return the target, or <t>null</t> if it jumps by a plain offset
+	 */
+	public AbstractInstruction defaultTarget() {
+		return defaultTarget;
+	}
+
+	/**
+	 * Set the instruction this instruction jumps to when no key matches.
+	 *
+	 * @param defaultTarget
+	 *            the target, or <t>null</t> to jump by the current offset
+	 */
+	public void setDefaultTarget(AbstractInstruction defaultTarget) {
+		markDirty();
+		if (defaultTarget == null)
+			this.defaultOffset = defaultOffset();
+		this.defaultTarget = defaultTarget;
 	}
 
 	/**
 	 * Get the match-offset pairs of the branch of this instruction as a
 	 * <tt>java.util.List</tt> of <tt>OffsetPair</tt> elements.
+	 * The offsets of the pairs that have a target are brought up to date when
+	 * this instruction is written.
 	 *
 	 * @return the list
 	 */
@@ -78,6 +105,7 @@ public class LookupSwitchInstruction extends PaddedInstruction {
 	 *            the list
 	 */
 	public void setOffsetPairs(List<OffsetPair> offsetPairs) {
+		markDirty();
 		this.offsetPairs = offsetPairs;
 	}
 
@@ -98,12 +126,14 @@ public class LookupSwitchInstruction extends PaddedInstruction {
 	@Override
 	public void write(BytecodeOutput out) throws IOException {
 		super.write(out);
-		out.writeInt(defaultOffset);
+		out.writeInt(defaultOffset());
 		int numberOfPairs = offsetPairs.size();
 		out.writeInt(numberOfPairs);
 		OffsetPair currentOffsetPair;
 		for (OffsetPair offsetPair : offsetPairs) {
 			currentOffsetPair = offsetPair;
+			if (currentOffsetPair.target() != null)
+				currentOffsetPair.update(currentOffsetPair.target().offset() - offset());
 			out.writeInt(currentOffsetPair.match());
 			out.writeInt(currentOffsetPair.offset());
 		}
@@ -55,6 +55,7 @@ public class MultianewarrayInstruction extends ImmediateShortInstruction {
 	 *            the number of dimensions
 	 */
 	public void setDimensions(int dimensions) {
+		markDirty();
 		this.dimensions = dimensions;
 	}
 
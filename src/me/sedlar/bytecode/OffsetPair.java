@@ -14,6 +14,7 @@ public class OffsetPair {
 
 	private int match;
 	private int offset;
+	private AbstractInstruction target;
 
 	/**
 	 * Constructor.
@@ -64,5 +65,30 @@ public class OffsetPair {
 	 */
 	public void setOffset(int offset) {
 		this.offset = offset;
+		this.target = null;
+	}
+
+	/**
+	 * Get the instruction this pair jumps to.
+	 *
+	 * @return the target, or <t>null</t> if this pair jumps by a plain offset
+	 */
+	public AbstractInstruction target() {
+		return target;
+	}
+
+	/**
+	 * Set the instruction this pair jumps to. The offset is updated when the
+	 * switch holding this pair is written.
+	 *
+	 * @param target
+	 *            the target, or <t>null</t> to jump by the current offset
+	 */
+	public void setTarget(AbstractInstruction target) {
+		this.target = target;
+	}
+
+	void update(int offset) {
+		this.offset = offset;
 	}
 }
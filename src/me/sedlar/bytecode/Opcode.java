@@ -6,6 +6,8 @@
  */
 package me.sedlar.bytecode;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -229,17 +231,133 @@ public enum Opcode {
 	private static Opcode[] LOOKUP = new Opcode[256];
 	private static Map<String, Opcode> NAME_LOOKUP = new HashMap<>();
 
+	/**
+	 * The length of the operands of every opcode without a <tt>wide</tt>
+	 * prefix, or -1 for the switches, whose operands depend on their offset,
+	 * and for bytecodes that are no opcode.
+	 */
+	private static final byte[] OPERAND_LENGTHS = new byte[256];
+
 	static {
+		Arrays.fill(OPERAND_LENGTHS, (byte) -1);
 		for (Opcode opcode : values()) {
 			LOOKUP[opcode.id()] = opcode;
 			NAME_LOOKUP.put(opcode.verbose, opcode);
+			OPERAND_LENGTHS[opcode.id()] = 0;
 		}
+		operands(1, BIPUSH, LDC, ILOAD, LLOAD, FLOAD, DLOAD, ALOAD, ISTORE, LSTORE, FSTORE, DSTORE, ASTORE, RET,
+				NEWARRAY);
+		operands(2, SIPUSH, LDC_W, LDC2_W, IINC, IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IF_ICMPEQ, IF_ICMPNE,
+				IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE, GOTO, JSR, IFNULL, IFNONNULL,
+				GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD, INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, NEW,
+				ANEWARRAY, CHECKCAST, INSTANCEOF);
+		operands(3, MULTIANEWARRAY);
+		operands(4, INVOKEINTERFACE, INVOKEDYNAMIC, GOTO_W, JSR_W);
+		operands(-1, TABLESWITCH, LOOKUPSWITCH);
+	}
+
+	private static void operands(int length, Opcode... opcodes) {
+		for (Opcode opcode : opcodes)
+			OPERAND_LENGTHS[opcode.id()] = (byte) length;
 	}
 
 	private static final String JVM_SPEC_URL = "http://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.";
 
 	public static Opcode fromBytecode(int bytecode) {
-		return bytecode > 0 && bytecode < 256 ? LOOKUP[bytecode] : null;
+		return bytecode >= 0 && bytecode < 256 ? LOOKUP[bytecode] : null;
+	}
+
+	/**
+	 * Get the length in bits of the instruction at the given offset within
+	 * the code. A <tt>wide</tt> prefix is an instruction of its own with a
+	 * length of <t>1</t>, and the operands of the instruction it prefixes
+	 * are doubled, as they are when the code is decoded.
+	 *
+	 * @param code
+	 *            the array holding the code
+	 * @param start
+	 *            the index of the code within the array
+	 * @param length
+	 *            the length of the code
+	 * @param pc
+	 *            the offset of the instruction within the code
+	 * @param wide
+	 *            whether the instruction is prefixed by <tt>wide</tt>
+	 * @return the length, or -1 if the bytecode is no opcode or the
+	 *         instruction does not fit within the code
+	 */
+	public static int length(byte[] code, int start, int length, int pc, boolean wide) {
+		int bytecode = code[start + pc] & 0xff;
+		if (bytecode != TABLESWITCH.id && bytecode != LOOKUPSWITCH.id)
+			return fixedLength(bytecode, pc, length, wide);
+		int operands = switchOperands(pc);
+		if (operands + 8 > length)
+			return -1;
+		int first = s4(code, start + operands + 4);
+		int second = operands + 12 <= length ? s4(code, start + operands + 8) : 0;
+		return switchLength(bytecode, pc, length, operands, first, second);
+	}
+
+	/**
+	 * Get the length in bits of the instruction at the given offset within
+	 * the code, as <tt>length(byte[], int, int, int, boolean)</tt> does.
+	 *
+	 * @param code
+	 *            the buffer holding the code
+	 * @param start
+	 *            the index of the code within the buffer
+	 * @param length
+	 *            the length of the code
+	 * @param pc
+	 *            the offset of the instruction within the code
+	 * @param wide
+	 *            whether the instruction is prefixed by <tt>wide</tt>
+	 * @return the length, or -1 if the bytecode is no opcode or the
+	 *         instruction does not fit within the code
+	 */
+	public static int length(ByteBuffer code, int start, int length, int pc, boolean wide) {
+		int bytecode = code.get(start + pc) & 0xff;
+		if (bytecode != TABLESWITCH.id && bytecode != LOOKUPSWITCH.id)
+			return fixedLength(bytecode, pc, length, wide);
+		int operands = switchOperands(pc);
+		if (operands + 8 > length)
+			return -1;
+		int first = code.getInt(start + operands + 4);
+		int second = operands + 12 <= length ? code.getInt(start + operands + 8) : 0;
+		return switchLength(bytecode, pc, length, operands, first, second);
+	}
+
+	/**
+	 * Get the offset of the operands of a <tt>tableswitch</tt> or
+	 * <tt>lookupswitch</tt>, which are aligned to a multiple of four bits
+	 * from the start of the code.
+	 *
+	 * @param pc
+	 *            the offset of the switch within the code
+	 * @return the offset of the default offset of the switch
+	 */
+	public static int switchOperands(int pc) {
+		return pc + 1 + ((4 - (pc + 1) % 4) % 4);
+	}
+
+	private static int fixedLength(int bytecode, int pc, int length, boolean wide) {
+		int operands = OPERAND_LENGTHS[bytecode];
+		int size = 1 + (wide ? operands * 2 : operands);
+		return operands < 0 || pc + size > length ? -1 : size;
+	}
+
+	private static int switchLength(int bytecode, int pc, int length, int operands, int first, int second) {
+		boolean table = bytecode == TABLESWITCH.id;
+		long cases = table ? (long) second - first + 1 : first;
+		if (cases < 0 || (table && operands + 12 > length))
+			return -1;
+		long size = operands - pc + (table ? 12 + cases * 4 : 8 + cases * 8);
+		return pc + size > length ? -1 : (int) size;
+	}
+
+	private static int s4(byte[] code, int index) {
+		return (code[index] << 24) | ((code[index + 1] & 0xff) << 16) | ((code[index + 2] & 0xff) << 8)
+				| (code[index + 3] & 0xff);
 	}
 
 	/**
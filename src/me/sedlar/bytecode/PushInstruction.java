@@ -10,36 +10,58 @@ import java.io.IOException;
 
 import me.sedlar.bytecode.io.BytecodeInput;
 import me.sedlar.bytecode.io.BytecodeOutput;
+import me.sedlar.bytecode.structure.MethodInfo;
 
 /**
  * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
  */
 public class PushInstruction extends AbstractInstruction {
 
-	private AbstractInstruction instruction;
+	private int value;
 
 	/**
 	 * Constructor.
 	 *
+	 * @param methodInfo
+	 *            the MethodInfo that this instruction is within.
+	 * @param opcode
+	 *            the opcode, <tt>bipush</tt> or <tt>sipush</tt>.
+	 */
+	public PushInstruction(MethodInfo methodInfo, Opcode opcode) {
+		super(methodInfo, opcode);
+	}
+
+	/**
+	 * Constructor. The opcode and value of the given instruction are copied.
+	 *
 	 * @param ibi
-	 *            an ImmediateByteInstruction for namesake an LDC* that pushes a
-	 *            byte.
+	 *            an ImmediateByteInstruction for namesake a BIPUSH that pushes
+	 *            a byte.
 	 */
 	public PushInstruction(ImmediateByteInstruction ibi) {
-		super(ibi.methodInfo(), ibi.opcode());
-		this.instruction = ibi;
+		this(ibi.methodInfo(), ibi.opcode());
+		this.value = ibi.value();
 	}
 
 	/**
-	 * Constructor.
+	 * Constructor. The opcode and value of the given instruction are copied.
 	 *
 	 * @param isi
-	 *            an ImmediateShortInstruction for namesake an LDC* that pushes
-	 *            a short
+	 *            an ImmediateShortInstruction for namesake a SIPUSH that
+	 *            pushes a short
 	 */
 	public PushInstruction(ImmediateShortInstruction isi) {
-		super(isi.methodInfo(), isi.opcode());
-		this.instruction = isi;
+		this(isi.methodInfo(), isi.opcode());
+		this.value = isi.value();
+	}
+
+	private boolean pushesShort() {
+		return opcode() == Opcode.SIPUSH;
+	}
+
+	@Override
+	public int size() {
+		return super.size() + (pushesShort() ? 2 : 1);
 	}
 
 	/**
@@ -48,34 +70,32 @@ public class PushInstruction extends AbstractInstruction {
 	 * @return the variable being pushed
 	 */
 	public int value() {
-		if (instruction instanceof ImmediateByteInstruction) {
-			return ((ImmediateByteInstruction) instruction).value();
-		} else {
-			return ((ImmediateShortInstruction) instruction).value();
-		}
+		return value;
 	}
 
 	/**
-	 * Set the instruction's value.
+	 * Set the variable being pushed
 	 *
-	 * @param value
-	 *            the value to set to
+	 * @param value the variable being pushed
 	 */
 	public void setValue(int value) {
-		if (instruction instanceof ImmediateByteInstruction) {
-			((ImmediateByteInstruction) instruction).setValue(value);
-		} else {
-			((ImmediateShortInstruction) instruction).setValue(value);
-		}
+		markDirty();
+		this.value = value;
 	}
 
 	@Override
 	public void read(BytecodeInput input) throws IOException {
-		instruction.read(input);
+		super.read(input);
+		value = pushesShort() ? input.readShort() : input.readByte();
 	}
 
 	@Override
 	public void write(BytecodeOutput output) throws IOException {
-		instruction.write(output);
+		super.write(output);
+		if (pushesShort()) {
+			output.writeShort(value);
+		} else {
+			output.writeByte(value);
+		}
 	}
 }
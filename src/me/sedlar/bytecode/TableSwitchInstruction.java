@@ -19,9 +19,11 @@ import me.sedlar.bytecode.structure.MethodInfo;
 public class TableSwitchInstruction extends PaddedInstruction {
 
 	private int defaultOffset;
+	private AbstractInstruction defaultTarget;
 	private int lowByte;
 	private int highByte;
 	private int[] jumpOffsets;
+	private AbstractInstruction[] jumpTargets;
 
 	/**
 	 * Constructor.
@@ -46,7 +48,7 @@ public class TableSwitchInstruction extends PaddedInstruction {
 	 * @return the offset
 	 */
 	public int defaultOffset() {
-		return defaultOffset;
+		return defaultTarget != null ? defaultTarget.offset() - offset() : defaultOffset;
 	}
 
 	/**
@@ -56,7 +58,31 @@ public class TableSwitchInstruction extends PaddedInstruction {
 	 *            the offset
 	 */
 	public void setDefaultOffset(int defaultOffset) {
+		markDirty();
 		this.defaultOffset = defaultOffset;
+		this.defaultTarget = null;
+	}
+
+	/**
+	 * Get the instruction this instruction jumps to when no key matches.
+	 *
+	 * @return the target, or <t>null</t> if it jumps by a plain offset
+	 */
+	public AbstractInstruction defaultTarget() {
+		return defaultTarget;
+	}
+
+	/**
+	 * Set the instruction this instruction jumps to when no key matches.
+	 *
+	 * @param defaultTarget
+	 *            the target, or <t>null</t> to jump by the current offset
+	 */
+	public void setDefaultTarget(AbstractInstruction defaultTarget) {
+		markDirty();
+		if (defaultTarget == null)
+			this.defaultOffset = defaultOffset();
+		this.defaultTarget = defaultTarget;
 	}
 
 	/**
@@ -75,6 +101,7 @@ public class TableSwitchInstruction extends PaddedInstruction {
 	 *            the lower bound
 	 */
 	public void setLow(int lowByte) {
+		markDirty();
 		this.lowByte = lowByte;
 	}
 
@@ -94,15 +121,24 @@ public class TableSwitchInstruction extends PaddedInstruction {
 	 *            the upper bound
 	 */
 	public void setHigh(int highByte) {
+		markDirty();
 		this.highByte = highByte;
 	}
 
 	/**
-	 * Get the array of relative jump offsets for the table switch.
+	 * Get the array of relative jump offsets for the table switch. The
+	 * offsets of the entries that have a target are brought up to date with
+	 * the offsets of their targets first.
 	 *
 	 * @return the array
 	 */
 	public int[] jumpOffsets() {
+		if (jumpTargets != null) {
+			for (int i = 0; i < jumpTargets.length; i++) {
+				if (jumpTargets[i] != null)
+					jumpOffsets[i] = jumpTargets[i].offset() - offset();
+			}
+		}
 		return jumpOffsets;
 	}
 
@@ -113,7 +149,36 @@ public class TableSwitchInstruction extends PaddedInstruction {
 	 *            the array
 	 */
 	public void setJumpOffsets(int[] jumpOffsets) {
+		markDirty();
 		this.jumpOffsets = jumpOffsets;
+		this.jumpTargets = null;
+	}
+
+	/**
+	 * Get the array of instructions the table switch jumps to, in the order
+	 * of its jump offsets.
+	 *
+	 * @return the array, or <t>null</t> if the table switch jumps by plain
+	 *         offsets; entries that are <t>null</t> jump by their offset
+	 */
+	public AbstractInstruction[] jumpTargets() {
+		return jumpTargets;
+	}
+
+	/**
+	 * Set the array of instructions the table switch jumps to, in the order
+	 * of its jump offsets.
+	 *
+	 * @param jumpTargets
+	 *            the array; entries that are <t>null</t> jump by their
+	 *            current offset
+	 */
+	public void setJumpTargets(AbstractInstruction[] jumpTargets) {
+		int[] jumpOffsets = jumpOffsets();
+		markDirty();
+		if (jumpOffsets == null || jumpOffsets.length != jumpTargets.length)
+			this.jumpOffsets = new int[jumpTargets.length];
+		this.jumpTargets = jumpTargets;
 	}
 
 	@Override
@@ -131,10 +196,10 @@ public class TableSwitchInstruction extends PaddedInstruction {
 	@Override
 	public void write(BytecodeOutput out) throws IOException {
 		super.write(out);
-		out.writeInt(defaultOffset);
+		out.writeInt(defaultOffset());
 		out.writeInt(lowByte);
 		out.writeInt(highByte);
-		for (int jumpOffset : jumpOffsets)
+		for (int jumpOffset : jumpOffsets())
 			out.writeInt(jumpOffset);
 	}
 }
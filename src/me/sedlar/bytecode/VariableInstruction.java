@@ -10,6 +10,7 @@ import java.io.IOException;
 
 import me.sedlar.bytecode.io.BytecodeInput;
 import me.sedlar.bytecode.io.BytecodeOutput;
+import me.sedlar.bytecode.structure.MethodInfo;
 
 /**
  * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
@@ -17,34 +18,59 @@ import me.sedlar.bytecode.io.BytecodeOutput;
  */
 public class VariableInstruction extends AbstractInstruction {
 
-	private AbstractInstruction instruction;
+	private final boolean immediate;
+	private final boolean wide;
+	private int variable;
 
 	/**
 	 * Constructor.
 	 *
+	 * @param methodInfo
+	 *            the MethodInfo that this instruction is within.
+	 * @param opcode
+	 *            the opcode.
+	 * @param immediate
+	 *            <t>true</t> if the index of the variable follows the opcode,
+	 *            <t>false</t> if the opcode implies it.
+	 * @param wide
+	 *            <t>true</t> if the index is a short following a
+	 *            <tt>wide</tt> prefix, otherwise <t>false</t>.
+	 */
+	public VariableInstruction(MethodInfo methodInfo, Opcode opcode, boolean immediate, boolean wide) {
+		super(methodInfo, opcode);
+		this.immediate = immediate;
+		this.wide = wide;
+	}
+
+	/**
+	 * Constructor. The opcode and index of the given instruction are copied.
+	 *
 	 * @param ibi
-	 *            an ImmediateByteInstruction for namesake an LDC* that pushes a
-	 *            byte.
+	 *            an ImmediateByteInstruction that loads or stores.
 	 */
 	public VariableInstruction(ImmediateByteInstruction ibi) {
-		super(ibi.methodInfo(), ibi.opcode());
-		this.instruction = ibi;
+		this(ibi.methodInfo(), ibi.opcode(), true, ibi.wide());
+		this.variable = ibi.value();
 	}
 
 	/**
-	 * Constructor.
+	 * Constructor. The opcode of the given instruction is copied.
 	 *
 	 * @param si
 	 *            a SimpleInstruction that loads or stores.
 	 */
 	public VariableInstruction(SimpleInstruction si) {
-		super(si.methodInfo(), si.opcode());
-		this.instruction = si;
+		this(si.methodInfo(), si.opcode(), false, false);
+	}
+
+	@Override
+	public int size() {
+		return super.size() + (immediate ? (wide ? 2 : 1) : 0);
 	}
 
 	public int variable() {
-		if (instruction instanceof ImmediateByteInstruction) {
-			return ((ImmediateByteInstruction) instruction).value();
+		if (immediate) {
+			return variable;
 		} else {
 			String verbose = opcode().verbose();
 			if (verbose.contains("m1")) {
@@ -59,11 +85,20 @@ public class VariableInstruction extends AbstractInstruction {
 
 	@Override
 	public void read(BytecodeInput input) throws IOException {
-		instruction.read(input);
+		super.read(input);
+		if (immediate)
+			variable = wide ? input.readUnsignedShort() : input.readUnsignedByte();
 	}
 
 	@Override
 	public void write(BytecodeOutput output) throws IOException {
-		instruction.write(output);
+		super.write(output);
+		if (immediate) {
+			if (wide) {
+				output.writeShort(variable);
+			} else {
+				output.writeByte(variable);
+			}
+		}
 	}
 }
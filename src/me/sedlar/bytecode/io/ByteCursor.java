@@ -0,0 +1,352 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+
+package me.sedlar.bytecode.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A <tt>BytecodeInput</tt> that reads big-endian values straight out of a
+ * <tt>byte[]</tt> or a <tt>ByteBuffer</tt> by moving an index, without any
+ * stream in between.
+ * <p>
+ * Every read checks the remaining length once and then decodes the value in
+ * place, so parsing a class file from memory does not go through the virtual
+ * calls and per-byte bookkeeping of <tt>DataInputStream</tt>,
+ * <tt>ByteArrayInputStream</tt> and <tt>CountedInputStream</tt>.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class ByteCursor implements BytecodeInput {
+
+	private final byte[] bytes;
+	private final ByteBuffer buffer;
+	private final int start;
+	private final int end;
+	private int position;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param bytes
+	 *            the bits to read, which are not copied
+	 * @param offset
+	 *            the offset of the first bit to read
+	 * @param length
+	 *            the amount of bits to read
+	 */
+	public ByteCursor(byte[] bytes, int offset, int length) {
+		if (offset < 0 || length < 0 || offset > bytes.length - length)
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + bytes.length);
+		this.bytes = bytes;
+		this.buffer = null;
+		this.start = offset;
+		this.end = offset + length;
+		this.position = offset;
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param bytes
+	 *            the bits to read, which are not copied
+	 */
+	public ByteCursor(byte[] bytes) {
+		this(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Constructor. The remaining bits of the buffer are read without
+	 * changing its position; a buffer backed by an accessible array is read
+	 * through that array.
+	 *
+	 * @param buffer
+	 *            the buffer to read
+	 */
+	public ByteCursor(ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			this.bytes = buffer.array();
+			this.buffer = null;
+			this.start = buffer.arrayOffset() + buffer.position();
+		} else {
+			this.bytes = null;
+			this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+			this.start = buffer.position();
+		}
+		this.end = start + buffer.remaining();
+		this.position = start;
+	}
+
+	@Override
+	public int count() {
+		return position - start;
+	}
+
+	/**
+	 * Get the amount of bits left to read.
+	 *
+	 * @return the amount of bits left
+	 */
+	public int remaining() {
+		return end - position;
+	}
+
+	/**
+	 * Get the position of this cursor, relative to the first bit it reads.
+	 *
+	 * @return the position
+	 */
+	public int position() {
+		return position - start;
+	}
+
+	/**
+	 * Move this cursor to the given position, relative to the first bit it
+	 * reads.
+	 *
+	 * @param position
+	 *            the new position
+	 */
+	public void position(int position) {
+		if (position < 0 || position > end - start)
+			throw new IndexOutOfBoundsException("position " + position + ", length " + (end - start));
+		this.position = start + position;
+	}
+
+	/**
+	 * Skip exactly the given amount of bits.
+	 *
+	 * @param n
+	 *            the amount of bits to skip
+	 * @throws EOFException
+	 *             if fewer bits are left
+	 */
+	public void skip(int n) throws EOFException {
+		require(n);
+		position += n;
+	}
+
+	/**
+	 * Read the given amount of bits into a new array.
+	 *
+	 * @param length
+	 *            the amount of bits to read
+	 * @return the bits read
+	 * @throws EOFException
+	 *             if fewer bits are left
+	 */
+	public byte[] readBytes(int length) throws EOFException {
+		byte[] b = new byte[length];
+		readFully(b, 0, length);
+		return b;
+	}
+
+	/**
+	 * Get the array that this cursor reads from.
+	 *
+	 * @return the array, or <t>null</t> if this cursor reads a buffer
+	 *         without an accessible array
+	 */
+	public byte[] array() {
+		return bytes;
+	}
+
+	/**
+	 * Get the index within <tt>array()</tt> of the next bit to read.
+	 *
+	 * @return the index of the next bit
+	 */
+	public int arrayPosition() {
+		return position;
+	}
+
+	private void require(int n) throws EOFException {
+		if (n < 0 || n > end - position)
+			throw new EOFException();
+	}
+
+	@Override
+	public void readFully(byte[] b) throws EOFException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws EOFException {
+		require(len);
+		if (bytes != null) {
+			System.arraycopy(bytes, position, b, off, len);
+		} else {
+			ByteBuffer view = buffer.duplicate();
+			view.position(position);
+			view.get(b, off, len);
+		}
+		position += len;
+	}
+
+	@Override
+	public int skipBytes(int n) {
+		int skipped = Math.max(0, Math.min(n, end - position));
+		position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean readBoolean() throws EOFException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws EOFException {
+		require(1);
+		return bytes != null ? bytes[position++] : buffer.get(position++);
+	}
+
+	@Override
+	public int readUnsignedByte() throws EOFException {
+		return readByte() & 0xff;
+	}
+
+	@Override
+	public short readShort() throws EOFException {
+		require(2);
+		short value;
+		if (bytes != null)
+			value = (short) ((bytes[position] << 8) | (bytes[position + 1] & 0xff));
+		else
+			value = buffer.getShort(position);
+		position += 2;
+		return value;
+	}
+
+	@Override
+	public int readUnsignedShort() throws EOFException {
+		return readShort() & 0xffff;
+	}
+
+	@Override
+	public char readChar() throws EOFException {
+		return (char) readShort();
+	}
+
+	@Override
+	public int readInt() throws EOFException {
+		require(4);
+		int value;
+		if (bytes != null)
+			value = (bytes[position] << 24) | ((bytes[position + 1] & 0xff) << 16)
+					| ((bytes[position + 2] & 0xff) << 8) | (bytes[position + 3] & 0xff);
+		else
+			value = buffer.getInt(position);
+		position += 4;
+		return value;
+	}
+
+	@Override
+	public long readLong() throws EOFException {
+		return ((long) readInt() << 32) | (readInt() & 0xffffffffL);
+	}
+
+	@Override
+	public float readFloat() throws EOFException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public double readDouble() throws EOFException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public String readLine() {
+		throw new UnsupportedOperationException("class files do not contain lines");
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		int length = readUnsignedShort();
+		String string;
+		if (bytes != null) {
+			require(length);
+			string = decodeUTF(bytes, position, length);
+			position += length;
+		} else {
+			byte[] b = readBytes(length);
+			string = decodeUTF(b, 0, length);
+		}
+		return string;
+	}
+
+	/**
+	 * Decode the modified UTF-8 used by class files.
+	 *
+	 * @param bytes
+	 *            the array holding the encoded string
+	 * @param offset
+	 *            the offset of the encoded string
+	 * @param length
+	 *            the length in bits of the encoded string
+	 * @return the decoded string
+	 * @throws UTFDataFormatException
+	 *             if the bits are not valid modified UTF-8
+	 */
+	public static String decodeUTF(byte[] bytes, int offset, int length) throws UTFDataFormatException {
+		char[] chars = new char[length];
+		int limit = offset + length;
+		int i = offset;
+		int count = 0;
+		// most constants are plain ASCII, which maps one bit to one char
+		while (i < limit && bytes[i] >= 0)
+			chars[count++] = (char) bytes[i++];
+		while (i < limit) {
+			int c = bytes[i] & 0xff;
+			switch (c >> 4) {
+				case 0:
+				case 1:
+				case 2:
+				case 3:
+				case 4:
+				case 5:
+				case 6:
+				case 7: {
+					chars[count++] = (char) c;
+					i++;
+					break;
+				}
+				case 12:
+				case 13: {
+					if (i + 2 > limit)
+						throw new UTFDataFormatException("malformed input: partial character at end");
+					int c2 = bytes[i + 1];
+					if ((c2 & 0xc0) != 0x80)
+						throw new UTFDataFormatException("malformed input around byte " + (i + 1 - offset));
+					chars[count++] = (char) (((c & 0x1f) << 6) | (c2 & 0x3f));
+					i += 2;
+					break;
+				}
+				case 14: {
+					if (i + 3 > limit)
+						throw new UTFDataFormatException("malformed input: partial character at end");
+					int c2 = bytes[i + 1];
+					int c3 = bytes[i + 2];
+					if ((c2 & 0xc0) != 0x80 || (c3 & 0xc0) != 0x80)
+						throw new UTFDataFormatException("malformed input around byte " + (i + 2 - offset));
+					chars[count++] = (char) (((c & 0x0f) << 12) | ((c2 & 0x3f) << 6) | (c3 & 0x3f));
+					i += 3;
+					break;
+				}
+				default: {
+					throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+				}
+			}
+		}
+		return new String(chars, 0, count);
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+
+package me.sedlar.bytecode.io;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import me.sedlar.bytecode.*;
+
+/**
+ * Lays out instructions before they are written.
+ * <p>
+ * Branches and switches jump to instructions rather than offsets, so the
+ * assembler works out the offset of every instruction, including the
+ * padding of switches, and the jumps follow. A <tt>goto</tt> or
+ * <tt>jsr</tt> that jumps further than a 16-bit offset reaches becomes a
+ * <tt>goto_w</tt> or <tt>jsr_w</tt>; such a conditional branch is inverted
+ * to jump over a <tt>goto_w</tt> to its target that is inserted after it.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class BytecodeAssembler {
+
+	/**
+	 * Binds the branches and switches among the given instructions to the
+	 * instructions they jump to, as found by their offsets. Jumps to an
+	 * offset at which none of the instructions starts keep their offset.
+	 *
+	 * @param instructions
+	 *            the instructions, in ascending order of their offsets
+	 *            within the given range
+	 * @param from
+	 *            the index of the first instruction to bind
+	 * @param to
+	 *            the index after the last instruction to bind
+	 */
+	public static void bind(List<AbstractInstruction> instructions, int from, int to) {
+		for (int i = from; i < to; i++) {
+			AbstractInstruction ai = instructions.get(i);
+			if (ai instanceof AbstractBranchInstruction) {
+				AbstractBranchInstruction branch = (AbstractBranchInstruction) ai;
+				AbstractInstruction target = find(instructions, from, to, branch.totalOffset());
+				if (target != null)
+					branch.setTarget(target);
+			} else if (ai instanceof TableSwitchInstruction) {
+				TableSwitchInstruction tsi = (TableSwitchInstruction) ai;
+				tsi.setDefaultTarget(find(instructions, from, to, ai.offset() + tsi.defaultOffset()));
+				int[] jumpOffsets = tsi.jumpOffsets();
+				AbstractInstruction[] targets = new AbstractInstruction[jumpOffsets.length];
+				for (int j = 0; j < targets.length; j++)
+					targets[j] = find(instructions, from, to, ai.offset() + jumpOffsets[j]);
+				tsi.setJumpTargets(targets);
+			} else if (ai instanceof LookupSwitchInstruction) {
+				LookupSwitchInstruction lsi = (LookupSwitchInstruction) ai;
+				lsi.setDefaultTarget(find(instructions, from, to, ai.offset() + lsi.defaultOffset()));
+				for (OffsetPair pair : lsi.offsetPairs())
+					pair.setTarget(find(instructions, from, to, ai.offset() + pair.offset()));
+			}
+		}
+	}
+
+	private static AbstractInstruction find(List<AbstractInstruction> instructions, int from, int to, int offset) {
+		int low = from;
+		int high = to - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			AbstractInstruction ai = instructions.get(mid);
+			if (ai.offset() < offset)
+				low = mid + 1;
+			else if (ai.offset() > offset)
+				high = mid - 1;
+			else
+				return ai;
+		}
+		return null;
+	}
+
+	/**
+	 * Lays out the given instructions, setting the offset of each of them.
+	 * <p>
+	 * Before that, jumps by a plain offset are bound to the instruction they
+	 * reach from where the jump was last laid out or read, and jumps to an
+	 * instruction that was removed from the list are moved to the instruction
+	 * that followed it, that is the one with the next offset that is still
+	 * in the list.
+	 *
+	 * @param instructions
+	 *            the instructions, to which a <tt>goto_w</tt> is added for
+	 *            every conditional branch that is out of reach of its target
+	 * @throws IllegalStateException
+	 *             if an instruction jumps to an instruction that is not in
+	 *             the list and was never laid out, or a conditional branch
+	 *             out of reach of its target is the last instruction
+	 */
+	public static void assemble(List<AbstractInstruction> instructions) {
+		Map<AbstractInstruction, Integer> indices = indices(instructions);
+		TreeMap<Integer, AbstractInstruction> placed = new TreeMap<>();
+		for (AbstractInstruction ai : instructions) {
+			if (ai.offset() >= 0)
+				placed.putIfAbsent(ai.offset(), ai);
+		}
+		for (AbstractInstruction ai : instructions)
+			resolve(ai, indices, placed);
+		int[] offsets;
+		while (true) {
+			offsets = layout(instructions);
+			List<Integer> far = new ArrayList<>();
+			for (int i = 0; i < offsets.length - 1; i++) {
+				AbstractInstruction ai = instructions.get(i);
+				if (ai instanceof BranchInstruction && !((BranchInstruction) ai).wide()) {
+					AbstractInstruction target = ((BranchInstruction) ai).target();
+					if (target != null) {
+						int distance = offsets[indices.get(target)] - offsets[i];
+						if (distance < Short.MIN_VALUE || distance > Short.MAX_VALUE)
+							far.add(i);
+					}
+				}
+			}
+			if (far.isEmpty())
+				break;
+			// relax from the end, so that inserting does not move the branches still to relax
+			for (int i = far.size() - 1; i >= 0; i--)
+				relax(instructions, far.get(i));
+			indices = indices(instructions);
+		}
+		for (int i = 0; i < offsets.length - 1; i++) {
+			AbstractInstruction ai = instructions.get(i);
+			if (ai.offset() != offsets[i])
+				ai.setOffset(offsets[i]);
+		}
+	}
+
+	private static Map<AbstractInstruction, Integer> indices(List<AbstractInstruction> instructions) {
+		Map<AbstractInstruction, Integer> indices = new IdentityHashMap<>(instructions.size());
+		int index = 0;
+		for (AbstractInstruction ai : instructions)
+			indices.put(ai, index++);
+		return indices;
+	}
+
+	private static void resolve(AbstractInstruction ai, Map<AbstractInstruction, Integer> indices,
+			TreeMap<Integer, AbstractInstruction> placed) {
+		if (ai instanceof AbstractBranchInstruction) {
+			AbstractBranchInstruction branch = (AbstractBranchInstruction) ai;
+			AbstractInstruction target = resolve(ai, branch.target(), branch.branchOffset(), indices, placed);
+			if (target != branch.target())
+				branch.setTarget(target);
+		} else if (ai instanceof TableSwitchInstruction) {
+			TableSwitchInstruction tsi = (TableSwitchInstruction) ai;
+			AbstractInstruction target = resolve(ai, tsi.defaultTarget(), tsi.defaultOffset(), indices, placed);
+			if (target != tsi.defaultTarget())
+				tsi.setDefaultTarget(target);
+			int[] jumpOffsets = tsi.jumpOffsets();
+			AbstractInstruction[] targets = tsi.jumpTargets();
+			AbstractInstruction[] resolved = new AbstractInstruction[jumpOffsets.length];
+			boolean changed = targets == null;
+			for (int i = 0; i < resolved.length; i++) {
+				AbstractInstruction current = targets != null ? targets[i] : null;
+				resolved[i] = resolve(ai, current, jumpOffsets[i], indices, placed);
+				changed |= resolved[i] != current;
+			}
+			if (changed)
+				tsi.setJumpTargets(resolved);
+		} else if (ai instanceof LookupSwitchInstruction) {
+			LookupSwitchInstruction lsi = (LookupSwitchInstruction) ai;
+			AbstractInstruction target = resolve(ai, lsi.defaultTarget(), lsi.defaultOffset(), indices, placed);
+			if (target != lsi.defaultTarget())
+				lsi.setDefaultTarget(target);
+			for (OffsetPair pair : lsi.offsetPairs()) {
+				AbstractInstruction current = pair.target();
+				AbstractInstruction resolved = resolve(ai, current, pair.offset(), indices, placed);
+				if (resolved != current)
+					pair.setTarget(resolved);
+			}
+		}
+	}
+
+	private static AbstractInstruction resolve(AbstractInstruction ai, AbstractInstruction target, int offset,
+			Map<AbstractInstruction, Integer> indices, TreeMap<Integer, AbstractInstruction> placed) {
+		if (target == null)
+			return ai.offset() >= 0 ? placed.get(ai.offset() + offset) : null;
+		if (indices.containsKey(target))
+			return target;
+		Map.Entry<Integer, AbstractInstruction> next = target.offset() >= 0 ? placed.ceilingEntry(target.offset())
+				: null;
+		if (next == null)
+			throw new IllegalStateException("the target of " + ai.opcode().verbose() + " at " + ai.offset()
+					+ " is not in the instruction list");
+		return next.getValue();
+	}
+
+	private static int[] layout(List<AbstractInstruction> instructions) {
+		int[] offsets = new int[instructions.size() + 1];
+		int offset = 0;
+		int index = 0;
+		for (AbstractInstruction ai : instructions) {
+			offsets[index++] = offset;
+			offset += ai instanceof PaddedInstruction ? ((PaddedInstruction) ai).padding(offset) : ai.size();
+		}
+		offsets[index] = offset;
+		return offsets;
+	}
+
+	private static void relax(List<AbstractInstruction> instructions, int index) {
+		BranchInstruction branch = (BranchInstruction) instructions.get(index);
+		Opcode opcode = branch.opcode();
+		if (opcode == Opcode.GOTO) {
+			branch.setOpcode(Opcode.GOTO_W);
+		} else if (opcode == Opcode.JSR) {
+			branch.setOpcode(Opcode.JSR_W);
+		} else {
+			if (index + 1 >= instructions.size())
+				throw new IllegalStateException(opcode.verbose() + " at the end of the code is out of reach of its "
+						+ "target");
+			AbstractInstruction next = instructions.get(index + 1);
+			BranchInstruction jump = new BranchInstruction(branch.methodInfo(), Opcode.GOTO_W);
+			jump.setTarget(branch.target());
+			branch.setOpcode(invert(opcode));
+			branch.setTarget(next);
+			jump.setPrevious(branch);
+			jump.setNext(next);
+			branch.setNext(jump);
+			next.setPrevious(jump);
+			instructions.add(index + 1, jump);
+		}
+	}
+
+	private static Opcode invert(Opcode opcode) {
+		int id = opcode.id();
+		if (id == Opcode.IFNULL.id())
+			return Opcode.IFNONNULL;
+		if (id == Opcode.IFNONNULL.id())
+			return Opcode.IFNULL;
+		// ifeq to if_acmpne come in pairs that negate each other
+		return Opcode.fromBytecode(((id - Opcode.IFEQ.id()) ^ 1) + Opcode.IFEQ.id());
+	}
+}
@@ -7,19 +7,84 @@
 
 package me.sedlar.bytecode.io;
 
-import java.io.ByteArrayInputStream;
+import static me.sedlar.bytecode.Opcode.*;
+
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import me.sedlar.bytecode.*;
 import me.sedlar.bytecode.structure.MethodInfo;
 
 /**
+ * Decodes code into instructions.
+ * <p>
+ * The decoder looks the opcode up in a table that holds the kind of
+ * instruction, creates exactly one instruction for it and lets that
+ * instruction read its operands straight from the code.
+ *
  * @author <a href="mailto:jclasslib@ej-technologies.com">Ingo Kegel</a>
  * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
  */
 public class BytecodeReader {
 
+	private static final int SIMPLE = 0;
+	private static final int IMPLIED_VARIABLE = 1;
+	private static final int VARIABLE = 2;
+	private static final int IMMEDIATE_BYTE = 3;
+	private static final int PUSH = 4;
+	private static final int CONSTANT = 5;
+	private static final int METHOD = 6;
+	private static final int FIELD = 7;
+	private static final int TYPE = 8;
+	private static final int BRANCH = 9;
+	private static final int WIDE_BRANCH = 10;
+	private static final int INCREMENT = 11;
+	private static final int TABLE_SWITCH = 12;
+	private static final int LOOKUP_SWITCH = 13;
+	private static final int INVOKE_INTERFACE = 14;
+	private static final int INVOKE_DYNAMIC = 15;
+	private static final int MULTIANEWARRAY = 16;
+
+	private static final Opcode[] OPCODES = new Opcode[256];
+	private static final byte[] KINDS = new byte[256];
+
+	static {
+		for (Opcode opcode : Opcode.values())
+			OPCODES[opcode.id()] = opcode;
+		kind(IMPLIED_VARIABLE, ICONST_M1, ICONST_0, ICONST_1, ICONST_2, ICONST_3, ICONST_4, ICONST_5,
+				LCONST_0, LCONST_1, FCONST_0, FCONST_1, FCONST_2, DCONST_0, DCONST_1, ILOAD_0, ILOAD_1,
+				ILOAD_2, ILOAD_3, LLOAD_0, LLOAD_1, LLOAD_2, LLOAD_3, FLOAD_0, FLOAD_1, FLOAD_2, FLOAD_3,
+				DLOAD_0, DLOAD_1, DLOAD_2, DLOAD_3, ALOAD_0, ALOAD_1, ALOAD_2, ALOAD_3, IALOAD, LALOAD, FALOAD,
+				DALOAD, AALOAD, BALOAD, CALOAD, SALOAD, ISTORE_0, ISTORE_1, ISTORE_2, ISTORE_3, LSTORE_0,
+				LSTORE_1, LSTORE_2, LSTORE_3, FSTORE_0, FSTORE_1, FSTORE_2, FSTORE_3, DSTORE_0, DSTORE_1,
+				DSTORE_2, DSTORE_3, ASTORE_0, ASTORE_1, ASTORE_2, ASTORE_3, IASTORE, LASTORE, FASTORE, DASTORE,
+				AASTORE, BASTORE, CASTORE, SASTORE);
+		kind(CONSTANT, LDC);
+		kind(PUSH, BIPUSH);
+		kind(VARIABLE, ILOAD, LLOAD, FLOAD, DLOAD, ALOAD, ISTORE, LSTORE, FSTORE, DSTORE, ASTORE);
+		kind(IMMEDIATE_BYTE, RET, NEWARRAY);
+		kind(METHOD, INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC);
+		kind(CONSTANT, LDC_W, LDC2_W);
+		kind(FIELD, GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD);
+		kind(PUSH, SIPUSH);
+		kind(TYPE, NEW, ANEWARRAY, CHECKCAST, INSTANCEOF);
+		kind(BRANCH, IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE,
+				IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE, GOTO, JSR, IFNULL, IFNONNULL);
+		kind(WIDE_BRANCH, GOTO_W, JSR_W);
+		kind(INCREMENT, IINC);
+		kind(TABLE_SWITCH, TABLESWITCH);
+		kind(LOOKUP_SWITCH, LOOKUPSWITCH);
+		kind(INVOKE_INTERFACE, INVOKEINTERFACE);
+		kind(INVOKE_DYNAMIC, INVOKEDYNAMIC);
+		kind(MULTIANEWARRAY, Opcode.MULTIANEWARRAY);
+	}
+
+	private static void kind(int kind, Opcode... opcodes) {
+		for (Opcode opcode : opcodes)
+			KINDS[opcode.id()] = (byte) kind;
+	}
+
 	/**
 	 * Converts the code to a list of instructions.
 	 *
@@ -32,305 +97,136 @@ public class BytecodeReader {
 	 */
 	public static ArrayList<AbstractInstruction> readBytecode(MethodInfo methodInfo, byte[] code)
 			throws IOException {
-		BytecodeInputStream bcis = new BytecodeInputStream(new ByteArrayInputStream(code));
-		ArrayList<AbstractInstruction> instructions = new ArrayList<>();
+		ArrayList<AbstractInstruction> instructions = new ArrayList<>(count(code));
+		readBytecode(methodInfo, code, instructions);
+		return instructions;
+	}
+
+	/**
+	 * Converts the code to instructions, which are appended to the given
+	 * list. The instructions are linked to each other, but not to the
+	 * instructions already in the list, and branches and switches are bound
+	 * to the instructions they jump to.
+	 *
+	 * @param code
+	 *            the code as an array of bits from which to read the
+	 *            instructions
+	 * @param instructions
+	 *            the list to append the instructions to
+	 * @throws IOException
+	 *             if an exception occurs with the code, in which case the
+	 *             instructions read so far have been appended
+	 */
+	public static void readBytecode(MethodInfo methodInfo, byte[] code, List<AbstractInstruction> instructions)
+			throws IOException {
+		ByteCursor in = new ByteCursor(code);
+		int start = instructions.size();
 		boolean wide = false;
-		AbstractInstruction currentInstruction = null;
-		AbstractInstruction previous;
-		while (bcis.count() < code.length) {
-			previous = currentInstruction;
-			currentInstruction = readNextInstruction(methodInfo, bcis, wide);
-			wide = (currentInstruction.opcode() == Opcode.WIDE);
-			currentInstruction.setPrevious(previous);
-			instructions.add(currentInstruction);
+		boolean jumps = false;
+		AbstractInstruction previous = null;
+		while (in.remaining() > 0) {
+			AbstractInstruction instruction = readNextInstruction(methodInfo, in, wide);
+			wide = instruction.opcode() == WIDE;
+			jumps |= instruction instanceof AbstractBranchInstruction || instruction instanceof PaddedInstruction;
+			if (previous != null) {
+				instruction.setPrevious(previous);
+				previous.setNext(instruction);
+			}
+			instructions.add(instruction);
+			previous = instruction;
 		}
-		for (int i = 0; i + 1 < instructions.size(); i++)
-			instructions.get(i).setNext(instructions.get(i + 1));
-		return instructions;
+		if (jumps)
+			BytecodeAssembler.bind(instructions, start, instructions.size());
 	}
 
-	private static AbstractInstruction readNextInstruction(MethodInfo methodInfo, BytecodeInputStream bcis,
-			boolean wide) throws IOException {
-		AbstractInstruction instruction;
-		int bytecode = bcis.readUnsignedByte();
-		Opcode opcode = Opcode.fromBytecode(bytecode);
+	/**
+	 * Counts the instructions within the code without decoding them. A
+	 * <tt>wide</tt> prefix counts as an instruction of its own, as it does
+	 * when the code is decoded.
+	 *
+	 * @param code
+	 *            the code as an array of bits
+	 * @return the amount of instructions, or the amount up to the first
+	 *         invalid or truncated one
+	 */
+	public static int count(byte[] code) {
+		int count = 0;
+		int pc = 0;
+		boolean wide = false;
+		while (pc < code.length) {
+			int length = Opcode.length(code, 0, code.length, pc, wide);
+			if (length < 0)
+				break;
+			wide = (code[pc] & 0xff) == WIDE.id();
+			pc += length;
+			count++;
+		}
+		return count;
+	}
+
+	private static AbstractInstruction readNextInstruction(MethodInfo methodInfo, ByteCursor in, boolean wide)
+			throws IOException {
+		int bytecode = in.readUnsignedByte();
+		Opcode opcode = OPCODES[bytecode];
 		if (opcode == null)
 			throw new IOException("invalid opcode 0x" + Integer.toHexString(bytecode));
-		switch (opcode) {
-			case ICONST_M1:
-			case ICONST_0:
-			case ICONST_1:
-			case ICONST_2:
-			case ICONST_3:
-			case ICONST_4:
-			case ICONST_5:
-			case LCONST_0:
-			case LCONST_1:
-			case FCONST_0:
-			case FCONST_1:
-			case FCONST_2:
-			case DCONST_0:
-			case DCONST_1:
-			case ILOAD_0:
-			case ILOAD_1:
-			case ILOAD_2:
-			case ILOAD_3:
-			case LLOAD_0:
-			case LLOAD_1:
-			case LLOAD_2:
-			case LLOAD_3:
-			case FLOAD_0:
-			case FLOAD_1:
-			case FLOAD_2:
-			case FLOAD_3:
-			case DLOAD_0:
-			case DLOAD_1:
-			case DLOAD_2:
-			case DLOAD_3:
-			case ALOAD_0:
-			case ALOAD_1:
-			case ALOAD_2:
-			case ALOAD_3:
-			case IALOAD:
-			case LALOAD:
-			case FALOAD:
-			case DALOAD:
-			case AALOAD:
-			case BALOAD:
-			case CALOAD:
-			case SALOAD:
-			case ISTORE_0:
-			case ISTORE_1:
-			case ISTORE_2:
-			case ISTORE_3:
-			case LSTORE_0:
-			case LSTORE_1:
-			case LSTORE_2:
-			case LSTORE_3:
-			case FSTORE_0:
-			case FSTORE_1:
-			case FSTORE_2:
-			case FSTORE_3:
-			case DSTORE_0:
-			case DSTORE_1:
-			case DSTORE_2:
-			case DSTORE_3:
-			case ASTORE_0:
-			case ASTORE_1:
-			case ASTORE_2:
-			case ASTORE_3:
-			case IASTORE:
-			case LASTORE:
-			case FASTORE:
-			case DASTORE:
-			case AASTORE:
-			case BASTORE:
-			case CASTORE:
-			case SASTORE: {
+		AbstractInstruction instruction;
+		switch (KINDS[bytecode]) {
+			case SIMPLE:
 				instruction = new SimpleInstruction(methodInfo, opcode);
-				instruction = new VariableInstruction((SimpleInstruction) instruction);
 				break;
-			}
-			case WIDE:
-			case NOP:
-			case ACONST_NULL:
-			case POP:
-			case POP2:
-			case DUP:
-			case DUP_X1:
-			case DUP_X2:
-			case DUP2:
-			case DUP2_X1:
-			case DUP2_X2:
-			case SWAP:
-			case IADD:
-			case LADD:
-			case FADD:
-			case DADD:
-			case ISUB:
-			case LSUB:
-			case FSUB:
-			case DSUB:
-			case IMUL:
-			case LMUL:
-			case FMUL:
-			case DMUL:
-			case IDIV:
-			case LDIV:
-			case FDIV:
-			case DDIV:
-			case IREM:
-			case LREM:
-			case FREM:
-			case DREM:
-			case INEG:
-			case LNEG:
-			case FNEG:
-			case DNEG:
-			case ISHL:
-			case LSHL:
-			case ISHR:
-			case LSHR:
-			case IUSHR:
-			case LUSHR:
-			case IAND:
-			case LAND:
-			case IOR:
-			case LOR:
-			case IXOR:
-			case LXOR:
-			case I2L:
-			case I2F:
-			case I2D:
-			case L2I:
-			case L2F:
-			case L2D:
-			case F2I:
-			case F2L:
-			case F2D:
-			case D2I:
-			case D2L:
-			case D2F:
-			case I2B:
-			case I2C:
-			case I2S:
-			case LCMP:
-			case FCMPL:
-			case FCMPG:
-			case DCMPL:
-			case DCMPG:
-			case IRETURN:
-			case LRETURN:
-			case FRETURN:
-			case DRETURN:
-			case ARETURN:
-			case RETURN:
-			case ARRAYLENGTH:
-			case ATHROW:
-			case MONITORENTER:
-			case MONITOREXIT:
-			case BREAKPOINT:
-			case IMPDEP1:
-			case IMPDEP2: {
-				instruction = new SimpleInstruction(methodInfo, opcode);
+			case IMPLIED_VARIABLE:
+				instruction = new VariableInstruction(methodInfo, opcode, false, false);
 				break;
-			}
-			case LDC: {
-				instruction = new ImmediateByteInstruction(methodInfo, opcode, wide);
-				instruction = new ConstantInstruction((ImmediateByteInstruction) instruction);
+			case VARIABLE:
+				instruction = new VariableInstruction(methodInfo, opcode, true, wide);
 				break;
-			}
-			case BIPUSH: {
+			case IMMEDIATE_BYTE:
 				instruction = new ImmediateByteInstruction(methodInfo, opcode, wide);
-				instruction = new PushInstruction((ImmediateByteInstruction) instruction);
 				break;
-			}
-			case ILOAD: // subject to wide
-			case LLOAD: // subject to wide
-			case FLOAD: // subject to wide
-			case DLOAD: // subject to wide
-			case ALOAD: // subject to wide
-			case ISTORE: // subject to wide
-			case LSTORE: // subject to wide
-			case FSTORE: // subject to wide
-			case DSTORE: // subject to wide
-			case ASTORE: {// subject to wide
-				instruction = new ImmediateByteInstruction(methodInfo, opcode, wide);
-				instruction = new VariableInstruction((ImmediateByteInstruction) instruction);
+			case PUSH:
+				instruction = new PushInstruction(methodInfo, opcode);
 				break;
-			}
-			case RET: // subject to wide
-			case NEWARRAY: {
-				instruction = new ImmediateByteInstruction(methodInfo, opcode, wide);
+			case CONSTANT:
+				instruction = new ConstantInstruction(methodInfo, opcode);
 				break;
-			}
-			case INVOKEVIRTUAL:
-			case INVOKESPECIAL:
-			case INVOKESTATIC: {
+			case METHOD:
 				instruction = new MethodInstruction(methodInfo, opcode);
 				break;
-			}
-			case LDC_W:
-			case LDC2_W: {
-				instruction = new ImmediateShortInstruction(methodInfo, opcode);
-				instruction = new ConstantInstruction((ImmediateShortInstruction) instruction);
-				break;
-			}
-			case GETSTATIC:
-			case PUTSTATIC:
-			case GETFIELD:
-			case PUTFIELD: {
+			case FIELD:
 				instruction = new FieldInstruction(methodInfo, opcode);
 				break;
-			}
-			case SIPUSH: {
-				instruction = new ImmediateShortInstruction(methodInfo, opcode);
-				instruction = new PushInstruction((ImmediateShortInstruction) instruction);
-				break;
-			}
-			case NEW:
-			case ANEWARRAY:
-			case CHECKCAST:
-			case INSTANCEOF: {
+			case TYPE:
 				instruction = new TypeInstruction(methodInfo, opcode);
 				break;
-			}
-			case IFEQ:
-			case IFNE:
-			case IFLT:
-			case IFGE:
-			case IFGT:
-			case IFLE:
-			case IF_ICMPEQ:
-			case IF_ICMPNE:
-			case IF_ICMPLT:
-			case IF_ICMPGE:
-			case IF_ICMPGT:
-			case IF_ICMPLE:
-			case IF_ACMPEQ:
-			case IF_ACMPNE:
-			case GOTO:
-			case JSR:
-			case IFNULL:
-			case IFNONNULL: {
+			case BRANCH:
 				instruction = new BranchInstruction(methodInfo, opcode);
 				break;
-			}
-			case GOTO_W:
-			case JSR_W: {
+			case WIDE_BRANCH:
 				instruction = new WideBranchInstruction(methodInfo, opcode);
 				break;
-			}
-			case IINC: {// subject to wide
+			case INCREMENT:
 				instruction = new IncrementInstruction(methodInfo, opcode, wide);
 				break;
-			}
-			case TABLESWITCH: {
+			case TABLE_SWITCH:
 				instruction = new TableSwitchInstruction(methodInfo, opcode);
 				break;
-
-			}
-			case LOOKUPSWITCH: {
+			case LOOKUP_SWITCH:
 				instruction = new LookupSwitchInstruction(methodInfo, opcode);
 				break;
-			}
-			case INVOKEINTERFACE: {
+			case INVOKE_INTERFACE:
 				instruction = new InvokeInterfaceInstruction(methodInfo, opcode);
 				break;
-			}
-			case INVOKEDYNAMIC: {
+			case INVOKE_DYNAMIC:
 				instruction = new InvokeDynamicInstruction(methodInfo, opcode);
 				break;
-			}
-			case MULTIANEWARRAY: {
+			case MULTIANEWARRAY:
 				instruction = new MultianewarrayInstruction(methodInfo, opcode);
 				break;
-			}
-			default: {
+			default:
 				throw new IOException("unhandled opcode " + opcode);
-			}
 		}
-		instruction.read(bcis);
+		instruction.read(in);
 		return instruction;
 	}
 }
@@ -19,7 +19,8 @@ import me.sedlar.bytecode.AbstractInstruction;
 public class BytecodeWriter {
 
 	/**
-	 * Converts a list of instructions to code.
+	 * Converts a list of instructions to code, laying them out with
+	 * <tt>BytecodeAssembler</tt> first.
 	 *
 	 * @param instructions
 	 *            the <tt>java.util.List</tt> with the instructions
@@ -30,6 +31,7 @@ public class BytecodeWriter {
 	public static byte[] writeBytecode(List<AbstractInstruction> instructions) throws IOException {
 		try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
 			try (BytecodeOutputStream out = new BytecodeOutputStream(baos)) {
+				BytecodeAssembler.assemble(instructions);
 				for (AbstractInstruction instruction : instructions)
 					instruction.write(out);
 				return baos.toByteArray();
@@ -41,7 +43,9 @@ public class BytecodeWriter {
 
 	/**
 	 * Writes a list of instructions to a
-	 * <tt>me.sedlar.bytecode.io.BytecodeOutputStream</tt>.
+	 * <tt>me.sedlar.bytecode.io.BytecodeOutputStream</tt>, laying them out
+	 * with <tt>BytecodeAssembler</tt> first. The stream must be at the start
+	 * of the code, as the padding of switches depends on it.
 	 * 
 	 * @param instructions
 	 *            the <tt>java.util.List</tt> with the instructions
@@ -53,6 +57,7 @@ public class BytecodeWriter {
 	 */
 	public static boolean writeBytecode(List<AbstractInstruction> instructions, BytecodeOutputStream out) {
 		try {
+			BytecodeAssembler.assemble(instructions);
 			for (AbstractInstruction ai : instructions)
 				ai.write(out);
 			return true;
@@ -37,9 +37,16 @@ public abstract class AbstractAttributeStructure extends AbstractStructure {
 	 *            the new attributes
 	 */
 	public void setAttributes(AttributeInfo[] attributes) {
+		markDirty();
 		this.attributes = attributes;
 	}
 
+	@Override
+	public void markDirty() {
+		if (classInfo != null && classInfo != this)
+			classInfo.markDirty();
+	}
+
 	/**
 	 * Find an attribute of a certain class.
 	 *
@@ -98,7 +105,7 @@ public abstract class AbstractAttributeStructure extends AbstractStructure {
 		for (int i = 0; i < attributesCount; i++) {
 			if (attributes[i] == null)
 				throw new InvalidByteCodeException("attribute " + i + " is null");
-			attributes[i].write(out);
+			attributes[i].writeOrCopy(out);
 		}
 	}
 
@@ -112,7 +119,7 @@ public abstract class AbstractAttributeStructure extends AbstractStructure {
 		int attributesCount = length(attributes);
 		for (int i = 0; i < attributesCount; i++) {
 			if (attributes[i] != null)
-				totalLength += attributes[i].length();
+				totalLength += attributes[i].writtenLength();
 		}
 		return totalLength;
 	}
@@ -67,6 +67,22 @@ public abstract class AbstractStructure {
 		this.classInfo = classInfo;
 	}
 
+	/**
+	 * Mark the parent class file as modified, so that it is serialized again
+	 * instead of being copied from its source. The setters of a structure do
+	 * this on their own; call it after changing an array or object that was
+	 * obtained from one of its getters.
+	 * <p>
+	 * Structures nested in attributes, such as table entries, annotations and
+	 * element values, do not know the attribute that holds them, so marking
+	 * one of them stops every attribute of the class from being copied from
+	 * its original bits.
+	 */
+	public void markDirty() {
+		if (classInfo != null && classInfo != this)
+			classInfo.markAttributesDirty();
+	}
+
 	/**
 	 * Read this structure from the given <tt>DataInput</tt>.
 	 * <p>
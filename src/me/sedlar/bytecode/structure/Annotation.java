@@ -35,6 +35,7 @@ public class Annotation extends AbstractStructure implements AnnotationData {
 	 *            the array
 	 */
 	public void setValuePairEntries(ValuePair[] valuePairEntries) {
+		markDirty();
 		this.valuePairEntries = valuePairEntries;
 	}
 
@@ -49,6 +50,7 @@ public class Annotation extends AbstractStructure implements AnnotationData {
 	 *            the <tt>type_index</tt>
 	 */
 	public void setTypeIndex(int typeIndex) {
+		markDirty();
 		this.typeIndex = typeIndex;
 	}
 
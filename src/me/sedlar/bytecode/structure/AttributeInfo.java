@@ -10,6 +10,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+import me.sedlar.bytecode.io.ByteCursor;
 import me.sedlar.bytecode.structure.attributes.*;
 import me.sedlar.bytecode.structure.constants.ConstantUtf8Info;
 
@@ -22,6 +23,9 @@ public class AttributeInfo extends AbstractAttributeStructure {
 	private int attributeNameIndex;
 	private int attributeLength;
 	private byte[] info;
+	private byte[] source;
+	private int sourceOffset;
+	private volatile boolean modified;
 
 	/**
 	 * Factory method for creating <tt>AttributeInfo</tt> structure.
@@ -34,6 +38,16 @@ public class AttributeInfo extends AbstractAttributeStructure {
 	 * <p/>
 	 * Attributes are skipped if the environment variable
 	 * <tt>SYSTEM_PROPERTY_SKIP_ATTRIBUTES</tt> is set to true.
+	 * <p>
+	 * When reading from a <tt>ByteCursor</tt>, the attribute length is checked
+	 * against the remaining bits before anything is allocated for it.
+	 * <p>
+	 * Attributes that the <tt>ParseOptions</tt> of the class skip are read as
+	 * plain <tt>AttributeInfo</tt> structures holding their raw bits.
+	 * <p>
+	 * When the class retains the buffer it was read from, every attribute
+	 * also remembers where its original bits lie in that buffer, and is
+	 * copied from there on write for as long as it is not modified.
 	 *
 	 * @param in
 	 *            the <tt>DataInput</tt> from which to read the
@@ -48,114 +62,86 @@ public class AttributeInfo extends AbstractAttributeStructure {
 	 */
 	public static AttributeInfo createOrSkip(DataInput in, ClassInfo classInfo) throws InvalidByteCodeException,
 			IOException {
-		AttributeInfo attributeInfo = null;
 		int attributeNameIndex = in.readUnsignedShort();
 		int attributeLength = in.readInt();
+		if (in instanceof ByteCursor && (attributeLength < 0 || attributeLength > ((ByteCursor) in).remaining()))
+			throw new InvalidByteCodeException("attribute length " + (attributeLength & 0xffffffffL)
+					+ " exceeds the remaining " + ((ByteCursor) in).remaining() + " bits");
 		ConstantUtf8Info cpInfoName = classInfo.constantPoolUtf8Entry(attributeNameIndex);
 		String attributeName;
 		if (cpInfoName == null)
 			return null;
 		attributeName = cpInfoName.string();
-		switch (attributeName) {
-			case ConstantValueAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new ConstantValueAttribute();
-				break;
-			}
-			case CodeAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new CodeAttribute();
-				break;
-			}
-			case ExceptionsAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new ExceptionsAttribute();
-				break;
-			}
-			case InnerClassesAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new InnerClassesAttribute();
-				break;
-			}
-			case SyntheticAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new SyntheticAttribute();
-				break;
-			}
-			case SourceFileAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new SourceFileAttribute();
-				break;
-			}
-			case LineNumberTableAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new LineNumberTableAttribute();
-				break;
-			}
-			case LocalVariableTableAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new LocalVariableTableAttribute();
-				break;
-			}
-			case DeprecatedAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new DeprecatedAttribute();
-				break;
-			}
-			case EnclosingMethodAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new EnclosingMethodAttribute();
-				break;
-			}
-			case SignatureAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new SignatureAttribute();
-				break;
-			}
-			case LocalVariableTypeTableAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new LocalVariableTypeTableAttribute();
-				break;
-			}
-			case RuntimeVisibleAnnotationsAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new RuntimeVisibleAnnotationsAttribute();
-				break;
-			}
-			case RuntimeInvisibleAnnotationsAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new RuntimeInvisibleAnnotationsAttribute();
-				break;
-			}
-			case RuntimeVisibleParameterAnnotationsAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new RuntimeVisibleParameterAnnotationsAttribute();
-				break;
-			}
-			case RuntimeInvisibleParameterAnnotationsAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new RuntimeInvisibleParameterAnnotationsAttribute();
-				break;
-			}
-			case RuntimeVisibleTypeAnnotationsAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new RuntimeVisibleTypeAnnotationsAttribute();
-				break;
-			}
-			case RuntimeInvisibleTypeAnnotationsAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new RuntimeInvisibleTypeAnnotationsAttribute();
-				break;
-			}
-			case AnnotationDefaultAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new AnnotationDefaultAttribute();
-				break;
-			}
-			case BootstrapMethodsAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new BootstrapMethodsAttribute();
-				break;
-			}
-			case StackMapTableAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new StackMapTableAttribute();
-				break;
-			}
-			case MethodParametersAttribute.ATTRIBUTE_NAME: {
-				attributeInfo = new MethodParametersAttribute();
-				break;
-			}
-			default: {
-				attributeInfo = new AttributeInfo(attributeLength);
-				break;
-			}
-		}
+		// a skipped attribute takes the default branch and keeps its raw bits
+		if (classInfo.parseOptions().skips(attributeName))
+			attributeName = "";
+		AttributeInfo attributeInfo = create(attributeName, attributeLength);
 		attributeInfo.setNameIndex(attributeNameIndex);
 		attributeInfo.setClassInfo(classInfo);
+		ByteCursor cursor = in instanceof ByteCursor && classInfo.retainsBytes()
+				&& classInfo.parseOptions().rawAttributes() ? (ByteCursor) in : null;
+		int start = cursor != null ? cursor.arrayPosition() : 0;
 		attributeInfo.read(in);
+		if (cursor != null && cursor.arrayPosition() - start == attributeLength) {
+			attributeInfo.attributeLength = attributeLength;
+			attributeInfo.source = cursor.array();
+			attributeInfo.sourceOffset = start;
+		}
+		attributeInfo.modified = false;
 		return attributeInfo;
 	}
 
+	private static AttributeInfo create(String attributeName, int attributeLength) {
+		switch (attributeName) {
+			case ConstantValueAttribute.ATTRIBUTE_NAME:
+				return new ConstantValueAttribute();
+			case CodeAttribute.ATTRIBUTE_NAME:
+				return new CodeAttribute();
+			case ExceptionsAttribute.ATTRIBUTE_NAME:
+				return new ExceptionsAttribute();
+			case InnerClassesAttribute.ATTRIBUTE_NAME:
+				return new InnerClassesAttribute();
+			case SyntheticAttribute.ATTRIBUTE_NAME:
+				return new SyntheticAttribute();
+			case SourceFileAttribute.ATTRIBUTE_NAME:
+				return new SourceFileAttribute();
+			case LineNumberTableAttribute.ATTRIBUTE_NAME:
+				return new LineNumberTableAttribute();
+			case LocalVariableTableAttribute.ATTRIBUTE_NAME:
+				return new LocalVariableTableAttribute();
+			case DeprecatedAttribute.ATTRIBUTE_NAME:
+				return new DeprecatedAttribute();
+			case EnclosingMethodAttribute.ATTRIBUTE_NAME:
+				return new EnclosingMethodAttribute();
+			case SignatureAttribute.ATTRIBUTE_NAME:
+				return new SignatureAttribute();
+			case LocalVariableTypeTableAttribute.ATTRIBUTE_NAME:
+				return new LocalVariableTypeTableAttribute();
+			case RuntimeVisibleAnnotationsAttribute.ATTRIBUTE_NAME:
+				return new RuntimeVisibleAnnotationsAttribute();
+			case RuntimeInvisibleAnnotationsAttribute.ATTRIBUTE_NAME:
+				return new RuntimeInvisibleAnnotationsAttribute();
+			case RuntimeVisibleParameterAnnotationsAttribute.ATTRIBUTE_NAME:
+				return new RuntimeVisibleParameterAnnotationsAttribute();
+			case RuntimeInvisibleParameterAnnotationsAttribute.ATTRIBUTE_NAME:
+				return new RuntimeInvisibleParameterAnnotationsAttribute();
+			case RuntimeVisibleTypeAnnotationsAttribute.ATTRIBUTE_NAME:
+				return new RuntimeVisibleTypeAnnotationsAttribute();
+			case RuntimeInvisibleTypeAnnotationsAttribute.ATTRIBUTE_NAME:
+				return new RuntimeInvisibleTypeAnnotationsAttribute();
+			case AnnotationDefaultAttribute.ATTRIBUTE_NAME:
+				return new AnnotationDefaultAttribute();
+			case BootstrapMethodsAttribute.ATTRIBUTE_NAME:
+				return new BootstrapMethodsAttribute();
+			case StackMapTableAttribute.ATTRIBUTE_NAME:
+				return new StackMapTableAttribute();
+			case MethodParametersAttribute.ATTRIBUTE_NAME:
+				return new MethodParametersAttribute();
+			default:
+				return new AttributeInfo(attributeLength);
+		}
+	}
+
 	/**
 	 * Constructor.
 	 */
@@ -166,6 +152,62 @@ public class AttributeInfo extends AbstractAttributeStructure {
 		this.attributeLength = attributeLength;
 	}
 
+	@Override
+	public void markDirty() {
+		modified = true;
+		super.markDirty();
+	}
+
+	/**
+	 * Checks whether this attribute is written by copying the bits it was
+	 * read from. That is the case while neither this attribute, nor an
+	 * attribute nested in it, nor any structure nested in an attribute of
+	 * the class was modified.
+	 *
+	 * @return <t>true</t> if this attribute is copied, otherwise
+	 *         <t>false</t>
+	 */
+	public boolean copied() {
+		if (source == null || modified || classInfo.attributesDirty())
+			return false;
+		for (int i = 0; i < length(attributes); i++) {
+			if (attributes[i] != null && !attributes[i].copied())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Write this attribute, copying the bits it was read from if it is
+	 * unmodified.
+	 *
+	 * @param out
+	 *            the <tt>DataOutput</tt> to which to write
+	 * @throws InvalidByteCodeException
+	 *             if the structure is internally inconsistent
+	 * @throws IOException
+	 *             if an exception occurs with the <tt>DataOutput</tt>
+	 */
+	void writeOrCopy(DataOutput out) throws InvalidByteCodeException, IOException {
+		if (copied()) {
+			out.writeShort(attributeNameIndex);
+			out.writeInt(attributeLength);
+			out.write(source, sourceOffset, attributeLength);
+		} else {
+			write(out);
+		}
+	}
+
+	/**
+	 * Get the length that this attribute is written with, which is the
+	 * original length while it is copied.
+	 *
+	 * @return the length
+	 */
+	int writtenLength() {
+		return copied() ? attributeLength : length();
+	}
+
 	/**
 	 * Get the constant pool index for the name of the attribute.
 	 *
@@ -182,6 +224,7 @@ public class AttributeInfo extends AbstractAttributeStructure {
 	 *            the new index
 	 */
 	public void setNameIndex(int attributeNameIndex) {
+		markDirty();
 		this.attributeNameIndex = attributeNameIndex;
 	}
 
@@ -207,9 +250,34 @@ public class AttributeInfo extends AbstractAttributeStructure {
 	 *            the new byte array
 	 */
 	public void setInfo(byte[] info) {
+		markDirty();
 		this.info = info;
 	}
 
+	/**
+	 * Decodes an attribute that was kept undecoded into the structure of its
+	 * type, regardless of the <tt>ParseOptions</tt> of the class. The
+	 * decoded attribute is not attached to the structure holding this one.
+	 *
+	 * @return the decoded attribute, or this attribute if it is decoded
+	 *         already or its type is unknown
+	 * @throws InvalidByteCodeException
+	 *             if the byte code is invalid
+	 * @throws IOException
+	 *             if the raw bits end before the attribute does
+	 */
+	public AttributeInfo decode() throws InvalidByteCodeException, IOException {
+		if (!getClass().equals(AttributeInfo.class) || info == null)
+			return this;
+		AttributeInfo decoded = create(name(), info.length);
+		if (decoded.getClass().equals(AttributeInfo.class))
+			return this;
+		decoded.setNameIndex(attributeNameIndex);
+		decoded.setClassInfo(classInfo);
+		decoded.read(new ByteCursor(info));
+		return decoded;
+	}
+
 	/**
 	 * Get the name of the attribute.
 	 *
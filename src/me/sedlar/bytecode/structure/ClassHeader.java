@@ -0,0 +1,234 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import me.sedlar.bytecode.io.ByteCursor;
+
+/**
+ * The version, access flags, name, super class and interfaces of a class
+ * file, read without parsing the rest of it.
+ * <p>
+ * The constant pool is skipped entry by entry while the offset of every entry
+ * is recorded, and only the class names that the header points at are
+ * decoded afterwards. Reading stops before the fields table, so the members,
+ * code and attributes are never touched, and a header retains nothing of the
+ * class file it was read from.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public final class ClassHeader {
+
+	private static final int MAGIC_NUMBER = 0xcafebabe;
+
+	private final int minorVersion;
+	private final int majorVersion;
+	private final int accessFlags;
+	private final String name;
+	private final String superName;
+	private final String[] interfaces;
+
+	private ClassHeader(int minorVersion, int majorVersion, int accessFlags, String name, String superName,
+			String[] interfaces) {
+		this.minorVersion = minorVersion;
+		this.majorVersion = majorVersion;
+		this.accessFlags = accessFlags;
+		this.name = name;
+		this.superName = superName;
+		this.interfaces = interfaces;
+	}
+
+	/**
+	 * Read the header of a class file.
+	 *
+	 * @param bytes
+	 *            the buffer holding the class file
+	 * @param offset
+	 *            the offset of the class file within the buffer
+	 * @param length
+	 *            the length of the class file
+	 * @return the header
+	 * @throws InvalidByteCodeException
+	 *             if the byte code is invalid
+	 * @throws IOException
+	 *             if the class file ends within its header
+	 */
+	public static ClassHeader read(byte[] bytes, int offset, int length) throws InvalidByteCodeException,
+			IOException {
+		return read(new ByteCursor(bytes, offset, length), null);
+	}
+
+	/**
+	 * Read the header of a class file, resolving the class names against the
+	 * given table.
+	 *
+	 * @param bytes
+	 *            the buffer holding the class file
+	 * @param offset
+	 *            the offset of the class file within the buffer
+	 * @param length
+	 *            the length of the class file
+	 * @param symbols
+	 *            the table to intern the class names in, or <t>null</t> to
+	 *            decode them per header
+	 * @return the header
+	 * @throws InvalidByteCodeException
+	 *             if the byte code is invalid
+	 * @throws IOException
+	 *             if the class file ends within its header
+	 */
+	public static ClassHeader read(byte[] bytes, int offset, int length, SymbolTable symbols)
+			throws InvalidByteCodeException, IOException {
+		return read(new ByteCursor(bytes, offset, length), symbols);
+	}
+
+	/**
+	 * Read the header of a class file.
+	 *
+	 * @param buffer
+	 *            the buffer holding the class file between its position and
+	 *            limit, which are left unchanged
+	 * @return the header
+	 * @throws InvalidByteCodeException
+	 *             if the byte code is invalid
+	 * @throws IOException
+	 *             if the class file ends within its header
+	 */
+	public static ClassHeader read(ByteBuffer buffer) throws InvalidByteCodeException, IOException {
+		return read(new ByteCursor(buffer), null);
+	}
+
+	/**
+	 * Get the header of a parsed class file, as it would be written.
+	 *
+	 * @param classInfo
+	 *            the class file
+	 * @return the header
+	 */
+	public static ClassHeader of(ClassInfo classInfo) {
+		List<String> interfaces = classInfo.interfaces();
+		return new ClassHeader(classInfo.minor(), classInfo.major(), classInfo.accessFlags(), classInfo.name(),
+				classInfo.superName(), interfaces.toArray(new String[interfaces.size()]));
+	}
+
+	private static ClassHeader read(ByteCursor in, SymbolTable symbols) throws InvalidByteCodeException,
+			IOException {
+		if (in.readInt() != MAGIC_NUMBER)
+			throw new InvalidByteCodeException("invalid magic number");
+		int minorVersion = in.readUnsignedShort();
+		int majorVersion = in.readUnsignedShort();
+		int count = in.readUnsignedShort();
+		int[] offsets = new int[count];
+		for (int i = 1; i < count; i++) {
+			offsets[i] = in.position();
+			i += ConstantPool.skip(in);
+		}
+		int accessFlags = in.readUnsignedShort();
+		int self = in.readUnsignedShort();
+		int superClass = in.readUnsignedShort();
+		int[] interfaceIndices = new int[in.readUnsignedShort()];
+		for (int i = 0; i < interfaceIndices.length; i++)
+			interfaceIndices[i] = in.readUnsignedShort();
+		String name = className(in, offsets, self, symbols);
+		if (name == null)
+			throw new InvalidByteCodeException("invalid this_class index " + self);
+		String superName = superClass == 0 ? null : className(in, offsets, superClass, symbols);
+		String[] interfaces = new String[interfaceIndices.length];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaces[i] = className(in, offsets, interfaceIndices[i], symbols);
+			if (interfaces[i] == null)
+				throw new InvalidByteCodeException("invalid interface index " + interfaceIndices[i]);
+		}
+		return new ClassHeader(minorVersion, majorVersion, accessFlags, name, superName, interfaces);
+	}
+
+	private static String className(ByteCursor in, int[] offsets, int index, SymbolTable symbols)
+			throws InvalidByteCodeException, IOException {
+		if (index <= 0 || index >= offsets.length || offsets[index] == 0)
+			return null;
+		in.position(offsets[index]);
+		if (in.readByte() != ConstantPool.CONSTANT_CLASS)
+			throw new InvalidByteCodeException("constant pool entry " + index + " is not a class");
+		int nameIndex = in.readUnsignedShort();
+		if (nameIndex <= 0 || nameIndex >= offsets.length || offsets[nameIndex] == 0)
+			throw new InvalidByteCodeException("invalid class name index " + nameIndex);
+		in.position(offsets[nameIndex]);
+		if (in.readByte() != ConstantPool.CONSTANT_UTF8)
+			throw new InvalidByteCodeException("constant pool entry " + nameIndex + " is not a UTF-8 string");
+		if (symbols == null || in.array() == null)
+			return in.readUTF();
+		int length = in.readUnsignedShort();
+		if (length > in.remaining())
+			throw new InvalidByteCodeException("UTF-8 string " + nameIndex + " exceeds the class file");
+		return symbols.intern(in.array(), in.arrayPosition(), length).string();
+	}
+
+	/**
+	 * Get the minor version of the class file format.
+	 *
+	 * @return the minor version
+	 */
+	public int minor() {
+		return minorVersion;
+	}
+
+	/**
+	 * Get the major version of the class file format.
+	 *
+	 * @return the major version
+	 */
+	public int major() {
+		return majorVersion;
+	}
+
+	/**
+	 * Get the access flags of the class.
+	 *
+	 * @return the access flags
+	 */
+	public int accessFlags() {
+		return accessFlags;
+	}
+
+	/**
+	 * Get the internal name of the class.
+	 *
+	 * @return the name
+	 */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Get the internal name of the super class.
+	 *
+	 * @return the name, or <t>null</t> for <tt>java/lang/Object</tt> and
+	 *         module descriptors
+	 */
+	public String superName() {
+		return superName;
+	}
+
+	/**
+	 * Get the internal names of the directly implemented interfaces.
+	 *
+	 * @return an unmodifiable list of the names
+	 */
+	public List<String> interfaces() {
+		return Collections.unmodifiableList(Arrays.asList(interfaces));
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -9,15 +9,20 @@ package me.sedlar.bytecode.structure;
 import static me.sedlar.bytecode.structure.AccessFlag.STATIC;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-
-import me.sedlar.bytecode.structure.constants.ConstantClassInfo;
-import me.sedlar.bytecode.structure.constants.ConstantLargeNumeric;
-import me.sedlar.bytecode.structure.constants.ConstantUtf8Info;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import me.sedlar.bytecode.Opcode;
+import me.sedlar.bytecode.io.ByteCursor;
+import me.sedlar.bytecode.structure.constants.*;
+import me.sedlar.bytecode.structure.flow.ClassHierarchy;
+import me.sedlar.bytecode.structure.flow.FrameCalculator;
 import me.sedlar.util.Filter;
+import me.sedlar.util.collection.QueryableList;
 
 /**
  * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
@@ -35,21 +40,296 @@ public class ClassInfo extends AbstractAttributeStructure {
 	private int self;
 	private int superClass;
 	private String name, superName;
-	private List<Integer> interfaces = new LinkedList<>();
-	private List<FieldInfo> fields = new LinkedList<>();
-	private List<MethodInfo> methods = new LinkedList<>();
+	private QueryableList<Integer> interfaces = new QueryableList<>();
+	private QueryableList<FieldInfo> fields = new QueryableList<>();
+	private QueryableList<MethodInfo> methods = new QueryableList<>();
+	private volatile boolean dirty;
+	private volatile boolean attributesDirty;
+	private boolean retainsBytes;
+	private int interfacesModifications, fieldsModifications, methodsModifications;
+	private final boolean lazy;
+	private final ParseOptions parseOptions;
+	private final SymbolTable symbols;
+	private ConstantPoolBuilder constantPoolBuilder;
+	private volatile Object[] references;
+	private volatile MemberIndex<FieldInfo> fieldIndex;
+	private volatile MemberIndex<MethodInfo> methodIndex;
+	private boolean compactConstantPool;
+	private byte[] bytes;
+	private int fieldsOffset, methodsOffset, methodsEnd;
+	private volatile boolean fieldsPending, methodsPending;
 
 	/**
 	 * Constructor.
 	 */
 	public ClassInfo(byte[] bytes) throws IOException, InvalidByteCodeException {
+		this(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param bytes
+	 *            the class file.
+	 * @param lazy
+	 *            <t>true</t> to defer reading the fields, methods and code
+	 *            until they are first requested, otherwise <t>false</t>.
+	 */
+	public ClassInfo(byte[] bytes, boolean lazy) throws IOException, InvalidByteCodeException {
+		this(bytes, 0, bytes.length, lazy);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param bytes
+	 *            the buffer holding the class file.
+	 * @param offset
+	 *            the offset of the class file within the buffer.
+	 * @param length
+	 *            the length of the class file.
+	 */
+	public ClassInfo(byte[] bytes, int offset, int length) throws IOException, InvalidByteCodeException {
+		this(bytes, offset, length, false);
+	}
+
+	/**
+	 * Constructor.
+	 * <p>
+	 * In lazy mode only the header, constant pool, interfaces and class
+	 * attributes are read up front. The byte ranges of the fields and methods
+	 * tables are recorded and decoded on the first call to <tt>fields</tt> or
+	 * <tt>methods</tt>, and the code of a method is decoded on the first call
+	 * to <tt>MethodInfo.instructions</tt>. The given buffer is retained until
+	 * then, so it must not be modified or reused by the caller.
+	 *
+	 * @param bytes
+	 *            the buffer holding the class file.
+	 * @param offset
+	 *            the offset of the class file within the buffer.
+	 * @param length
+	 *            the length of the class file.
+	 * @param lazy
+	 *            <t>true</t> to defer reading the fields, methods and code
+	 *            until they are first requested, otherwise <t>false</t>.
+	 */
+	public ClassInfo(byte[] bytes, int offset, int length, boolean lazy) throws IOException,
+			InvalidByteCodeException {
+		this(bytes, offset, length, lazy, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param bytes
+	 *            the buffer holding the class file.
+	 * @param offset
+	 *            the offset of the class file within the buffer.
+	 * @param length
+	 *            the length of the class file.
+	 * @param lazy
+	 *            <t>true</t> to defer reading the fields, methods and code
+	 *            until they are first requested, otherwise <t>false</t>.
+	 * @param symbols
+	 *            the table to resolve the UTF-8 constants against, or
+	 *            <t>null</t> to keep them per class.
+	 */
+	public ClassInfo(byte[] bytes, int offset, int length, boolean lazy, SymbolTable symbols)
+			throws IOException, InvalidByteCodeException {
+		this(bytes, offset, length, new ParseOptions().setLazy(lazy), symbols);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param bytes
+	 *            the buffer holding the class file.
+	 * @param offset
+	 *            the offset of the class file within the buffer.
+	 * @param length
+	 *            the length of the class file.
+	 * @param parseOptions
+	 *            the options deciding what is read up front and which
+	 *            attributes are kept undecoded. In lazy mode or with raw
+	 *            attributes the given buffer is retained, so it must not be
+	 *            modified or reused by the caller.
+	 * @param symbols
+	 *            the table to resolve the UTF-8 constants against, or
+	 *            <t>null</t> to keep them per class.
+	 */
+	public ClassInfo(byte[] bytes, int offset, int length, ParseOptions parseOptions, SymbolTable symbols)
+			throws IOException, InvalidByteCodeException {
 		setClassInfo(this);
-		read(new DataInputStream(new ByteArrayInputStream(bytes)));
+		this.lazy = parseOptions.lazy();
+		this.parseOptions = parseOptions;
+		this.symbols = symbols;
+		if (lazy) {
+			retainsBytes = true;
+			readLazy(bytes, offset, length);
+		} else if (parseOptions.rawAttributes()) {
+			// the attributes point into the buffer, which the caller hands over like in lazy mode
+			retainsBytes = true;
+			read(new ByteCursor(bytes, offset, length));
+		} else {
+			read(new ByteCursor(bytes, offset, length));
+		}
+		markClean();
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param buffer
+	 *            the buffer holding the class file between its position and
+	 *            limit, which are left unchanged.
+	 */
+	public ClassInfo(ByteBuffer buffer) throws IOException, InvalidByteCodeException {
+		setClassInfo(this);
+		this.lazy = false;
+		this.parseOptions = new ParseOptions();
+		this.symbols = null;
+		read(new ByteCursor(buffer));
+		markClean();
 	}
 
 	public ClassInfo(InputStream input) throws IOException, InvalidByteCodeException {
 		setClassInfo(this);
+		this.lazy = false;
+		this.parseOptions = new ParseOptions();
+		this.symbols = null;
 		read(new DataInputStream(input));
+		markClean();
+	}
+
+	/**
+	 * Checks whether this class was read in lazy mode.
+	 *
+	 * @return <t>true</t> if this class was read in lazy mode, otherwise
+	 *         <t>false</t>.
+	 */
+	public boolean lazy() {
+		return lazy;
+	}
+
+	/**
+	 * Gets the options that this class was read with.
+	 *
+	 * @return the options.
+	 */
+	public ParseOptions parseOptions() {
+		return parseOptions;
+	}
+
+	/**
+	 * Gets the table that the UTF-8 constants of this class resolve against.
+	 *
+	 * @return the table, or <t>null</t> if this class keeps its own strings.
+	 */
+	public SymbolTable symbols() {
+		return symbols;
+	}
+
+	/**
+	 * Checks whether the constant pool is compacted when this class is
+	 * written.
+	 *
+	 * @return <t>true</t> if the constant pool is compacted, otherwise
+	 *         <t>false</t>.
+	 */
+	public boolean compactConstantPool() {
+		return compactConstantPool;
+	}
+
+	/**
+	 * Sets whether the constant pool is compacted when this class is
+	 * written. The written class then drops the entries that nothing
+	 * references anymore and renumbers the rest densely; the constant pool
+	 * of this class is left as it is.
+	 *
+	 * @param compactConstantPool
+	 *            <t>true</t> to compact the constant pool, otherwise
+	 *            <t>false</t>.
+	 * @see ConstantPoolCompactor
+	 */
+	public void setCompactConstantPool(boolean compactConstantPool) {
+		this.compactConstantPool = compactConstantPool;
+	}
+
+	/**
+	 * Checks whether the constant pool entries and attributes of this class
+	 * may point into the buffer that it was read from, which is the case
+	 * when it was read in lazy mode or with raw attributes.
+	 *
+	 * @return <t>true</t> if the buffer is retained, otherwise <t>false</t>.
+	 */
+	public boolean retainsBytes() {
+		return retainsBytes;
+	}
+
+	@Override
+	public void markDirty() {
+		dirty = true;
+	}
+
+	/**
+	 * Marks this class as modified within a structure nested in one of its
+	 * attributes, so that no attribute is copied from its original bits
+	 * anymore. Unlike <tt>markDirty</tt>, this is never undone.
+	 */
+	void markAttributesDirty() {
+		attributesDirty = true;
+		dirty = true;
+	}
+
+	/**
+	 * Checks whether a structure nested in one of the attributes of this
+	 * class was modified.
+	 *
+	 * @return <t>true</t> if a nested structure was modified, otherwise
+	 *         <t>false</t>.
+	 */
+	boolean attributesDirty() {
+		return attributesDirty;
+	}
+
+	/**
+	 * Checks whether this class was modified since it was read. This covers
+	 * the setters of the class, its constant pool, members, attributes and
+	 * instructions, as well as changes to the interface, field, method and
+	 * instruction lists.
+	 *
+	 * @return <t>true</t> if this class was modified, otherwise <t>false</t>.
+	 */
+	public boolean dirty() {
+		if (dirty)
+			return true;
+		if (interfaces.modifications() != interfacesModifications)
+			return true;
+		if (!fieldsPending && fields.modifications() != fieldsModifications)
+			return true;
+		if (!methodsPending) {
+			if (methods.modifications() != methodsModifications)
+				return true;
+			for (MethodInfo method : methods) {
+				if (method.codeModified())
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Marks this class, its members and its instructions as unmodified.
+	 */
+	public void markClean() {
+		dirty = false;
+		interfacesModifications = interfaces.modifications();
+		fieldsModifications = fields.modifications();
+		methodsModifications = methods.modifications();
+		if (!methodsPending) {
+			for (MethodInfo method : methods)
+				method.markCodeClean();
+		}
 	}
 
 	/**
@@ -68,6 +348,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 *            the minor version
 	 */
 	public void setMinor(int minorVersion) {
+		markDirty();
 		this.minorVersion = minorVersion;
 	}
 
@@ -117,6 +398,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 *            the major version
 	 */
 	public void setMajor(int majorVersion) {
+		markDirty();
 		this.majorVersion = majorVersion;
 	}
 
@@ -129,6 +411,18 @@ public class ClassInfo extends AbstractAttributeStructure {
 		return constantPool;
 	}
 
+	/**
+	 * Get the builder that appends entries to the constant pool of this
+	 * class.
+	 *
+	 * @return the builder
+	 */
+	public synchronized ConstantPoolBuilder constantPoolBuilder() {
+		if (constantPoolBuilder == null)
+			constantPoolBuilder = new ConstantPoolBuilder(this);
+		return constantPoolBuilder;
+	}
+
 	/**
 	 * Get the index of an equivalent constant pool entry.
 	 *
@@ -150,9 +444,11 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 *            the array
 	 */
 	public void setConstantPool(ConstantPool[] constantPool) {
+		markDirty();
 		this.constantPool = constantPool;
 		for (int i = 0; i < constantPool.length; i++)
 			constantPoolEntryToIndex.put(constantPool[i], i);
+		invalidateReferences();
 	}
 
 	/**
@@ -164,6 +460,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 *            the array
 	 */
 	public void enlargeConstantPool(ConstantPool[] enlargedConstantPool) {
+		markDirty();
 		int startIndex = constantPool == null ? 0 : constantPool.length;
 		this.constantPool = enlargedConstantPool;
 		for (int i = startIndex; i < constantPool.length; i++) {
@@ -181,6 +478,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 */
 	public void registerConstantPoolEntry(int index) {
 		constantPoolEntryToIndex.put(constantPool[index], index);
+		invalidateReferences();
 	}
 
 	/**
@@ -192,6 +490,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 */
 	public void unregisterConstantPoolEntry(int index) {
 		constantPoolEntryToIndex.remove(constantPool[index]);
+		invalidateReferences();
 	}
 
 	/**
@@ -210,6 +509,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 *            the accessFlags flags
 	 */
 	public void setAccessFlags(int accessFlags) {
+		markDirty();
 		this.accessFlags = accessFlags;
 	}
 
@@ -229,6 +529,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 *            the index
 	 */
 	public void setIndex(int self) {
+		markDirty();
 		this.self = self;
 	}
 
@@ -254,9 +555,11 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 *            The data to set the constant pool entry to.
 	 */
 	public void setName(String name) {
+		markDirty();
 		try {
 			ConstantClassInfo pool = (ConstantClassInfo) constantPoolAt(index());
-			pool.setName((this.name = name));
+			pool.setName(name);
+			this.name = pool.name();
 		} catch (Exception e) {
 			throw new RuntimeException("invalid constant pool index");
 		}
@@ -278,6 +581,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 *            the index
 	 */
 	public void setSuperIndex(int superClass) {
+		markDirty();
 		this.superClass = superClass;
 	}
 
@@ -303,9 +607,11 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 *            The data to set the constant pool entry to.
 	 */
 	public void setSuperName(String name) {
+		markDirty();
 		try {
 			ConstantClassInfo pool = (ConstantClassInfo) constantPoolAt(superIndex());
-			pool.setName((this.superName = name));
+			pool.setName(name);
+			this.superName = pool.name();
 		} catch (Exception e) {
 			throw new RuntimeException("invalid constant pool index");
 		}
@@ -317,7 +623,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 * @return the array
 	 */
 	public List<String> interfaces() {
-		List<String> list = new LinkedList<>();
+		List<String> list = new ArrayList<>(interfaces.size());
 		for (int iface : interfaces) {
 			try {
 				list.add(((ConstantClassInfo) constantPoolAt(iface)).name());
@@ -344,6 +650,8 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 * @return the list
 	 */
 	public List<FieldInfo> fields() {
+		if (fieldsPending)
+			loadFields();
 		return fields;
 	}
 
@@ -354,6 +662,8 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 * @return the list
 	 */
 	public List<MethodInfo> methods() {
+		if (methodsPending)
+			loadMethods();
 		return methods;
 	}
 
@@ -451,6 +761,118 @@ public class ClassInfo extends AbstractAttributeStructure {
 		return pool != null ? pool.verbose() : "invalid constant pool index";
 	}
 
+	/**
+	 * Get the field or method referenced by the constant pool entry at the
+	 * specified index. The reference is resolved on the first call and cached
+	 * until an entry of the constant pool changes.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the reference, or <tt>null</tt> if the entry is not a field,
+	 *         method or interface method reference.
+	 */
+	public MemberReference memberReference(int index) {
+		Object[] references = references();
+		if (references == null)
+			return null;
+		Object cached = index > 0 && index < references.length ? references[index] : null;
+		if (cached instanceof MemberReference)
+			return (MemberReference) cached;
+		ConstantPool pool = constantPoolAt(index);
+		if (!(pool instanceof ConstantReference))
+			return null;
+		ConstantReference entry = (ConstantReference) pool;
+		MemberReference reference;
+		try {
+			ConstantNameAndTypeInfo nameAndType = entry.nameAndTypeInfo();
+			reference = new MemberReference(entry.constantClassInfo().name(), nameAndType.name(),
+					nameAndType.descriptor());
+		} catch (InvalidByteCodeException | RuntimeException e) {
+			return null;
+		}
+		references[index] = reference;
+		return reference;
+	}
+
+	/**
+	 * Get the field or method that an instruction with the given opcode
+	 * references through the constant pool entry at the specified index.
+	 *
+	 * @param opcode
+	 *            the opcode of the instruction
+	 * @param index
+	 *            the index
+	 * @return the reference, or <tt>null</tt> if the opcode does not refer
+	 *         to a member or the entry is not a reference that it accepts.
+	 * @see ConstantPool#accepts(Opcode, int, int)
+	 */
+	public MemberReference memberReference(Opcode opcode, int index) {
+		ConstantPool pool = constantPoolAt(index);
+		return pool != null && ConstantPool.accepts(opcode, pool.tag(), majorVersion) ? memberReference(index) : null;
+	}
+
+	/**
+	 * Get the value of the <tt>CONSTANT_Integer_info</tt>,
+	 * <tt>CONSTANT_Float_info</tt>, <tt>CONSTANT_Long_info</tt>,
+	 * <tt>CONSTANT_Double_info</tt> or <tt>CONSTANT_String_info</tt> entry at
+	 * the specified index. The value is boxed on the first call and cached
+	 * until an entry of the constant pool changes.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the value, or <tt>null</tt> if the entry holds no such value.
+	 */
+	public Object constantValue(int index) {
+		Object[] references = references();
+		if (references == null)
+			return null;
+		Object cached = index > 0 && index < references.length ? references[index] : null;
+		if (cached != null && !(cached instanceof MemberReference))
+			return cached;
+		ConstantPool pool = constantPoolAt(index);
+		Object value;
+		try {
+			if (pool instanceof ConstantStringInfo)
+				value = pool.verbose();
+			else if (pool instanceof ConstantIntegerInfo)
+				value = ((ConstantIntegerInfo) pool).value();
+			else if (pool instanceof ConstantFloatInfo)
+				value = ((ConstantFloatInfo) pool).value();
+			else if (pool instanceof ConstantLongInfo)
+				value = ((ConstantLongInfo) pool).value();
+			else if (pool instanceof ConstantDoubleInfo)
+				value = ((ConstantDoubleInfo) pool).value();
+			else
+				return null;
+		} catch (InvalidByteCodeException | RuntimeException e) {
+			return null;
+		}
+		if (value != null)
+			references[index] = value;
+		return value;
+	}
+
+	private Object[] references() {
+		ConstantPool[] constantPool = this.constantPool;
+		if (constantPool == null)
+			return null;
+		Object[] references = this.references;
+		if (references == null || references.length != constantPool.length) {
+			references = new Object[constantPool.length];
+			this.references = references;
+		}
+		return references;
+	}
+
+	/**
+	 * Drops the resolved references and constant values, so that they are
+	 * resolved again from the constant pool. This is called whenever an entry
+	 * of the constant pool is changed through its setters.
+	 */
+	public void invalidateReferences() {
+		references = null;
+	}
+
 	/**
 	 * Get the <tt>FieldInfo</tt> for given field name and signature.
 	 *
@@ -461,13 +883,18 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 * @return the <tt>FieldInfo</tt> or <tt>null</tt> if not found.
 	 */
 	public FieldInfo field(String name, String descriptor) {
-		for (FieldInfo field : fields) {
-			if (name == null || field.name().equals(name)) {
-				if (descriptor == null || field.descriptor().equals(descriptor))
-					return field;
-			}
+		if (symbols != null) {
+			// names and descriptors are canonical, so a string unknown to the table matches nothing
+			if (name != null && (name = symbols.canonical(name)) == null)
+				return null;
+			if (descriptor != null && (descriptor = symbols.canonical(descriptor)) == null)
+				return null;
 		}
-		return null;
+		List<FieldInfo> fields = fields();
+		MemberIndex<FieldInfo> index = fieldIndex;
+		if (index == null || index.modifications != this.fields.modifications())
+			fieldIndex = index = new MemberIndex<>(fields, this.fields.modifications());
+		return index.find(fields, name, descriptor);
 	}
 
 	/**
@@ -502,13 +929,18 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 * @return the <tt>MethodInfo</tt> or <tt>null</tt> if not found.
 	 */
 	public MethodInfo method(String name, String descriptor) {
-		for (MethodInfo method : methods) {
-			if (name == null || method.name().equals(name)) {
-				if (descriptor == null || method.descriptor().equals(descriptor))
-					return method;
-			}
+		if (symbols != null) {
+			// names and descriptors are canonical, so a string unknown to the table matches nothing
+			if (name != null && (name = symbols.canonical(name)) == null)
+				return null;
+			if (descriptor != null && (descriptor = symbols.canonical(descriptor)) == null)
+				return null;
 		}
-		return null;
+		List<MethodInfo> methods = methods();
+		MemberIndex<MethodInfo> index = methodIndex;
+		if (index == null || index.modifications != this.methods.modifications())
+			methodIndex = index = new MemberIndex<>(methods, this.methods.modifications());
+		return index.find(methods, name, descriptor);
 	}
 
 	/**
@@ -530,11 +962,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 	 * @return the <tt>MethodInfo</tt> or <tt>null</tt> if not found.
 	 */
 	public MethodInfo methodByDesc(String descriptor) {
-		for (MethodInfo method : methods) {
-			if (method.descriptor().equals(descriptor))
-				return method;
-		}
-		return null;
+		return method(null, descriptor);
 	}
 
 	/**
@@ -552,6 +980,60 @@ public class ClassInfo extends AbstractAttributeStructure {
 		return null;
 	}
 
+	/**
+	 * Drops the name and descriptor indices of the fields and methods, so
+	 * that they are built again on the next lookup. This is called whenever
+	 * a member is renamed; adding, removing and replacing members is noticed
+	 * through the modifications of the member lists.
+	 */
+	void invalidateMemberIndex() {
+		fieldIndex = null;
+		methodIndex = null;
+	}
+
+	/**
+	 * The first member for every name and descriptor pair, name and
+	 * descriptor of a member list, as of a number of modifications of that
+	 * list. Pairs are looked up by name and then by descriptor, so that a
+	 * lookup neither allocates a key nor confuses pairs whose concatenations
+	 * are equal.
+	 */
+	private static final class MemberIndex<T extends ClassMember> {
+
+		private final int modifications;
+		private final Map<String, Map<String, T>> byNameAndDescriptor;
+		private final Map<String, T> byName;
+		private final Map<String, T> byDescriptor;
+
+		private MemberIndex(List<T> members, int modifications) {
+			this.modifications = modifications;
+			int capacity = members.size() * 4 / 3 + 1;
+			byNameAndDescriptor = new HashMap<>(capacity);
+			byName = new HashMap<>(capacity);
+			byDescriptor = new HashMap<>(capacity);
+			for (T member : members) {
+				if (member == null)
+					continue;
+				String name = member.name();
+				String descriptor = member.descriptor();
+				byNameAndDescriptor.computeIfAbsent(name, key -> new HashMap<>(2)).putIfAbsent(descriptor, member);
+				byName.putIfAbsent(name, member);
+				byDescriptor.putIfAbsent(descriptor, member);
+			}
+		}
+
+		private T find(List<T> members, String name, String descriptor) {
+			if (name == null && descriptor == null)
+				return members.isEmpty() ? null : members.get(0);
+			if (name == null)
+				return byDescriptor.get(descriptor);
+			if (descriptor == null)
+				return byName.get(name);
+			Map<String, T> descriptors = byNameAndDescriptor.get(name);
+			return descriptors != null ? descriptors.get(descriptor) : null;
+		}
+	}
+
 	@Override
 	public void read(DataInput in) throws InvalidByteCodeException, IOException {
 		readMagicNumber(in);
@@ -566,8 +1048,91 @@ public class ClassInfo extends AbstractAttributeStructure {
 		readAttributes(in);
 	}
 
+	private void readLazy(byte[] bytes, int offset, int length) throws InvalidByteCodeException, IOException {
+		ByteCursor in = new ByteCursor(bytes, offset, length);
+		readMagicNumber(in);
+		readVersion(in);
+		readConstantPool(in);
+		readAccessFlags(in);
+		readSelf(in);
+		readSuper(in);
+		readInterfaces(in);
+		fieldsOffset = offset + in.position();
+		skipMembers(in);
+		methodsOffset = offset + in.position();
+		skipMembers(in);
+		methodsEnd = offset + in.position();
+		this.bytes = bytes;
+		fieldsPending = true;
+		methodsPending = true;
+		readAttributes(in);
+	}
+
+	private static void skipMembers(ByteCursor in) throws IOException {
+		int count = in.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			// access_flags, name_index and descriptor_index
+			in.skip(6);
+			int attributesCount = in.readUnsignedShort();
+			for (int j = 0; j < attributesCount; j++) {
+				in.skip(2);
+				in.skip(in.readInt());
+			}
+		}
+	}
+
+	private synchronized void loadFields() {
+		if (!fieldsPending)
+			return;
+		boolean wasDirty = dirty;
+		try {
+			readFields(new ByteCursor(bytes, fieldsOffset, methodsOffset - fieldsOffset));
+		} catch (InvalidByteCodeException | IOException e) {
+			throw new RuntimeException("failed to read fields of " + name(), e);
+		}
+		dirty = wasDirty;
+		fieldsModifications = fields.modifications();
+		fieldsPending = false;
+		releaseBytes();
+	}
+
+	private synchronized void loadMethods() {
+		if (!methodsPending)
+			return;
+		boolean wasDirty = dirty;
+		try {
+			readMethods(new ByteCursor(bytes, methodsOffset, methodsEnd - methodsOffset));
+		} catch (InvalidByteCodeException | IOException e) {
+			throw new RuntimeException("failed to read methods of " + name(), e);
+		}
+		dirty = wasDirty;
+		methodsModifications = methods.modifications();
+		methodsPending = false;
+		releaseBytes();
+	}
+
+	private void releaseBytes() {
+		if (!fieldsPending && !methodsPending)
+			bytes = null;
+	}
+
 	@Override
 	public void write(DataOutput out) throws InvalidByteCodeException, IOException {
+		if (compactConstantPool) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			writeClassFile(new DataOutputStream(buffer));
+			byte[] bytes = buffer.toByteArray();
+			byte[] compacted = ConstantPoolCompactor.compact(bytes, bytes.length);
+			out.write(compacted != null ? compacted : bytes);
+		} else {
+			writeClassFile(out);
+		}
+	}
+
+	private void writeClassFile(DataOutput out) throws InvalidByteCodeException, IOException {
+		// frames name classes, which have to be in the constant pool before it is written
+		if (parseOptions.computeFrames())
+			computeFrames();
 		writeMagicNumber(out);
 		writeVersion(out);
 		writeConstantPool(out);
@@ -580,6 +1145,35 @@ public class ClassInfo extends AbstractAttributeStructure {
 		writeAttributes(out);
 	}
 
+	/**
+	 * Works out the frames of every method whose code was changed, in
+	 * parallel, and then stores them one method at a time.
+	 */
+	private void computeFrames() {
+		synchronized (this) {
+			// the methods table was never decoded, so no code was changed
+			if (methodsPending)
+				return;
+		}
+		List<MethodInfo> changed = new ArrayList<>();
+		for (MethodInfo method : methods) {
+			if (method.codeEncoding())
+				changed.add(method);
+		}
+		if (changed.isEmpty())
+			return;
+		ClassHierarchy hierarchy = parseOptions.classHierarchy();
+		hierarchy.add(ClassHeader.of(this));
+		FrameCalculator[] calculators = new FrameCalculator[changed.size()];
+		IntStream range = IntStream.range(0, calculators.length);
+		(calculators.length > 1 ? range.parallel() : range).forEach(i -> calculators[i] = changed.get(i)
+				.computeFrames(hierarchy));
+		for (FrameCalculator calculator : calculators) {
+			if (calculator != null)
+				calculator.apply();
+		}
+	}
+
 	private boolean checkValidConstantPoolIndex(int index) {
 		return !(index < 1 || index >= constantPool.length);
 	}
@@ -648,6 +1242,9 @@ public class ClassInfo extends AbstractAttributeStructure {
 		lastFreeIndex = length(constantPool) - 1;
 		while (lastFreeIndex >= 0 && constantPool[lastFreeIndex] == null)
 			lastFreeIndex--;
+		// a trailing CONSTANT_Long_info or CONSTANT_Double_info also owns the slot after it
+		if (lastFreeIndex > 0 && constantPool[lastFreeIndex] instanceof ConstantLargeNumeric)
+			lastFreeIndex++;
 		out.writeShort(lastFreeIndex + 1);
 		if (debug)
 			debug("wrote constant pool count " + (lastFreeIndex + 1));
@@ -707,6 +1304,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 		int interfacesCount = in.readUnsignedShort();
 		if (debug)
 			debug("read interfaces count " + interfacesCount);
+		interfaces.ensureCapacity(interfacesCount);
 		for (int i = 0; i < interfacesCount; i++) {
 			interfaces.add(in.readUnsignedShort());
 			if (debug)
@@ -731,11 +1329,21 @@ public class ClassInfo extends AbstractAttributeStructure {
 		int fieldsCount = in.readUnsignedShort();
 		if (debug)
 			debug("read fields count " + fieldsCount);
+		fields.ensureCapacity(fieldsCount);
 		for (int i = 0; i < fieldsCount; i++)
 			fields.add(FieldInfo.create(in, this));
 	}
 
 	private void writeFields(DataOutput out) throws InvalidByteCodeException, IOException {
+		synchronized (this) {
+			if (fieldsPending) {
+				// the fields table was never decoded, so it is still identical to the original
+				out.write(bytes, fieldsOffset, methodsOffset - fieldsOffset);
+				if (debug)
+					debug("wrote undecoded fields table");
+				return;
+			}
+		}
 		int fieldsCount = length(fields);
 		out.writeShort(fieldsCount);
 		if (debug)
@@ -751,11 +1359,21 @@ public class ClassInfo extends AbstractAttributeStructure {
 		int methodsCount = in.readUnsignedShort();
 		if (debug)
 			debug("read methods count " + methodsCount);
+		methods.ensureCapacity(methodsCount);
 		for (int i = 0; i < methodsCount; i++)
 			methods.add(MethodInfo.create(in, this));
 	}
 
 	private void writeMethods(DataOutput out) throws InvalidByteCodeException, IOException {
+		synchronized (this) {
+			if (methodsPending) {
+				// the methods table was never decoded, so it is still identical to the original
+				out.write(bytes, methodsOffset, methodsEnd - methodsOffset);
+				if (debug)
+					debug("wrote undecoded methods table");
+				return;
+			}
+		}
 		int methodsCount = length(methods);
 		out.writeShort(methodsCount);
 		if (debug)
@@ -797,7 +1415,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 
 	public int methodCount(String desc, boolean ignoreStatic) {
 		int count = 0;
-		for (MethodInfo method : methods) {
+		for (MethodInfo method : methods()) {
 			if (ignoreStatic && STATIC.is(method.accessFlags()))
 				continue;
 			if (method.descriptor().equals(desc))
@@ -812,7 +1430,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 
 	public int fieldCount(String desc, boolean ignoreStatic) {
 		int count = 0;
-		for (FieldInfo field : fields) {
+		for (FieldInfo field : fields()) {
 			if (ignoreStatic && STATIC.is(field.accessFlags()))
 				continue;
 			if (field.descriptor().equals(desc))
@@ -827,7 +1445,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 
 	public int abnormalFieldCount(boolean ignoreStatic) {
 		int count = 0;
-		for (FieldInfo field : fields) {
+		for (FieldInfo field : fields()) {
 			if (ignoreStatic && STATIC.is(field.accessFlags()))
 				continue;
 			String desc = field.descriptor();
@@ -843,7 +1461,7 @@ public class ClassInfo extends AbstractAttributeStructure {
 
 	public int fieldTypeCount(boolean ignoreStatic) {
 		List<String> types = new ArrayList<>();
-		for (FieldInfo field : fields) {
+		for (FieldInfo field : fields()) {
 			if (ignoreStatic && STATIC.is(field.accessFlags()))
 				continue;
 			String desc = field.descriptor();
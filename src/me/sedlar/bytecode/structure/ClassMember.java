@@ -49,6 +49,7 @@ public abstract class ClassMember extends AbstractAttributeStructure {
 	 *            the accessFlags flags
 	 */
 	public void setAccessFlags(int accessFlags) {
+		markDirty();
 		this.accessFlags = accessFlags;
 	}
 
@@ -68,7 +69,10 @@ public abstract class ClassMember extends AbstractAttributeStructure {
 	 *            the index
 	 */
 	public void setNameIndex(int nameIndex) {
+		markDirty();
 		this.nameIndex = nameIndex;
+		this.name = null;
+		classInfo.invalidateMemberIndex();
 	}
 
 	/**
@@ -78,10 +82,13 @@ public abstract class ClassMember extends AbstractAttributeStructure {
 	 *            The data to set the constant pool entry to.
 	 */
 	public void setName(String name) {
+		markDirty();
 		ConstantUtf8Info cpinfo;
 		try {
 			cpinfo = classInfo.constantPoolUtf8Entry(nameIndex);
-			cpinfo.setString((this.name = name));
+			cpinfo.setString(name);
+			this.name = cpinfo.string();
+			classInfo.invalidateMemberIndex();
 		} catch (InvalidByteCodeException e) {
 			throw new RuntimeException("invalid constant pool index");
 		}
@@ -103,7 +110,10 @@ public abstract class ClassMember extends AbstractAttributeStructure {
 	 *            the index
 	 */
 	public void setDescriptorIndex(int descriptorIndex) {
+		markDirty();
 		this.descriptorIndex = descriptorIndex;
+		this.descriptor = null;
+		classInfo.invalidateMemberIndex();
 	}
 
 	/**
@@ -113,10 +123,13 @@ public abstract class ClassMember extends AbstractAttributeStructure {
 	 *            The data to set the constant pool entry to.
 	 */
 	public void setDescriptor(String descriptor) {
+		markDirty();
 		ConstantUtf8Info cpinfo;
 		try {
 			cpinfo = classInfo.constantPoolUtf8Entry(descriptorIndex);
-			cpinfo.setString((this.descriptor = descriptor));
+			cpinfo.setString(descriptor);
+			this.descriptor = cpinfo.string();
+			classInfo.invalidateMemberIndex();
 		} catch (InvalidByteCodeException e) {
 			throw new RuntimeException("invalid constant pool index");
 		}
@@ -9,6 +9,8 @@ package me.sedlar.bytecode.structure;
 import java.io.DataInput;
 import java.io.IOException;
 
+import me.sedlar.bytecode.Opcode;
+import me.sedlar.bytecode.io.ByteCursor;
 import me.sedlar.bytecode.structure.constants.*;
 
 /**
@@ -53,6 +55,9 @@ public abstract class ConstantPool extends AbstractStructure {
 	 * A <tt>ConstantPool</tt> of the appropriate subtype from the
 	 * <tt>constants</tt> package is created.
 	 * <p>
+	 * Class files read from memory pass a <tt>ByteCursor</tt>, which decodes
+	 * each entry, including the modified UTF-8 of <tt>CONSTANT_Utf8_info</tt>,
+	 * in place.
 	 *
 	 * @param in
 	 *            the <tt>DataInput</tt> from which to read the
@@ -162,14 +167,31 @@ public abstract class ConstantPool extends AbstractStructure {
 		return "";
 	}
 
+	@Override
+	public void markDirty() {
+		if (classInfo != null) {
+			classInfo.markDirty();
+			classInfo.invalidateReferences();
+		}
+	}
+
+	/**
+	 * Entries are equal when they have the same tag and the same content, so
+	 * that, for example, a <tt>CONSTANT_Fieldref_info</tt> never matches a
+	 * <tt>CONSTANT_Methodref_info</tt> with the same indices. Subclasses add
+	 * their content to this check.
+	 */
 	@Override
 	public boolean equals(Object object) {
-		return object instanceof ConstantPool;
+		return object instanceof ConstantPool && ((ConstantPool) object).tag() == tag();
 	}
 
+	/**
+	 * Entries hash their tag, which subclasses combine with their content.
+	 */
 	@Override
 	public int hashCode() {
-		return 0;
+		return tag();
 	}
 
 	@Override
@@ -241,7 +263,11 @@ public abstract class ConstantPool extends AbstractStructure {
 				// Length of the constant is determined by the length of the
 				// byte
 				// array
-				in.skipBytes(in.readUnsignedShort());
+				int length = in.readUnsignedShort();
+				if (in instanceof ByteCursor)
+					((ByteCursor) in).skip(length);
+				else
+					in.skipBytes(length);
 				break;
 			}
 			default: {
@@ -264,20 +290,15 @@ public abstract class ConstantPool extends AbstractStructure {
 	 * @param methodSignature
 	 *            the signature of the referenced method
 	 * @param sizeDelta
-	 *            the minimum increment by which the array holding the constant
-	 *            pool is to be enlarged. Set to 0 if unsure.
+	 *            the minimum amount of free slots to reserve in the array
+	 *            holding the constant pool if an entry is added. Set to 0 if
+	 *            unsure.
 	 * @return the constant pool index of the added <tt>ConstantMethodRef</tt>
 	 */
 	public static int addConstantMethodrefInfo(ClassInfo classInfo, String className, String methodName,
 			String methodSignature, int sizeDelta) {
-		sizeDelta = Math.max(sizeDelta, 6);
-		int classIndex = addConstantClassInfo(classInfo, className, sizeDelta);
-		int nameAndTypeIndex = addConstantNameAndTypeInfo(classInfo, methodName, methodSignature, sizeDelta);
-		ConstantMethodrefInfo methodrefInfo = new ConstantMethodrefInfo();
-		methodrefInfo.setClassInfo(classInfo);
-		methodrefInfo.setClassIndex(classIndex);
-		methodrefInfo.setNameAndTypeIndex(nameAndTypeIndex);
-		return addConstantPoolEntry(classInfo, methodrefInfo, sizeDelta);
+		return classInfo.constantPoolBuilder().reserving(Math.max(sizeDelta, 6),
+				builder -> builder.methodref(className, methodName, methodSignature));
 	}
 
 	/**
@@ -293,20 +314,15 @@ public abstract class ConstantPool extends AbstractStructure {
 	 * @param fieldType
 	 *            the type of the referenced field
 	 * @param sizeDelta
-	 *            the minimum increment by which the array holding the constant
-	 *            pool is to be enlarged. Set to 0 if unsure.
+	 *            the minimum amount of free slots to reserve in the array
+	 *            holding the constant pool if an entry is added. Set to 0 if
+	 *            unsure.
 	 * @return the constant pool index of the added <tt>ConstantMethodRef</tt>
 	 */
 	public static int addConstantFieldrefInfo(ClassInfo classInfo, String className, String fieldName,
 			String fieldType, int sizeDelta) {
-		sizeDelta = Math.max(sizeDelta, 6);
-		int classIndex = addConstantClassInfo(classInfo, className, sizeDelta);
-		int nameAndTypeIndex = addConstantNameAndTypeInfo(classInfo, fieldName, fieldType, sizeDelta);
-		ConstantFieldrefInfo fieldrefInfo = new ConstantFieldrefInfo();
-		fieldrefInfo.setClassInfo(classInfo);
-		fieldrefInfo.setClassIndex(classIndex);
-		fieldrefInfo.setNameAndTypeIndex(nameAndTypeIndex);
-		return addConstantPoolEntry(classInfo, fieldrefInfo, sizeDelta);
+		return classInfo.constantPoolBuilder().reserving(Math.max(sizeDelta, 6),
+				builder -> builder.fieldref(className, fieldName, fieldType));
 	}
 
 	/**
@@ -320,20 +336,15 @@ public abstract class ConstantPool extends AbstractStructure {
 	 * @param descriptor
 	 *            the descriptor
 	 * @param sizeDelta
-	 *            the minimum increment by which the array holding the constant
-	 *            pool is to be enlarged. Set to 0 if unsure.
+	 *            the minimum amount of free slots to reserve in the array
+	 *            holding the constant pool if an entry is added. Set to 0 if
+	 *            unsure.
 	 * @return the constant pool index of the added
 	 *         <tt>ConstantNameAndTypeInfo</tt>
 	 */
 	public static int addConstantNameAndTypeInfo(ClassInfo classInfo, String name, String descriptor, int sizeDelta) {
-		sizeDelta = Math.max(sizeDelta, 3);
-		int nameIndex = addConstantUTF8Info(classInfo, name, sizeDelta);
-		int descriptorIndex = addConstantUTF8Info(classInfo, descriptor, sizeDelta);
-		ConstantNameAndTypeInfo nameAndTypeInfo = new ConstantNameAndTypeInfo();
-		nameAndTypeInfo.setClassInfo(classInfo);
-		nameAndTypeInfo.setNameIndex(nameIndex);
-		nameAndTypeInfo.setDescriptorIndex(descriptorIndex);
-		return addConstantPoolEntry(classInfo, nameAndTypeInfo, sizeDelta);
+		return classInfo.constantPoolBuilder().reserving(Math.max(sizeDelta, 3),
+				builder -> builder.nameAndType(name, descriptor));
 	}
 
 	/**
@@ -345,17 +356,50 @@ public abstract class ConstantPool extends AbstractStructure {
 	 * @param className
 	 *            the name of the referenced class
 	 * @param sizeDelta
-	 *            the minimum increment by which the array holding the constant
-	 *            pool is to be enlarged. Set to 0 if unsure.
+	 *            the minimum amount of free slots to reserve in the array
+	 *            holding the constant pool if an entry is added. Set to 0 if
+	 *            unsure.
 	 * @return the constant pool index of the added <tt>ConstantClassInfo</tt>
 	 */
 	public static int addConstantClassInfo(ClassInfo classInfo, String className, int sizeDelta) {
-		sizeDelta = Math.max(sizeDelta, 2);
-		int nameIndex = addConstantUTF8Info(classInfo, className, sizeDelta);
-		ConstantClassInfo cci = new ConstantClassInfo();
-		cci.setClassInfo(classInfo);
-		cci.setIndex(nameIndex);
-		return addConstantPoolEntry(classInfo, cci, sizeDelta);
+		return classInfo.constantPoolBuilder().reserving(Math.max(sizeDelta, 2),
+				builder -> builder.classRef(className));
+	}
+
+	/**
+	 * Checks whether an instruction with the given opcode may refer to a
+	 * constant pool entry with the given tag: a
+	 * <tt>CONSTANT_Fieldref_info</tt> for the field instructions, a
+	 * <tt>CONSTANT_Methodref_info</tt> for <tt>invokevirtual</tt>, a
+	 * <tt>CONSTANT_InterfaceMethodref_info</tt> for <tt>invokeinterface</tt>,
+	 * and either of the latter two for <tt>invokespecial</tt> and
+	 * <tt>invokestatic</tt>, where an interface method needs version 52.
+	 *
+	 * @param opcode
+	 *            the opcode of the instruction
+	 * @param tag
+	 *            the tag of the entry
+	 * @param major
+	 *            the major version of the class file
+	 * @return <t>true</t> if the entry is accepted, otherwise <t>false</t>.
+	 */
+	public static boolean accepts(Opcode opcode, int tag, int major) {
+		switch (opcode) {
+			case GETSTATIC:
+			case PUTSTATIC:
+			case GETFIELD:
+			case PUTFIELD:
+				return tag == CONSTANT_FIELDREF;
+			case INVOKEVIRTUAL:
+				return tag == CONSTANT_METHODREF;
+			case INVOKESPECIAL:
+			case INVOKESTATIC:
+				return tag == CONSTANT_METHODREF || (tag == CONSTANT_INTERFACE_METHODREF && major >= 52);
+			case INVOKEINTERFACE:
+				return tag == CONSTANT_INTERFACE_METHODREF;
+			default:
+				return false;
+		}
 	}
 
 	/**
@@ -367,47 +411,32 @@ public abstract class ConstantPool extends AbstractStructure {
 	 * @param string
 	 *            the string
 	 * @param sizeDelta
-	 *            the minimum increment by which the array holding the constant
-	 *            pool is to be enlarged. Set to 0 if unsure.
+	 *            the minimum amount of free slots to reserve in the array
+	 *            holding the constant pool if an entry is added. Set to 0 if
+	 *            unsure.
 	 * @return the constant pool index of the added <tt>ConstantUTF8Info</tt>
 	 */
 	public static int addConstantUTF8Info(ClassInfo classInfo, String string, int sizeDelta) {
-		ConstantUtf8Info utf8Info = new ConstantUtf8Info();
-		utf8Info.setClassInfo(classInfo);
-		utf8Info.setString(string);
-		return addConstantPoolEntry(classInfo, utf8Info, sizeDelta);
+		return classInfo.constantPoolBuilder().reserving(Math.max(sizeDelta, 1),
+				builder -> builder.utf8(string));
 	}
 
 	/**
-	 * Add a constant pool entry to the constant pool of a <tt>ClassInfo</tt>.
+	 * Add a constant pool entry to the constant pool of a <tt>ClassInfo</tt>,
+	 * through its <tt>ConstantPoolBuilder</tt>.
 	 *
 	 * @param classInfo
 	 *            the class file whose constant pool is to be edited
 	 * @param newEntry
 	 *            the new constant pool entry
 	 * @param sizeDelta
-	 *            the minimum increment by which the array holding the constant
-	 *            pool is to be enlarged. Set to 0 if unsure.
+	 *            the minimum amount of free slots to reserve in the array
+	 *            holding the constant pool if an entry is added. Set to 0 if
+	 *            unsure.
 	 * @return the constant pool index of the added constant pool entry
 	 */
 	public static int addConstantPoolEntry(ClassInfo classInfo, ConstantPool newEntry, int sizeDelta) {
-		ConstantPool[] constantPool = classInfo.constantPool();
-		int index = classInfo.constantPoolIndex(newEntry);
-		if (index > -1)
-			return index;
-		int lastFreeIndex;
-		lastFreeIndex = constantPool.length - 1;
-		while (lastFreeIndex >= 0 && constantPool[lastFreeIndex] == null)
-			lastFreeIndex--;
-		if (lastFreeIndex == constantPool.length - 1) {
-			ConstantPool[] newConstantPool = new ConstantPool[constantPool.length + Math.max(1, sizeDelta)];
-			System.arraycopy(constantPool, 0, newConstantPool, 0, constantPool.length);
-			classInfo.enlargeConstantPool(newConstantPool);
-			constantPool = newConstantPool;
-		}
-		int newIndex = lastFreeIndex + 1;
-		constantPool[newIndex] = newEntry;
-		classInfo.registerConstantPoolEntry(newIndex);
-		return newIndex;
+		return classInfo.constantPoolBuilder().reserving(Math.max(sizeDelta, 1),
+				builder -> builder.add(newEntry));
 	}
 }
@@ -0,0 +1,379 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import me.sedlar.bytecode.structure.constants.*;
+
+/**
+ * Appends entries to the constant pool of a <tt>ClassInfo</tt>.
+ * <p>
+ * The builder keeps a fill pointer to the first free index and doubles the
+ * capacity of the constant pool array when it runs out, so adding an entry is
+ * amortized constant time instead of a scan and a copy. Entries are
+ * deduplicated through the structural equality of <tt>ConstantPool</tt>,
+ * which compares the tag and the content of every kind of entry. The
+ * constant pool array may therefore end with unused slots, which are not
+ * written. Looking up an entry that is present already leaves the class
+ * unmodified.
+ * <p>
+ * The builder of a class is obtained through
+ * <tt>ClassInfo.constantPoolBuilder</tt>, and notices when the constant pool
+ * array is replaced behind its back.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class ConstantPoolBuilder {
+
+	/**
+	 * The largest amount of slots a constant pool can have, including the
+	 * unused slot 0.
+	 */
+	public static final int MAX_COUNT = 0xffff;
+
+	private static final int MIN_CAPACITY = 16;
+
+	private final ClassInfo classInfo;
+	private ConstantPool[] pool;
+	private int count;
+	private int reserve;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param classInfo
+	 *            the class file whose constant pool is to be edited
+	 */
+	ConstantPoolBuilder(ClassInfo classInfo) {
+		this.classInfo = classInfo;
+		sync();
+	}
+
+	private void sync() {
+		pool = classInfo.constantPool();
+		int last = pool == null ? 0 : Math.max(0, pool.length - 1);
+		while (last > 0 && pool[last] == null)
+			last--;
+		count = last + 1;
+		if (last > 0 && pool[last] instanceof ConstantLargeNumeric)
+			count++;
+	}
+
+	/**
+	 * Get the amount of slots in use, including the unused slot 0. This is
+	 * the <tt>constant_pool_count</tt> that will be written.
+	 *
+	 * @return the amount of slots in use
+	 */
+	public int count() {
+		if (pool != classInfo.constantPool())
+			sync();
+		return count;
+	}
+
+	/**
+	 * Make sure that the given amount of slots can be added without growing
+	 * the constant pool array again.
+	 *
+	 * @param slots
+	 *            the amount of slots to reserve
+	 */
+	public void ensureCapacity(int slots) {
+		if (pool != classInfo.constantPool())
+			sync();
+		int required = count + slots;
+		if (pool != null && required <= pool.length)
+			return;
+		int capacity = Math.max(MIN_CAPACITY, pool == null ? 0 : pool.length);
+		while (capacity < required)
+			capacity <<= 1;
+		ConstantPool[] grown = new ConstantPool[capacity];
+		if (pool != null)
+			System.arraycopy(pool, 0, grown, 0, pool.length);
+		classInfo.enlargeConstantPool(grown);
+		pool = grown;
+	}
+
+	/**
+	 * Add an entry unless an equal entry is present.
+	 *
+	 * @param entry
+	 *            the entry, whose <tt>ClassInfo</tt> is set to the edited
+	 *            class if it is added. It should not belong to a class
+	 *            before, as its setters would mark that class as modified.
+	 * @return the constant pool index of the entry or of the equal entry
+	 */
+	public int add(ConstantPool entry) {
+		int index = classInfo.constantPoolIndex(entry);
+		if (index > 0)
+			return index;
+		int slots = entry instanceof ConstantLargeNumeric ? 2 : 1;
+		ensureCapacity(Math.max(slots, reserve));
+		reserve = 0;
+		if (count + slots > MAX_COUNT)
+			throw new IllegalStateException("constant pool of " + classInfo.name() + " is full");
+		index = count;
+		// only a new entry belongs to the class, so that looking up an existing one leaves it clean
+		entry.setClassInfo(classInfo);
+		pool[index] = entry;
+		count += slots;
+		classInfo.registerConstantPoolEntry(index);
+		classInfo.markDirty();
+		return index;
+	}
+
+	/**
+	 * Run the given additions, reserving the given amount of slots at once
+	 * when the first of them is not present yet. Additions that only find
+	 * present entries reserve nothing, so that the class stays unmodified.
+	 *
+	 * @param slots
+	 *            the amount of slots to reserve
+	 * @param additions
+	 *            the additions, which are passed this builder
+	 * @return the constant pool index that the additions return
+	 */
+	int reserving(int slots, ToIntFunction<ConstantPoolBuilder> additions) {
+		reserve = slots;
+		try {
+			return additions.applyAsInt(this);
+		} finally {
+			reserve = 0;
+		}
+	}
+
+	/**
+	 * Add a batch of entries, reserving room for all of them at once.
+	 *
+	 * @param entries
+	 *            the entries
+	 * @return the constant pool indices of the entries, in the same order
+	 */
+	public int[] addAll(List<? extends ConstantPool> entries) {
+		int slots = 0;
+		for (ConstantPool entry : entries)
+			slots += entry instanceof ConstantLargeNumeric ? 2 : 1;
+		ensureCapacity(Math.min(slots, MAX_COUNT - count()));
+		int[] indices = new int[entries.size()];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = add(entries.get(i));
+		return indices;
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_Utf8_info</tt> entry.
+	 *
+	 * @param string
+	 *            the string
+	 * @return the constant pool index
+	 */
+	public int utf8(String string) {
+		ConstantUtf8Info entry = new ConstantUtf8Info();
+		entry.setString(string);
+		int index = classInfo.constantPoolIndex(entry);
+		if (index > 0)
+			return index;
+		// set again once attached, so that the string is interned in the symbol table of the class
+		entry.setClassInfo(classInfo);
+		entry.setString(string);
+		return add(entry);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_Class_info</tt> entry.
+	 *
+	 * @param name
+	 *            the internal name of the class
+	 * @return the constant pool index
+	 */
+	public int classRef(String name) {
+		ConstantClassInfo entry = new ConstantClassInfo();
+		entry.setIndex(utf8(name));
+		return add(entry);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_String_info</tt> entry.
+	 *
+	 * @param string
+	 *            the string
+	 * @return the constant pool index
+	 */
+	public int string(String string) {
+		ConstantStringInfo entry = new ConstantStringInfo();
+		entry.setStringIndex(utf8(string));
+		return add(entry);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_Integer_info</tt> entry.
+	 *
+	 * @param value
+	 *            the value
+	 * @return the constant pool index
+	 */
+	public int integer(int value) {
+		ConstantIntegerInfo entry = new ConstantIntegerInfo();
+		entry.setValue(value);
+		return add(entry);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_Float_info</tt> entry.
+	 *
+	 * @param value
+	 *            the value
+	 * @return the constant pool index
+	 */
+	public int floatValue(float value) {
+		ConstantFloatInfo entry = new ConstantFloatInfo();
+		entry.setValue(value);
+		return add(entry);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_Long_info</tt> entry, which takes two slots.
+	 *
+	 * @param value
+	 *            the value
+	 * @return the constant pool index
+	 */
+	public int longValue(long value) {
+		ConstantLongInfo entry = new ConstantLongInfo();
+		entry.setValue(value);
+		return add(entry);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_Double_info</tt> entry, which takes two slots.
+	 *
+	 * @param value
+	 *            the value
+	 * @return the constant pool index
+	 */
+	public int doubleValue(double value) {
+		ConstantDoubleInfo entry = new ConstantDoubleInfo();
+		entry.setValue(value);
+		return add(entry);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_NameAndType_info</tt> entry.
+	 *
+	 * @param name
+	 *            the name
+	 * @param descriptor
+	 *            the descriptor
+	 * @return the constant pool index
+	 */
+	public int nameAndType(String name, String descriptor) {
+		ConstantNameAndTypeInfo entry = new ConstantNameAndTypeInfo();
+		entry.setNameIndex(utf8(name));
+		entry.setDescriptorIndex(utf8(descriptor));
+		return add(entry);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_Fieldref_info</tt> entry.
+	 *
+	 * @param owner
+	 *            the internal name of the class declaring the field
+	 * @param name
+	 *            the name of the field
+	 * @param descriptor
+	 *            the descriptor of the field
+	 * @return the constant pool index
+	 */
+	public int fieldref(String owner, String name, String descriptor) {
+		return reference(new ConstantFieldrefInfo(), owner, name, descriptor);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_Methodref_info</tt> entry.
+	 *
+	 * @param owner
+	 *            the internal name of the class declaring the method
+	 * @param name
+	 *            the name of the method
+	 * @param descriptor
+	 *            the descriptor of the method
+	 * @return the constant pool index
+	 */
+	public int methodref(String owner, String name, String descriptor) {
+		return reference(new ConstantMethodrefInfo(), owner, name, descriptor);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_InterfaceMethodref_info</tt> entry.
+	 *
+	 * @param owner
+	 *            the internal name of the interface declaring the method
+	 * @param name
+	 *            the name of the method
+	 * @param descriptor
+	 *            the descriptor of the method
+	 * @return the constant pool index
+	 */
+	public int interfaceMethodref(String owner, String name, String descriptor) {
+		return reference(new ConstantInterfaceMethodrefInfo(), owner, name, descriptor);
+	}
+
+	private int reference(ConstantReference entry, String owner, String name, String descriptor) {
+		entry.setClassIndex(classRef(owner));
+		entry.setNameAndTypeIndex(nameAndType(name, descriptor));
+		return add(entry);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_MethodType_info</tt> entry.
+	 *
+	 * @param descriptor
+	 *            the method descriptor
+	 * @return the constant pool index
+	 */
+	public int methodType(String descriptor) {
+		ConstantMethodTypeInfo entry = new ConstantMethodTypeInfo();
+		entry.setDescriptorIndex(utf8(descriptor));
+		return add(entry);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_MethodHandle_info</tt> entry.
+	 *
+	 * @param type
+	 *            the reference kind
+	 * @param referenceIndex
+	 *            the constant pool index of the referenced member
+	 * @return the constant pool index
+	 */
+	public int methodHandle(int type, int referenceIndex) {
+		ConstantMethodHandleInfo entry = new ConstantMethodHandleInfo();
+		entry.setType(type);
+		entry.setIndex(referenceIndex);
+		return add(entry);
+	}
+
+	/**
+	 * Add a <tt>CONSTANT_InvokeDynamic_info</tt> entry.
+	 *
+	 * @param bootstrapIndex
+	 *            the index into the bootstrap methods attribute
+	 * @param name
+	 *            the name of the call site
+	 * @param descriptor
+	 *            the descriptor of the call site
+	 * @return the constant pool index
+	 */
+	public int invokeDynamic(int bootstrapIndex, String name, String descriptor) {
+		ConstantInvokeDynamicInfo entry = new ConstantInvokeDynamicInfo();
+		entry.setBootstrapIndex(bootstrapIndex);
+		entry.setNameAndTypeIndex(nameAndType(name, descriptor));
+		return add(entry);
+	}
+}
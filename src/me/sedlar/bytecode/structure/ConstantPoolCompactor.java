@@ -0,0 +1,632 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure;
+
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+
+import me.sedlar.bytecode.Opcode;
+import me.sedlar.bytecode.io.ByteCursor;
+
+/**
+ * Drops the constant pool entries that a serialized class file no longer
+ * references and renumbers the remaining ones densely.
+ * <p>
+ * The class file is walked as bits: every constant pool index held by the
+ * header, the members, the attributes, the instructions, the bootstrap
+ * methods and the annotations is recorded, the entries reachable from those
+ * indices are kept, and every recorded index is rewritten. Kept entries stay
+ * in their original order, so an index never grows and an <tt>ldc</tt> keeps
+ * fitting its single-bit operand; code lengths and offsets are therefore
+ * untouched. A class holding an attribute whose layout is not known, and so
+ * may hide constant pool indices, is left as it is.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public final class ConstantPoolCompactor {
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+	private static final int CONSTANT_DYNAMIC = 17;
+	private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	private static final int CONSTANT_MODULE = 19;
+	private static final int CONSTANT_PACKAGE = 20;
+
+	private final byte[] bytes;
+	private final int end;
+	private int position;
+	private int count;
+	private int[] offsets;
+	private int[] indices = new int[256];
+	private int indexCount;
+	private int[] narrowIndices = new int[16];
+	private int narrowCount;
+
+	private ConstantPoolCompactor(byte[] bytes, int length) {
+		this.bytes = bytes;
+		this.end = length;
+	}
+
+	/**
+	 * Compact the constant pool of a serialized class file.
+	 *
+	 * @param bytes
+	 *            the buffer holding the class file, starting at index 0
+	 * @param length
+	 *            the length of the class file
+	 * @return the compacted class file, or <t>null</t> if every entry is in
+	 *         use or the class file cannot be compacted safely
+	 */
+	public static byte[] compact(byte[] bytes, int length) {
+		try {
+			return new ConstantPoolCompactor(bytes, length).compact();
+		} catch (Unsupported | IndexOutOfBoundsException | UTFDataFormatException e) {
+			return null;
+		}
+	}
+
+	private byte[] compact() throws UTFDataFormatException {
+		if (u4() != 0xcafebabe)
+			throw new Unsupported();
+		position += 4;
+		count = u2();
+		offsets = new int[count];
+		for (int i = 1; i < count; i++) {
+			offsets[i] = position;
+			int tag = u1();
+			switch (tag) {
+				case CONSTANT_UTF8: {
+					int length = u2();
+					position += length;
+					break;
+				}
+				case CONSTANT_INTEGER:
+				case CONSTANT_FLOAT:
+				case CONSTANT_FIELDREF:
+				case CONSTANT_METHODREF:
+				case CONSTANT_INTERFACE_METHODREF:
+				case CONSTANT_NAME_AND_TYPE:
+				case CONSTANT_DYNAMIC:
+				case CONSTANT_INVOKE_DYNAMIC:
+					position += 4;
+					break;
+				case CONSTANT_LONG:
+				case CONSTANT_DOUBLE:
+					position += 8;
+					i++;
+					break;
+				case CONSTANT_CLASS:
+				case CONSTANT_STRING:
+				case CONSTANT_METHOD_TYPE:
+				case CONSTANT_MODULE:
+				case CONSTANT_PACKAGE:
+					position += 2;
+					break;
+				case CONSTANT_METHOD_HANDLE:
+					position += 3;
+					break;
+				default:
+					throw new Unsupported();
+			}
+		}
+		int poolEnd = position;
+		// access_flags, this_class, super_class and interfaces
+		position += 2;
+		index();
+		index();
+		for (int i = u2(); i > 0; i--)
+			index();
+		for (int members = 0; members < 2; members++) {
+			for (int i = u2(); i > 0; i--) {
+				position += 2;
+				index();
+				index();
+				attributes();
+			}
+		}
+		attributes();
+		if (position != end)
+			throw new Unsupported();
+		return rewrite(poolEnd, mark());
+	}
+
+	private boolean[] mark() {
+		boolean[] live = new boolean[count];
+		int[] stack = new int[count];
+		int size = 0;
+		for (int i = 0; i < indexCount + narrowCount; i++) {
+			int index = i < indexCount ? read2(indices[i]) : bytes[narrowIndices[i - indexCount]] & 0xff;
+			if (index == 0)
+				continue;
+			if (index >= count || offsets[index] == 0)
+				throw new Unsupported();
+			if (!live[index]) {
+				live[index] = true;
+				stack[size++] = index;
+			}
+		}
+		while (size > 0) {
+			int offset = offsets[stack[--size]];
+			int first = 0, second = 0;
+			switch (bytes[offset]) {
+				case CONSTANT_CLASS:
+				case CONSTANT_STRING:
+				case CONSTANT_METHOD_TYPE:
+				case CONSTANT_MODULE:
+				case CONSTANT_PACKAGE:
+					first = read2(offset + 1);
+					break;
+				case CONSTANT_FIELDREF:
+				case CONSTANT_METHODREF:
+				case CONSTANT_INTERFACE_METHODREF:
+				case CONSTANT_NAME_AND_TYPE:
+					first = read2(offset + 1);
+					second = read2(offset + 3);
+					break;
+				case CONSTANT_METHOD_HANDLE:
+					first = read2(offset + 2);
+					break;
+				case CONSTANT_DYNAMIC:
+				case CONSTANT_INVOKE_DYNAMIC:
+					// the first index points into the bootstrap methods, not the constant pool
+					first = read2(offset + 3);
+					break;
+			}
+			for (int index : new int[] { first, second }) {
+				if (index == 0)
+					continue;
+				if (index >= count || offsets[index] == 0)
+					throw new Unsupported();
+				if (!live[index]) {
+					live[index] = true;
+					stack[size++] = index;
+				}
+			}
+		}
+		return live;
+	}
+
+	private byte[] rewrite(int poolEnd, boolean[] live) {
+		int[] map = new int[count];
+		int next = 1;
+		int poolSize = 0;
+		for (int i = 1; i < count; i++) {
+			if (offsets[i] == 0)
+				continue;
+			if (live[i]) {
+				map[i] = next;
+				next += isWide(i) ? 2 : 1;
+				poolSize += nextOffset(i, poolEnd) - offsets[i];
+			}
+		}
+		if (next == count)
+			return null;
+		int delta = 10 + poolSize - poolEnd;
+		byte[] out = new byte[end + delta];
+		System.arraycopy(bytes, 0, out, 0, 8);
+		write2(out, 8, next);
+		int at = 10;
+		for (int i = 1; i < count; i++) {
+			if (!live[i])
+				continue;
+			int offset = offsets[i];
+			int size = nextOffset(i, poolEnd) - offset;
+			System.arraycopy(bytes, offset, out, at, size);
+			switch (bytes[offset]) {
+				case CONSTANT_CLASS:
+				case CONSTANT_STRING:
+				case CONSTANT_METHOD_TYPE:
+				case CONSTANT_MODULE:
+				case CONSTANT_PACKAGE:
+					write2(out, at + 1, map[read2(offset + 1)]);
+					break;
+				case CONSTANT_FIELDREF:
+				case CONSTANT_METHODREF:
+				case CONSTANT_INTERFACE_METHODREF:
+				case CONSTANT_NAME_AND_TYPE:
+					write2(out, at + 1, map[read2(offset + 1)]);
+					write2(out, at + 3, map[read2(offset + 3)]);
+					break;
+				case CONSTANT_METHOD_HANDLE:
+					write2(out, at + 2, map[read2(offset + 2)]);
+					break;
+				case CONSTANT_DYNAMIC:
+				case CONSTANT_INVOKE_DYNAMIC:
+					write2(out, at + 3, map[read2(offset + 3)]);
+					break;
+			}
+			at += size;
+		}
+		System.arraycopy(bytes, poolEnd, out, at, end - poolEnd);
+		for (int i = 0; i < indexCount; i++) {
+			int offset = indices[i];
+			write2(out, offset + delta, map[read2(offset)]);
+		}
+		for (int i = 0; i < narrowCount; i++) {
+			int offset = narrowIndices[i];
+			out[offset + delta] = (byte) map[bytes[offset] & 0xff];
+		}
+		return out;
+	}
+
+	private boolean isWide(int index) {
+		int tag = bytes[offsets[index]];
+		return tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE;
+	}
+
+	private int nextOffset(int index, int poolEnd) {
+		int next = index + (isWide(index) ? 2 : 1);
+		return next < count ? offsets[next] : poolEnd;
+	}
+
+	private void attributes() throws UTFDataFormatException {
+		for (int i = u2(); i > 0; i--) {
+			int nameIndex = read2(position);
+			index();
+			int length = u4();
+			int start = position;
+			if (length < 0 || length > end - start)
+				throw new Unsupported();
+			attribute(utf8(nameIndex), start + length);
+			if (position != start + length)
+				throw new Unsupported();
+		}
+	}
+
+	private void attribute(String name, int attributeEnd) throws UTFDataFormatException {
+		switch (name) {
+			case "ConstantValue":
+			case "Signature":
+			case "SourceFile":
+			case "NestHost":
+			case "ModuleMainClass":
+				index();
+				break;
+			case "Exceptions":
+			case "NestMembers":
+			case "PermittedSubclasses":
+			case "ModulePackages":
+				for (int i = u2(); i > 0; i--)
+					index();
+				break;
+			case "Code": {
+				position += 4;
+				int codeLength = u4();
+				if (codeLength < 0 || codeLength > attributeEnd - position)
+					throw new Unsupported();
+				code(position, codeLength);
+				position += codeLength;
+				for (int i = u2(); i > 0; i--) {
+					position += 6;
+					index();
+				}
+				attributes();
+				break;
+			}
+			case "StackMapTable":
+				for (int i = u2(); i > 0; i--)
+					frame();
+				break;
+			case "InnerClasses":
+				for (int i = u2(); i > 0; i--) {
+					index();
+					index();
+					index();
+					position += 2;
+				}
+				break;
+			case "EnclosingMethod":
+				index();
+				index();
+				break;
+			case "LocalVariableTable":
+			case "LocalVariableTypeTable":
+				for (int i = u2(); i > 0; i--) {
+					position += 4;
+					index();
+					index();
+					position += 2;
+				}
+				break;
+			case "RuntimeVisibleAnnotations":
+			case "RuntimeInvisibleAnnotations":
+				for (int i = u2(); i > 0; i--)
+					annotation();
+				break;
+			case "RuntimeVisibleParameterAnnotations":
+			case "RuntimeInvisibleParameterAnnotations":
+				for (int i = u1(); i > 0; i--) {
+					for (int j = u2(); j > 0; j--)
+						annotation();
+				}
+				break;
+			case "RuntimeVisibleTypeAnnotations":
+			case "RuntimeInvisibleTypeAnnotations":
+				for (int i = u2(); i > 0; i--)
+					typeAnnotation();
+				break;
+			case "AnnotationDefault":
+				elementValue();
+				break;
+			case "BootstrapMethods":
+				for (int i = u2(); i > 0; i--) {
+					index();
+					for (int j = u2(); j > 0; j--)
+						index();
+				}
+				break;
+			case "MethodParameters":
+				for (int i = u1(); i > 0; i--) {
+					index();
+					position += 2;
+				}
+				break;
+			case "Record":
+				for (int i = u2(); i > 0; i--) {
+					index();
+					index();
+					attributes();
+				}
+				break;
+			case "Synthetic":
+			case "Deprecated":
+			case "LineNumberTable":
+			case "SourceDebugExtension":
+				position = attributeEnd;
+				break;
+			default:
+				// the layout is unknown, so it may hold constant pool indices that cannot be rewritten
+				throw new Unsupported();
+		}
+	}
+
+	private void code(int start, int length) {
+		int pc = 0;
+		boolean wide = false;
+		while (pc < length) {
+			int at = start + pc;
+			Opcode opcode = Opcode.fromBytecode(bytes[at] & 0xff);
+			int size = Opcode.length(bytes, start, length, pc, wide);
+			if (size < 0)
+				throw new Unsupported();
+			switch (opcode) {
+				case LDC:
+					narrowIndex(at + 1);
+					break;
+				case LDC_W:
+				case LDC2_W:
+				case GETSTATIC:
+				case PUTSTATIC:
+				case GETFIELD:
+				case PUTFIELD:
+				case INVOKEVIRTUAL:
+				case INVOKESPECIAL:
+				case INVOKESTATIC:
+				case INVOKEINTERFACE:
+				case INVOKEDYNAMIC:
+				case NEW:
+				case ANEWARRAY:
+				case CHECKCAST:
+				case INSTANCEOF:
+				case MULTIANEWARRAY:
+					addIndex(at + 1);
+					break;
+				default:
+					break;
+			}
+			wide = opcode == Opcode.WIDE;
+			pc += size;
+		}
+	}
+
+	private void frame() {
+		int type = u1();
+		if (type < 64) {
+			return;
+		} else if (type < 128) {
+			verificationType();
+		} else if (type < 247) {
+			throw new Unsupported();
+		} else if (type == 247) {
+			position += 2;
+			verificationType();
+		} else if (type < 252) {
+			position += 2;
+		} else if (type < 255) {
+			position += 2;
+			for (int i = type - 251; i > 0; i--)
+				verificationType();
+		} else {
+			position += 2;
+			for (int i = u2(); i > 0; i--)
+				verificationType();
+			for (int i = u2(); i > 0; i--)
+				verificationType();
+		}
+	}
+
+	private void verificationType() {
+		int tag = u1();
+		if (tag == 7)
+			index();
+		else if (tag == 8)
+			position += 2;
+		else if (tag > 8)
+			throw new Unsupported();
+	}
+
+	private void annotation() {
+		index();
+		for (int i = u2(); i > 0; i--) {
+			index();
+			elementValue();
+		}
+	}
+
+	private void elementValue() {
+		int tag = u1();
+		switch (tag) {
+			case 'B':
+			case 'C':
+			case 'D':
+			case 'F':
+			case 'I':
+			case 'J':
+			case 'S':
+			case 'Z':
+			case 's':
+			case 'c':
+				index();
+				break;
+			case 'e':
+				index();
+				index();
+				break;
+			case '@':
+				annotation();
+				break;
+			case '[':
+				for (int i = u2(); i > 0; i--)
+					elementValue();
+				break;
+			default:
+				throw new Unsupported();
+		}
+	}
+
+	private void typeAnnotation() {
+		int targetType = u1();
+		switch (targetType) {
+			case 0x00:
+			case 0x01:
+			case 0x16:
+				position += 1;
+				break;
+			case 0x10:
+			case 0x17:
+			case 0x42:
+			case 0x43:
+			case 0x44:
+			case 0x45:
+			case 0x46:
+			case 0x11:
+			case 0x12:
+				position += 2;
+				break;
+			case 0x13:
+			case 0x14:
+			case 0x15:
+				break;
+			case 0x40:
+			case 0x41: {
+				int entries = u2();
+				position += entries * 6;
+				break;
+			}
+			case 0x47:
+			case 0x48:
+			case 0x49:
+			case 0x4a:
+			case 0x4b:
+				position += 3;
+				break;
+			default:
+				throw new Unsupported();
+		}
+		int pathLength = u1();
+		position += pathLength * 2;
+		annotation();
+	}
+
+	private void index() {
+		addIndex(position);
+		position += 2;
+	}
+
+	private void addIndex(int offset) {
+		if (offset + 2 > end)
+			throw new Unsupported();
+		if (indexCount == indices.length)
+			indices = Arrays.copyOf(indices, indexCount * 2);
+		indices[indexCount++] = offset;
+	}
+
+	private void narrowIndex(int offset) {
+		if (offset >= end)
+			throw new Unsupported();
+		if (narrowCount == narrowIndices.length)
+			narrowIndices = Arrays.copyOf(narrowIndices, narrowCount * 2);
+		narrowIndices[narrowCount++] = offset;
+	}
+
+	private String utf8(int index) throws UTFDataFormatException {
+		if (index <= 0 || index >= count || offsets[index] == 0 || bytes[offsets[index]] != CONSTANT_UTF8)
+			throw new Unsupported();
+		int offset = offsets[index];
+		return ByteCursor.decodeUTF(bytes, offset + 3, read2(offset + 1));
+	}
+
+	private int u1() {
+		if (position >= end)
+			throw new Unsupported();
+		return bytes[position++] & 0xff;
+	}
+
+	private int u2() {
+		int value = read2(position);
+		position += 2;
+		return value;
+	}
+
+	private int u4() {
+		int value = read4(position);
+		position += 4;
+		return value;
+	}
+
+	private int read2(int offset) {
+		if (offset + 2 > end)
+			throw new Unsupported();
+		return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+	}
+
+	private int read4(int offset) {
+		if (offset + 4 > end)
+			throw new Unsupported();
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+				| ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+	}
+
+	private static void write2(byte[] out, int offset, int value) {
+		out[offset] = (byte) (value >>> 8);
+		out[offset + 1] = (byte) value;
+	}
+
+	/**
+	 * Thrown when the class file holds something that cannot be compacted
+	 * safely.
+	 */
+	private static final class Unsupported extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private Unsupported() {
+			super(null, null, false, false);
+		}
+	}
+}
@@ -0,0 +1,617 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.List;
+
+import me.sedlar.bytecode.Opcode;
+import me.sedlar.bytecode.io.ByteCursor;
+
+/**
+ * A read-only view of a class file that answers every query straight from
+ * its bits.
+ * <p>
+ * Freezing a class walks it once and records the offset of every constant
+ * pool entry, field and method; nothing else is decoded or kept. Names,
+ * descriptors, references and constants are decoded from the bits on every
+ * call, and members and code are handed out as flyweights over them, so a
+ * frozen class costs little more than its class file. The bits may live on
+ * the heap or in a direct buffer, and must not be changed while the view is
+ * in use.
+ * <p>
+ * A frozen class cannot be modified; <tt>thaw</tt> parses it into a
+ * <tt>ClassInfo</tt> when that is needed.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public final class FrozenClass {
+
+	private static final int MAGIC_NUMBER = 0xcafebabe;
+
+	private final ByteBuffer data;
+	private final int[] constants;
+	private final int header;
+	private final int[] fields;
+	private final int[] methods;
+	private final int attributes;
+
+	private FrozenClass(ByteBuffer data, int[] constants, int header, int[] fields, int[] methods, int attributes) {
+		this.data = data;
+		this.constants = constants;
+		this.header = header;
+		this.fields = fields;
+		this.methods = methods;
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Freeze a class file. The buffer is not copied, so it must not be reused
+	 * while the frozen class is in use.
+	 *
+	 * @param bytes
+	 *            the buffer holding the class file
+	 * @param offset
+	 *            the offset of the class file within the buffer
+	 * @param length
+	 *            the length of the class file
+	 * @return the frozen class
+	 * @throws InvalidByteCodeException
+	 *             if the byte code is invalid
+	 * @throws IOException
+	 *             if the class file is truncated
+	 */
+	public static FrozenClass freeze(byte[] bytes, int offset, int length) throws InvalidByteCodeException,
+			IOException {
+		return freeze(ByteBuffer.wrap(bytes, offset, length));
+	}
+
+	/**
+	 * Freeze a class file, which may be held by a direct buffer. The buffer
+	 * is not copied, so its contents must not change while the frozen class
+	 * is in use.
+	 *
+	 * @param buffer
+	 *            the buffer holding the class file between its position and
+	 *            limit, which are left unchanged
+	 * @return the frozen class
+	 * @throws InvalidByteCodeException
+	 *             if the byte code is invalid
+	 * @throws IOException
+	 *             if the class file is truncated
+	 */
+	public static FrozenClass freeze(ByteBuffer buffer) throws InvalidByteCodeException, IOException {
+		ByteBuffer data = buffer.slice();
+		ByteCursor in = new ByteCursor(data);
+		if (in.readInt() != MAGIC_NUMBER)
+			throw new InvalidByteCodeException("invalid magic number");
+		in.skip(4);
+		int count = in.readUnsignedShort();
+		int[] constants = new int[count];
+		for (int i = 1; i < count; i++) {
+			constants[i] = in.position();
+			i += ConstantPool.skip(in);
+		}
+		int header = in.position();
+		in.skip(6);
+		in.skip(in.readUnsignedShort() * 2);
+		int[] fields = members(in);
+		int[] methods = members(in);
+		int attributes = in.position();
+		skipAttributes(in);
+		return new FrozenClass(data, constants, header, fields, methods, attributes);
+	}
+
+	private static int[] members(ByteCursor in) throws IOException {
+		int[] members = new int[in.readUnsignedShort()];
+		for (int i = 0; i < members.length; i++) {
+			members[i] = in.position();
+			in.skip(6);
+			skipAttributes(in);
+		}
+		return members;
+	}
+
+	private static void skipAttributes(ByteCursor in) throws IOException {
+		int count = in.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			in.skip(2);
+			in.skip(in.readInt());
+		}
+	}
+
+	/**
+	 * Write this class in the form read back by <tt>restore</tt>: the length
+	 * of the class file, the class file itself and the offsets recorded when
+	 * it was frozen.
+	 *
+	 * @param out
+	 *            the output to write to
+	 * @throws IOException
+	 *             if the output cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(data.capacity());
+		if (data.hasArray()) {
+			out.write(data.array(), data.arrayOffset(), data.capacity());
+		} else {
+			byte[] bytes = new byte[data.capacity()];
+			data.duplicate().get(bytes);
+			out.write(bytes);
+		}
+		writeOffsets(out, constants);
+		out.writeInt(header);
+		writeOffsets(out, fields);
+		writeOffsets(out, methods);
+		out.writeInt(attributes);
+	}
+
+	private static void writeOffsets(DataOutput out, int[] offsets) throws IOException {
+		out.writeInt(offsets.length);
+		for (int offset : offsets)
+			out.writeInt(offset);
+	}
+
+	/**
+	 * Restore a class written by <tt>write</tt> without walking it again.
+	 * The offsets are only checked to lie within the class file, so the
+	 * buffer must come from a trusted source, such as a checksummed cache.
+	 *
+	 * @param buffer
+	 *            the buffer holding the written class at its position, which
+	 *            is advanced past it
+	 * @param copy
+	 *            <t>true</t> to copy the class file onto the heap, otherwise
+	 *            <t>false</t> to view it within the buffer, which must then
+	 *            not change while the frozen class is in use
+	 * @return the frozen class
+	 * @throws InvalidByteCodeException
+	 *             if the written class is malformed
+	 */
+	public static FrozenClass restore(ByteBuffer buffer, boolean copy) throws InvalidByteCodeException {
+		int length = buffer.getInt();
+		if (length < 10 || length > buffer.remaining())
+			throw new InvalidByteCodeException("invalid class file length " + length);
+		ByteBuffer data = buffer.slice();
+		data.limit(length);
+		buffer.position(buffer.position() + length);
+		if (copy) {
+			byte[] bytes = new byte[length];
+			data.get(bytes);
+			data = ByteBuffer.wrap(bytes);
+		} else {
+			data = data.slice();
+		}
+		if (data.getInt(0) != MAGIC_NUMBER)
+			throw new InvalidByteCodeException("invalid magic number");
+		int[] constants = readOffsets(buffer, length);
+		if (constants.length != (data.getShort(8) & 0xffff))
+			throw new InvalidByteCodeException("constant pool count mismatch");
+		int header = readOffset(buffer, length);
+		int[] fields = readOffsets(buffer, length);
+		int[] methods = readOffsets(buffer, length);
+		int attributes = readOffset(buffer, length);
+		return new FrozenClass(data, constants, header, fields, methods, attributes);
+	}
+
+	private static int[] readOffsets(ByteBuffer buffer, int length) throws InvalidByteCodeException {
+		int count = buffer.getInt();
+		if (count < 0 || count > buffer.remaining() / 4)
+			throw new InvalidByteCodeException("invalid offset count " + count);
+		int[] offsets = new int[count];
+		for (int i = 0; i < count; i++)
+			offsets[i] = readOffset(buffer, length);
+		return offsets;
+	}
+
+	private static int readOffset(ByteBuffer buffer, int length) throws InvalidByteCodeException {
+		int offset = buffer.getInt();
+		if (offset < 0 || offset >= length)
+			throw new InvalidByteCodeException("offset " + offset + " outside of class file of length " + length);
+		return offset;
+	}
+
+	/**
+	 * Parse this class into a mutable <tt>ClassInfo</tt>, which does not
+	 * share the bits of this class.
+	 *
+	 * @return the class
+	 * @throws InvalidByteCodeException
+	 *             if the byte code is invalid
+	 * @throws IOException
+	 *             if the class file is truncated
+	 */
+	public ClassInfo thaw() throws InvalidByteCodeException, IOException {
+		return thaw(new ParseOptions(), null);
+	}
+
+	/**
+	 * Parse this class into a mutable <tt>ClassInfo</tt>, which does not
+	 * share the bits of this class.
+	 *
+	 * @param parseOptions
+	 *            the options to parse the class with
+	 * @param symbols
+	 *            the table to resolve the UTF-8 constants against, or
+	 *            <t>null</t> to keep them per class
+	 * @return the class
+	 * @throws InvalidByteCodeException
+	 *             if the byte code is invalid
+	 * @throws IOException
+	 *             if the class file is truncated
+	 */
+	public ClassInfo thaw(ParseOptions parseOptions, SymbolTable symbols) throws InvalidByteCodeException,
+			IOException {
+		byte[] bytes = new byte[data.capacity()];
+		data.duplicate().get(bytes);
+		return new ClassInfo(bytes, 0, bytes.length, parseOptions, symbols);
+	}
+
+	/**
+	 * Get the length of the class file.
+	 *
+	 * @return the length
+	 */
+	public int length() {
+		return data.capacity();
+	}
+
+	/**
+	 * Get the minor version of the class file format.
+	 *
+	 * @return the minor version
+	 */
+	public int minor() {
+		return u2(4);
+	}
+
+	/**
+	 * Get the major version of the class file format.
+	 *
+	 * @return the major version
+	 */
+	public int major() {
+		return u2(6);
+	}
+
+	/**
+	 * Get the access flags of the class.
+	 *
+	 * @return the access flags
+	 */
+	public int accessFlags() {
+		return u2(header);
+	}
+
+	/**
+	 * Get the internal name of the class.
+	 *
+	 * @return the name
+	 */
+	public String name() {
+		return className(u2(header + 2));
+	}
+
+	/**
+	 * Get the internal name of the super class.
+	 *
+	 * @return the name, or <t>null</t> for <tt>java/lang/Object</tt> and
+	 *         module descriptors
+	 */
+	public String superName() {
+		int index = u2(header + 4);
+		return index == 0 ? null : className(index);
+	}
+
+	/**
+	 * Get the internal names of the directly implemented interfaces.
+	 *
+	 * @return an unmodifiable list of the names, decoded on access
+	 */
+	public List<String> interfaces() {
+		int count = u2(header + 6);
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				if (index < 0 || index >= count)
+					throw new IndexOutOfBoundsException("index " + index + ", size " + count);
+				return className(u2(header + 8 + index * 2));
+			}
+
+			@Override
+			public int size() {
+				return count;
+			}
+		};
+	}
+
+	/**
+	 * Get the fields of this class.
+	 *
+	 * @return an unmodifiable list of the fields, created on access
+	 */
+	public List<FrozenMember> fields() {
+		return members(fields);
+	}
+
+	/**
+	 * Get the methods of this class.
+	 *
+	 * @return an unmodifiable list of the methods, created on access
+	 */
+	public List<FrozenMember> methods() {
+		return members(methods);
+	}
+
+	private List<FrozenMember> members(int[] offsets) {
+		return new AbstractList<FrozenMember>() {
+			@Override
+			public FrozenMember get(int index) {
+				return new FrozenMember(FrozenClass.this, offsets[index]);
+			}
+
+			@Override
+			public int size() {
+				return offsets.length;
+			}
+		};
+	}
+
+	/**
+	 * Get the field with the given name and descriptor.
+	 *
+	 * @param name
+	 *            the name of the field
+	 * @param descriptor
+	 *            the descriptor of the field
+	 * @return the field, or <t>null</t> if there is none
+	 */
+	public FrozenMember field(String name, String descriptor) {
+		return member(fields, name, descriptor);
+	}
+
+	/**
+	 * Get the method with the given name and descriptor.
+	 *
+	 * @param name
+	 *            the name of the method
+	 * @param descriptor
+	 *            the descriptor of the method
+	 * @return the method, or <t>null</t> if there is none
+	 */
+	public FrozenMember method(String name, String descriptor) {
+		return member(methods, name, descriptor);
+	}
+
+	private FrozenMember member(int[] offsets, String name, String descriptor) {
+		for (int offset : offsets) {
+			if (utf8Equals(u2(offset + 2), name) && utf8Equals(u2(offset + 4), descriptor))
+				return new FrozenMember(this, offset);
+		}
+		return null;
+	}
+
+	/**
+	 * Get the bits of the class attribute with the given name.
+	 *
+	 * @param name
+	 *            the name of the attribute
+	 * @return a read-only buffer holding the attribute without its name and
+	 *         length, or <t>null</t> if this class has no such attribute
+	 */
+	public ByteBuffer attribute(String name) {
+		return attribute(attributes, name);
+	}
+
+	ByteBuffer attribute(int offset, String name) {
+		int at = findAttribute(offset, name);
+		if (at < 0)
+			return null;
+		ByteBuffer attribute = data.duplicate();
+		attribute.limit(at + 6 + s4(at + 2)).position(at + 6);
+		return attribute.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Find an attribute within an attribute table.
+	 *
+	 * @param offset
+	 *            the offset of the attribute count
+	 * @param name
+	 *            the name of the attribute
+	 * @return the offset of the attribute, or <t>-1</t> if there is none
+	 */
+	int findAttribute(int offset, String name) {
+		int count = u2(offset);
+		int at = offset + 2;
+		for (int i = 0; i < count; i++) {
+			if (utf8Equals(u2(at), name))
+				return at;
+			at += 6 + s4(at + 2);
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the amount of entries in the constant pool, including the unusable
+	 * zeroth entry.
+	 *
+	 * @return the amount of entries
+	 */
+	public int constantPoolCount() {
+		return constants.length;
+	}
+
+	/**
+	 * Get the tag of the constant pool entry at the specified index.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the tag, or <t>0</t> if there is no entry at the index
+	 */
+	public int tag(int index) {
+		return index > 0 && index < constants.length && constants[index] != 0 ? data.get(constants[index]) : 0;
+	}
+
+	/**
+	 * Get the string of the <tt>CONSTANT_Utf8_info</tt> entry at the
+	 * specified index.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the string, or <t>null</t> if the entry is not a UTF-8 string
+	 */
+	public String utf8(int index) {
+		if (tag(index) != ConstantPool.CONSTANT_UTF8)
+			return null;
+		int at = constants[index] + 1;
+		int length = u2(at);
+		try {
+			if (data.hasArray())
+				return ByteCursor.decodeUTF(data.array(), data.arrayOffset() + at + 2, length);
+			byte[] bytes = new byte[length];
+			ByteBuffer string = data.duplicate();
+			string.position(at + 2);
+			string.get(bytes);
+			return ByteCursor.decodeUTF(bytes, 0, length);
+		} catch (UTFDataFormatException e) {
+			return null;
+		}
+	}
+
+	private boolean utf8Equals(int index, String string) {
+		if (tag(index) != ConstantPool.CONSTANT_UTF8)
+			return false;
+		int at = constants[index] + 1;
+		int length = u2(at);
+		if (length == string.length()) {
+			// plain ASCII compares bit by bit; anything else is decoded
+			int i = 0;
+			for (; i < length; i++) {
+				int c = string.charAt(i);
+				if (c == 0 || c >= 0x80 || data.get(at + 2 + i) != c)
+					break;
+			}
+			if (i == length)
+				return true;
+		}
+		return string.equals(utf8(index));
+	}
+
+	/**
+	 * Get the name of the <tt>CONSTANT_Class_info</tt> entry at the specified
+	 * index.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the internal name, or <t>null</t> if the entry is not a class
+	 */
+	public String className(int index) {
+		return tag(index) == ConstantPool.CONSTANT_CLASS ? utf8(u2(constants[index] + 1)) : null;
+	}
+
+	/**
+	 * Get the field or method referenced by the constant pool entry at the
+	 * specified index. Unlike <tt>ClassInfo.memberReference</tt>, the
+	 * reference is resolved again on every call.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the reference, or <t>null</t> if the entry is not a field,
+	 *         method or interface method reference.
+	 */
+	public MemberReference memberReference(int index) {
+		int tag = tag(index);
+		if (tag != ConstantPool.CONSTANT_FIELDREF && tag != ConstantPool.CONSTANT_METHODREF
+				&& tag != ConstantPool.CONSTANT_INTERFACE_METHODREF)
+			return null;
+		String owner = className(u2(constants[index] + 1));
+		int nameAndType = u2(constants[index] + 3);
+		if (owner == null || tag(nameAndType) != ConstantPool.CONSTANT_NAME_AND_TYPE)
+			return null;
+		String name = utf8(u2(constants[nameAndType] + 1));
+		String descriptor = utf8(u2(constants[nameAndType] + 3));
+		return name != null && descriptor != null ? new MemberReference(owner, name, descriptor) : null;
+	}
+
+	/**
+	 * Get the field or method that an instruction with the given opcode
+	 * references through the constant pool entry at the specified index.
+	 *
+	 * @param opcode
+	 *            the opcode of the instruction
+	 * @param index
+	 *            the index
+	 * @return the reference, or <t>null</t> if the opcode does not refer to a
+	 *         member or the entry is not a reference that it accepts.
+	 * @see ConstantPool#accepts(Opcode, int, int)
+	 */
+	public MemberReference memberReference(Opcode opcode, int index) {
+		return ConstantPool.accepts(opcode, tag(index), major()) ? memberReference(index) : null;
+	}
+
+	/**
+	 * Get the value of the <tt>CONSTANT_Integer_info</tt>,
+	 * <tt>CONSTANT_Float_info</tt>, <tt>CONSTANT_Long_info</tt>,
+	 * <tt>CONSTANT_Double_info</tt> or <tt>CONSTANT_String_info</tt> entry at
+	 * the specified index.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the value, or <t>null</t> if the entry holds no such value.
+	 */
+	public Object constantValue(int index) {
+		int at = constants.length > index && index > 0 ? constants[index] + 1 : 0;
+		switch (tag(index)) {
+			case ConstantPool.CONSTANT_STRING:
+				return utf8(u2(at));
+			case ConstantPool.CONSTANT_INTEGER:
+				return data.getInt(at);
+			case ConstantPool.CONSTANT_FLOAT:
+				return data.getFloat(at);
+			case ConstantPool.CONSTANT_LONG:
+				return data.getLong(at);
+			case ConstantPool.CONSTANT_DOUBLE:
+				return data.getDouble(at);
+			default:
+				return null;
+		}
+	}
+
+	int u1(int offset) {
+		return data.get(offset) & 0xff;
+	}
+
+	int s1(int offset) {
+		return data.get(offset);
+	}
+
+	int u2(int offset) {
+		return data.getShort(offset) & 0xffff;
+	}
+
+	int s2(int offset) {
+		return data.getShort(offset);
+	}
+
+	int s4(int offset) {
+		return data.getInt(offset);
+	}
+
+	int instructionLength(int start, int length, int pc, boolean wide) {
+		return Opcode.length(data, start, length, pc, wide);
+	}
+
+	@Override
+	public String toString() {
+		return name();
+	}
+}
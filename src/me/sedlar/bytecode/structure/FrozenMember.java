@@ -0,0 +1,106 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure;
+
+import java.nio.ByteBuffer;
+
+import me.sedlar.bytecode.structure.attributes.CodeAttribute;
+
+/**
+ * A field or method of a <tt>FrozenClass</tt>, read from the bits of the
+ * class file on every call.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public final class FrozenMember {
+
+	private final FrozenClass owner;
+	private final int offset;
+
+	FrozenMember(FrozenClass owner, int offset) {
+		this.owner = owner;
+		this.offset = offset;
+	}
+
+	/**
+	 * Get the class declaring this member.
+	 *
+	 * @return the class
+	 */
+	public FrozenClass owner() {
+		return owner;
+	}
+
+	/**
+	 * Get the access flags of this member.
+	 *
+	 * @return the access flags
+	 */
+	public int accessFlags() {
+		return owner.u2(offset);
+	}
+
+	/**
+	 * Get the name of this member.
+	 *
+	 * @return the name
+	 */
+	public String name() {
+		return owner.utf8(owner.u2(offset + 2));
+	}
+
+	/**
+	 * Get the descriptor of this member.
+	 *
+	 * @return the descriptor
+	 */
+	public String descriptor() {
+		return owner.utf8(owner.u2(offset + 4));
+	}
+
+	/**
+	 * Get the bits of the attribute of this member with the given name.
+	 *
+	 * @param name
+	 *            the name of the attribute
+	 * @return a read-only buffer holding the attribute without its name and
+	 *         length, or <t>null</t> if this member has no such attribute
+	 */
+	public ByteBuffer attribute(String name) {
+		return owner.attribute(offset + 6, name);
+	}
+
+	/**
+	 * Checks whether this member has code.
+	 *
+	 * @return <t>true</t> if this member has a <tt>Code</tt> attribute,
+	 *         otherwise <t>false</t>.
+	 */
+	public boolean hasCode() {
+		return owner.findAttribute(offset + 6, CodeAttribute.ATTRIBUTE_NAME) >= 0;
+	}
+
+	/**
+	 * Get a cursor over the instructions of this member.
+	 *
+	 * @return the cursor, or <t>null</t> if this member has no code
+	 */
+	public InstructionCursor instructions() {
+		int code = owner.findAttribute(offset + 6, CodeAttribute.ATTRIBUTE_NAME);
+		if (code < 0)
+			return null;
+		int length = owner.s4(code + 10);
+		if (length < 0 || 14 + length > owner.s4(code + 2) + 6)
+			throw new IllegalStateException("invalid code length " + length + " in " + this);
+		return new InstructionCursor(owner, code + 14, length);
+	}
+
+	@Override
+	public String toString() {
+		return owner.name() + "." + name() + descriptor();
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure;
+
+import static me.sedlar.bytecode.Opcode.*;
+
+import me.sedlar.bytecode.Opcode;
+
+/**
+ * A cursor over the code of a <tt>FrozenMember</tt> that decodes the operands
+ * of the current instruction from the bits of the class file, without
+ * creating an object per instruction.
+ * <p>
+ * A <tt>wide</tt> prefix is folded into the instruction it widens:
+ * <tt>opcodeId</tt> then answers the widened opcode and <tt>wide</tt>
+ * answers <t>true</t>.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public final class InstructionCursor {
+
+	private final FrozenClass owner;
+	private final int start;
+	private final int length;
+	private int pc;
+	private int size;
+	private Opcode opcode = NOP;
+	private boolean wide;
+
+	InstructionCursor(FrozenClass owner, int start, int length) {
+		this.owner = owner;
+		this.start = start;
+		this.length = length;
+	}
+
+	/**
+	 * Move to the next instruction.
+	 *
+	 * @return <t>true</t> if there is a next instruction, otherwise
+	 *         <t>false</t>.
+	 * @throws IllegalStateException
+	 *             if the code holds an invalid instruction
+	 */
+	public boolean next() {
+		int next = pc + size;
+		if (next >= length) {
+			pc = length;
+			size = 0;
+			return false;
+		}
+		pc = next;
+		int bytecode = owner.u1(start + pc);
+		wide = bytecode == WIDE.id();
+		if (wide) {
+			bytecode = pc + 1 < length ? owner.u1(start + pc + 1) : -1;
+			size = bytecode < 0 ? -1 : owner.instructionLength(start, length, pc + 1, true);
+			if (size > 0)
+				size++;
+		} else {
+			size = owner.instructionLength(start, length, pc, false);
+		}
+		Opcode opcode = Opcode.fromBytecode(bytecode);
+		if (opcode == null || size <= 0)
+			throw new IllegalStateException("invalid instruction at " + pc);
+		this.opcode = opcode;
+		return true;
+	}
+
+	private int padded() {
+		return Opcode.switchOperands(pc);
+	}
+
+	private int s4(int offset) {
+		return owner.s4(start + offset);
+	}
+
+	/**
+	 * Get the offset of the current instruction within the code.
+	 *
+	 * @return the offset
+	 */
+	public int offset() {
+		return pc;
+	}
+
+	/**
+	 * Get the length in bits of the current instruction, including its
+	 * operands, padding and <tt>wide</tt> prefix.
+	 *
+	 * @return the length
+	 */
+	public int length() {
+		return size;
+	}
+
+	/**
+	 * Get the opcode of the current instruction.
+	 *
+	 * @return the opcode
+	 */
+	public int opcodeId() {
+		return opcode.id();
+	}
+
+	/**
+	 * Get the opcode of the current instruction.
+	 *
+	 * @return the opcode
+	 */
+	public Opcode opcode() {
+		return opcode;
+	}
+
+	/**
+	 * Checks whether the current instruction is prefixed by <tt>wide</tt>.
+	 *
+	 * @return <t>true</t> if it is widened, otherwise <t>false</t>.
+	 */
+	public boolean wide() {
+		return wide;
+	}
+
+	/**
+	 * Get the constant pool index that the current instruction refers to.
+	 *
+	 * @return the index, or <t>-1</t> if the instruction does not refer to
+	 *         the constant pool
+	 */
+	public int constantIndex() {
+		switch (opcode) {
+			case LDC:
+				return owner.u1(start + pc + 1);
+			case LDC_W:
+			case LDC2_W:
+			case GETSTATIC:
+			case PUTSTATIC:
+			case GETFIELD:
+			case PUTFIELD:
+			case INVOKEVIRTUAL:
+			case INVOKESPECIAL:
+			case INVOKESTATIC:
+			case INVOKEINTERFACE:
+			case INVOKEDYNAMIC:
+			case NEW:
+			case ANEWARRAY:
+			case CHECKCAST:
+			case INSTANCEOF:
+			case MULTIANEWARRAY:
+				return owner.u2(start + pc + 1);
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Get the field or method that the current instruction refers to.
+	 *
+	 * @return the reference, or <t>null</t> if the instruction does not
+	 *         refer to a field or method, or its entry is of a kind that
+	 *         the instruction does not accept
+	 * @see ClassInfo#memberReference(Opcode, int)
+	 */
+	public MemberReference memberReference() {
+		return opcode.withinRange(GETSTATIC, INVOKEINTERFACE) ? owner.memberReference(opcode, constantIndex()) : null;
+	}
+
+	/**
+	 * Get the class that the current <tt>new</tt>, <tt>anewarray</tt>,
+	 * <tt>checkcast</tt>, <tt>instanceof</tt> or <tt>multianewarray</tt>
+	 * instruction refers to.
+	 *
+	 * @return the internal name, or <t>null</t> for any other instruction
+	 */
+	public String className() {
+		switch (opcode) {
+			case NEW:
+			case ANEWARRAY:
+			case CHECKCAST:
+			case INSTANCEOF:
+			case MULTIANEWARRAY:
+				return owner.className(constantIndex());
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Get the constant that the current <tt>ldc</tt>, <tt>ldc_w</tt> or
+	 * <tt>ldc2_w</tt> instruction pushes.
+	 *
+	 * @return the constant, or <t>null</t> for any other instruction and for
+	 *         constants that are not numbers or strings
+	 */
+	public Object constant() {
+		return opcode.withinRange(LDC, LDC2_W) ? owner.constantValue(constantIndex()) : null;
+	}
+
+	/**
+	 * Get the local variable that the current instruction loads, stores,
+	 * increments or returns to.
+	 *
+	 * @return the index of the local variable, or <t>-1</t> if the
+	 *         instruction does not use one
+	 */
+	public int localIndex() {
+		if (opcode.withinRange(ILOAD, ALOAD) || opcode.withinRange(ISTORE, ASTORE) || opcode == IINC || opcode == RET)
+			return wide ? owner.u2(start + pc + 2) : owner.u1(start + pc + 1);
+		if (opcode.withinRange(ILOAD_0, ALOAD_3))
+			return (opcode.id() - ILOAD_0.id()) % 4;
+		if (opcode.withinRange(ISTORE_0, ASTORE_3))
+			return (opcode.id() - ISTORE_0.id()) % 4;
+		return -1;
+	}
+
+	/**
+	 * Get the immediate value of the current <tt>bipush</tt>,
+	 * <tt>sipush</tt> or <tt>iinc</tt> instruction, the array type of a
+	 * <tt>newarray</tt> or the dimensions of a <tt>multianewarray</tt>.
+	 *
+	 * @return the value, or <t>0</t> for any other instruction
+	 */
+	public int operand() {
+		switch (opcode) {
+			case BIPUSH:
+				return owner.s1(start + pc + 1);
+			case SIPUSH:
+				return owner.s2(start + pc + 1);
+			case IINC:
+				return wide ? owner.s2(start + pc + 4) : owner.s1(start + pc + 2);
+			case NEWARRAY:
+				return owner.u1(start + pc + 1);
+			case MULTIANEWARRAY:
+				return owner.u1(start + pc + 3);
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Get the offset that the current branch instruction jumps to.
+	 *
+	 * @return the target offset, or <t>-1</t> if the instruction is not a
+	 *         branch
+	 */
+	public int branchTarget() {
+		if (opcode.withinRange(IFEQ, JSR) || opcode == IFNULL || opcode == IFNONNULL)
+			return pc + owner.s2(start + pc + 1);
+		if (opcode == GOTO_W || opcode == JSR_W)
+			return pc + s4(pc + 1);
+		return -1;
+	}
+
+	/**
+	 * Get the offset that the current switch jumps to when no key matches.
+	 *
+	 * @return the default offset, or <t>-1</t> if the instruction is not a
+	 *         switch
+	 */
+	public int switchDefault() {
+		return opcode == TABLESWITCH || opcode == LOOKUPSWITCH ? pc + s4(padded()) : -1;
+	}
+
+	/**
+	 * Get the keys of the current switch.
+	 *
+	 * @return the keys, in the order of <tt>switchTargets</tt>, or an empty
+	 *         array if the instruction is not a switch
+	 */
+	public int[] switchKeys() {
+		int padded = padded();
+		if (opcode == TABLESWITCH) {
+			int low = s4(padded + 4);
+			int[] keys = new int[s4(padded + 8) - low + 1];
+			for (int i = 0; i < keys.length; i++)
+				keys[i] = low + i;
+			return keys;
+		} else if (opcode == LOOKUPSWITCH) {
+			int[] keys = new int[s4(padded + 4)];
+			for (int i = 0; i < keys.length; i++)
+				keys[i] = s4(padded + 8 + i * 8);
+			return keys;
+		}
+		return new int[0];
+	}
+
+	/**
+	 * Get the offsets that the current switch jumps to.
+	 *
+	 * @return the target offsets, in the order of <tt>switchKeys</tt>, or an
+	 *         empty array if the instruction is not a switch
+	 */
+	public int[] switchTargets() {
+		int padded = padded();
+		if (opcode == TABLESWITCH) {
+			int[] targets = new int[s4(padded + 8) - s4(padded + 4) + 1];
+			for (int i = 0; i < targets.length; i++)
+				targets[i] = pc + s4(padded + 12 + i * 4);
+			return targets;
+		} else if (opcode == LOOKUPSWITCH) {
+			int[] targets = new int[s4(padded + 4)];
+			for (int i = 0; i < targets.length; i++)
+				targets[i] = pc + s4(padded + 12 + i * 8);
+			return targets;
+		}
+		return new int[0];
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure;
+
+/**
+ * The owner, name and descriptor of a field or method, resolved from a
+ * <tt>CONSTANT_Fieldref_info</tt>, <tt>CONSTANT_Methodref_info</tt> or
+ * <tt>CONSTANT_InterfaceMethodref_info</tt> entry.
+ * <p>
+ * References are immutable and are cached per constant pool index by
+ * <tt>ClassInfo.memberReference</tt>, which drops them once an entry of the
+ * constant pool changes.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public final class MemberReference {
+
+	private final String owner;
+	private final String name;
+	private final String descriptor;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param owner
+	 *            the internal name of the class declaring the member
+	 * @param name
+	 *            the name of the member
+	 * @param descriptor
+	 *            the descriptor of the member
+	 */
+	public MemberReference(String owner, String name, String descriptor) {
+		this.owner = owner;
+		this.name = name;
+		this.descriptor = descriptor;
+	}
+
+	/**
+	 * Get the internal name of the class declaring the member.
+	 *
+	 * @return the owner
+	 */
+	public String owner() {
+		return owner;
+	}
+
+	/**
+	 * Get the name of the member.
+	 *
+	 * @return the name
+	 */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Get the descriptor of the member.
+	 *
+	 * @return the descriptor
+	 */
+	public String descriptor() {
+		return descriptor;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof MemberReference))
+			return false;
+		MemberReference reference = (MemberReference) object;
+		return owner.equals(reference.owner) && name.equals(reference.name) && descriptor.equals(reference.descriptor);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * owner.hashCode() + name.hashCode()) + descriptor.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return owner + "." + name + descriptor;
+	}
+}
@@ -10,16 +10,24 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import me.sedlar.bytecode.*;
 import me.sedlar.bytecode.io.BytecodeOutputStream;
 import me.sedlar.bytecode.io.BytecodeReader;
 import me.sedlar.bytecode.io.BytecodeWriter;
-import me.sedlar.bytecode.structure.attributes.CodeAttribute;
+import me.sedlar.bytecode.structure.attributes.*;
 import me.sedlar.bytecode.structure.flow.BasicBlock;
-import me.sedlar.bytecode.structure.flow.BlockType;
+import me.sedlar.bytecode.structure.flow.ClassHierarchy;
+import me.sedlar.bytecode.structure.flow.FrameCalculator;
+import me.sedlar.bytecode.structure.flow.StackCalculator;
 import me.sedlar.bytecode.structure.flow.graph.FlowGraph;
 import me.sedlar.bytecode.transform.TransformableBlock;
 import me.sedlar.bytecode.tree.NodeTree;
@@ -37,6 +45,17 @@ public class MethodInfo extends ClassMember {
 	private NodeTree tree;
 	private final FlowGraph graph = new FlowGraph(this);
 	private final List<BasicBlock> blocks = new LinkedList<>();
+	private volatile boolean codePending;
+	private boolean decoding;
+	private int codeModifications;
+	private int decodedModifications;
+	private volatile boolean codeTouched;
+	private int codeEdits;
+	private PackedCode packed;
+	private int packedModifications;
+	private int packedEdits;
+	private int encodedModifications = -1;
+	private int encodedEdits = -1;
 
 	/**
 	 * Factory method for creating <tt>MethodInfo</tt> structure from a
@@ -64,16 +83,78 @@ public class MethodInfo extends ClassMember {
 	@Override
 	public void read(DataInput in) throws InvalidByteCodeException, IOException {
 		super.read(in);
-		for (AttributeInfo attr : attributes()) {
-			if (attr instanceof CodeAttribute) {
-				try {
-					instructions.addAll(BytecodeReader.readBytecode(this, ((CodeAttribute) attr).code()));
-				} catch (IOException ignored) {
+		if (classInfo.lazy() || classInfo.parseOptions().packedCode())
+			codePending = true;
+		else
+			readCode();
+		if (debug)
+			debug("read ");
+	}
+
+	private void readCode() {
+		decoding = true;
+		try {
+			for (AttributeInfo attr : attributes()) {
+				if (attr instanceof CodeAttribute) {
+					byte[] code = ((CodeAttribute) attr).code();
+					int start = instructions.size();
+					instructions.ensureCapacity(start + BytecodeReader.count(code));
+					try {
+						BytecodeReader.readBytecode(this, code, instructions);
+					} catch (IOException e) {
+						// code that cannot be decoded is left out as a whole
+						instructions.subList(start, instructions.size()).clear();
+					}
 				}
 			}
+		} finally {
+			decoding = false;
 		}
-		if (debug)
-			debug("read ");
+		codeModifications = instructions.modifications();
+		decodedModifications = codeModifications;
+	}
+
+	@Override
+	public void markDirty() {
+		// instructions set themselves up while they are being decoded
+		if (!decoding) {
+			codeTouched = true;
+			codeEdits++;
+			super.markDirty();
+		}
+	}
+
+	/**
+	 * Checks whether the instructions may differ from the code they were
+	 * decoded from. Unlike <tt>codeModified</tt>, this is never undone.
+	 *
+	 * @return <t>true</t> if the instructions were changed since they were
+	 *         decoded, otherwise <t>false</t>.
+	 */
+	private boolean codeChanged() {
+		return codeTouched || instructions.modifications() != decodedModifications;
+	}
+
+	/**
+	 * Checks whether instructions were added, removed or replaced since the
+	 * code of this method was read.
+	 *
+	 * @return <t>true</t> if the instruction list was modified, otherwise
+	 *         <t>false</t>.
+	 */
+	boolean codeModified() {
+		return !codePending && instructions.modifications() != codeModifications;
+	}
+
+	void markCodeClean() {
+		codeModifications = instructions.modifications();
+	}
+
+	private synchronized void loadCode() {
+		if (!codePending)
+			return;
+		readCode();
+		codePending = false;
 	}
 
 	@Override
@@ -86,22 +167,198 @@ public class MethodInfo extends ClassMember {
 		for (int i = 0; i < attributesCount; i++) {
 			if (attributes[i] == null)
 				throw new InvalidByteCodeException("attribute " + i + " is null");
-			if (attributes[i] instanceof CodeAttribute) {
-				try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-					try (BytecodeOutputStream bos = new BytecodeOutputStream(baos)) {
-						BytecodeWriter.writeBytecode(instructions, bos);
-					}
-					((CodeAttribute) attributes[i]).setCode(baos.toByteArray());
-				} catch (IOException e) {
-					throw new RuntimeException("CodeAttribute failed to write");
-				}
+			// undecoded or unchanged code is still identical to the code attribute
+			if (attributes[i] instanceof CodeAttribute && !codePending && codeChanged() && !encoded()) {
+				encodeCode();
+				if (classInfo.parseOptions().computeMaxs())
+					StackCalculator.compute(this, (CodeAttribute) attributes[i]);
 			}
-			attributes[i].write(out);
+			attributes[i].writeOrCopy(out);
 		}
 		if (debug)
 			debug("wrote ");
 	}
 
+	private boolean encoded() {
+		return encodedModifications == instructions.modifications() && encodedEdits == codeEdits;
+	}
+
+	/**
+	 * Encodes the changed code of this method and works out its frames, as
+	 * well as its <tt>max_stack</tt> and <tt>max_locals</tt>, so that writing
+	 * it does not encode it again. The frames are left to be stored by the
+	 * returned calculator, as that adds to the constant pool.
+	 *
+	 * @param hierarchy
+	 *            the class hierarchy to merge reference types in
+	 * @return the calculator holding the frames, or <t>null</t> if the code
+	 *         was not changed or the class file predates frames
+	 */
+	FrameCalculator computeFrames(ClassHierarchy hierarchy) {
+		CodeAttribute code = codeAttribute();
+		if (code == null || codePending || !codeChanged())
+			return null;
+		encodeCode();
+		FrameCalculator calculator = null;
+		// the StackMapTable came with version 50, Java 6
+		if (classInfo.major() >= 50) {
+			calculator = new FrameCalculator(this, code, hierarchy);
+			// unreachable code was replaced by as many bits
+			if (calculator.analyze())
+				encodeCode();
+		}
+		StackCalculator.compute(this, code);
+		encodedModifications = instructions.modifications();
+		encodedEdits = codeEdits;
+		return calculator;
+	}
+
+	/**
+	 * Checks whether the code of this method was changed, so that it is
+	 * encoded when it is written.
+	 *
+	 * @return <t>true</t> if the code will be encoded, otherwise
+	 *         <t>false</t>.
+	 */
+	boolean codeEncoding() {
+		return !codePending && codeChanged() && codeAttribute() != null;
+	}
+
+	private CodeAttribute codeAttribute() {
+		for (AttributeInfo attr : attributes()) {
+			if (attr instanceof CodeAttribute)
+				return (CodeAttribute) attr;
+		}
+		return null;
+	}
+
+	/**
+	 * Lays out and encodes the instructions into the <tt>Code</tt>
+	 * attribute, moving the offsets held by the exception table, line numbers
+	 * and local variables along with the instructions they point at. Line
+	 * number and local variable tables that were kept undecoded are decoded
+	 * first once the code changes.
+	 *
+	 * @return the code as an array of bits
+	 */
+	private byte[] encodeCode() {
+		AbstractInstruction[] placed = instructions.toArray(new AbstractInstruction[instructions.size()]);
+		int[] offsets = new int[placed.length];
+		for (int i = 0; i < placed.length; i++)
+			offsets[i] = placed[i].offset();
+		byte[] bytes;
+		try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+			try (BytecodeOutputStream bos = new BytecodeOutputStream(baos)) {
+				BytecodeWriter.writeBytecode(instructions, bos);
+			}
+			bytes = baos.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException("CodeAttribute failed to write");
+		}
+		CodeAttribute code = codeAttribute();
+		if (code != null) {
+			// only replace code that changed, as replacing it marks the class as modified
+			boolean changed = !Arrays.equals(bytes, code.code());
+			if (changed)
+				decodeOffsetTables(code);
+			remapOffsets(code, placed, offsets, bytes.length);
+			if (changed)
+				code.setCode(bytes);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Decodes the raw line number and local variable tables of the code, so
+	 * that their offsets can be moved. A table whose bits cannot be decoded
+	 * is dropped, as its offsets would no longer match the code.
+	 */
+	private void decodeOffsetTables(CodeAttribute code) {
+		AttributeInfo[] attributes = code.attributes();
+		AttributeInfo[] decoded = new AttributeInfo[length(attributes)];
+		int count = 0;
+		boolean replaced = false;
+		for (int i = 0; i < decoded.length; i++) {
+			AttributeInfo attr = attributes[i];
+			if (attr != null && attr.getClass().equals(AttributeInfo.class) && offsetTable(attr)) {
+				try {
+					attr = attr.decode();
+				} catch (InvalidByteCodeException | IOException e) {
+					attr = null;
+				}
+				replaced = true;
+				if (attr == null)
+					continue;
+			}
+			decoded[count++] = attr;
+		}
+		if (replaced)
+			code.setAttributes(Arrays.copyOf(decoded, count));
+	}
+
+	private static boolean offsetTable(AttributeInfo attr) {
+		try {
+			switch (attr.name()) {
+				case LineNumberTableAttribute.ATTRIBUTE_NAME:
+				case LocalVariableTableAttribute.ATTRIBUTE_NAME:
+				case LocalVariableTypeTableAttribute.ATTRIBUTE_NAME:
+					return true;
+				default:
+					return false;
+			}
+		} catch (InvalidByteCodeException e) {
+			return false;
+		}
+	}
+
+	private void remapOffsets(CodeAttribute code, AbstractInstruction[] placed, int[] offsets, int length) {
+		Set<AbstractInstruction> present = Collections.newSetFromMap(new IdentityHashMap<>());
+		present.addAll(instructions);
+		TreeMap<Integer, Integer> moved = new TreeMap<>();
+		for (int i = 0; i < placed.length; i++) {
+			if (offsets[i] >= 0 && present.contains(placed[i]))
+				moved.putIfAbsent(offsets[i], placed[i].offset());
+		}
+		// offsets at which an instruction was removed move to the instruction that followed it
+		int oldLength = length(code.code());
+		for (ExceptionTableEntry entry : code.exceptionTable()) {
+			int start = remap(moved, oldLength, length, entry.start());
+			int end = remap(moved, oldLength, length, entry.end());
+			int handler = remap(moved, oldLength, length, entry.handler());
+			if (start != entry.start())
+				entry.setStart(start);
+			if (end != entry.end())
+				entry.setEnd(end);
+			if (handler != entry.handler())
+				entry.setHandler(handler);
+		}
+		for (AttributeInfo attr : code.attributes()) {
+			if (attr instanceof LineNumberTableAttribute) {
+				for (LineNumberTableEntry entry : ((LineNumberTableAttribute) attr).lineNumberTable()) {
+					int start = remap(moved, oldLength, length, entry.start());
+					if (start != entry.start())
+						entry.setStart(start);
+				}
+			} else if (attr instanceof LocalVariableCommonAttribute) {
+				for (LocalVariableCommonEntry entry : ((LocalVariableCommonAttribute) attr).localVariables()) {
+					int start = remap(moved, oldLength, length, entry.start());
+					int end = remap(moved, oldLength, length, entry.start() + entry.length());
+					if (start != entry.start())
+						entry.setStart(start);
+					if (end - start != entry.length())
+						entry.setLength(end - start);
+				}
+			}
+		}
+	}
+
+	private static int remap(TreeMap<Integer, Integer> moved, int oldLength, int length, int offset) {
+		if (offset >= oldLength)
+			return length;
+		Map.Entry<Integer, Integer> next = moved.ceilingEntry(offset);
+		return next != null ? next.getValue() : length;
+	}
+
 	@Override
 	protected void debug(String message) {
 		super.debug(message + "method with access flags " + accessFlags(accessFlags) + ", name_index " + nameIndex
@@ -119,9 +376,48 @@ public class MethodInfo extends ClassMember {
 	 * @return the instruction list for this method
 	 */
 	public QueryableInstructionList instructions() {
+		if (codePending)
+			loadCode();
 		return instructions;
 	}
 
+	/**
+	 * Get the code of this method packed into arrays, which are built on
+	 * first use without decoding the instructions. Once the instructions were
+	 * decoded and changed, the code is packed from them again whenever they
+	 * change.
+	 *
+	 * @return the packed code, which is empty if this method has no code
+	 */
+	public synchronized PackedCode packed() {
+		boolean changed = !codePending && codeChanged();
+		int modifications = changed ? instructions.modifications() : -1;
+		int edits = changed ? codeEdits : -1;
+		if (packed == null || modifications != packedModifications || edits != packedEdits) {
+			byte[] code = changed ? encodeCode() : null;
+			if (code == null) {
+				CodeAttribute attr = codeAttribute();
+				code = attr != null ? attr.code() : new byte[0];
+			}
+			packed = PackedCode.pack(this, code);
+			packedModifications = modifications;
+			packedEdits = edits;
+		}
+		return packed;
+	}
+
+	/**
+	 * Counts the instructions of this method with the given opcode, without
+	 * decoding them.
+	 *
+	 * @param opcode
+	 *            the opcode to count
+	 * @return the amount of instructions with the opcode
+	 */
+	public int count(Opcode opcode) {
+		return packed().count(opcode);
+	}
+
 	/**
 	 * Gets the NodeTree for this method.
 	 *
@@ -144,15 +440,6 @@ public class MethodInfo extends ClassMember {
 		return graph;
 	}
 
-	private BasicBlock targetOf(BasicBlock block) {
-		int targetIndex = block.targetIndex();
-		for (BasicBlock bb : blocks) {
-			if (targetIndex >= bb.low() && targetIndex <= bb.high())
-				return bb;
-		}
-		return null;
-	}
-
 	/**
 	 * Gets the basic blocks for this method
 	 *
@@ -161,36 +448,36 @@ public class MethodInfo extends ClassMember {
 	private List<BasicBlock> blocks() {
 		if (!blocks.isEmpty())
 			return blocks;
-		QueryableInstructionList list = new QueryableInstructionList();
-		int low = -1;
-		int index = -1;
-		for (AbstractInstruction ai : instructions()) {
-			int offset = ai.offset();
-			index = (offset > index ? offset : index + 1);
-			if (low == -1)
-				low = index;
-			list.add(ai);
-			if (ai instanceof BranchInstruction || ai.opcode().verbose().endsWith("return")) {
-				String label = AlphaLabel.get(blocks.size() + 1);
-				QueryableInstructionList clone = (QueryableInstructionList) list.clone();
-				blocks.add(new BasicBlock(label, this, clone, low, index));
-				list.clear();
-				low = -1;
-			}
-		}
-		List<BasicBlock> empty = new LinkedList<>();
-		for (BasicBlock block : blocks) {
-			if (block.type() == BlockType.EMPTY)
-				empty.add(block);
+		// the boundaries come from the packed code, the instructions are only sliced into blocks
+		PackedCode packed = packed();
+		int[] ends = packed.blockEnds();
+		int[] lows = new int[ends.length];
+		List<AbstractInstruction> instructions = ends.length > 0 ? instructions() : null;
+		int[] targets = new int[ends.length];
+		BasicBlock[] built = new BasicBlock[ends.length];
+		int first = 0;
+		for (int i = 0; i < ends.length; i++) {
+			int end = ends[i];
+			QueryableInstructionList list = new QueryableInstructionList();
+			list.addAll(instructions.subList(first, end + 1));
+			lows[i] = packed.offset(first);
+			targets[i] = packed.branch(end) ? packed.operand(end) : -1;
+			built[i] = new BasicBlock(AlphaLabel.get(i + 1), this, list, lows[i], packed.offset(end));
+			if (first == end && (packed.opcode(end) == Opcode.GOTO || packed.opcode(end) == Opcode.GOTO_W))
+				built[i] = null;
+			first = end + 1;
 		}
-		blocks.removeAll(empty);
 		BasicBlock previous = null;
-		for (BasicBlock block : blocks) {
+		for (int i = 0; i < built.length; i++) {
+			BasicBlock block = built[i];
+			if (block == null)
+				continue;
+			blocks.add(block);
 			if (previous != null) {
 				previous.setNext(block);
 				block.setPrevious(previous);
 			}
-			BasicBlock target = targetOf(block);
+			BasicBlock target = targetOf(built, lows, targets[i]);
 			if (target != null) {
 				block.setTarget(target);
 				block.addSuccessor(target);
@@ -217,6 +504,21 @@ public class MethodInfo extends ClassMember {
 		return blocks;
 	}
 
+	private static BasicBlock targetOf(BasicBlock[] blocks, int[] lows, int target) {
+		if (target < 0)
+			return null;
+		int index = Arrays.binarySearch(lows, target);
+		if (index < 0)
+			index = -index - 2;
+		// blocks that were left out as empty do not cover their offsets
+		for (; index >= 0; index--) {
+			BasicBlock block = blocks[index];
+			if (block != null)
+				return target <= block.high() ? block : null;
+		}
+		return null;
+	}
+
 	/**
 	 * Allows the given InstructionVisitor to be accepted
 	 *
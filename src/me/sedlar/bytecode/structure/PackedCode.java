@@ -0,0 +1,411 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure;
+
+import static me.sedlar.bytecode.Opcode.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import me.sedlar.bytecode.AbstractInstruction;
+import me.sedlar.bytecode.Opcode;
+import me.sedlar.bytecode.util.filter.InstructionFilter;
+
+/**
+ * The code of a method packed into parallel arrays holding the opcode, the
+ * main operand and the offset of every instruction, for analysis that only
+ * reads the code.
+ * <p>
+ * Instructions are numbered as in <tt>MethodInfo.instructions</tt>, so a
+ * <tt>wide</tt> prefix is an instruction of its own. The operand of an
+ * instruction is
+ * <ul>
+ * <li>the constant pool index for instructions that refer to the constant
+ * pool,</li>
+ * <li>the local variable for loads, stores, <tt>iinc</tt> and <tt>ret</tt>,
+ * including the implied ones such as <tt>aload_0</tt>,</li>
+ * <li>the offset jumped to for branches and the default offset for
+ * switches,</li>
+ * <li>the pushed value for <tt>bipush</tt> and <tt>sipush</tt> and the array
+ * type for <tt>newarray</tt>,</li>
+ * <li>and <t>0</t> for any other instruction.</li>
+ * </ul>
+ * The instruction objects are only decoded when they are asked for through
+ * <tt>instruction</tt> or <tt>filter</tt>.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public final class PackedCode {
+
+	private final MethodInfo method;
+	private final byte[] code;
+	private final byte[] opcodes;
+	private final int[] operands;
+	private final int[] offsets;
+
+	private PackedCode(MethodInfo method, byte[] code, byte[] opcodes, int[] operands, int[] offsets) {
+		this.method = method;
+		this.code = code;
+		this.opcodes = opcodes;
+		this.operands = operands;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Packs the given code.
+	 * <p>
+	 * Code holding an invalid or truncated instruction is packed without any
+	 * instructions, as it is left out as a whole when it is decoded.
+	 *
+	 * @param method
+	 *            the method the code belongs to
+	 * @param code
+	 *            the code as an array of bits
+	 * @return the packed code
+	 */
+	public static PackedCode pack(MethodInfo method, byte[] code) {
+		int count = 0;
+		int pc = 0;
+		boolean wide = false;
+		while (pc < code.length) {
+			int length = Opcode.length(code, 0, code.length, pc, wide);
+			if (length < 0)
+				return new PackedCode(method, code, new byte[0], new int[0], new int[0]);
+			wide = (code[pc] & 0xff) == WIDE.id();
+			pc += length;
+			count++;
+		}
+		byte[] opcodes = new byte[count];
+		int[] operands = new int[count];
+		int[] offsets = new int[count];
+		pc = 0;
+		wide = false;
+		for (int i = 0; i < count; i++) {
+			Opcode opcode = Opcode.fromBytecode(code[pc] & 0xff);
+			opcodes[i] = (byte) opcode.id();
+			operands[i] = operand(code, pc, opcode, wide);
+			offsets[i] = pc;
+			pc += Opcode.length(code, 0, code.length, pc, wide);
+			wide = opcode == WIDE;
+		}
+		return new PackedCode(method, code, opcodes, operands, offsets);
+	}
+
+	private static int operand(byte[] code, int pc, Opcode opcode, boolean wide) {
+		if (opcode.withinRange(ILOAD, ALOAD) || opcode.withinRange(ISTORE, ASTORE) || opcode == IINC
+				|| opcode == RET || opcode == NEWARRAY)
+			return wide ? u2(code, pc + 1) : code[pc + 1] & 0xff;
+		if (opcode.withinRange(ILOAD_0, ALOAD_3))
+			return (opcode.id() - ILOAD_0.id()) % 4;
+		if (opcode.withinRange(ISTORE_0, ASTORE_3))
+			return (opcode.id() - ISTORE_0.id()) % 4;
+		if (branch(opcode))
+			return pc + (short) u2(code, pc + 1);
+		switch (opcode) {
+			case BIPUSH:
+				return code[pc + 1];
+			case SIPUSH:
+				return (short) u2(code, pc + 1);
+			case LDC:
+				return code[pc + 1] & 0xff;
+			case LDC_W:
+			case LDC2_W:
+			case GETSTATIC:
+			case PUTSTATIC:
+			case GETFIELD:
+			case PUTFIELD:
+			case INVOKEVIRTUAL:
+			case INVOKESPECIAL:
+			case INVOKESTATIC:
+			case INVOKEINTERFACE:
+			case INVOKEDYNAMIC:
+			case NEW:
+			case ANEWARRAY:
+			case CHECKCAST:
+			case INSTANCEOF:
+			case MULTIANEWARRAY:
+				return u2(code, pc + 1);
+			case TABLESWITCH:
+			case LOOKUPSWITCH:
+				return pc + s4(code, Opcode.switchOperands(pc));
+			case GOTO_W:
+			case JSR_W:
+				return pc + s4(code, pc + 1);
+			default:
+				return 0;
+		}
+	}
+
+	private static boolean branch(Opcode opcode) {
+		return opcode.withinRange(IFEQ, JSR) || opcode == IFNULL || opcode == IFNONNULL;
+	}
+
+	private static int u2(byte[] code, int index) {
+		return ((code[index] & 0xff) << 8) | (code[index + 1] & 0xff);
+	}
+
+	private static int s4(byte[] code, int index) {
+		return (code[index] << 24) | ((code[index + 1] & 0xff) << 16) | ((code[index + 2] & 0xff) << 8)
+				| (code[index + 3] & 0xff);
+	}
+
+	/**
+	 * Get the method this code belongs to.
+	 *
+	 * @return the method
+	 */
+	public MethodInfo method() {
+		return method;
+	}
+
+	/**
+	 * Get the amount of instructions.
+	 *
+	 * @return the amount of instructions
+	 */
+	public int size() {
+		return opcodes.length;
+	}
+
+	/**
+	 * Get the opcode of the instruction at the given index.
+	 *
+	 * @param index
+	 *            the index of the instruction
+	 * @return the opcode
+	 */
+	public int opcodeId(int index) {
+		return opcodes[index] & 0xff;
+	}
+
+	/**
+	 * Get the opcode of the instruction at the given index.
+	 *
+	 * @param index
+	 *            the index of the instruction
+	 * @return the opcode
+	 */
+	public Opcode opcode(int index) {
+		return Opcode.fromBytecode(opcodes[index] & 0xff);
+	}
+
+	/**
+	 * Get the operand of the instruction at the given index.
+	 *
+	 * @param index
+	 *            the index of the instruction
+	 * @return the operand
+	 */
+	public int operand(int index) {
+		return operands[index];
+	}
+
+	/**
+	 * Get the offset of the instruction at the given index within the code.
+	 *
+	 * @param index
+	 *            the index of the instruction
+	 * @return the offset
+	 */
+	public int offset(int index) {
+		return offsets[index];
+	}
+
+	/**
+	 * Get the index of the instruction at the given offset.
+	 *
+	 * @param offset
+	 *            the offset within the code
+	 * @return the index, or <t>-1</t> if no instruction starts at the offset
+	 */
+	public int indexAt(int offset) {
+		int index = Arrays.binarySearch(offsets, offset);
+		return index < 0 ? -1 : index;
+	}
+
+	/**
+	 * Counts the instructions with the given opcode.
+	 *
+	 * @param opcode
+	 *            the opcode to count
+	 * @return the amount of instructions with the opcode
+	 */
+	public int count(Opcode opcode) {
+		byte id = (byte) opcode.id();
+		int count = 0;
+		for (byte b : opcodes) {
+			if (b == id)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Get the index of the first instruction with the given opcode, starting
+	 * at the given index.
+	 *
+	 * @param opcode
+	 *            the opcode to look for
+	 * @param from
+	 *            the index to start at
+	 * @return the index, or <t>-1</t> if there is no such instruction
+	 */
+	public int indexOf(Opcode opcode, int from) {
+		byte id = (byte) opcode.id();
+		for (int i = Math.max(from, 0); i < opcodes.length; i++) {
+			if (opcodes[i] == id)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the indices of the instructions with any of the given opcodes.
+	 *
+	 * @param opcodes
+	 *            the opcodes to look for
+	 * @return the indices, in ascending order
+	 */
+	public int[] indices(Opcode... opcodes) {
+		boolean[] wanted = new boolean[256];
+		for (Opcode opcode : opcodes)
+			wanted[opcode.id()] = true;
+		int[] indices = new int[this.opcodes.length];
+		int count = 0;
+		for (int i = 0; i < this.opcodes.length; i++) {
+			if (wanted[this.opcodes[i] & 0xff])
+				indices[count++] = i;
+		}
+		return Arrays.copyOf(indices, count);
+	}
+
+	/**
+	 * Get the field or method that the instruction at the given index refers
+	 * to.
+	 *
+	 * @param index
+	 *            the index of the instruction
+	 * @return the reference, or <t>null</t> if the instruction does not refer
+	 *         to a field or method, or its entry is of a kind that the
+	 *         instruction does not accept
+	 */
+	public MemberReference memberReference(int index) {
+		Opcode opcode = opcode(index);
+		return opcode.withinRange(GETSTATIC, INVOKEINTERFACE)
+				? method.classInfo().memberReference(opcode, operands[index]) : null;
+	}
+
+	/**
+	 * Get the constant that the <tt>ldc</tt>, <tt>ldc_w</tt> or
+	 * <tt>ldc2_w</tt> instruction at the given index pushes.
+	 *
+	 * @param index
+	 *            the index of the instruction
+	 * @return the constant, or <t>null</t> for any other instruction and for
+	 *         constants that are not numbers or strings
+	 */
+	public Object constant(int index) {
+		return opcode(index).withinRange(LDC, LDC2_W) ? method.classInfo().constantValue(operands[index]) : null;
+	}
+
+	/**
+	 * Get the offsets that the switch at the given index jumps to, not
+	 * including its default offset.
+	 *
+	 * @param index
+	 *            the index of the instruction
+	 * @return the target offsets, or an empty array if the instruction is not
+	 *         a switch
+	 */
+	public int[] switchTargets(int index) {
+		Opcode opcode = opcode(index);
+		int pc = offsets[index];
+		int padded = Opcode.switchOperands(pc);
+		int[] targets;
+		if (opcode == TABLESWITCH) {
+			targets = new int[s4(code, padded + 8) - s4(code, padded + 4) + 1];
+			for (int i = 0; i < targets.length; i++)
+				targets[i] = pc + s4(code, padded + 12 + i * 4);
+		} else if (opcode == LOOKUPSWITCH) {
+			targets = new int[s4(code, padded + 4)];
+			for (int i = 0; i < targets.length; i++)
+				targets[i] = pc + s4(code, padded + 12 + i * 8);
+		} else {
+			targets = new int[0];
+		}
+		return targets;
+	}
+
+	/**
+	 * Get the indices of the instructions that end the basic blocks of the
+	 * method. A block ends with a branch other than <tt>goto_w</tt> or
+	 * <tt>jsr_w</tt>, or with a return; instructions following the last such
+	 * instruction are not part of a block.
+	 *
+	 * @return the indices, in ascending order
+	 */
+	public int[] blockEnds() {
+		int[] ends = new int[opcodes.length];
+		int count = 0;
+		for (int i = 0; i < opcodes.length; i++) {
+			Opcode opcode = opcode(i);
+			if (branch(opcode) || opcode.withinRange(IRETURN, RETURN))
+				ends[count++] = i;
+		}
+		return Arrays.copyOf(ends, count);
+	}
+
+	/**
+	 * Checks whether the instruction at the given index is a branch ending a
+	 * basic block.
+	 *
+	 * @param index
+	 *            the index of the instruction
+	 * @return <t>true</t> if it is such a branch, otherwise <t>false</t>.
+	 */
+	public boolean branch(int index) {
+		return branch(opcode(index));
+	}
+
+	/**
+	 * Get the instruction at the given index. This decodes the instructions
+	 * of the method if they have not been decoded yet.
+	 *
+	 * @param index
+	 *            the index of the instruction
+	 * @return the instruction
+	 */
+	public AbstractInstruction instruction(int index) {
+		return method.instructions().get(index);
+	}
+
+	/**
+	 * Get the instructions accepted by the given filter. Only instructions
+	 * with the opcode of the filter, if it has one, are decoded and passed to
+	 * it.
+	 *
+	 * @param filter
+	 *            the filter to apply
+	 * @return the accepted instructions
+	 */
+	public List<AbstractInstruction> filter(InstructionFilter filter) {
+		List<AbstractInstruction> accepted = new ArrayList<>();
+		Opcode opcode = filter.opcode();
+		int[] candidates = opcode != null ? indices(opcode) : null;
+		int count = candidates != null ? candidates.length : opcodes.length;
+		if (count == 0)
+			return accepted;
+		List<AbstractInstruction> instructions = method.instructions();
+		for (int i = 0; i < count; i++) {
+			AbstractInstruction ai = instructions.get(candidates != null ? candidates[i] : i);
+			if (filter.validate(ai))
+				accepted.add(ai);
+		}
+		return accepted;
+	}
+}
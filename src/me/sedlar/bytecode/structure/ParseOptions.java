@@ -0,0 +1,325 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure;
+
+import me.sedlar.bytecode.structure.attributes.*;
+import me.sedlar.bytecode.structure.flow.ClassHierarchy;
+
+/**
+ * Options controlling how much of a class file is decoded when it is read.
+ * <p>
+ * An attribute that is skipped is not decoded into its structure but kept as
+ * a plain <tt>AttributeInfo</tt> holding its raw bits, which are written back
+ * unchanged, so a class read with any of these options still round-trips. A
+ * method whose <tt>Code</tt> attribute is skipped has an empty instruction
+ * list; instructions added to it are not written.
+ * <p>
+ * The options are read while classes are parsed, so they must not be changed
+ * while a class or archive that was given them is being read.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class ParseOptions {
+
+	private boolean lazy;
+	private boolean skipDebug;
+	private boolean skipAnnotations;
+	private boolean skipFrames;
+	private boolean skipCode;
+	private boolean packedCode;
+	private boolean computeMaxs;
+	private boolean computeFrames;
+	private ClassHierarchy classHierarchy;
+	private boolean rawAttributes;
+
+	/**
+	 * Checks whether the fields, methods and code are read on first use.
+	 *
+	 * @return <t>true</t> if they are read on first use, otherwise
+	 *         <t>false</t>.
+	 */
+	public boolean lazy() {
+		return lazy;
+	}
+
+	/**
+	 * Sets whether the fields, methods and code are read on first use.
+	 *
+	 * @param lazy
+	 *            <t>true</t> to defer reading them until they are first
+	 *            requested, otherwise <t>false</t>.
+	 * @return these options
+	 */
+	public ParseOptions setLazy(boolean lazy) {
+		this.lazy = lazy;
+		return this;
+	}
+
+	/**
+	 * Checks whether debug information is kept undecoded.
+	 *
+	 * @return <t>true</t> if debug information is kept undecoded, otherwise
+	 *         <t>false</t>.
+	 */
+	public boolean skipDebug() {
+		return skipDebug;
+	}
+
+	/**
+	 * Sets whether debug information is kept undecoded. This covers the
+	 * <tt>SourceFile</tt>, <tt>LineNumberTable</tt>,
+	 * <tt>LocalVariableTable</tt>, <tt>LocalVariableTypeTable</tt> and
+	 * <tt>MethodParameters</tt> attributes.
+	 *
+	 * @param skipDebug
+	 *            <t>true</t> to keep debug information undecoded, otherwise
+	 *            <t>false</t>.
+	 * @return these options
+	 */
+	public ParseOptions setSkipDebug(boolean skipDebug) {
+		this.skipDebug = skipDebug;
+		return this;
+	}
+
+	/**
+	 * Checks whether annotations are kept undecoded.
+	 *
+	 * @return <t>true</t> if annotations are kept undecoded, otherwise
+	 *         <t>false</t>.
+	 */
+	public boolean skipAnnotations() {
+		return skipAnnotations;
+	}
+
+	/**
+	 * Sets whether annotations are kept undecoded. This covers every
+	 * <tt>Runtime*Annotations</tt> attribute and <tt>AnnotationDefault</tt>.
+	 *
+	 * @param skipAnnotations
+	 *            <t>true</t> to keep annotations undecoded, otherwise
+	 *            <t>false</t>.
+	 * @return these options
+	 */
+	public ParseOptions setSkipAnnotations(boolean skipAnnotations) {
+		this.skipAnnotations = skipAnnotations;
+		return this;
+	}
+
+	/**
+	 * Checks whether stack map frames are kept undecoded.
+	 *
+	 * @return <t>true</t> if stack map frames are kept undecoded, otherwise
+	 *         <t>false</t>.
+	 */
+	public boolean skipFrames() {
+		return skipFrames;
+	}
+
+	/**
+	 * Sets whether the <tt>StackMapTable</tt> attribute is kept undecoded.
+	 *
+	 * @param skipFrames
+	 *            <t>true</t> to keep stack map frames undecoded, otherwise
+	 *            <t>false</t>.
+	 * @return these options
+	 */
+	public ParseOptions setSkipFrames(boolean skipFrames) {
+		this.skipFrames = skipFrames;
+		return this;
+	}
+
+	/**
+	 * Checks whether code is kept undecoded.
+	 *
+	 * @return <t>true</t> if code is kept undecoded, otherwise <t>false</t>.
+	 */
+	public boolean skipCode() {
+		return skipCode;
+	}
+
+	/**
+	 * Sets whether the <tt>Code</tt> attribute is kept undecoded, together
+	 * with the attributes nested in it.
+	 *
+	 * @param skipCode
+	 *            <t>true</t> to keep code undecoded, otherwise <t>false</t>.
+	 * @return these options
+	 */
+	public ParseOptions setSkipCode(boolean skipCode) {
+		this.skipCode = skipCode;
+		return this;
+	}
+
+	/**
+	 * Checks whether code is only decoded into instructions when they are
+	 * asked for.
+	 *
+	 * @return <t>true</t> if code is decoded on demand, otherwise
+	 *         <t>false</t>.
+	 */
+	public boolean packedCode() {
+		return packedCode;
+	}
+
+	/**
+	 * Sets whether code is only decoded into instructions when they are
+	 * asked for. Until then, <tt>MethodInfo.packed</tt> answers the code
+	 * packed into arrays, which is far smaller than the instructions, for
+	 * counting opcodes, filtering and building blocks.
+	 *
+	 * @param packedCode
+	 *            <t>true</t> to decode code on demand, otherwise
+	 *            <t>false</t>.
+	 * @return these options
+	 */
+	public ParseOptions setPackedCode(boolean packedCode) {
+		this.packedCode = packedCode;
+		return this;
+	}
+
+	/**
+	 * Checks whether <tt>max_stack</tt> and <tt>max_locals</tt> are computed
+	 * when changed code is written.
+	 *
+	 * @return <t>true</t> if they are computed, otherwise <t>false</t>.
+	 */
+	public boolean computeMaxs() {
+		return computeMaxs;
+	}
+
+	/**
+	 * Sets whether <tt>max_stack</tt> and <tt>max_locals</tt> are computed
+	 * when changed code is written. Methods whose instructions were not
+	 * changed keep the values they were read with.
+	 *
+	 * @param computeMaxs
+	 *            <t>true</t> to compute them, otherwise <t>false</t>.
+	 * @return these options
+	 */
+	public ParseOptions setComputeMaxs(boolean computeMaxs) {
+		this.computeMaxs = computeMaxs;
+		return this;
+	}
+
+	/**
+	 * Checks whether the <tt>StackMapTable</tt> is computed when changed code
+	 * is written.
+	 *
+	 * @return <t>true</t> if it is computed, otherwise <t>false</t>.
+	 */
+	public boolean computeFrames() {
+		return computeFrames;
+	}
+
+	/**
+	 * Sets whether the <tt>StackMapTable</tt>, as well as <tt>max_stack</tt>
+	 * and <tt>max_locals</tt>, are computed when changed code is written.
+	 * Methods whose instructions were not changed keep the frames they were
+	 * read with, and classes older than version 50 get no frames.
+	 * <p>
+	 * Unreachable code in a changed method is replaced by <tt>nop</tt>s
+	 * ending in <tt>athrow</tt>, as no frame could describe it otherwise.
+	 *
+	 * @param computeFrames
+	 *            <t>true</t> to compute them, otherwise <t>false</t>.
+	 * @return these options
+	 * @see #setClassHierarchy(ClassHierarchy)
+	 */
+	public ParseOptions setComputeFrames(boolean computeFrames) {
+		this.computeFrames = computeFrames;
+		return this;
+	}
+
+	/**
+	 * Get the class hierarchy that the common super classes of the types
+	 * merged in frames are looked up in.
+	 *
+	 * @return the class hierarchy, which is the runtime class hierarchy
+	 *         unless another one was set
+	 */
+	public ClassHierarchy classHierarchy() {
+		return classHierarchy != null ? classHierarchy : ClassHierarchy.runtime();
+	}
+
+	/**
+	 * Sets the class hierarchy that the common super classes of the types
+	 * merged in frames are looked up in. It has to know every class that
+	 * the changed code merges values of, except for the written class
+	 * itself.
+	 *
+	 * @param classHierarchy
+	 *            the class hierarchy, or <t>null</t> for the runtime class
+	 *            hierarchy
+	 * @return these options
+	 */
+	public ParseOptions setClassHierarchy(ClassHierarchy classHierarchy) {
+		this.classHierarchy = classHierarchy;
+		return this;
+	}
+
+	/**
+	 * Checks whether attributes keep their original bits, so that they are
+	 * copied on write for as long as they are not modified.
+	 *
+	 * @return <t>true</t> if attributes keep their original bits, otherwise
+	 *         <t>false</t>.
+	 */
+	public boolean rawAttributes() {
+		return rawAttributes;
+	}
+
+	/**
+	 * Sets whether attributes keep their original bits, so that they are
+	 * copied on write for as long as they are not modified. This is off by
+	 * default. When it is on, a class read in eager mode retains the buffer
+	 * it was read from, as a lazy class does, and its UTF-8 constants share
+	 * that buffer. The buffer must then not be modified or reused by the
+	 * caller.
+	 *
+	 * @param rawAttributes
+	 *            <t>true</t> to keep the original bits, otherwise
+	 *            <t>false</t>.
+	 * @return these options
+	 */
+	public ParseOptions setRawAttributes(boolean rawAttributes) {
+		this.rawAttributes = rawAttributes;
+		return this;
+	}
+
+	/**
+	 * Checks whether the attribute with the given name is kept undecoded.
+	 *
+	 * @param attributeName
+	 *            the name of the attribute
+	 * @return <t>true</t> if the attribute is kept undecoded, otherwise
+	 *         <t>false</t>.
+	 */
+	public boolean skips(String attributeName) {
+		switch (attributeName) {
+			case SourceFileAttribute.ATTRIBUTE_NAME:
+			case LineNumberTableAttribute.ATTRIBUTE_NAME:
+			case LocalVariableTableAttribute.ATTRIBUTE_NAME:
+			case LocalVariableTypeTableAttribute.ATTRIBUTE_NAME:
+			case MethodParametersAttribute.ATTRIBUTE_NAME:
+				return skipDebug;
+			case RuntimeVisibleAnnotationsAttribute.ATTRIBUTE_NAME:
+			case RuntimeInvisibleAnnotationsAttribute.ATTRIBUTE_NAME:
+			case RuntimeVisibleParameterAnnotationsAttribute.ATTRIBUTE_NAME:
+			case RuntimeInvisibleParameterAnnotationsAttribute.ATTRIBUTE_NAME:
+			case RuntimeVisibleTypeAnnotationsAttribute.ATTRIBUTE_NAME:
+			case RuntimeInvisibleTypeAnnotationsAttribute.ATTRIBUTE_NAME:
+			case AnnotationDefaultAttribute.ATTRIBUTE_NAME:
+				return skipAnnotations;
+			case StackMapTableAttribute.ATTRIBUTE_NAME:
+				return skipFrames;
+			case CodeAttribute.ATTRIBUTE_NAME:
+				return skipCode;
+			default:
+				return false;
+		}
+	}
+}
@@ -0,0 +1,367 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure;
+
+import java.io.UTFDataFormatException;
+
+import me.sedlar.bytecode.io.ByteCursor;
+
+/**
+ * An interning table of the modified UTF-8 strings found in constant pools.
+ * <p>
+ * Classes read with a table resolve every <tt>CONSTANT_Utf8_info</tt> entry
+ * to the canonical <tt>Symbol</tt> for its bits, so a name or descriptor
+ * that appears in many classes is held once, and the strings returned by
+ * <tt>ConstantUtf8Info.string</tt>, <tt>ClassMember.name</tt> and
+ * <tt>ClassMember.descriptor</tt> are the same instance wherever they are
+ * equal. Lookups hash the bits in place, so resolving a known symbol
+ * allocates nothing. The table is safe for concurrent use and keeps every
+ * symbol until it is discarded.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class SymbolTable {
+
+	private static final int STRIPES = 16;
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	/**
+	 * Constructor.
+	 */
+	public SymbolTable() {
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+	}
+
+	/**
+	 * Hash the given modified UTF-8 bits, consistently with
+	 * <tt>ConstantUtf8Info.hashCode</tt>.
+	 *
+	 * @param bytes
+	 *            the array holding the bits
+	 * @param offset
+	 *            the offset of the bits
+	 * @param length
+	 *            the amount of bits
+	 * @return the hash
+	 */
+	public static int hash(byte[] bytes, int offset, int length) {
+		int h = 1;
+		for (int i = offset, end = offset + length; i < end; i++)
+			h = 31 * h + bytes[i];
+		return h;
+	}
+
+	/**
+	 * Hash the modified UTF-8 encoding of the given string without encoding
+	 * it.
+	 *
+	 * @param string
+	 *            the string
+	 * @return the hash
+	 */
+	public static int hash(String string) {
+		int h = 1;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c != 0 && c < 0x80) {
+				h = 31 * h + (byte) c;
+			} else if (c < 0x800) {
+				h = 31 * h + (byte) (0xc0 | (c >> 6));
+				h = 31 * h + (byte) (0x80 | (c & 0x3f));
+			} else {
+				h = 31 * h + (byte) (0xe0 | (c >> 12));
+				h = 31 * h + (byte) (0x80 | ((c >> 6) & 0x3f));
+				h = 31 * h + (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Encode the given string as modified UTF-8.
+	 *
+	 * @param string
+	 *            the string
+	 * @return the encoded bits
+	 */
+	public static byte[] encode(String string) {
+		int size = 0;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			size += (c != 0 && c < 0x80) ? 1 : c < 0x800 ? 2 : 3;
+		}
+		byte[] data = new byte[size];
+		int position = 0;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c != 0 && c < 0x80) {
+				data[position++] = (byte) c;
+			} else if (c < 0x800) {
+				data[position++] = (byte) (0xc0 | (c >> 6));
+				data[position++] = (byte) (0x80 | (c & 0x3f));
+			} else {
+				data[position++] = (byte) (0xe0 | (c >> 12));
+				data[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				data[position++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		return data;
+	}
+
+	private Stripe stripe(int hash) {
+		return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+	}
+
+	/**
+	 * Get the canonical symbol for the given bits, adding a copy of them if
+	 * they are not in this table yet.
+	 *
+	 * @param bytes
+	 *            the array holding the bits
+	 * @param offset
+	 *            the offset of the bits
+	 * @param length
+	 *            the amount of bits
+	 * @return the canonical symbol
+	 */
+	public Symbol intern(byte[] bytes, int offset, int length) {
+		int hash = hash(bytes, offset, length);
+		return stripe(hash).intern(bytes, offset, length, hash);
+	}
+
+	/**
+	 * Get the canonical symbol for the given string, adding it if it is not
+	 * in this table yet.
+	 *
+	 * @param string
+	 *            the string
+	 * @return the canonical symbol
+	 */
+	public Symbol intern(String string) {
+		Symbol symbol = lookup(string);
+		if (symbol != null)
+			return symbol;
+		byte[] bytes = encode(string);
+		symbol = intern(bytes, 0, bytes.length);
+		symbol.offer(string);
+		return symbol;
+	}
+
+	/**
+	 * Get the canonical symbol for the given string without adding it.
+	 *
+	 * @param string
+	 *            the string
+	 * @return the canonical symbol, or <t>null</t> if no class read with this
+	 *         table contains the string
+	 */
+	public Symbol lookup(String string) {
+		int hash = hash(string);
+		return stripe(hash).lookup(string, hash);
+	}
+
+	/**
+	 * Get the canonical instance of the given string.
+	 *
+	 * @param string
+	 *            the string
+	 * @return the canonical instance, or <t>null</t> if no class read with
+	 *         this table contains the string
+	 */
+	public String canonical(String string) {
+		Symbol symbol = lookup(string);
+		return symbol != null ? symbol.string() : null;
+	}
+
+	/**
+	 * Get the amount of symbols in this table.
+	 *
+	 * @return the amount of symbols
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * A canonical modified UTF-8 string.
+	 */
+	public static final class Symbol {
+
+		private final byte[] bytes;
+		private final int hash;
+		private volatile String string;
+
+		private Symbol(byte[] bytes, int hash) {
+			this.bytes = bytes;
+			this.hash = hash;
+		}
+
+		/**
+		 * Get the modified UTF-8 bits of this symbol, which must not be
+		 * modified.
+		 *
+		 * @return the bits
+		 */
+		public byte[] bytes() {
+			return bytes;
+		}
+
+		/**
+		 * Get the amount of modified UTF-8 bits of this symbol.
+		 *
+		 * @return the amount of bits
+		 */
+		public int length() {
+			return bytes.length;
+		}
+
+		/**
+		 * Get the canonical string of this symbol, decoding it on the first
+		 * call.
+		 *
+		 * @return the string
+		 */
+		public String string() {
+			String string = this.string;
+			if (string == null) {
+				try {
+					string = ByteCursor.decodeUTF(bytes, 0, bytes.length);
+				} catch (UTFDataFormatException e) {
+					throw new IllegalStateException("invalid modified UTF-8", e);
+				}
+				string = offer(string);
+			}
+			return string;
+		}
+
+		private synchronized String offer(String string) {
+			if (this.string == null)
+				this.string = string;
+			return this.string;
+		}
+
+		private boolean matches(String other) {
+			String string = this.string;
+			if (string != null)
+				return string.equals(other);
+			int position = 0;
+			for (int i = 0; i < other.length(); i++) {
+				char c = other.charAt(i);
+				if (c != 0 && c < 0x80) {
+					if (position + 1 > bytes.length || bytes[position++] != (byte) c)
+						return false;
+				} else if (c < 0x800) {
+					if (position + 2 > bytes.length || bytes[position++] != (byte) (0xc0 | (c >> 6))
+							|| bytes[position++] != (byte) (0x80 | (c & 0x3f)))
+						return false;
+				} else {
+					if (position + 3 > bytes.length || bytes[position++] != (byte) (0xe0 | (c >> 12))
+							|| bytes[position++] != (byte) (0x80 | ((c >> 6) & 0x3f))
+							|| bytes[position++] != (byte) (0x80 | (c & 0x3f)))
+						return false;
+				}
+			}
+			return position == bytes.length;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public String toString() {
+			return string();
+		}
+	}
+
+	/**
+	 * An open-addressing hash table holding a share of the symbols.
+	 */
+	private static final class Stripe {
+
+		// the hashes and bits are kept apart so probing only touches a symbol once it is found
+		private Symbol[] table = new Symbol[256];
+		private int[] hashes = new int[256];
+		private byte[][] keys = new byte[256][];
+		private int size;
+
+		private synchronized Symbol intern(byte[] bytes, int offset, int length, int hash) {
+			int mask = table.length - 1;
+			int slot = mix(hash) & mask;
+			Symbol symbol;
+			while ((symbol = table[slot]) != null) {
+				if (hashes[slot] == hash && matches(keys[slot], bytes, offset, length))
+					return symbol;
+				slot = (slot + 1) & mask;
+			}
+			byte[] copy = new byte[length];
+			System.arraycopy(bytes, offset, copy, 0, length);
+			symbol = new Symbol(copy, hash);
+			table[slot] = symbol;
+			hashes[slot] = hash;
+			keys[slot] = copy;
+			if (++size > table.length / 2)
+				grow();
+			return symbol;
+		}
+
+		private synchronized Symbol lookup(String string, int hash) {
+			int mask = table.length - 1;
+			int slot = mix(hash) & mask;
+			Symbol symbol;
+			while ((symbol = table[slot]) != null) {
+				if (hashes[slot] == hash && symbol.matches(string))
+					return symbol;
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+
+		private void grow() {
+			Symbol[] old = table;
+			table = new Symbol[old.length << 1];
+			hashes = new int[table.length];
+			keys = new byte[table.length][];
+			int mask = table.length - 1;
+			for (Symbol symbol : old) {
+				if (symbol == null)
+					continue;
+				int slot = mix(symbol.hash) & mask;
+				while (table[slot] != null)
+					slot = (slot + 1) & mask;
+				table[slot] = symbol;
+				hashes[slot] = symbol.hash;
+				keys[slot] = symbol.bytes;
+			}
+		}
+
+		private static boolean matches(byte[] key, byte[] bytes, int offset, int length) {
+			if (length != key.length)
+				return false;
+			for (int i = 0; i < length; i++) {
+				if (key[i] != bytes[offset + i])
+					return false;
+			}
+			return true;
+		}
+
+		private static int mix(int hash) {
+			// the low bits already picked the stripe, so spread the high bits
+			hash *= 0x9e3779b9;
+			return hash ^ (hash >>> 15);
+		}
+	}
+}
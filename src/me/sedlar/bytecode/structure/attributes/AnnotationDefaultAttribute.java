@@ -42,6 +42,7 @@ public class AnnotationDefaultAttribute extends AttributeInfo {
 	 *            the <tt>default_value</tt>
 	 */
 	public void setValue(Value defaultValue) {
+		markDirty();
 		this.defaultValue = defaultValue;
 	}
 
@@ -48,6 +48,7 @@ public class BootstrapMethodsAttribute extends AttributeInfo {
 	 *            the array
 	 */
 	public void setMethods(BootstrapMethodsEntry[] methods) {
+		markDirty();
 		this.methods = methods;
 	}
 
@@ -65,6 +65,7 @@ public class BootstrapMethodsEntry extends AbstractStructure {
 	 *            the index
 	 */
 	public void setMethodRefIndex(int methodRefIndex) {
+		markDirty();
 		this.methodRefIndex = methodRefIndex;
 	}
 
@@ -86,6 +87,7 @@ public class BootstrapMethodsEntry extends AbstractStructure {
 	 *            the argument references
 	 */
 	public void setArgumentIndices(int argumentIndices[]) {
+		markDirty();
 		this.argumentIndices = argumentIndices;
 	}
 
@@ -47,6 +47,7 @@ public class CodeAttribute extends AttributeInfo {
 	 *            the stack depth
 	 */
 	public void setMaxStack(int maxStack) {
+		markDirty();
 		this.maxStack = maxStack;
 	}
 
@@ -66,6 +67,7 @@ public class CodeAttribute extends AttributeInfo {
 	 *            the maximum number
 	 */
 	public void setMaxLocals(int maxLocals) {
+		markDirty();
 		this.maxLocals = maxLocals;
 	}
 
@@ -85,6 +87,7 @@ public class CodeAttribute extends AttributeInfo {
 	 *            the array
 	 */
 	public void setCode(byte[] code) {
+		markDirty();
 		this.code = code;
 	}
 
@@ -106,6 +109,7 @@ public class CodeAttribute extends AttributeInfo {
 	 *            the array
 	 */
 	public void setExceptionTable(ExceptionTableEntry[] exceptionTable) {
+		markDirty();
 		this.exceptionTable = exceptionTable;
 	}
 
@@ -44,6 +44,7 @@ public class ConstantValueAttribute extends AttributeInfo {
 	 *            the index
 	 */
 	public void setConstantIndex(int constantValueIndex) {
+		markDirty();
 		this.constantValueIndex = constantValueIndex;
 	}
 
@@ -94,6 +94,7 @@ public class ExceptionTableEntry extends AbstractStructure {
 	 *            the <tt>start_pc</tt>
 	 */
 	public void setStart(int startPc) {
+		markDirty();
 		this.startPc = startPc;
 	}
 
@@ -113,6 +114,7 @@ public class ExceptionTableEntry extends AbstractStructure {
 	 *            the <tt>end_pc</tt>
 	 */
 	public void setEnd(int endPc) {
+		markDirty();
 		this.endPc = endPc;
 	}
 
@@ -132,6 +134,7 @@ public class ExceptionTableEntry extends AbstractStructure {
 	 *            the <tt>handler_pc</tt>
 	 */
 	public void setHandler(int handlerPc) {
+		markDirty();
 		this.handlerPc = handlerPc;
 	}
 
@@ -153,6 +156,7 @@ public class ExceptionTableEntry extends AbstractStructure {
 	 *            the index
 	 */
 	public void setCatchType(int catchType) {
+		markDirty();
 		this.catchType = catchType;
 	}
 
@@ -46,6 +46,7 @@ public class ExceptionsAttribute extends AttributeInfo {
 	 *            the array
 	 */
 	public void setExceptionIndexTable(int[] exceptionIndexTable) {
+		markDirty();
 		this.exceptionIndexTable = exceptionIndexTable;
 	}
 
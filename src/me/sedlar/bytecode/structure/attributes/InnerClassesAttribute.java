@@ -46,6 +46,7 @@ public class InnerClassesAttribute extends AttributeInfo {
 	 *            the array
 	 */
 	public void setClasses(InnerClassesEntry[] classes) {
+		markDirty();
 		this.classes = classes;
 	}
 
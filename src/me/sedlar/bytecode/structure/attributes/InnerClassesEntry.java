@@ -71,6 +71,7 @@ public class InnerClassesEntry extends AbstractStructure {
 	 *            the index
 	 */
 	public void setInnerClassIndex(int innerClassInfoIndex) {
+		markDirty();
 		this.innerClassInfoIndex = innerClassInfoIndex;
 	}
 
@@ -92,6 +93,7 @@ public class InnerClassesEntry extends AbstractStructure {
 	 *            the index
 	 */
 	public void setOuterClassIndex(int outerClassInfoIndex) {
+		markDirty();
 		this.outerClassInfoIndex = outerClassInfoIndex;
 	}
 
@@ -113,6 +115,7 @@ public class InnerClassesEntry extends AbstractStructure {
 	 *            the index
 	 */
 	public void setInnerNameIndex(int innerNameIndex) {
+		markDirty();
 		this.innerNameIndex = innerNameIndex;
 	}
 
@@ -132,6 +135,7 @@ public class InnerClassesEntry extends AbstractStructure {
 	 *            the accessFlags flags
 	 */
 	public void setInnerClassAccessFlags(int innerClassAccessFlags) {
+		markDirty();
 		this.innerClassAccessFlags = innerClassAccessFlags;
 	}
 
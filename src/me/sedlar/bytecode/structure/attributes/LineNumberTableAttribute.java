@@ -47,6 +47,7 @@ public class LineNumberTableAttribute extends AttributeInfo {
 	 *            the index
 	 */
 	public void setLineNumberTable(LineNumberTableEntry[] lineNumberTable) {
+		markDirty();
 		this.lineNumberTable = lineNumberTable;
 	}
 
@@ -66,6 +66,7 @@ public class LineNumberTableEntry extends AbstractStructure {
 	 *            the <tt>start_pc</tt>
 	 */
 	public void setStart(int startPc) {
+		markDirty();
 		this.startPc = startPc;
 	}
 
@@ -85,6 +86,7 @@ public class LineNumberTableEntry extends AbstractStructure {
 	 *            the lineNumber number
 	 */
 	public void setLineNumber(int lineNumber) {
+		markDirty();
 		this.lineNumber = lineNumber;
 	}
 
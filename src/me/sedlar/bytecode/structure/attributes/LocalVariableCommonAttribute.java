@@ -40,6 +40,7 @@ public abstract class LocalVariableCommonAttribute extends AttributeInfo {
 	 *            the array
 	 */
 	public void setLocalVariables(LocalVariableCommonEntry[] localVariableEntries) {
+		markDirty();
 		this.localVariableTable = localVariableEntries;
 	}
 
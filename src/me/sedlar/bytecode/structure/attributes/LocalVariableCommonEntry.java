@@ -46,6 +46,7 @@ public abstract class LocalVariableCommonEntry extends AbstractStructure {
 	 *            the <tt>start_pc</tt>
 	 */
 	public void setStart(int startPc) {
+		markDirty();
 		this.startPc = startPc;
 	}
 
@@ -65,6 +66,7 @@ public abstract class LocalVariableCommonEntry extends AbstractStructure {
 	 *            the length
 	 */
 	public void setLength(int length) {
+		markDirty();
 		this.length = length;
 	}
 
@@ -86,6 +88,7 @@ public abstract class LocalVariableCommonEntry extends AbstractStructure {
 	 *            the index
 	 */
 	public void setNameIndex(int nameIndex) {
+		markDirty();
 		this.nameIndex = nameIndex;
 	}
 
@@ -107,6 +110,7 @@ public abstract class LocalVariableCommonEntry extends AbstractStructure {
 	 *            the index
 	 */
 	public void setDescriptorIndex(int descriptorIndex) {
+		markDirty();
 		this.descriptorOrSignatureIndex = descriptorIndex;
 	}
 
@@ -124,6 +128,7 @@ public abstract class LocalVariableCommonEntry extends AbstractStructure {
 	 * variable.
 	 */
 	public void setIndex(int index) {
+		markDirty();
 		this.index = index;
 	}
 
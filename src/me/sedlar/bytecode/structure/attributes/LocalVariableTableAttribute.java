@@ -40,6 +40,7 @@ public class LocalVariableTableAttribute extends LocalVariableCommonAttribute {
 	 *            the index
 	 */
 	public void setLocalVariableTable(LocalVariableTableEntry[] localVariableTable) {
+		markDirty();
 		this.localVariableTable = localVariableTable;
 	}
 
@@ -60,6 +60,7 @@ public class LocalVariableTableEntry extends LocalVariableCommonEntry {
 	 */
 	@Override
 	public void setDescriptorIndex(int descriptorIndex) {
+		markDirty();
 		super.setDescriptorIndex(descriptorIndex);
 	}
 
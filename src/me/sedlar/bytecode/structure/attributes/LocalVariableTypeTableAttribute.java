@@ -40,6 +40,7 @@ public class LocalVariableTypeTableAttribute extends LocalVariableCommonAttribut
 	 *            the array
 	 */
 	public void setLocalVariableTypeTable(LocalVariableTypeTableEntry[] localVariableTypeTable) {
+		markDirty();
 		this.localVariableTable = localVariableTypeTable;
 	}
 
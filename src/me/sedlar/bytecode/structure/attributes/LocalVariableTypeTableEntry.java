@@ -60,6 +60,7 @@ public class LocalVariableTypeTableEntry extends LocalVariableCommonEntry {
 	 */
 	@Override
 	public void setDescriptorIndex(int signatureIndex) {
+		markDirty();
 		this.descriptorOrSignatureIndex = signatureIndex;
 	}
 
@@ -48,6 +48,7 @@ public class MethodParametersAttribute extends AttributeInfo {
 	 *            the array
 	 */
 	public void setEntries(MethodParametersEntry[] entries) {
+		markDirty();
 		this.entries = entries;
 	}
 
@@ -65,7 +66,7 @@ public class MethodParametersAttribute extends AttributeInfo {
 	public void write(DataOutput out) throws InvalidByteCodeException, IOException {
 		super.write(out);
 		int numberOfRefs = length(entries);
-		out.writeShort(numberOfRefs);
+		out.writeByte(numberOfRefs);
 		for (int i = 0; i < numberOfRefs; i++)
 			entries[i].write(out);
 		if (debug)
@@ -29,6 +29,7 @@ public class ObjectVerificationTypeEntry extends VerificationTypeInfoEntry {
 	}
 
 	public void setIndex(int cpIndex) {
+		markDirty();
 		this.cpIndex = cpIndex;
 	}
 
@@ -42,6 +42,7 @@ public class ParameterAnnotations extends AbstractStructure {
 	 *            the array
 	 */
 	public void setAnnotations(Annotation[] runtimeAnnotations) {
+		markDirty();
 		this.runtimeAnnotations = runtimeAnnotations;
 	}
 
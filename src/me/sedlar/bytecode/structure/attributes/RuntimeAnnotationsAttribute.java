@@ -42,6 +42,7 @@ public class RuntimeAnnotationsAttribute extends AttributeInfo implements Annota
 	 *            the array
 	 */
 	public void setAnnotations(Annotation[] runtimeAnnotations) {
+		markDirty();
 		this.runtimeAnnotations = runtimeAnnotations;
 	}
 
@@ -41,6 +41,7 @@ public class RuntimeParameterAnnotationsAttribute extends AttributeInfo {
 	 *            the array
 	 */
 	public void setAnnotations(ParameterAnnotations[] parameterAnnotations) {
+		markDirty();
 		this.parameterAnnotations = parameterAnnotations;
 	}
 
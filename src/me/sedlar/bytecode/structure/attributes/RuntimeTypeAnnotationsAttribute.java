@@ -41,6 +41,7 @@ public class RuntimeTypeAnnotationsAttribute extends AttributeInfo implements An
 	 *            the array
 	 */
 	public void setAnnotations(TypeAnnotation[] runtimeAnnotations) {
+		markDirty();
 		this.runtimeTypeAnnotations = runtimeAnnotations;
 	}
 
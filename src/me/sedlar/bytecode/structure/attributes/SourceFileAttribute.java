@@ -44,6 +44,7 @@ public class SourceFileAttribute extends AttributeInfo {
 	 *            the index
 	 */
 	public void setIndex(int sourceFileIndex) {
+		markDirty();
 		this.sourceFileIndex = sourceFileIndex;
 	}
 
@@ -62,6 +62,7 @@ public class StackMapFrameEntry extends AbstractStructure {
 	}
 
 	public void setTag(int tag) {
+		markDirty();
 		this.tag = tag;
 	}
 
@@ -76,6 +77,7 @@ public class StackMapFrameEntry extends AbstractStructure {
 	 * Sets the frame type
 	 */
 	public void setFrameType(StackFrameType frameType) {
+		markDirty();
 		this.frameType = frameType;
 	}
 
@@ -90,6 +92,7 @@ public class StackMapFrameEntry extends AbstractStructure {
 	 * Sets the offset delta.
 	 */
 	public void setDeltaOffset(int deltaOffset) {
+		markDirty();
 		this.deltaOffset = deltaOffset;
 	}
 
@@ -104,6 +107,7 @@ public class StackMapFrameEntry extends AbstractStructure {
 	 * Sets the offset.
 	 */
 	public void setOffset(int offset) {
+		markDirty();
 		this.offset = offset;
 	}
 
@@ -119,6 +123,7 @@ public class StackMapFrameEntry extends AbstractStructure {
 	 * performed.
 	 */
 	public void setLocalItems(VerificationTypeInfoEntry[] localItems) {
+		markDirty();
 		this.localItems = localItems;
 	}
 
@@ -134,6 +139,7 @@ public class StackMapFrameEntry extends AbstractStructure {
 	 * performed.
 	 */
 	public void setStackItems(VerificationTypeInfoEntry[] stackItems) {
+		markDirty();
 		this.stackItems = stackItems;
 	}
 
@@ -48,6 +48,7 @@ public class StackMapTableAttribute extends AttributeInfo {
 	 *            the array
 	 */
 	public void setEntries(StackMapFrameEntry[] entries) {
+		markDirty();
 		this.entries = entries;
 	}
 
@@ -33,6 +33,7 @@ public class TypeAnnotation extends AbstractStructure {
 	}
 
 	public void setTargetType(TypeAnnotationTargetType targetType) {
+		markDirty();
 		this.targetType = targetType;
 	}
 
@@ -41,6 +42,7 @@ public class TypeAnnotation extends AbstractStructure {
 	}
 
 	public void setTargetInfo(TargetInfo targetInfo) {
+		markDirty();
 		this.targetInfo = targetInfo;
 	}
 
@@ -49,6 +51,7 @@ public class TypeAnnotation extends AbstractStructure {
 	}
 
 	public void setTypePathEntries(TypePathEntry[] typePathEntries) {
+		markDirty();
 		this.typePathEntries = typePathEntries;
 	}
 
@@ -57,6 +60,7 @@ public class TypeAnnotation extends AbstractStructure {
 	}
 
 	public void setAnnotation(Annotation annotation) {
+		markDirty();
 		this.annotation = annotation;
 	}
 
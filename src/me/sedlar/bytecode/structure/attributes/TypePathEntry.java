@@ -27,6 +27,7 @@ public class TypePathEntry extends AbstractStructure {
 	}
 
 	public void setKind(TypePathKind typePathKind) {
+		markDirty();
 		this.typePathKind = typePathKind;
 	}
 
@@ -35,6 +36,7 @@ public class TypePathEntry extends AbstractStructure {
 	}
 
 	public void setArgumentIndex(int typeArgumentIndex) {
+		markDirty();
 		this.typeArgumentIndex = typeArgumentIndex;
 	}
 
@@ -29,6 +29,7 @@ public class UninitializedVerificationTypeEntry extends VerificationTypeInfoEntr
 	}
 
 	public void setOffset(int offset) {
+		markDirty();
 		this.offset = offset;
 	}
 
@@ -25,6 +25,7 @@ public class ExceptionTargetInfo extends TargetInfo {
 	}
 
 	public void setIndex(int exceptionTableIndex) {
+		markDirty();
 		this.exceptionTableIndex = exceptionTableIndex;
 	}
 
@@ -28,6 +28,7 @@ public class LocalVariableTarget extends AbstractStructure {
 	}
 
 	public void setStart(int startPc) {
+		markDirty();
 		this.startPc = startPc;
 	}
 
@@ -36,6 +37,7 @@ public class LocalVariableTarget extends AbstractStructure {
 	}
 
 	public void setLength(int length) {
+		markDirty();
 		this.length = length;
 	}
 
@@ -44,6 +46,7 @@ public class LocalVariableTarget extends AbstractStructure {
 	}
 
 	public void setIndex(int index) {
+		markDirty();
 		this.index = index;
 	}
 
@@ -25,6 +25,7 @@ public class LocalVariableTargetInfo extends TargetInfo {
 	}
 
 	public void setTargets(LocalVariableTarget[] localVariableTargets) {
+		markDirty();
 		this.localVariableTargets = localVariableTargets;
 	}
 
@@ -25,6 +25,7 @@ public class OffsetTargetInfo extends TargetInfo {
 	}
 
 	public void setOffset(int offset) {
+		markDirty();
 		this.offset = offset;
 	}
 
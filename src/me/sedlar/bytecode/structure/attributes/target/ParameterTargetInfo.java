@@ -25,6 +25,7 @@ public class ParameterTargetInfo extends TargetInfo {
 	}
 
 	public void setIndex(int typeParameterIndex) {
+		markDirty();
 		this.typeParameterIndex = typeParameterIndex;
 	}
 
@@ -25,6 +25,7 @@ public class SupertypeTargetInfo extends TargetInfo {
 	}
 
 	public void setIndex(int supertypeIndex) {
+		markDirty();
 		this.supertypeIndex = supertypeIndex;
 	}
 
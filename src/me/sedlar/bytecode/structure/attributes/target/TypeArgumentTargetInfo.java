@@ -26,6 +26,7 @@ public class TypeArgumentTargetInfo extends TargetInfo {
 	}
 
 	public void setOffset(int offset) {
+		markDirty();
 		this.offset = offset;
 	}
 
@@ -34,6 +35,7 @@ public class TypeArgumentTargetInfo extends TargetInfo {
 	}
 
 	public void setIndex(int typeArgumentIndex) {
+		markDirty();
 		this.typeArgumentIndex = typeArgumentIndex;
 	}
 
@@ -26,6 +26,7 @@ public class TypeParameterBoundTargetInfo extends TargetInfo {
 	}
 
 	public void setParameterIndex(int typeParameterIndex) {
+		markDirty();
 		this.typeParameterIndex = typeParameterIndex;
 	}
 
@@ -34,6 +35,7 @@ public class TypeParameterBoundTargetInfo extends TargetInfo {
 	}
 
 	public void setBoundIndex(int boundIndex) {
+		markDirty();
 		this.boundIndex = boundIndex;
 	}
 
@@ -59,6 +59,7 @@ public class ConstantClassInfo extends ConstantPool {
 	 *            the index
 	 */
 	public void setIndex(int nameIndex) {
+		markDirty();
 		this.nameIndex = nameIndex;
 	}
 
@@ -80,6 +81,7 @@ public class ConstantClassInfo extends ConstantPool {
 	 *            The data to set the constant pool entry to.
 	 */
 	public void setName(String name) {
+		markDirty();
 		ConstantUtf8Info cpinfo;
 		try {
 			cpinfo = classInfo.constantPoolUtf8Entry(nameIndex);
@@ -113,7 +115,7 @@ public class ConstantClassInfo extends ConstantPool {
 
 	@Override
 	public int hashCode() {
-		return super.hashCode() ^ nameIndex;
+		return 31 * super.hashCode() + nameIndex;
 	}
 
 	@Override
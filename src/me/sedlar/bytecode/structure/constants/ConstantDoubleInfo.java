@@ -50,6 +50,7 @@ public class ConstantDoubleInfo extends ConstantLargeNumeric {
 	 *            the variable
 	 */
 	public void setValue(double number) {
+		markDirty();
 		long longBits = Double.doubleToLongBits(number);
 		highBytes = (int) (longBits >>> 32 & 0xFFFFFFFFL);
 		lowBytes = (int) (longBits & 0xFFFFFFFFL);
@@ -49,6 +49,7 @@ public class ConstantFloatInfo extends ConstantNumeric {
 	 *            the variable
 	 */
 	public void setValue(float number) {
+		markDirty();
 		bits = Float.floatToIntBits(number);
 	}
 
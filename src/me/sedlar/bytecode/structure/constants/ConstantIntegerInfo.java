@@ -49,6 +49,7 @@ public class ConstantIntegerInfo extends ConstantNumeric {
 	 *            the variable
 	 */
 	public void setValue(int number) {
+		markDirty();
 		bits = number;
 	}
 
@@ -48,6 +48,7 @@ public class ConstantInvokeDynamicInfo extends ConstantPool {
 	}
 
 	public void setBootstrapIndex(int bootstrapMethodAttributeIndex) {
+		markDirty();
 		this.bootstrapMethodAttributeIndex = bootstrapMethodAttributeIndex;
 	}
 
@@ -56,6 +57,7 @@ public class ConstantInvokeDynamicInfo extends ConstantPool {
 	}
 
 	public void setNameAndTypeIndex(int nameAndTypeIndex) {
+		markDirty();
 		this.nameAndTypeIndex = nameAndTypeIndex;
 	}
 
@@ -98,6 +100,6 @@ public class ConstantInvokeDynamicInfo extends ConstantPool {
 
 	@Override
 	public int hashCode() {
-		return super.hashCode() ^ bootstrapMethodAttributeIndex ^ nameAndTypeIndex;
+		return (31 * super.hashCode() + bootstrapMethodAttributeIndex) * 31 + nameAndTypeIndex;
 	}
 }
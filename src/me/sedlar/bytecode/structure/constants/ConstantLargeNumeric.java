@@ -49,6 +49,7 @@ public abstract class ConstantLargeNumeric extends ConstantPool {
 	 *            the <tt>high_bytes</tt> field
 	 */
 	public void setHigh(int highBytes) {
+		markDirty();
 		this.highBytes = highBytes;
 	}
 
@@ -68,6 +69,7 @@ public abstract class ConstantLargeNumeric extends ConstantPool {
 	 *            the <tt>low_bytes</tt> field
 	 */
 	public void setLow(int lowBytes) {
+		markDirty();
 		this.lowBytes = lowBytes;
 	}
 
@@ -114,6 +116,6 @@ public abstract class ConstantLargeNumeric extends ConstantPool {
 
 	@Override
 	public int hashCode() {
-		return super.hashCode() ^ highBytes ^ lowBytes;
+		return (31 * super.hashCode() + highBytes) * 31 + lowBytes;
 	}
 }
@@ -49,6 +49,7 @@ public class ConstantLongInfo extends ConstantLargeNumeric {
 	 *            the variable
 	 */
 	public void setValue(long number) {
+		markDirty();
 		highBytes = (int) (number >>> 32);
 		lowBytes = (int) (number & 0xFFFFFFFF);
 	}
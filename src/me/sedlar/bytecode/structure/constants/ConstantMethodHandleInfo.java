@@ -68,6 +68,7 @@ public class ConstantMethodHandleInfo extends ConstantPool {
 	 *            the index
 	 */
 	public void setIndex(int referenceIndex) {
+		markDirty();
 		this.referenceIndex = referenceIndex;
 	}
 
@@ -76,6 +77,7 @@ public class ConstantMethodHandleInfo extends ConstantPool {
 	}
 
 	public void setType(int type) {
+		markDirty();
 		this.type = type;
 	}
 
@@ -153,7 +155,7 @@ public class ConstantMethodHandleInfo extends ConstantPool {
 
 	@Override
 	public int hashCode() {
-		return super.hashCode() ^ referenceIndex;
+		return (31 * super.hashCode() + type) * 31 + referenceIndex;
 	}
 
 	@Override
@@ -59,6 +59,7 @@ public class ConstantMethodTypeInfo extends ConstantPool {
 	 *            the index
 	 */
 	public void setDescriptorIndex(int descriptorIndex) {
+		markDirty();
 		this.descriptorIndex = descriptorIndex;
 	}
 
@@ -98,7 +99,7 @@ public class ConstantMethodTypeInfo extends ConstantPool {
 
 	@Override
 	public int hashCode() {
-		return super.hashCode() ^ descriptorIndex;
+		return 31 * super.hashCode() + descriptorIndex;
 	}
 
 	@Override
@@ -60,6 +60,7 @@ public class ConstantNameAndTypeInfo extends ConstantPool {
 	 *            the index
 	 */
 	public void setNameIndex(int nameIndex) {
+		markDirty();
 		this.nameIndex = nameIndex;
 	}
 
@@ -81,6 +82,7 @@ public class ConstantNameAndTypeInfo extends ConstantPool {
 	 *            the index
 	 */
 	public void setDescriptorIndex(int descriptorIndex) {
+		markDirty();
 		this.descriptorIndex = descriptorIndex;
 	}
 
@@ -100,6 +102,7 @@ public class ConstantNameAndTypeInfo extends ConstantPool {
 	 * @param name the name.
 	 */
 	public void setName(String name) {
+		markDirty();
 		ConstantUtf8Info info = (ConstantUtf8Info) classInfo.constantPoolAt(nameIndex);
 		info.setString(name);
 	}
@@ -120,6 +123,7 @@ public class ConstantNameAndTypeInfo extends ConstantPool {
 	 * @param descriptor the descriptor.
 	 */
 	public void setDescriptor(String descriptor) {
+		markDirty();
 		ConstantUtf8Info info = (ConstantUtf8Info) classInfo.constantPoolAt(descriptorIndex);
 		info.setString(descriptor);
 	}
@@ -158,6 +162,6 @@ public class ConstantNameAndTypeInfo extends ConstantPool {
 
 	@Override
 	public int hashCode() {
-		return super.hashCode() ^ nameIndex ^ descriptorIndex;
+		return (31 * super.hashCode() + nameIndex) * 31 + descriptorIndex;
 	}
 }
@@ -45,6 +45,7 @@ public abstract class ConstantNumeric extends ConstantPool {
 	 *            the <tt>bits</tt> field
 	 */
 	public void setBits(int bits) {
+		markDirty();
 		this.bits = bits;
 	}
 
@@ -78,6 +79,6 @@ public abstract class ConstantNumeric extends ConstantPool {
 
 	@Override
 	public int hashCode() {
-		return super.hashCode() ^ bits;
+		return 31 * super.hashCode() + bits;
 	}
 }
@@ -58,6 +58,7 @@ public abstract class ConstantReference extends ConstantPool {
 	 *            the index
 	 */
 	public void setClassIndex(int classIndex) {
+		markDirty();
 		this.classIndex = classIndex;
 	}
 
@@ -79,6 +80,7 @@ public abstract class ConstantReference extends ConstantPool {
 	 *            the index
 	 */
 	public void setNameAndTypeIndex(int nameAndTypeIndex) {
+		markDirty();
 		this.nameAndTypeIndex = nameAndTypeIndex;
 	}
 
@@ -125,6 +127,6 @@ public abstract class ConstantReference extends ConstantPool {
 
 	@Override
 	public int hashCode() {
-		return super.hashCode() ^ classIndex ^ nameAndTypeIndex;
+		return (31 * super.hashCode() + classIndex) * 31 + nameAndTypeIndex;
 	}
 }
@@ -59,6 +59,7 @@ public class ConstantStringInfo extends ConstantPool {
 	 *            the index
 	 */
 	public void setStringIndex(int stringIndex) {
+		markDirty();
 		this.stringIndex = stringIndex;
 	}
 
@@ -91,6 +92,6 @@ public class ConstantStringInfo extends ConstantPool {
 
 	@Override
 	public int hashCode() {
-		return super.hashCode() ^ stringIndex;
+		return 31 * super.hashCode() + stringIndex;
 	}
 }
@@ -9,17 +9,41 @@ package me.sedlar.bytecode.structure.constants;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
 
+import me.sedlar.bytecode.io.ByteCursor;
+import me.sedlar.bytecode.structure.ClassInfo;
 import me.sedlar.bytecode.structure.ConstantPool;
 import me.sedlar.bytecode.structure.InvalidByteCodeException;
+import me.sedlar.bytecode.structure.SymbolTable;
+import me.sedlar.bytecode.structure.SymbolTable.Symbol;
 
 /**
+ * A <tt>CONSTANT_Utf8_info</tt> entry.
+ * <p>
+ * The entry keeps the modified UTF-8 bits it was read from and decodes them
+ * into a <tt>String</tt> on the first call to <tt>string</tt>, so constants
+ * that are never looked at are never decoded. Entries of a class that retains
+ * its class file buffer point into it; other entries copy their bits, since
+ * the caller may reuse the buffer. Equality and hashing work on the bits.
+ * <p>
+ * When the class is read with a <tt>SymbolTable</tt>, the entry holds the
+ * canonical symbol for its bits instead, shared with every other class read
+ * with the same table.
+ *
  * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
  * @author <a href="mailto:jclasslib@ej-technologies.com">Ingo Kegel</a>
  */
 public class ConstantUtf8Info extends ConstantPool {
 
+	private static final int MAX_LENGTH = 0xffff;
+
+	private Symbol symbol;
+	private byte[] data;
+	private int offset, length;
 	private String string;
+	private int hash;
 
 	@Override
 	public byte tag() {
@@ -33,24 +57,46 @@ public class ConstantUtf8Info extends ConstantPool {
 
 	@Override
 	public String verbose() throws InvalidByteCodeException {
-		return string;
+		return string();
 	}
 
 	/**
-	 * Get the byte array of the string in this entry.
+	 * Get the modified UTF-8 bits of the string in this entry, as stored in
+	 * the class file.
 	 *
-	 * @return the array
+	 * @return a copy of the bits
 	 */
 	public byte[] bytes() {
-		return string.getBytes();
+		return data == null ? null : Arrays.copyOfRange(data, offset, offset + length);
+	}
+
+	/**
+	 * Get the length in bits of the string in this entry, as stored in the
+	 * class file.
+	 *
+	 * @return the length
+	 */
+	public int length() {
+		return length;
 	}
 
 	/**
-	 * Get the string in this entry.
+	 * Get the string in this entry, decoding it on the first call.
 	 *
 	 * @return the string
 	 */
 	public String string() {
+		if (symbol != null)
+			return symbol.string();
+		String string = this.string;
+		if (string == null && data != null) {
+			try {
+				string = ByteCursor.decodeUTF(data, offset, length);
+			} catch (UTFDataFormatException e) {
+				throw new IllegalStateException("invalid " + CONSTANT_UTF8_VERBOSE, e);
+			}
+			this.string = string;
+		}
 		return string;
 	}
 
@@ -61,12 +107,75 @@ public class ConstantUtf8Info extends ConstantPool {
 	 *            the string
 	 */
 	public void setString(String string) {
+		markDirty();
+		SymbolTable symbols = classInfo != null ? classInfo.symbols() : null;
+		if (symbols != null) {
+			Symbol symbol = symbols.intern(string);
+			if (symbol.length() > MAX_LENGTH)
+				throw new IllegalArgumentException("encoded string too long: " + symbol.length() + " bits");
+			use(symbol);
+			return;
+		}
+		byte[] data = SymbolTable.encode(string);
+		if (data.length > MAX_LENGTH)
+			throw new IllegalArgumentException("encoded string too long: " + data.length + " bits");
+		this.symbol = null;
+		this.data = data;
+		this.offset = 0;
+		this.length = data.length;
 		this.string = string;
+		this.hash = 0;
+	}
+
+	private void use(Symbol symbol) {
+		this.symbol = symbol;
+		this.data = symbol.bytes();
+		this.offset = 0;
+		this.length = data.length;
+		this.string = null;
+		this.hash = symbol.hashCode();
+	}
+
+	/**
+	 * Get the canonical symbol of this entry.
+	 *
+	 * @return the symbol, or <t>null</t> if the class was read without a
+	 *         <tt>SymbolTable</tt>
+	 */
+	public Symbol symbol() {
+		return symbol;
 	}
 
 	@Override
 	public void read(DataInput in) throws InvalidByteCodeException, IOException {
-		string = in.readUTF();
+		length = in.readUnsignedShort();
+		ClassInfo classInfo = classInfo();
+		SymbolTable symbols = classInfo != null ? classInfo.symbols() : null;
+		boolean shared = in instanceof ByteCursor && ((ByteCursor) in).array() != null;
+		if (symbols != null && shared) {
+			ByteCursor cursor = (ByteCursor) in;
+			use(symbols.intern(cursor.array(), cursor.arrayPosition(), length));
+			cursor.skip(length);
+		} else if (symbols != null) {
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			use(symbols.intern(bytes, 0, length));
+		} else {
+			if (shared && classInfo != null && classInfo.retainsBytes()) {
+				// a retained buffer is left untouched by its owner
+				ByteCursor cursor = (ByteCursor) in;
+				data = cursor.array();
+				offset = cursor.arrayPosition();
+				cursor.skip(length);
+			} else {
+				data = new byte[length];
+				offset = 0;
+				in.readFully(data);
+			}
+			symbol = null;
+			string = null;
+			hash = 0;
+		}
 		if (debug)
 			debug("read ");
 	}
@@ -74,26 +183,40 @@ public class ConstantUtf8Info extends ConstantPool {
 	@Override
 	public void write(DataOutput out) throws InvalidByteCodeException, IOException {
 		out.writeByte(CONSTANT_UTF8);
-		out.writeUTF(string);
+		out.writeShort(length);
+		out.write(data, offset, length);
 		if (debug)
 			debug("wrote ");
 	}
 
 	@Override
 	protected void debug(String message) {
-		super.debug(message + verboseTag() + " with length " + string.length() + " (\"" + string + "\")");
+		super.debug(message + verboseTag() + " with length " + length + " (\"" + string() + "\")");
 	}
 
 	@Override
 	public boolean equals(Object object) {
 		if (!(object instanceof ConstantUtf8Info))
 			return false;
-		ConstantUtf8Info constantUtf8Info = (ConstantUtf8Info) object;
-		return super.equals(object) && constantUtf8Info.string.equals(string);
+		ConstantUtf8Info other = (ConstantUtf8Info) object;
+		if (symbol != null && other.symbol == symbol)
+			return super.equals(object);
+		if (other.length != length || !super.equals(object))
+			return false;
+		if (data == null || other.data == null)
+			return data == other.data;
+		for (int i = 0; i < length; i++) {
+			if (data[offset + i] != other.data[other.offset + i])
+				return false;
+		}
+		return true;
 	}
 
 	@Override
 	public int hashCode() {
-		return super.hashCode() ^ string.hashCode();
+		int h = hash;
+		if (h == 0 && data != null)
+			hash = h = SymbolTable.hash(data, offset, length);
+		return 31 * super.hashCode() + h;
 	}
 }
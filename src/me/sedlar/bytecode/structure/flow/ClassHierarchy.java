@@ -0,0 +1,247 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure.flow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import me.sedlar.bytecode.structure.AccessFlag;
+import me.sedlar.bytecode.structure.ClassHeader;
+import me.sedlar.bytecode.structure.InvalidByteCodeException;
+import me.sedlar.bytecode.util.ClassPath;
+
+/**
+ * The super classes of classes, as needed to merge the types of values when
+ * frames are computed.
+ * <p>
+ * Subclasses provide the header of a class by its name through
+ * <tt>load</tt>. Headers are loaded once and cached, as are the common super
+ * classes found from them, and both caches may be used from several threads
+ * at once. A class that cannot be read is reported with the reason it failed
+ * once a common super class is looked up through it.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public abstract class ClassHierarchy {
+
+	private static final String OBJECT = "java/lang/Object";
+
+	private static volatile ClassHierarchy runtime;
+
+	private final ConcurrentHashMap<String, ClassHeader> headers = new ConcurrentHashMap<>();
+	private final Set<String> missing = ConcurrentHashMap.newKeySet();
+	private final ConcurrentHashMap<String, Exception> failures = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, String> commonSuperClasses = new ConcurrentHashMap<>();
+
+	/**
+	 * Get the class hierarchy of the classes that the system class loader
+	 * finds.
+	 *
+	 * @return the shared runtime class hierarchy
+	 */
+	public static ClassHierarchy runtime() {
+		ClassHierarchy hierarchy = runtime;
+		if (hierarchy == null) {
+			synchronized (ClassHierarchy.class) {
+				if ((hierarchy = runtime) == null)
+					runtime = hierarchy = of(ClassLoader.getSystemClassLoader());
+			}
+		}
+		return hierarchy;
+	}
+
+	/**
+	 * Get a class hierarchy of the classes that the given class loader
+	 * finds, reading the headers of their class files.
+	 *
+	 * @param loader
+	 *            the class loader
+	 * @return the class hierarchy
+	 */
+	public static ClassHierarchy of(ClassLoader loader) {
+		return new ClassHierarchy() {
+			@Override
+			protected ClassHeader load(String name) throws IOException, InvalidByteCodeException {
+				try (InputStream in = loader.getResourceAsStream(name + ".class")) {
+					if (in == null)
+						return null;
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					byte[] buffer = new byte[4096];
+					int read;
+					while ((read = in.read(buffer)) != -1)
+						out.write(buffer, 0, read);
+					byte[] bytes = out.toByteArray();
+					return ClassHeader.read(bytes, 0, bytes.length);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Get a class hierarchy of the classes on the given class path, reading
+	 * only the headers of the classes that it did not parse already.
+	 *
+	 * @param classPath
+	 *            the class path
+	 * @return the class hierarchy
+	 */
+	public static ClassHierarchy of(ClassPath classPath) {
+		return new ClassHierarchy() {
+			@Override
+			protected ClassHeader load(String name) throws IOException, InvalidByteCodeException {
+				ClassHeader header = classPath.header(name);
+				Throwable failure = header == null ? classPath.failure(name) : null;
+				if (failure instanceof IOException)
+					throw (IOException) failure;
+				if (failure instanceof InvalidByteCodeException)
+					throw (InvalidByteCodeException) failure;
+				if (failure != null)
+					throw new IOException(failure);
+				return header;
+			}
+		};
+	}
+
+	/**
+	 * Loads the header of the class with the given name.
+	 *
+	 * @param name
+	 *            the internal name of the class
+	 * @return the header, or <t>null</t> if the class is unknown
+	 * @throws IOException
+	 *             if the class exists, but cannot be read
+	 * @throws InvalidByteCodeException
+	 *             if the class file is invalid
+	 */
+	protected abstract ClassHeader load(String name) throws IOException, InvalidByteCodeException;
+
+	/**
+	 * Get the header of the class with the given name, loading it on first
+	 * use.
+	 *
+	 * @param name
+	 *            the internal name of the class
+	 * @return the header, or <t>null</t> if the class is unknown or cannot be
+	 *         read
+	 * @see #failure(String)
+	 */
+	public ClassHeader header(String name) {
+		ClassHeader header = headers.get(name);
+		if (header != null || missing.contains(name))
+			return header;
+		try {
+			header = load(name);
+		} catch (IOException | InvalidByteCodeException | RuntimeException e) {
+			failures.put(name, e);
+		}
+		if (header == null) {
+			missing.add(name);
+			return null;
+		}
+		ClassHeader existing = headers.putIfAbsent(name, header);
+		return existing != null ? existing : header;
+	}
+
+	/**
+	 * Adds or replaces the header of a class, such as one that is being
+	 * written and may differ from the class that would be loaded.
+	 *
+	 * @param header
+	 *            the header
+	 */
+	public void add(ClassHeader header) {
+		ClassHeader previous = headers.put(header.name(), header);
+		missing.remove(header.name());
+		failures.remove(header.name());
+		// common super classes only depend on the super class and whether it is an interface
+		if (previous != null && (!equal(previous.superName(), header.superName())
+				|| interfaceFlag(previous) != interfaceFlag(header)))
+			commonSuperClasses.clear();
+	}
+
+	/**
+	 * Get the reason that the header of the class with the given name could
+	 * not be read.
+	 *
+	 * @param name
+	 *            the internal name of the class
+	 * @return the reason, or <t>null</t> if the class was read or is unknown
+	 */
+	public Exception failure(String name) {
+		return failures.get(name);
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private static boolean interfaceFlag(ClassHeader header) {
+		return AccessFlag.INTERFACE.is(header.accessFlags());
+	}
+
+	/**
+	 * Get the closest class that both given classes extend. An interface has
+	 * <tt>java/lang/Object</tt> in common with every other class, as the
+	 * verifier treats interfaces like <tt>java/lang/Object</tt>.
+	 *
+	 * @param a
+	 *            the internal name of a class that is not an array
+	 * @param b
+	 *            the internal name of another class that is not an array
+	 * @return the internal name of the common super class
+	 * @throws IllegalStateException
+	 *             if either class or one of its super classes is unknown or
+	 *             cannot be read, with the reason it could not be read as
+	 *             its cause
+	 */
+	public String commonSuperClass(String a, String b) {
+		if (a.equals(b))
+			return a;
+		String key = a.compareTo(b) < 0 ? a + ' ' + b : b + ' ' + a;
+		String common = commonSuperClasses.get(key);
+		if (common == null) {
+			common = findCommonSuperClass(a, b);
+			commonSuperClasses.putIfAbsent(key, common);
+		}
+		return common;
+	}
+
+	private String findCommonSuperClass(String a, String b) {
+		if (a.equals(OBJECT) || b.equals(OBJECT))
+			return OBJECT;
+		ClassHeader headerA = require(a);
+		ClassHeader headerB = require(b);
+		if (interfaceFlag(headerA) || interfaceFlag(headerB))
+			return OBJECT;
+		Set<String> supers = new HashSet<>();
+		for (String name = a; name != null; name = superName(name))
+			supers.add(name);
+		for (String name = b; name != null; name = superName(name)) {
+			if (supers.contains(name))
+				return name;
+		}
+		return OBJECT;
+	}
+
+	private String superName(String name) {
+		return name.equals(OBJECT) ? null : require(name).superName();
+	}
+
+	private ClassHeader require(String name) {
+		ClassHeader header = header(name);
+		if (header != null)
+			return header;
+		Exception failure = failures.get(name);
+		if (failure != null)
+			throw new IllegalStateException("class " + name + " could not be read", failure);
+		throw new IllegalStateException("class " + name + " is not in the class hierarchy");
+	}
+}
@@ -0,0 +1,1216 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure.flow;
+
+import static me.sedlar.bytecode.structure.AccessFlag.STATIC;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.sedlar.bytecode.*;
+import me.sedlar.bytecode.structure.AttributeInfo;
+import me.sedlar.bytecode.structure.ClassInfo;
+import me.sedlar.bytecode.structure.ConstantPool;
+import me.sedlar.bytecode.structure.ConstantPoolBuilder;
+import me.sedlar.bytecode.structure.InvalidByteCodeException;
+import me.sedlar.bytecode.structure.MemberReference;
+import me.sedlar.bytecode.structure.MethodInfo;
+import me.sedlar.bytecode.structure.attributes.*;
+import me.sedlar.bytecode.structure.constants.*;
+import me.sedlar.bytecode.util.Assembly;
+
+/**
+ * Computes the <tt>StackMapTable</tt> of a method from its instructions.
+ * <p>
+ * The types of the local variables and operand stack are inferred along
+ * every path through the code, starting at the first instruction and at
+ * every exception handler, and merged where paths join. Reference types
+ * merge into their common super class as found in a
+ * <tt>ClassHierarchy</tt>. A frame is written for every instruction that is
+ * jumped to, handles exceptions or follows an unconditional jump, each in
+ * the most compact form that describes it relative to the previous frame.
+ * <p>
+ * Unreachable code cannot be described by a frame, so it is replaced by
+ * <tt>nop</tt>s ending in <tt>athrow</tt> and taken out of the ranges of the
+ * exception handlers, which keeps the offsets of all other instructions.
+ * <p>
+ * The analysis only reads the constant pool, so the methods of a class can be
+ * analyzed in parallel. The frames are stored afterwards, one method at a
+ * time, as that adds the classes they name to the constant pool.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class FrameCalculator {
+
+	private static final String OBJECT = "java/lang/Object";
+	private static final String THROWABLE = "java/lang/Throwable";
+	private static final Type[] NO_TYPES = new Type[0];
+
+	private final MethodInfo method;
+	private final CodeAttribute code;
+	private final ClassHierarchy hierarchy;
+	private final Map<String, Type> objects = new HashMap<>();
+	private final List<Frame> frames = new ArrayList<>();
+	private List<AbstractInstruction> instructions;
+	private int[] offsets;
+	private boolean[] leaders;
+	private boolean[] framed;
+	private Type[][] locals;
+	private Type[][] stacks;
+	private int[] pending;
+	private boolean[] queued;
+	private int count;
+	private Type[] initial;
+	private ExceptionTableEntry[] handlers;
+	private int[] handlerIndices;
+	private Type[][] caught;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param method
+	 *            the method, whose instructions were laid out
+	 * @param code
+	 *            the <tt>Code</tt> attribute of the method, holding the
+	 *            encoded instructions
+	 * @param hierarchy
+	 *            the class hierarchy to merge reference types in
+	 */
+	public FrameCalculator(MethodInfo method, CodeAttribute code, ClassHierarchy hierarchy) {
+		this.method = method;
+		this.code = code;
+		this.hierarchy = hierarchy;
+	}
+
+	/**
+	 * Computes the frames of the given method and stores them in its
+	 * <tt>Code</tt> attribute.
+	 *
+	 * @param method
+	 *            the method, whose instructions were laid out
+	 * @param code
+	 *            the <tt>Code</tt> attribute of the method, holding the
+	 *            encoded instructions
+	 * @param hierarchy
+	 *            the class hierarchy to merge reference types in
+	 * @return <t>true</t> if unreachable instructions were replaced, in
+	 *         which case the code has to be encoded again, otherwise
+	 *         <t>false</t>.
+	 * @throws IllegalStateException
+	 *             if the code is invalid or a class it merges is not in the
+	 *             class hierarchy
+	 */
+	public static boolean compute(MethodInfo method, CodeAttribute code, ClassHierarchy hierarchy) {
+		FrameCalculator calculator = new FrameCalculator(method, code, hierarchy);
+		boolean replaced = calculator.analyze();
+		calculator.apply();
+		return replaced;
+	}
+
+	/**
+	 * Infers the types along every path through the code and works out the
+	 * frames, without changing the constant pool.
+	 *
+	 * @return <t>true</t> if unreachable instructions were replaced, in
+	 *         which case the code has to be encoded again, otherwise
+	 *         <t>false</t>.
+	 * @throws IllegalStateException
+	 *             if the code is invalid or a class it merges is not in the
+	 *             class hierarchy
+	 */
+	public boolean analyze() {
+		instructions = method.instructions();
+		int size = instructions.size();
+		offsets = new int[size + 1];
+		for (int i = 0; i < size; i++)
+			offsets[i] = instructions.get(i).offset();
+		offsets[size] = code.code().length;
+		leaders = new boolean[size + 1];
+		framed = new boolean[size + 1];
+		locals = new Type[size][];
+		stacks = new Type[size][];
+		pending = new int[size];
+		queued = new boolean[size];
+		handlers = code.exceptionTable() != null ? code.exceptionTable() : new ExceptionTableEntry[0];
+		handlerIndices = new int[handlers.length];
+		caught = new Type[handlers.length][];
+		for (int i = 0; i < handlers.length; i++) {
+			handlerIndices[i] = indexAt(handlers[i].handler());
+			caught[i] = new Type[] { catchType(handlers[i]) };
+		}
+		markLeaders();
+		initial = initialLocals(StackCalculator.maxLocals(method, instructions));
+		if (size > 0)
+			merge(0, initial, NO_TYPES, 0);
+		while (count > 0) {
+			int index = pending[--count];
+			queued[index] = false;
+			run(index);
+		}
+		for (int i = 0; i < size; i++) {
+			if (framed[i] && locals[i] != null)
+				frames.add(new Frame(offsets[i], compress(locals[i], locals[i].length), compress(stacks[i],
+						stacks[i].length)));
+		}
+		boolean replaced = replaceUnreachable();
+		frames.sort((a, b) -> Integer.compare(a.offset, b.offset));
+		return replaced;
+	}
+
+	private void markLeaders() {
+		int size = instructions.size();
+		leaders[0] = true;
+		for (int i = 0; i < size; i++) {
+			AbstractInstruction ai = instructions.get(i);
+			int id = ai.opcode().id();
+			if (ai instanceof AbstractBranchInstruction) {
+				mark(indexAt(offsets[i] + ((AbstractBranchInstruction) ai).branchOffset()));
+				leaders[i + 1] = true;
+				if (id == Opcode.GOTO.id() || id == Opcode.GOTO_W.id())
+					framed[i + 1] = true;
+			} else if (ai instanceof TableSwitchInstruction || ai instanceof LookupSwitchInstruction) {
+				for (int target : switchTargets(ai))
+					mark(indexAt(offsets[i] + target));
+				mark(i + 1);
+			} else if ((id >= Opcode.IRETURN.id() && id <= Opcode.RETURN.id()) || id == Opcode.ATHROW.id()
+					|| id == Opcode.RET.id()) {
+				mark(i + 1);
+			}
+		}
+		for (int handler : handlerIndices)
+			mark(handler);
+	}
+
+	private void mark(int index) {
+		leaders[index] = true;
+		framed[index] = true;
+	}
+
+	private int indexAt(int offset) {
+		int index = Arrays.binarySearch(offsets, 0, offsets.length - 1, offset);
+		if (index < 0)
+			throw new IllegalStateException("no instruction at offset " + offset + " in " + method.name());
+		return index;
+	}
+
+	private static int[] switchTargets(AbstractInstruction ai) {
+		if (ai instanceof TableSwitchInstruction) {
+			TableSwitchInstruction tsi = (TableSwitchInstruction) ai;
+			int[] jumpOffsets = tsi.jumpOffsets();
+			int[] targets = Arrays.copyOf(jumpOffsets, jumpOffsets.length + 1);
+			targets[jumpOffsets.length] = tsi.defaultOffset();
+			return targets;
+		}
+		LookupSwitchInstruction lsi = (LookupSwitchInstruction) ai;
+		List<OffsetPair> pairs = lsi.offsetPairs();
+		int[] targets = new int[pairs.size() + 1];
+		for (int i = 0; i < pairs.size(); i++) {
+			OffsetPair pair = pairs.get(i);
+			targets[i] = pair.target() != null ? pair.target().offset() - ai.offset() : pair.offset();
+		}
+		targets[pairs.size()] = lsi.defaultOffset();
+		return targets;
+	}
+
+	private Type[] initialLocals(int maxLocals) {
+		Type[] types = new Type[maxLocals];
+		Arrays.fill(types, Type.TOP);
+		int slot = 0;
+		if (!STATIC.is(method.accessFlags())) {
+			String owner = method.classInfo().name();
+			types[slot++] = method.name().equals("<init>") && !owner.equals(OBJECT) ? Type.UNINITIALIZED_THIS
+					: object(owner);
+		}
+		String descriptor = method.descriptor();
+		for (int i = 1; descriptor.charAt(i) != ')'; i = next(descriptor, i)) {
+			Type type = type(descriptor, i);
+			types[slot++] = type;
+			if (type.wide())
+				types[slot++] = Type.TOP;
+		}
+		return types;
+	}
+
+	private static int next(String descriptor, int index) {
+		while (descriptor.charAt(index) == '[')
+			index++;
+		return descriptor.charAt(index) == 'L' ? descriptor.indexOf(';', index) + 1 : index + 1;
+	}
+
+	private Type type(String descriptor, int index) {
+		switch (descriptor.charAt(index)) {
+			case 'Z':
+			case 'B':
+			case 'C':
+			case 'S':
+			case 'I':
+				return Type.INTEGER;
+			case 'F':
+				return Type.FLOAT;
+			case 'J':
+				return Type.LONG;
+			case 'D':
+				return Type.DOUBLE;
+			case 'L':
+				return object(descriptor.substring(index + 1, descriptor.indexOf(';', index)));
+			case '[':
+				return object(descriptor.substring(index, next(descriptor, index)));
+			default:
+				throw new IllegalStateException("invalid descriptor " + descriptor + " in " + method.name());
+		}
+	}
+
+	private Type object(String name) {
+		Type type = objects.get(name);
+		if (type == null)
+			objects.put(name, type = new Type(VerificationType.OBJECT, name, null));
+		return type;
+	}
+
+	private void merge(int index, Type[] frameLocals, Type[] frameStack, int top) {
+		if (locals[index] == null) {
+			locals[index] = frameLocals.clone();
+			stacks[index] = Arrays.copyOf(frameStack, top);
+			queue(index);
+			return;
+		}
+		Type[] types = locals[index];
+		Type[] stack = stacks[index];
+		if (stack.length != top)
+			throw new IllegalStateException("stack heights differ at " + offsets[index] + " in " + method.name());
+		boolean changed = false;
+		for (int i = 0; i < types.length; i++) {
+			Type merged = merge(types[i], frameLocals[i]);
+			if (merged != types[i]) {
+				types[i] = merged;
+				changed = true;
+			}
+		}
+		for (int i = 0; i < top; i++) {
+			Type merged = merge(stack[i], frameStack[i]);
+			if (merged != stack[i]) {
+				stack[i] = merged;
+				changed = true;
+			}
+		}
+		if (changed)
+			queue(index);
+	}
+
+	private void queue(int index) {
+		if (!queued[index]) {
+			queued[index] = true;
+			pending[count++] = index;
+		}
+	}
+
+	/**
+	 * Merges two types into the most specific type that both are assignable
+	 * to.
+	 *
+	 * @return the first type if it is that type already
+	 */
+	private Type merge(Type current, Type incoming) {
+		if (current == incoming || current.equals(incoming) || current == Type.TOP)
+			return current;
+		if (current == Type.NULL && incoming.type == VerificationType.OBJECT)
+			return incoming;
+		if (incoming == Type.NULL && current.type == VerificationType.OBJECT)
+			return current;
+		if (current.type == VerificationType.OBJECT && incoming.type == VerificationType.OBJECT) {
+			String common = commonSuperClass(current.name, incoming.name);
+			return common.equals(current.name) ? current : object(common);
+		}
+		return Type.TOP;
+	}
+
+	private String commonSuperClass(String a, String b) {
+		if (a.equals(b))
+			return a;
+		boolean arrayA = a.charAt(0) == '[';
+		boolean arrayB = b.charAt(0) == '[';
+		if (arrayA && arrayB) {
+			char componentA = a.charAt(1);
+			char componentB = b.charAt(1);
+			// arrays of references are covariant, arrays of primitives only meet in java/lang/Object
+			if ((componentA == 'L' || componentA == '[') && (componentB == 'L' || componentB == '[')) {
+				String common = commonSuperClass(internalName(a.substring(1)), internalName(b.substring(1)));
+				return "[" + (common.charAt(0) == '[' ? common : "L" + common + ";");
+			}
+			return OBJECT;
+		}
+		if (arrayA || arrayB)
+			return OBJECT;
+		return hierarchy.commonSuperClass(a, b);
+	}
+
+	private static String internalName(String descriptor) {
+		return descriptor.charAt(0) == 'L' ? descriptor.substring(1, descriptor.length() - 1) : descriptor;
+	}
+
+	private void run(int start) {
+		State state = new State(locals[start], stacks[start]);
+		int size = instructions.size();
+		for (int i = start; i < size; i++) {
+			AbstractInstruction ai = instructions.get(i);
+			handle(i, state);
+			boolean next = execute(ai, state);
+			int id = ai.opcode().id();
+			// the handlers must accept the stored value as well
+			if ((id >= Opcode.ISTORE.id() && id <= Opcode.ASTORE_3.id()))
+				handle(i, state);
+			if (!next)
+				return;
+			if (leaders[i + 1]) {
+				if (i + 1 < size)
+					merge(i + 1, state.locals, state.stack, state.top);
+				return;
+			}
+		}
+	}
+
+	private void handle(int index, State state) {
+		int offset = offsets[index];
+		for (int i = 0; i < handlers.length; i++) {
+			if (offset >= handlers[i].start() && offset < handlers[i].end())
+				merge(handlerIndices[i], state.locals, caught[i], 1);
+		}
+	}
+
+	private Type catchType(ExceptionTableEntry entry) {
+		if (entry.catchType() == 0)
+			return object(THROWABLE);
+		return object(className(entry.catchType()));
+	}
+
+	private String className(int index) {
+		try {
+			ConstantPool pool = method.classInfo().constantPoolAt(index, ConstantClassInfo.class);
+			if (pool != null)
+				return ((ConstantClassInfo) pool).name();
+		} catch (InvalidByteCodeException e) {
+			// reported below
+		}
+		throw new IllegalStateException("invalid class index " + index + " in " + method.name());
+	}
+
+	/**
+	 * Runs an instruction on the given state, merging the state into the
+	 * instructions it jumps to.
+	 *
+	 * @return <t>true</t> if the next instruction runs after it, otherwise
+	 *         <t>false</t>.
+	 */
+	private boolean execute(AbstractInstruction ai, State state) {
+		Opcode opcode = ai.opcode();
+		int id = opcode.id();
+		switch (opcode) {
+			case NOP:
+			case IINC:
+			case WIDE:
+				return true;
+			case ACONST_NULL:
+				state.push(Type.NULL);
+				return true;
+			case ICONST_M1:
+			case ICONST_0:
+			case ICONST_1:
+			case ICONST_2:
+			case ICONST_3:
+			case ICONST_4:
+			case ICONST_5:
+			case BIPUSH:
+			case SIPUSH:
+				state.push(Type.INTEGER);
+				return true;
+			case LCONST_0:
+			case LCONST_1:
+				state.push(Type.LONG);
+				return true;
+			case FCONST_0:
+			case FCONST_1:
+			case FCONST_2:
+				state.push(Type.FLOAT);
+				return true;
+			case DCONST_0:
+			case DCONST_1:
+				state.push(Type.DOUBLE);
+				return true;
+			case LDC:
+			case LDC_W:
+			case LDC2_W:
+				state.push(constantType((ConstantInstruction) ai));
+				return true;
+			case ILOAD:
+			case LLOAD:
+			case FLOAD:
+			case DLOAD:
+			case ALOAD:
+				state.push(state.locals[((VariableInstruction) ai).variable()]);
+				return true;
+			case ILOAD_0:
+			case ILOAD_1:
+			case ILOAD_2:
+			case ILOAD_3:
+			case LLOAD_0:
+			case LLOAD_1:
+			case LLOAD_2:
+			case LLOAD_3:
+			case FLOAD_0:
+			case FLOAD_1:
+			case FLOAD_2:
+			case FLOAD_3:
+			case DLOAD_0:
+			case DLOAD_1:
+			case DLOAD_2:
+			case DLOAD_3:
+			case ALOAD_0:
+			case ALOAD_1:
+			case ALOAD_2:
+			case ALOAD_3:
+				state.push(state.locals[(id - Opcode.ILOAD_0.id()) % 4]);
+				return true;
+			case IALOAD:
+			case BALOAD:
+			case CALOAD:
+			case SALOAD:
+				state.pop(2);
+				state.push(Type.INTEGER);
+				return true;
+			case LALOAD:
+				state.pop(2);
+				state.push(Type.LONG);
+				return true;
+			case FALOAD:
+				state.pop(2);
+				state.push(Type.FLOAT);
+				return true;
+			case DALOAD:
+				state.pop(2);
+				state.push(Type.DOUBLE);
+				return true;
+			case AALOAD:
+				state.pop(1);
+				state.push(component(state.pop()));
+				return true;
+			case ISTORE:
+			case LSTORE:
+			case FSTORE:
+			case DSTORE:
+			case ASTORE:
+				store(state, ((VariableInstruction) ai).variable(), opcode == Opcode.LSTORE
+						|| opcode == Opcode.DSTORE);
+				return true;
+			case ISTORE_0:
+			case ISTORE_1:
+			case ISTORE_2:
+			case ISTORE_3:
+			case LSTORE_0:
+			case LSTORE_1:
+			case LSTORE_2:
+			case LSTORE_3:
+			case FSTORE_0:
+			case FSTORE_1:
+			case FSTORE_2:
+			case FSTORE_3:
+			case DSTORE_0:
+			case DSTORE_1:
+			case DSTORE_2:
+			case DSTORE_3:
+			case ASTORE_0:
+			case ASTORE_1:
+			case ASTORE_2:
+			case ASTORE_3:
+				store(state, (id - Opcode.ISTORE_0.id()) % 4, (id - Opcode.ISTORE_0.id()) / 4 % 2 == 1);
+				return true;
+			case IASTORE:
+			case FASTORE:
+			case AASTORE:
+			case BASTORE:
+			case CASTORE:
+			case SASTORE:
+				state.pop(3);
+				return true;
+			case LASTORE:
+			case DASTORE:
+				state.pop(4);
+				return true;
+			case POP:
+				state.pop(1);
+				return true;
+			case POP2:
+				state.pop(2);
+				return true;
+			case DUP: {
+				Type value = state.pop();
+				state.push(value, value);
+				return true;
+			}
+			case DUP_X1: {
+				Type value1 = state.pop();
+				Type value2 = state.pop();
+				state.push(value1, value2, value1);
+				return true;
+			}
+			case DUP_X2: {
+				Type value1 = state.pop();
+				Type value2 = state.pop();
+				Type value3 = state.pop();
+				state.push(value1, value3, value2, value1);
+				return true;
+			}
+			case DUP2: {
+				Type value1 = state.pop();
+				Type value2 = state.pop();
+				state.push(value2, value1, value2, value1);
+				return true;
+			}
+			case DUP2_X1: {
+				Type value1 = state.pop();
+				Type value2 = state.pop();
+				Type value3 = state.pop();
+				state.push(value2, value1, value3, value2, value1);
+				return true;
+			}
+			case DUP2_X2: {
+				Type value1 = state.pop();
+				Type value2 = state.pop();
+				Type value3 = state.pop();
+				Type value4 = state.pop();
+				state.push(value2, value1, value4, value3, value2, value1);
+				return true;
+			}
+			case SWAP: {
+				Type value1 = state.pop();
+				Type value2 = state.pop();
+				state.push(value1, value2);
+				return true;
+			}
+			case IADD:
+			case ISUB:
+			case IMUL:
+			case IDIV:
+			case IREM:
+			case ISHL:
+			case ISHR:
+			case IUSHR:
+			case IAND:
+			case IOR:
+			case IXOR:
+			case L2I:
+			case FCMPL:
+			case FCMPG:
+				state.pop(2);
+				state.push(Type.INTEGER);
+				return true;
+			case LADD:
+			case LSUB:
+			case LMUL:
+			case LDIV:
+			case LREM:
+			case LAND:
+			case LOR:
+			case LXOR:
+				state.pop(4);
+				state.push(Type.LONG);
+				return true;
+			case LSHL:
+			case LSHR:
+			case LUSHR:
+				state.pop(3);
+				state.push(Type.LONG);
+				return true;
+			case FADD:
+			case FSUB:
+			case FMUL:
+			case FDIV:
+			case FREM:
+			case L2F:
+			case D2F:
+				state.pop(2);
+				state.push(Type.FLOAT);
+				return true;
+			case DADD:
+			case DSUB:
+			case DMUL:
+			case DDIV:
+			case DREM:
+				state.pop(4);
+				state.push(Type.DOUBLE);
+				return true;
+			case INEG:
+			case F2I:
+			case I2B:
+			case I2C:
+			case I2S:
+			case ARRAYLENGTH:
+			case INSTANCEOF:
+				state.pop(1);
+				state.push(Type.INTEGER);
+				return true;
+			case LNEG:
+			case D2L:
+				state.pop(2);
+				state.push(Type.LONG);
+				return true;
+			case FNEG:
+			case I2F:
+				state.pop(1);
+				state.push(Type.FLOAT);
+				return true;
+			case DNEG:
+			case L2D:
+				state.pop(2);
+				state.push(Type.DOUBLE);
+				return true;
+			case I2L:
+			case F2L:
+				state.pop(1);
+				state.push(Type.LONG);
+				return true;
+			case I2D:
+			case F2D:
+				state.pop(1);
+				state.push(Type.DOUBLE);
+				return true;
+			case D2I:
+				state.pop(2);
+				state.push(Type.INTEGER);
+				return true;
+			case LCMP:
+			case DCMPL:
+			case DCMPG:
+				state.pop(4);
+				state.push(Type.INTEGER);
+				return true;
+			case IFEQ:
+			case IFNE:
+			case IFLT:
+			case IFGE:
+			case IFGT:
+			case IFLE:
+			case IFNULL:
+			case IFNONNULL:
+				state.pop(1);
+				jump(ai, state);
+				return true;
+			case IF_ICMPEQ:
+			case IF_ICMPNE:
+			case IF_ICMPLT:
+			case IF_ICMPGE:
+			case IF_ICMPGT:
+			case IF_ICMPLE:
+			case IF_ACMPEQ:
+			case IF_ACMPNE:
+				state.pop(2);
+				jump(ai, state);
+				return true;
+			case GOTO:
+			case GOTO_W:
+				jump(ai, state);
+				return false;
+			case TABLESWITCH:
+			case LOOKUPSWITCH:
+				state.pop(1);
+				for (int target : switchTargets(ai))
+					merge(indexAt(ai.offset() + target), state.locals, state.stack, state.top);
+				return false;
+			case IRETURN:
+			case LRETURN:
+			case FRETURN:
+			case DRETURN:
+			case ARETURN:
+			case RETURN:
+			case ATHROW:
+				return false;
+			case GETSTATIC:
+				state.push(type(StackCalculator.reference(ai).descriptor(), 0));
+				return true;
+			case PUTSTATIC:
+				state.pop(StackCalculator.reference(ai).descriptor());
+				return true;
+			case GETFIELD:
+				state.pop(1);
+				state.push(type(StackCalculator.reference(ai).descriptor(), 0));
+				return true;
+			case PUTFIELD:
+				state.pop(StackCalculator.reference(ai).descriptor());
+				state.pop(1);
+				return true;
+			case INVOKEVIRTUAL:
+			case INVOKESPECIAL:
+			case INVOKESTATIC:
+			case INVOKEINTERFACE:
+			case INVOKEDYNAMIC:
+				invoke(ai, state);
+				return true;
+			case NEW:
+				state.push(new Type(VerificationType.UNINITIALIZED, null, ai));
+				return true;
+			case NEWARRAY:
+				state.pop(1);
+				state.push(object("[" + arrayType(((ImmediateByteInstruction) ai).value())));
+				return true;
+			case ANEWARRAY: {
+				state.pop(1);
+				String type = ((TypeInstruction) ai).type();
+				state.push(object("[" + (type.charAt(0) == '[' ? type : "L" + type + ";")));
+				return true;
+			}
+			case CHECKCAST:
+				state.pop(1);
+				state.push(object(((TypeInstruction) ai).type()));
+				return true;
+			case MONITORENTER:
+			case MONITOREXIT:
+				state.pop(1);
+				return true;
+			case MULTIANEWARRAY:
+				state.pop(((MultianewarrayInstruction) ai).dimensions());
+				state.push(object(className(((MultianewarrayInstruction) ai).value() & 0xffff)));
+				return true;
+			case JSR:
+			case JSR_W:
+			case RET:
+				throw new IllegalStateException("subroutines cannot be described by frames, found " + opcode.verbose()
+						+ " at " + ai.offset() + " in " + method.name());
+			default:
+				throw new IllegalStateException("unexpected " + opcode.verbose() + " at " + ai.offset() + " in "
+						+ method.name());
+		}
+	}
+
+	private void jump(AbstractInstruction ai, State state) {
+		int target = indexAt(ai.offset() + ((AbstractBranchInstruction) ai).branchOffset());
+		merge(target, state.locals, state.stack, state.top);
+	}
+
+	private void store(State state, int variable, boolean wide) {
+		if (wide)
+			state.pop(1);
+		Type value = state.pop();
+		Type[] types = state.locals;
+		types[variable] = value;
+		if (value.wide())
+			types[variable + 1] = Type.TOP;
+		// a value that was split in half is no longer a value
+		if (variable > 0 && types[variable - 1].wide())
+			types[variable - 1] = Type.TOP;
+	}
+
+	private Type component(Type array) {
+		if (array == Type.NULL)
+			return Type.NULL;
+		if (array.type == VerificationType.OBJECT && array.name.charAt(0) == '[')
+			return type(array.name, 1);
+		return object(OBJECT);
+	}
+
+	private static char arrayType(int code) {
+		switch (code) {
+			case 4:
+				return 'Z';
+			case 5:
+				return 'C';
+			case 6:
+				return 'F';
+			case 7:
+				return 'D';
+			case 8:
+				return 'B';
+			case 9:
+				return 'S';
+			case 10:
+				return 'I';
+			case 11:
+				return 'J';
+			default:
+				throw new IllegalStateException("invalid array type " + code);
+		}
+	}
+
+	private Type constantType(ConstantInstruction ci) {
+		ConstantPool pool = method.classInfo().constantPoolAt(ci.index());
+		if (pool instanceof ConstantIntegerInfo)
+			return Type.INTEGER;
+		if (pool instanceof ConstantFloatInfo)
+			return Type.FLOAT;
+		if (pool instanceof ConstantLongInfo)
+			return Type.LONG;
+		if (pool instanceof ConstantDoubleInfo)
+			return Type.DOUBLE;
+		if (pool instanceof ConstantStringInfo)
+			return object("java/lang/String");
+		if (pool instanceof ConstantClassInfo)
+			return object("java/lang/Class");
+		if (pool instanceof ConstantMethodTypeInfo)
+			return object("java/lang/invoke/MethodType");
+		if (pool instanceof ConstantMethodHandleInfo)
+			return object("java/lang/invoke/MethodHandle");
+		throw new IllegalStateException("unexpected constant " + ci.index() + " loaded at " + ci.offset() + " in "
+				+ method.name());
+	}
+
+	private void invoke(AbstractInstruction ai, State state) {
+		Opcode opcode = ai.opcode();
+		String descriptor;
+		String name = null;
+		if (opcode == Opcode.INVOKEDYNAMIC) {
+			descriptor = StackCalculator.dynamicDescriptor(ai);
+		} else {
+			MemberReference reference = StackCalculator.reference(ai);
+			descriptor = reference.descriptor();
+			name = reference.name();
+		}
+		state.pop((Assembly.getArgumentsAndReturnSizes(descriptor) >> 2) - 1);
+		if (opcode != Opcode.INVOKESTATIC && opcode != Opcode.INVOKEDYNAMIC) {
+			Type receiver = state.pop();
+			if (opcode == Opcode.INVOKESPECIAL && name.equals("<init>"))
+				initialize(state, receiver);
+		}
+		char returnType = descriptor.charAt(descriptor.indexOf(')') + 1);
+		if (returnType != 'V')
+			state.push(type(descriptor, descriptor.indexOf(')') + 1));
+	}
+
+	private void initialize(State state, Type receiver) {
+		Type initialized;
+		if (receiver == Type.UNINITIALIZED_THIS)
+			initialized = object(method.classInfo().name());
+		else if (receiver.type == VerificationType.UNINITIALIZED)
+			initialized = object(((TypeInstruction) receiver.site).type());
+		else
+			return;
+		for (int i = 0; i < state.locals.length; i++) {
+			if (state.locals[i].equals(receiver))
+				state.locals[i] = initialized;
+		}
+		for (int i = 0; i < state.top; i++) {
+			if (state.stack[i].equals(receiver))
+				state.stack[i] = initialized;
+		}
+	}
+
+	/**
+	 * Lists the types of a frame the way a <tt>StackMapTable</tt> does,
+	 * where a <tt>long</tt> or <tt>double</tt> takes a single entry, leaving
+	 * out the unused variables at the end.
+	 */
+	private static Type[] compress(Type[] types, int length) {
+		List<Type> compressed = new ArrayList<>(length);
+		int last = 0;
+		for (int i = 0; i < length; i++) {
+			Type type = types[i];
+			compressed.add(type);
+			if (type != Type.TOP)
+				last = compressed.size();
+			if (type.wide())
+				i++;
+		}
+		return compressed.subList(0, last).toArray(new Type[last]);
+	}
+
+	private boolean replaceUnreachable() {
+		int size = instructions.size();
+		List<int[]> ranges = new ArrayList<>();
+		for (int i = 0; i < size;) {
+			int end = i + 1;
+			while (end < size && !leaders[end])
+				end++;
+			if (locals[i] == null) {
+				if (!ranges.isEmpty() && ranges.get(ranges.size() - 1)[1] == i)
+					ranges.get(ranges.size() - 1)[1] = end;
+				else
+					ranges.add(new int[] { i, end });
+			}
+			i = end;
+		}
+		if (ranges.isEmpty())
+			return false;
+		Type[] thrown = { object(THROWABLE) };
+		for (int r = ranges.size() - 1; r >= 0; r--) {
+			int start = ranges.get(r)[0];
+			int end = ranges.get(r)[1];
+			frames.add(new Frame(offsets[start], NO_TYPES, thrown));
+			// the same amount of bits keeps every other instruction where it is
+			List<AbstractInstruction> replacement = new ArrayList<>();
+			for (int offset = offsets[start]; offset < offsets[end]; offset++) {
+				SimpleInstruction si = new SimpleInstruction(method, offset + 1 < offsets[end] ? Opcode.NOP
+						: Opcode.ATHROW);
+				// placed, so that the offsets pointing into the code stay put when it is encoded again
+				si.setOffset(offset);
+				replacement.add(si);
+			}
+			instructions.subList(start, end).clear();
+			instructions.addAll(start, replacement);
+			for (int i = Math.max(0, start - 1); i < Math.min(instructions.size(), start + replacement.size() + 1); i++) {
+				AbstractInstruction ai = instructions.get(i);
+				ai.setPrevious(i > 0 ? instructions.get(i - 1) : null);
+				ai.setNext(i + 1 < instructions.size() ? instructions.get(i + 1) : null);
+			}
+		}
+		List<ExceptionTableEntry> live = new ArrayList<>();
+		boolean changed = false;
+		for (ExceptionTableEntry entry : handlers) {
+			int start = entry.start();
+			for (int[] range : ranges) {
+				int deadStart = offsets[range[0]];
+				int deadEnd = offsets[range[1]];
+				if (deadEnd <= start || deadStart >= entry.end())
+					continue;
+				changed = true;
+				if (start < deadStart)
+					live.add(entry(start, deadStart, entry));
+				start = Math.max(start, deadEnd);
+			}
+			if (start == entry.start())
+				live.add(entry);
+			else if (start < entry.end())
+				live.add(entry(start, entry.end(), entry));
+		}
+		if (changed)
+			code.setExceptionTable(live.toArray(new ExceptionTableEntry[live.size()]));
+		return true;
+	}
+
+	private ExceptionTableEntry entry(int start, int end, ExceptionTableEntry original) {
+		ExceptionTableEntry entry = new ExceptionTableEntry(start, end, original.handler(), original.catchType());
+		entry.setClassInfo(method.classInfo());
+		return entry;
+	}
+
+	/**
+	 * Stores the frames found by <tt>analyze</tt> in the <tt>Code</tt>
+	 * attribute, adding the classes they name to the constant pool. A
+	 * method that needs no frames is left without a <tt>StackMapTable</tt>.
+	 */
+	public void apply() {
+		ClassInfo classInfo = method.classInfo();
+		ConstantPoolBuilder builder = classInfo.constantPoolBuilder();
+		StackMapFrameEntry[] entries = new StackMapFrameEntry[frames.size()];
+		Type[] previous = compress(initial, initial.length);
+		int previousOffset = -1;
+		for (int i = 0; i < entries.length; i++) {
+			Frame frame = frames.get(i);
+			entries[i] = entry(classInfo, builder, frame, previous, frame.offset - previousOffset - 1);
+			previous = frame.locals;
+			previousOffset = frame.offset;
+		}
+		AttributeInfo[] attributes = code.attributes();
+		int index = -1;
+		for (int i = 0; i < attributes.length; i++) {
+			if (attributes[i] instanceof StackMapTableAttribute || StackMapTableAttribute.ATTRIBUTE_NAME.equals(
+					name(attributes[i])))
+				index = i;
+		}
+		if (entries.length == 0) {
+			if (index >= 0) {
+				AttributeInfo[] remaining = new AttributeInfo[attributes.length - 1];
+				System.arraycopy(attributes, 0, remaining, 0, index);
+				System.arraycopy(attributes, index + 1, remaining, index, remaining.length - index);
+				code.setAttributes(remaining);
+			}
+			return;
+		}
+		if (index >= 0 && attributes[index] instanceof StackMapTableAttribute) {
+			((StackMapTableAttribute) attributes[index]).setEntries(entries);
+			return;
+		}
+		StackMapTableAttribute table = new StackMapTableAttribute();
+		table.setClassInfo(classInfo);
+		table.setNameIndex(builder.utf8(StackMapTableAttribute.ATTRIBUTE_NAME));
+		table.setEntries(entries);
+		if (index < 0) {
+			attributes = Arrays.copyOf(attributes, attributes.length + 1);
+			index = attributes.length - 1;
+		} else {
+			attributes = attributes.clone();
+		}
+		attributes[index] = table;
+		code.setAttributes(attributes);
+	}
+
+	private static String name(AttributeInfo attribute) {
+		try {
+			return attribute.name();
+		} catch (InvalidByteCodeException e) {
+			return null;
+		}
+	}
+
+	private static StackMapFrameEntry entry(ClassInfo classInfo, ConstantPoolBuilder builder, Frame frame,
+			Type[] previous, int delta) {
+		StackMapFrameEntry entry = new StackMapFrameEntry();
+		entry.setClassInfo(classInfo);
+		entry.setDeltaOffset(delta);
+		entry.setOffset(frame.offset);
+		Type[] frameLocals = frame.locals;
+		Type[] stack = frame.stack;
+		int appended = frameLocals.length - previous.length;
+		if (stack.length == 0 && Arrays.equals(frameLocals, previous)) {
+			entry.setFrameType(delta < 64 ? StackFrameType.SAME : StackFrameType.SAME_EXT);
+			entry.setTag(delta < 64 ? delta : StackFrameType.SAME_EXT.boundary());
+		} else if (stack.length == 1 && Arrays.equals(frameLocals, previous)) {
+			entry.setFrameType(delta < 64 ? StackFrameType.SAME_LOCALS_1_STACK_ITEM
+					: StackFrameType.SAME_LOCALS_1_STACK_ITEM_EXT);
+			entry.setTag(delta < 64 ? 64 + delta : StackFrameType.SAME_LOCALS_1_STACK_ITEM_EXT.boundary());
+			entry.setStackItems(items(classInfo, builder, stack, 0, 1));
+		} else if (stack.length == 0 && appended < 0 && appended >= -3 && prefix(frameLocals, previous)) {
+			entry.setFrameType(StackFrameType.CHOP);
+			entry.setTag(StackFrameType.CHOP.boundary() + appended + 1);
+		} else if (stack.length == 0 && appended > 0 && appended <= 3 && prefix(previous, frameLocals)) {
+			entry.setFrameType(StackFrameType.APPEND);
+			entry.setTag(StackFrameType.SAME_EXT.boundary() + appended);
+			entry.setLocalItems(items(classInfo, builder, frameLocals, previous.length, frameLocals.length));
+		} else {
+			entry.setFrameType(StackFrameType.FULL);
+			entry.setTag(StackFrameType.FULL.boundary());
+			entry.setLocalItems(items(classInfo, builder, frameLocals, 0, frameLocals.length));
+			entry.setStackItems(items(classInfo, builder, stack, 0, stack.length));
+		}
+		return entry;
+	}
+
+	private static boolean prefix(Type[] shorter, Type[] longer) {
+		for (int i = 0; i < shorter.length; i++) {
+			if (!shorter[i].equals(longer[i]))
+				return false;
+		}
+		return true;
+	}
+
+	private static VerificationTypeInfoEntry[] items(ClassInfo classInfo, ConstantPoolBuilder builder,
+			Type[] types, int from, int to) {
+		VerificationTypeInfoEntry[] items = new VerificationTypeInfoEntry[to - from];
+		for (int i = from; i < to; i++) {
+			Type type = types[i];
+			VerificationTypeInfoEntry item = type.type.createEntry();
+			item.setClassInfo(classInfo);
+			if (type.type == VerificationType.OBJECT)
+				((ObjectVerificationTypeEntry) item).setIndex(builder.classRef(type.name));
+			else if (type.type == VerificationType.UNINITIALIZED)
+				((UninitializedVerificationTypeEntry) item).setOffset(type.site.offset());
+			items[i - from] = item;
+		}
+		return items;
+	}
+
+	/**
+	 * The verification type of a local variable or stack slot. The second
+	 * slot of a <tt>long</tt> or <tt>double</tt> holds <tt>TOP</tt>.
+	 */
+	private static final class Type {
+
+		static final Type TOP = new Type(VerificationType.TOP, null, null);
+		static final Type INTEGER = new Type(VerificationType.INTEGER, null, null);
+		static final Type FLOAT = new Type(VerificationType.FLOAT, null, null);
+		static final Type LONG = new Type(VerificationType.LONG, null, null);
+		static final Type DOUBLE = new Type(VerificationType.DOUBLE, null, null);
+		static final Type NULL = new Type(VerificationType.ITEM_Null, null, null);
+		// the tag that is named NULL is that of uninitializedThis
+		static final Type UNINITIALIZED_THIS = new Type(VerificationType.NULL, null, null);
+
+		final VerificationType type;
+		final String name;
+		final AbstractInstruction site;
+
+		Type(VerificationType type, String name, AbstractInstruction site) {
+			this.type = type;
+			this.name = name;
+			this.site = site;
+		}
+
+		boolean wide() {
+			return type == VerificationType.LONG || type == VerificationType.DOUBLE;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (this == object)
+				return true;
+			if (!(object instanceof Type))
+				return false;
+			Type other = (Type) object;
+			return type == other.type && site == other.site && (name == null ? other.name == null
+					: name.equals(other.name));
+		}
+
+		@Override
+		public int hashCode() {
+			return type.hashCode() * 31 + (name != null ? name.hashCode() : 0);
+		}
+	}
+
+	/**
+	 * The types of the local variables and operand stack while the
+	 * instructions of a block run.
+	 */
+	private static final class State {
+
+		final Type[] locals;
+		Type[] stack;
+		int top;
+
+		State(Type[] locals, Type[] stack) {
+			this.locals = locals.clone();
+			this.stack = Arrays.copyOf(stack, Math.max(4, stack.length * 2));
+			this.top = stack.length;
+		}
+
+		void push(Type type) {
+			if (top + 2 > stack.length)
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			stack[top++] = type;
+			if (type.wide())
+				stack[top++] = Type.TOP;
+		}
+
+		void push(Type... types) {
+			// used to copy slots around, which keeps the halves of wide values as they are
+			if (top + types.length > stack.length)
+				stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + types.length));
+			for (Type type : types)
+				stack[top++] = type;
+		}
+
+		Type pop() {
+			if (top == 0)
+				throw new IllegalStateException("stack underflow");
+			return stack[--top];
+		}
+
+		void pop(int slots) {
+			if (top < slots)
+				throw new IllegalStateException("stack underflow");
+			top -= slots;
+		}
+
+		void pop(String descriptor) {
+			char c = descriptor.charAt(0);
+			pop(c == 'J' || c == 'D' ? 2 : 1);
+		}
+	}
+
+	/**
+	 * The types at an instruction that a frame is written for.
+	 */
+	private static final class Frame {
+
+		final int offset;
+		final Type[] locals;
+		final Type[] stack;
+
+		Frame(int offset, Type[] locals, Type[] stack) {
+			this.offset = offset;
+			this.locals = locals;
+			this.stack = stack;
+		}
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.structure.flow;
+
+import static me.sedlar.bytecode.structure.AccessFlag.STATIC;
+
+import java.util.Arrays;
+import java.util.List;
+
+import me.sedlar.bytecode.*;
+import me.sedlar.bytecode.structure.InvalidByteCodeException;
+import me.sedlar.bytecode.structure.MemberReference;
+import me.sedlar.bytecode.structure.MethodInfo;
+import me.sedlar.bytecode.structure.attributes.CodeAttribute;
+import me.sedlar.bytecode.structure.attributes.ExceptionTableEntry;
+import me.sedlar.bytecode.structure.constants.ConstantInvokeDynamicInfo;
+import me.sedlar.bytecode.util.Assembly;
+
+/**
+ * Computes the <tt>max_stack</tt> and <tt>max_locals</tt> of a method from
+ * its instructions.
+ * <p>
+ * The height of the operand stack is followed along every path through the
+ * code, starting at the first instruction and at every exception handler,
+ * and each instruction is visited only once, as the height before an
+ * instruction is the same on every path reaching it in valid code.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class StackCalculator {
+
+	/**
+	 * The change in height of the operand stack for every opcode that does
+	 * not refer to a field, method or multiple dimensions, indexed by opcode.
+	 */
+	private static final int[] DELTAS = {
+			0, 1, 1, 1, 1, 1, 1, 1, 1, 2, 2, 1, 1, 1, 2, 2, // 0x0
+			1, 1, 1, 1, 2, 1, 2, 1, 2, 1, 1, 1, 1, 1, 2, 2, // 0x10
+			2, 2, 1, 1, 1, 1, 2, 2, 2, 2, 1, 1, 1, 1, -1, 0, // 0x20
+			-1, 0, -1, -1, -1, -1, -1, -2, -1, -2, -1, -1, -1, -1, -1, -2, // 0x30
+			-2, -2, -2, -1, -1, -1, -1, -2, -2, -2, -2, -1, -1, -1, -1, -3, // 0x40
+			-4, -3, -4, -3, -3, -3, -3, -1, -2, 1, 1, 1, 2, 2, 2, 0, // 0x50
+			-1, -2, -1, -2, -1, -2, -1, -2, -1, -2, -1, -2, -1, -2, -1, -2, // 0x60
+			-1, -2, -1, -2, 0, 0, 0, 0, -1, -1, -1, -1, -1, -1, -1, -2, // 0x70
+			-1, -2, -1, -2, 0, 1, 0, 1, -1, -1, 0, 0, 1, 1, -1, 0, // 0x80
+			-1, 0, 0, 0, -3, -1, -1, -3, -3, -1, -1, -1, -1, -1, -1, -2, // 0x90
+			-2, -2, -2, -2, -2, -2, -2, 0, 1, 0, -1, -1, -1, -2, -1, -2, // 0xa0
+			-1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, -1, // 0xb0
+			0, 0, -1, -1, 0, 0, -1, -1, 0, 1 // 0xc0
+	};
+
+	/**
+	 * Computes the <tt>max_stack</tt> and <tt>max_locals</tt> of the given
+	 * method and stores them in its <tt>Code</tt> attribute if they differ.
+	 * The instructions must have been laid out, which is the case once they
+	 * were read or written.
+	 *
+	 * @param method
+	 *            the method
+	 * @param code
+	 *            the <tt>Code</tt> attribute of the method
+	 * @throws IllegalStateException
+	 *             if an instruction refers to a constant that cannot be
+	 *             resolved, or jumps to an offset where no instruction starts
+	 */
+	public static void compute(MethodInfo method, CodeAttribute code) {
+		List<AbstractInstruction> instructions = method.instructions();
+		int maxStack = maxStack(instructions, code.exceptionTable());
+		int maxLocals = maxLocals(method, instructions);
+		if (maxStack != code.maxStack())
+			code.setMaxStack(maxStack);
+		if (maxLocals != code.maxLocals())
+			code.setMaxLocals(maxLocals);
+	}
+
+	/**
+	 * Computes the highest the operand stack gets while the given
+	 * instructions run.
+	 *
+	 * @param instructions
+	 *            the instructions, laid out
+	 * @param exceptionTable
+	 *            the exception table of the code
+	 * @return the <tt>max_stack</tt>
+	 */
+	public static int maxStack(List<AbstractInstruction> instructions, ExceptionTableEntry[] exceptionTable) {
+		int size = instructions.size();
+		int[] offsets = new int[size];
+		for (int i = 0; i < size; i++)
+			offsets[i] = instructions.get(i).offset();
+		int[] heights = new int[size];
+		Arrays.fill(heights, -1);
+		int[] pending = new int[size];
+		int count = 0;
+		int max = 0;
+		if (size > 0) {
+			heights[0] = 0;
+			pending[count++] = 0;
+		}
+		if (exceptionTable != null) {
+			for (ExceptionTableEntry entry : exceptionTable) {
+				int handler = indexAt(offsets, entry.handler());
+				if (heights[handler] < 0) {
+					heights[handler] = 1;
+					pending[count++] = handler;
+					max = Math.max(max, 1);
+				}
+			}
+		}
+		while (count > 0) {
+			int index = pending[--count];
+			// follow the straight line of code from here, queueing the other paths
+			while (index < size) {
+				AbstractInstruction ai = instructions.get(index);
+				int height = heights[index] + delta(ai);
+				if (height < 0)
+					throw new IllegalStateException("stack underflow at " + ai.offset() + " in "
+							+ ai.methodInfo().name());
+				max = Math.max(max, height);
+				int id = ai.opcode().id();
+				if (ai instanceof AbstractBranchInstruction) {
+					// the subroutine sees its return address, the instruction after jsr does not
+					int target = indexAt(offsets, ((AbstractBranchInstruction) ai).totalOffset());
+					if (heights[target] < 0) {
+						heights[target] = height;
+						pending[count++] = target;
+					}
+					if (id == Opcode.GOTO.id() || id == Opcode.GOTO_W.id())
+						break;
+					if (id == Opcode.JSR.id() || id == Opcode.JSR_W.id())
+						height--;
+				} else if (ai instanceof TableSwitchInstruction || ai instanceof LookupSwitchInstruction) {
+					for (int target : switchTargets(ai)) {
+						int targetIndex = indexAt(offsets, ai.offset() + target);
+						if (heights[targetIndex] < 0) {
+							heights[targetIndex] = height;
+							pending[count++] = targetIndex;
+						}
+					}
+					break;
+				} else if ((id >= Opcode.IRETURN.id() && id <= Opcode.RETURN.id()) || id == Opcode.ATHROW.id()
+						|| id == Opcode.RET.id()) {
+					break;
+				}
+				if (++index >= size || heights[index] >= 0)
+					break;
+				heights[index] = height;
+			}
+		}
+		return max;
+	}
+
+	private static int[] switchTargets(AbstractInstruction ai) {
+		if (ai instanceof TableSwitchInstruction) {
+			TableSwitchInstruction tsi = (TableSwitchInstruction) ai;
+			int[] jumpOffsets = tsi.jumpOffsets();
+			int[] targets = Arrays.copyOf(jumpOffsets, jumpOffsets.length + 1);
+			targets[jumpOffsets.length] = tsi.defaultOffset();
+			return targets;
+		}
+		LookupSwitchInstruction lsi = (LookupSwitchInstruction) ai;
+		List<OffsetPair> pairs = lsi.offsetPairs();
+		int[] targets = new int[pairs.size() + 1];
+		for (int i = 0; i < pairs.size(); i++) {
+			OffsetPair pair = pairs.get(i);
+			targets[i] = pair.target() != null ? pair.target().offset() - ai.offset() : pair.offset();
+		}
+		targets[pairs.size()] = lsi.defaultOffset();
+		return targets;
+	}
+
+	private static int indexAt(int[] offsets, int offset) {
+		int index = Arrays.binarySearch(offsets, offset);
+		if (index < 0)
+			throw new IllegalStateException("no instruction at offset " + offset);
+		return index;
+	}
+
+	/**
+	 * Get the amount of slots an instruction pushes onto the operand stack,
+	 * less the amount it pops.
+	 *
+	 * @param ai
+	 *            the instruction
+	 * @return the change in height of the operand stack
+	 */
+	public static int delta(AbstractInstruction ai) {
+		Opcode opcode = ai.opcode();
+		switch (opcode) {
+			case GETSTATIC:
+			case GETFIELD:
+			case PUTSTATIC:
+			case PUTFIELD: {
+				int size = size(reference(ai).descriptor().charAt(0));
+				if (opcode == Opcode.GETSTATIC)
+					return size;
+				else if (opcode == Opcode.GETFIELD)
+					return size - 1;
+				else if (opcode == Opcode.PUTSTATIC)
+					return -size;
+				return -size - 1;
+			}
+			case INVOKEVIRTUAL:
+			case INVOKESPECIAL:
+			case INVOKESTATIC:
+			case INVOKEINTERFACE:
+			case INVOKEDYNAMIC: {
+				String descriptor = opcode == Opcode.INVOKEDYNAMIC ? dynamicDescriptor(ai) : reference(ai)
+						.descriptor();
+				int sizes = Assembly.getArgumentsAndReturnSizes(descriptor);
+				// the argument size counts a receiver, which static and dynamic calls do not have
+				int arguments = (sizes >> 2)
+						- (opcode == Opcode.INVOKESTATIC || opcode == Opcode.INVOKEDYNAMIC ? 1 : 0);
+				return (sizes & 0x03) - arguments;
+			}
+			case MULTIANEWARRAY:
+				return 1 - ((MultianewarrayInstruction) ai).dimensions();
+			default:
+				return opcode.id() < DELTAS.length ? DELTAS[opcode.id()] : 0;
+		}
+	}
+
+	private static int size(char descriptor) {
+		return descriptor == 'J' || descriptor == 'D' ? 2 : 1;
+	}
+
+	static MemberReference reference(AbstractInstruction ai) {
+		int index = ((ImmediateShortInstruction) ai).value() & 0xffff;
+		MemberReference reference = ai.classInfo().memberReference(ai.opcode(), index);
+		if (reference == null)
+			throw new IllegalStateException("unresolved reference at " + ai.offset() + " in "
+					+ ai.methodInfo().name());
+		return reference;
+	}
+
+	static String dynamicDescriptor(AbstractInstruction ai) {
+		try {
+			ConstantInvokeDynamicInfo info = (ConstantInvokeDynamicInfo) ai.classInfo().constantPoolAt(
+					((ImmediateShortInstruction) ai).value() & 0xffff, ConstantInvokeDynamicInfo.class);
+			if (info != null)
+				return info.nameAndTypeInfo().descriptor();
+		} catch (InvalidByteCodeException e) {
+			// reported below
+		}
+		throw new IllegalStateException("unresolved call site at " + ai.offset() + " in "
+				+ ai.methodInfo().name());
+	}
+
+	/**
+	 * Computes the amount of local variable slots the given instructions
+	 * use, which is at least the amount taken by the arguments of the
+	 * method.
+	 *
+	 * @param method
+	 *            the method
+	 * @param instructions
+	 *            the instructions
+	 * @return the <tt>max_locals</tt>
+	 */
+	public static int maxLocals(MethodInfo method, List<AbstractInstruction> instructions) {
+		int max = (Assembly.getArgumentsAndReturnSizes(method.descriptor()) >> 2)
+				- (STATIC.is(method.accessFlags()) ? 1 : 0);
+		for (AbstractInstruction ai : instructions) {
+			int id = ai.opcode().id();
+			int end;
+			if (id >= Opcode.ILOAD.id() && id <= Opcode.ALOAD.id())
+				end = ((VariableInstruction) ai).variable() + wideSlots(id - Opcode.ILOAD.id());
+			else if (id >= Opcode.ISTORE.id() && id <= Opcode.ASTORE.id())
+				end = ((VariableInstruction) ai).variable() + wideSlots(id - Opcode.ISTORE.id());
+			else if (id >= Opcode.ILOAD_0.id() && id <= Opcode.ALOAD_3.id())
+				end = (id - Opcode.ILOAD_0.id()) % 4 + wideSlots((id - Opcode.ILOAD_0.id()) / 4);
+			else if (id >= Opcode.ISTORE_0.id() && id <= Opcode.ASTORE_3.id())
+				end = (id - Opcode.ISTORE_0.id()) % 4 + wideSlots((id - Opcode.ISTORE_0.id()) / 4);
+			else if (id == Opcode.IINC.id() || id == Opcode.RET.id())
+				end = variable((ImmediateByteInstruction) ai) + 1;
+			else
+				continue;
+			max = Math.max(max, end);
+		}
+		return max;
+	}
+
+	private static int variable(ImmediateByteInstruction ibi) {
+		// the index is read as a signed value
+		return ibi.value() & (ibi.wide() ? 0xffff : 0xff);
+	}
+
+	// kinds are in the order int, long, float, double and reference
+	private static int wideSlots(int kind) {
+		return kind == 1 || kind == 3 ? 2 : 1;
+	}
+}
@@ -47,6 +47,7 @@ public class AnnotationValue extends Value implements AnnotationData {
 	 *            the array
 	 */
 	public void setPair(ValuePair[] valuePairEntries) {
+		markDirty();
 		this.valuePairEntries = valuePairEntries;
 	}
 
@@ -61,6 +62,7 @@ public class AnnotationValue extends Value implements AnnotationData {
 	 *            the <tt>type_index</tt>
 	 */
 	public void setIndex(int typeIndex) {
+		markDirty();
 		this.typeIndex = typeIndex;
 	}
 
@@ -45,6 +45,7 @@ public class ArrayValue extends Value {
 	 *            the array
 	 */
 	public void setEntries(Value[] valueEntries) {
+		markDirty();
 		this.valueEntries = valueEntries;
 	}
 
@@ -43,6 +43,7 @@ public class ClassValue extends Value {
 	 *            the <tt>class_info_index</tt>
 	 */
 	public void setCLassIndex(int classInfoIndex) {
+		markDirty();
 		this.classInfoIndex = classInfoIndex;
 	}
 
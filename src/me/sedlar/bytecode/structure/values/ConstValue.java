@@ -43,6 +43,7 @@ public class ConstValue extends Value {
 	 *            the <tt>const_value_index</tt>
 	 */
 	public void setValueIndex(int constValueIndex) {
+		markDirty();
 		this.constValueIndex = constValueIndex;
 	}
 
@@ -44,6 +44,7 @@ public class EnumValue extends Value {
 	 *            the <tt>type_name_index</tt>
 	 */
 	public void setTypeNameIndex(int typeNameIndex) {
+		markDirty();
 		this.typeNameIndex = typeNameIndex;
 	}
 
@@ -63,6 +64,7 @@ public class EnumValue extends Value {
 	 *            the <tt>const_name_index</tt>
 	 */
 	public void setNameIndex(int constNameIndex) {
+		markDirty();
 		this.constNameIndex = constNameIndex;
 	}
 
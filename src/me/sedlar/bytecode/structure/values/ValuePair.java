@@ -64,6 +64,7 @@ public class ValuePair extends AbstractStructure {
 	 *            the <tt>element_value</tt>
 	 */
 	public void setValue(Value value) {
+		markDirty();
 		this.value = value;
 	}
 
@@ -83,6 +84,7 @@ public class ValuePair extends AbstractStructure {
 	 *            the <tt>element_name_index</tt>
 	 */
 	public void setNameIndex(int elementNameIndex) {
+		markDirty();
 		this.elementNameIndex = elementNameIndex;
 	}
 
@@ -0,0 +1,246 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.util;
+
+import me.sedlar.bytecode.structure.FrozenClass;
+import me.sedlar.bytecode.structure.InvalidByteCodeException;
+import me.sedlar.util.io.MappedZipEntry;
+import me.sedlar.util.io.MappedZipFile;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An on-disk cache of the frozen classes of archives, shared across runs.
+ * <p>
+ * Every archive is stored in its own file, named after a digest of the names, CRCs and sizes of its
+ * entries, so the same jar is found again regardless of its path while any change to its content
+ * misses the cache. The file holds every class file together with the offsets recorded when it was
+ * frozen, followed by an index of the entries and a trailer, and is memory-mapped when loaded. A warm
+ * run therefore neither inflates nor walks a single class. Files written with another
+ * <tt>FORMAT_VERSION</tt>, or whose checksum does not match, are ignored and replaced.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class ArchiveCache {
+
+	/**
+	 * The version of the cache file format; files of other versions are discarded.
+	 */
+	public static final int FORMAT_VERSION = 2;
+
+	private static final int MAGIC = 0x53424643;
+	private static final int DIGEST_SIZE = 20;
+	private static final int TRAILER_SIZE = 4 + 4 + DIGEST_SIZE + 4 + 4;
+	private static final String EXTENSION = ".sbfc";
+
+	private final File directory;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory the directory to keep the cache files in, created when needed
+	 */
+	public ArchiveCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Gets the directory that the cache files are kept in.
+	 *
+	 * @return the directory that the cache files are kept in
+	 */
+	public File directory() {
+		return directory;
+	}
+
+	private static byte[] digest(MappedZipFile zip) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] record = new byte[16];
+		for (MappedZipEntry entry : zip.entries()) {
+			digest.update(entry.name().getBytes(StandardCharsets.UTF_8));
+			long size = entry.size();
+			putInt(record, 0, entry.crc());
+			putInt(record, 4, (int) (size >>> 32));
+			putInt(record, 8, (int) size);
+			putInt(record, 12, entry.method());
+			digest.update(record);
+		}
+		return digest.digest();
+	}
+
+	private static void putInt(byte[] buffer, int position, int value) {
+		buffer[position] = (byte) (value >>> 24);
+		buffer[position + 1] = (byte) (value >>> 16);
+		buffer[position + 2] = (byte) (value >>> 8);
+		buffer[position + 3] = (byte) value;
+	}
+
+	private File file(byte[] digest) {
+		StringBuilder name = new StringBuilder(digest.length * 2 + EXTENSION.length());
+		for (byte b : digest)
+			name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		return new File(directory, name.append(EXTENSION).toString());
+	}
+
+	/**
+	 * Loads the cached classes of the given archive. The cache file is checked against its checksum
+	 * before anything is handed out.
+	 *
+	 * @param zip the archive to load the cached classes of
+	 * @return the cached classes of the given archive, or <t>null</t> if they are not cached or stale
+	 */
+	public Snapshot load(MappedZipFile zip) {
+		byte[] digest = digest(zip);
+		File file = file(digest);
+		if (!file.isFile())
+			return null;
+		MappedByteBuffer buffer;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE || channel.size() < TRAILER_SIZE)
+				return null;
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			return null;
+		}
+		int trailer = buffer.limit() - TRAILER_SIZE;
+		if (buffer.getInt(trailer + 32) != MAGIC || buffer.getInt(trailer + 28) != FORMAT_VERSION)
+			return null;
+		for (int i = 0; i < DIGEST_SIZE; i++) {
+			if (buffer.get(trailer + 8 + i) != digest[i])
+				return null;
+		}
+		int count = buffer.getInt(trailer + 4);
+		int index = trailer - count * 4;
+		if (count != zip.entries().size() || index < 0)
+			return null;
+		ByteBuffer body = buffer.duplicate();
+		body.limit(trailer);
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		if ((int) crc.getValue() != buffer.getInt(trailer))
+			return null;
+		return new Snapshot(buffer, index, count);
+	}
+
+	/**
+	 * Stores the frozen classes of the given archive, replacing any previous file for the same content.
+	 * The file is written next to its final location and moved into place, so concurrent readers never
+	 * see a partially written file.
+	 *
+	 * @param zip the archive that the classes belong to
+	 * @param classes the frozen classes, indexed like the central directory, <t>null</t> for entries
+	 *                that are not classes
+	 * @throws IOException if the cache file cannot be written
+	 */
+	public void store(MappedZipFile zip, FrozenClass[] classes) throws IOException {
+		List<MappedZipEntry> entries = zip.entries();
+		if (classes.length != entries.size())
+			throw new IllegalArgumentException("expected " + entries.size() + " entries, got " + classes.length);
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("failed to create cache directory " + directory);
+		byte[] digest = digest(zip);
+		File file = file(digest);
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		try {
+			CRC32 crc = new CRC32();
+			try (FileOutputStream stream = new FileOutputStream(temp)) {
+				DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(stream,
+						1 << 16), crc));
+				int[] offsets = new int[classes.length];
+				for (int i = 0; i < classes.length; i++) {
+					if (classes[i] == null) {
+						offsets[i] = -1;
+						continue;
+					}
+					offsets[i] = out.size();
+					classes[i].write(out);
+					if (out.size() > Integer.MAX_VALUE - TRAILER_SIZE - 4L * classes.length)
+						throw new IOException("archive too large to cache: " + zip.file());
+				}
+				for (int offset : offsets)
+					out.writeInt(offset);
+				out.writeInt((int) crc.getValue());
+				out.writeInt(classes.length);
+				out.write(digest);
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(MAGIC);
+				out.flush();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			if (temp.exists())
+				temp.delete();
+		}
+	}
+
+	/**
+	 * The cached classes of a single archive, viewed within the mapped cache file.
+	 */
+	public static class Snapshot {
+
+		private final ByteBuffer buffer;
+		private final int index;
+		private final int count;
+
+		private Snapshot(ByteBuffer buffer, int index, int count) {
+			this.buffer = buffer;
+			this.index = index;
+			this.count = count;
+		}
+
+		/**
+		 * Checks whether the given entry was cached as a class.
+		 *
+		 * @param entry the entry to check
+		 * @return <t>true</t> if the entry was cached as a class, otherwise <t>false</t>
+		 */
+		public boolean contains(MappedZipEntry entry) {
+			return entry.index() < count && buffer.getInt(index + entry.index() * 4) >= 0;
+		}
+
+		/**
+		 * Restores the cached class of the given entry without reading the archive. Any thread may call this
+		 * concurrently.
+		 *
+		 * @param entry the entry to restore
+		 * @param copy <t>true</t> to copy the class file onto the heap, otherwise <t>false</t> to view it
+		 *             within the mapped cache file
+		 * @return the frozen class, or <t>null</t> if the entry was not cached as a class
+		 * @throws InvalidByteCodeException if the cached class is malformed
+		 */
+		public FrozenClass restore(MappedZipEntry entry, boolean copy) throws InvalidByteCodeException {
+			if (!contains(entry))
+				return null;
+			ByteBuffer record = buffer.duplicate();
+			record.limit(index);
+			record.position(buffer.getInt(index + entry.index() * 4));
+			try {
+				return FrozenClass.restore(record, copy);
+			} catch (BufferUnderflowException | IllegalArgumentException e) {
+				throw new InvalidByteCodeException("truncated cache record for " + entry.name());
+			}
+		}
+	}
+}
@@ -34,8 +34,8 @@ public class Assembly {
 				at = desc.charAt(c);
 				return n << 2 | (at == 'V' ? 0 : (at == 'D' || at == 'J' ? 2 : 1));
 			} else if (at == 'L') {
-				while (desc.charAt(c) != ';')
-					c++;
+				while (desc.charAt(c++) != ';')
+					;
 				n += 1;
 			} else if (at == '[') {
 				while ((at = desc.charAt(c)) == '[')
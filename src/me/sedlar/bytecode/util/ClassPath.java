@@ -0,0 +1,376 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.util;
+
+import me.sedlar.bytecode.structure.ClassHeader;
+import me.sedlar.bytecode.structure.ClassInfo;
+import me.sedlar.bytecode.structure.InvalidByteCodeException;
+import me.sedlar.bytecode.structure.ParseOptions;
+import me.sedlar.bytecode.structure.SymbolTable;
+import me.sedlar.util.io.BufferPool;
+import me.sedlar.util.io.MappedZipEntry;
+import me.sedlar.util.io.MappedZipFile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A lookup of classes by name across several jars, exploded directories and the runtime image.
+ * <p>
+ * Adding a source only indexes the names of the classes within it. A class is read and parsed when it
+ * is first looked up, and parsed classes are kept in a least-recently-used cache whose budget is
+ * measured in an estimate of the heap they retain, so resolving against a large source only parses and
+ * keeps what is used. When a class is present in several sources, the source that was added first wins,
+ * like on a JVM class path. Classes that cannot be read or parsed are reported through <tt>failures</tt>.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class ClassPath implements Closeable {
+
+	private final Map<String, Location> index = new HashMap<>();
+	private final List<MappedZipFile> archives = new ArrayList<>();
+	private final BufferPool pool = new BufferPool();
+	private final LinkedHashMap<String, ClassInfo> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, Long> weights = new HashMap<>();
+	private final Map<String, Throwable> failures = new HashMap<>();
+	private final long budget;
+	private final ParseOptions parseOptions;
+	private final SymbolTable symbols;
+	private long weight;
+
+	/**
+	 * Constructor.
+	 * <p>
+	 * Symbols stay in the given table after the classes that introduced them are evicted, so a shared table
+	 * grows with the amount of distinct names and descriptors resolved, not with the budget.
+	 *
+	 * @param budget the estimated heap in bytes that the parsed classes kept cached may retain
+	 * @param parseOptions the options to read each class with
+	 * @param symbols the table to intern names and descriptors in, or <t>null</t> to let every class keep its own
+	 * @see #retainedSize()
+	 */
+	public ClassPath(long budget, ParseOptions parseOptions, SymbolTable symbols) {
+		this.budget = budget;
+		this.parseOptions = parseOptions;
+		this.symbols = symbols;
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param budget the estimated heap in bytes that the parsed classes kept cached may retain
+	 * @param lazy <t>true</t> to read the members and code of each class on first use, otherwise <t>false</t>
+	 * @param symbols the table to intern names and descriptors in, or <t>null</t> to let every class keep its own
+	 */
+	public ClassPath(long budget, boolean lazy, SymbolTable symbols) {
+		this(budget, new ParseOptions().setLazy(lazy), symbols);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param budget the estimated heap in bytes that the parsed classes kept cached may retain
+	 * @param lazy <t>true</t> to read the members and code of each class on first use, otherwise <t>false</t>
+	 */
+	public ClassPath(long budget, boolean lazy) {
+		this(budget, lazy, null);
+	}
+
+	/**
+	 * Constructor, caching lazily parsed classes that retain up to an estimated 64 MiB of heap.
+	 */
+	public ClassPath() {
+		this(64L << 20, true);
+	}
+
+	/**
+	 * Gets the options that the classes on this class path are read with.
+	 *
+	 * @return the options that the classes on this class path are read with
+	 */
+	public ParseOptions parseOptions() {
+		return parseOptions;
+	}
+
+	/**
+	 * Adds a jar or an exploded directory to the end of this class path.
+	 *
+	 * @param file the jar or directory to add
+	 * @throws IOException if the jar or directory cannot be indexed
+	 */
+	public void add(File file) throws IOException {
+		if (file.isDirectory())
+			addDirectory(file.toPath());
+		else
+			addArchive(file);
+	}
+
+	/**
+	 * Adds the classes of the running JDK to the end of this class path, from the <tt>jrt:/</tt> image
+	 * when available or from <tt>rt.jar</tt> otherwise.
+	 *
+	 * @return <t>true</t> if the runtime classes were found, otherwise <t>false</t>
+	 * @throws IOException if the runtime classes cannot be indexed
+	 */
+	public boolean addRuntime() throws IOException {
+		FileSystem jrt;
+		try {
+			jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+		} catch (FileSystemNotFoundException | ProviderNotFoundException e) {
+			File rt = new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar");
+			if (!rt.isFile())
+				return false;
+			addArchive(rt);
+			return true;
+		}
+		try (DirectoryStream<Path> modules = Files.newDirectoryStream(jrt.getPath("/modules"))) {
+			for (Path module : modules)
+				addDirectory(module);
+		}
+		return true;
+	}
+
+	private void addArchive(File file) throws IOException {
+		MappedZipFile zip = new MappedZipFile(file, pool);
+		synchronized (this) {
+			archives.add(zip);
+			for (MappedZipEntry entry : zip.entries()) {
+				String name = entry.name();
+				if (name.endsWith(".class") && !name.startsWith("META-INF/"))
+					index.putIfAbsent(name.substring(0, name.length() - 6), new ArchiveLocation(zip, entry));
+			}
+		}
+	}
+
+	private void addDirectory(Path root) throws IOException {
+		Map<String, Location> found = new LinkedHashMap<>();
+		try (Stream<Path> paths = Files.walk(root)) {
+			paths.forEach(path -> {
+				String name = root.relativize(path).toString().replace(root.getFileSystem().getSeparator(), "/");
+				if (name.endsWith(".class") && !name.startsWith("META-INF/") && Files.isRegularFile(path))
+					found.put(name.substring(0, name.length() - 6), new PathLocation(path));
+			});
+		}
+		synchronized (this) {
+			for (Map.Entry<String, Location> entry : found.entrySet())
+				index.putIfAbsent(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Checks whether a class with the given name is on this class path, without parsing it.
+	 *
+	 * @param name the internal or binary name of the class
+	 * @return <t>true</t> if the class is on this class path, otherwise <t>false</t>
+	 */
+	public synchronized boolean contains(String name) {
+		return index.containsKey(name.replace('.', '/'));
+	}
+
+	/**
+	 * Gets the internal names of every class on this class path.
+	 *
+	 * @return the internal names of every class on this class path
+	 */
+	public synchronized Set<String> names() {
+		return new HashSet<>(index.keySet());
+	}
+
+	/**
+	 * Gets the amount of classes on this class path.
+	 *
+	 * @return the amount of classes on this class path
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * Gets the class with the given name, parsing it if it is not cached.
+	 *
+	 * @param name the internal or binary name of the class
+	 * @return the class with the given name, or <t>null</t> if it is not on this class path or could not be read
+	 * @see #failure(String)
+	 */
+	public ClassInfo get(String name) {
+		name = name.replace('.', '/');
+		Location location;
+		synchronized (this) {
+			ClassInfo info = cache.get(name);
+			if (info != null)
+				return info;
+			location = index.get(name);
+		}
+		if (location == null)
+			return null;
+		ClassInfo info;
+		long size;
+		try {
+			byte[] bytes = location.read();
+			info = new ClassInfo(bytes, 0, bytes.length, parseOptions, symbols);
+			size = retainedSize(bytes.length);
+		} catch (IOException | InvalidByteCodeException | RuntimeException e) {
+			fail(name, e);
+			return null;
+		}
+		synchronized (this) {
+			// another thread may have parsed the same class in the meantime
+			ClassInfo existing = cache.get(name);
+			if (existing != null)
+				return existing;
+			cache.put(name, info);
+			weights.put(name, size);
+			weight += size;
+			Iterator<Map.Entry<String, ClassInfo>> iterator = cache.entrySet().iterator();
+			while (weight > budget && iterator.hasNext()) {
+				String eldest = iterator.next().getKey();
+				if (eldest.equals(name))
+					break;
+				iterator.remove();
+				weight -= weights.remove(eldest);
+			}
+		}
+		return info;
+	}
+
+	/**
+	 * Gets the header of the class with the given name. The header is taken from the cache when the class
+	 * was parsed already, otherwise it is read from the class file without parsing or caching the class.
+	 *
+	 * @param name the internal or binary name of the class
+	 * @return the header of the class with the given name, or <t>null</t> if it is not on this class path or
+	 *         could not be read
+	 * @see #failure(String)
+	 */
+	public ClassHeader header(String name) {
+		name = name.replace('.', '/');
+		Location location;
+		synchronized (this) {
+			ClassInfo info = cache.get(name);
+			if (info != null)
+				return ClassHeader.of(info);
+			location = index.get(name);
+		}
+		if (location == null)
+			return null;
+		try {
+			byte[] bytes = location.read();
+			return ClassHeader.read(bytes, 0, bytes.length, symbols);
+		} catch (IOException | InvalidByteCodeException | RuntimeException e) {
+			fail(name, e);
+			return null;
+		}
+	}
+
+	private synchronized void fail(String name, Throwable failure) {
+		failures.put(name, failure);
+	}
+
+	/**
+	 * Gets the reason that the class with the given name could not be read or parsed the last time it was
+	 * looked up.
+	 *
+	 * @param name the internal or binary name of the class
+	 * @return the reason, or <t>null</t> if the class did not fail
+	 */
+	public synchronized Throwable failure(String name) {
+		return failures.get(name.replace('.', '/'));
+	}
+
+	/**
+	 * Gets the classes that could not be read or parsed so far, with the reason for each of them.
+	 *
+	 * @return the internal names of the classes that failed, with the reason for each of them
+	 */
+	public synchronized Map<String, Throwable> failures() {
+		return new HashMap<>(failures);
+	}
+
+	/**
+	 * Estimates the heap that a class parsed from a class file of the given length retains. Lazily read
+	 * classes may be decoded while they are cached, so every class is weighed as decoded. Across the
+	 * classes of a JDK, a decoded class retains about ten times the length of its class file, and a class
+	 * read without its code a bit under six times.
+	 *
+	 * @param length the length of the class file
+	 * @return the estimated heap in bytes that the parsed class retains
+	 */
+	private long retainedSize(int length) {
+		return (long) length * (parseOptions.skipCode() ? 6 : 11);
+	}
+
+	/**
+	 * Gets the estimated heap in bytes that the parsed classes that are currently cached retain.
+	 *
+	 * @return the estimated heap in bytes that the cached classes retain
+	 */
+	public synchronized long retainedSize() {
+		return weight;
+	}
+
+	/**
+	 * Drops every parsed class from the cache, keeping the index.
+	 */
+	public synchronized void evict() {
+		cache.clear();
+		weights.clear();
+		weight = 0;
+	}
+
+	@Override
+	public synchronized void close() {
+		for (MappedZipFile zip : archives)
+			zip.close();
+		archives.clear();
+		index.clear();
+		failures.clear();
+		evict();
+	}
+
+	/**
+	 * The place that a class file is read from.
+	 */
+	private interface Location {
+
+		byte[] read() throws IOException;
+	}
+
+	private static final class ArchiveLocation implements Location {
+
+		private final MappedZipFile zip;
+		private final MappedZipEntry entry;
+
+		private ArchiveLocation(MappedZipFile zip, MappedZipEntry entry) {
+			this.zip = zip;
+			this.entry = entry;
+		}
+
+		@Override
+		public byte[] read() throws IOException {
+			return zip.read(entry);
+		}
+	}
+
+	private static final class PathLocation implements Location {
+
+		private final Path path;
+
+		private PathLocation(Path path) {
+			this.path = path;
+		}
+
+		@Override
+		public byte[] read() throws IOException {
+			return Files.readAllBytes(path);
+		}
+	}
+}
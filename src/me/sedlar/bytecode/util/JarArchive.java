@@ -6,30 +6,60 @@
  */
 package me.sedlar.bytecode.util;
 
+import me.sedlar.bytecode.structure.ClassHeader;
 import me.sedlar.bytecode.structure.ClassInfo;
+import me.sedlar.bytecode.structure.ConstantPoolCompactor;
+import me.sedlar.bytecode.structure.FrozenClass;
 import me.sedlar.bytecode.structure.InvalidByteCodeException;
 import me.sedlar.bytecode.structure.MethodInfo;
-import me.sedlar.util.io.Streams;
+import me.sedlar.bytecode.structure.ParseOptions;
+import me.sedlar.bytecode.structure.SymbolTable;
+import me.sedlar.util.io.BufferPool;
+import me.sedlar.util.io.CompressionPolicy;
+import me.sedlar.util.io.MappedZipEntry;
+import me.sedlar.util.io.MappedZipFile;
+import me.sedlar.util.io.ZipWriter;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 /**
  * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
  */
-public class JarArchive {
+public class JarArchive implements Closeable {
 
 	private final File file;
 	private final long size;
 	private final boolean keepResources;
+	private final boolean lazy;
+	private final ParseOptions parseOptions;
 
-	private final Map<String, ClassInfo> classes = new HashMap<>();
-	private final Map<String, byte[]> resources = new HashMap<>();
+	private final Map<String, ClassInfo> classes = new LinkedHashMap<>();
+	private final Map<String, Resource> resources = new LinkedHashMap<>();
+	private final Map<String, Throwable> failures = new LinkedHashMap<>();
+	private final BufferPool pool = new BufferPool();
+	private final Map<ClassInfo, MappedZipEntry> sources = new IdentityHashMap<>();
+	private MappedZipFile source;
+	private long sourceModified;
+	private SymbolTable symbols = new SymbolTable();
+	private boolean compactConstantPools;
+	private ArchiveCache cache;
+	private boolean cached;
 
 	private long nanos;
 
@@ -38,13 +68,37 @@ public class JarArchive {
 	 *
 	 * @param file          a jar file on the local system
 	 * @param keepResources <t>true</t> to keep files outside of .class, otherwise <t>false</t>
+	 * @param lazy          <t>true</t> to read the members and code of each class on first use, otherwise <t>false</t>
 	 */
-	public JarArchive(File file, boolean keepResources) {
+	public JarArchive(File file, boolean keepResources, boolean lazy) {
+		this(file, keepResources, new ParseOptions().setLazy(lazy));
+	}
+
+	/**
+	 * An archive that is used for gathering ClassInfo data.
+	 *
+	 * @param file          a jar file on the local system
+	 * @param keepResources <t>true</t> to keep files outside of .class, otherwise <t>false</t>
+	 * @param parseOptions  the options to read each class with
+	 */
+	public JarArchive(File file, boolean keepResources, ParseOptions parseOptions) {
 		if (!file.getName().endsWith(".jar"))
 			throw new IllegalArgumentException("File is not a jar");
 		this.file = file;
 		this.size = file.length();
 		this.keepResources = keepResources;
+		this.lazy = parseOptions.lazy();
+		this.parseOptions = parseOptions;
+	}
+
+	/**
+	 * An archive that is used for gathering ClassInfo data.
+	 *
+	 * @param file          a jar file on the local system
+	 * @param keepResources <t>true</t> to keep files outside of .class, otherwise <t>false</t>
+	 */
+	public JarArchive(File file, boolean keepResources) {
+		this(file, keepResources, false);
 	}
 
 	/**
@@ -56,6 +110,84 @@ public class JarArchive {
 		this(file, true);
 	}
 
+	/**
+	 * Gets the options that the classes of this archive are read with.
+	 *
+	 * @return the options that the classes of this archive are read with
+	 */
+	public ParseOptions parseOptions() {
+		return parseOptions;
+	}
+
+	/**
+	 * Gets the table that the names and descriptors of the classes in this archive are interned in.
+	 *
+	 * @return the table, or <t>null</t> if every class keeps its own strings
+	 */
+	public SymbolTable symbols() {
+		return symbols;
+	}
+
+	/**
+	 * Sets the table to intern the names and descriptors of the classes read afterwards in. Each archive
+	 * starts with a table of its own; passing the table of another archive shares it across both.
+	 *
+	 * @param symbols the table to use, or <t>null</t> to let every class keep its own strings
+	 */
+	public void setSymbols(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+
+	/**
+	 * Checks whether the constant pools of the classes are compacted when the archive is dumped.
+	 *
+	 * @return <t>true</t> if the constant pools are compacted, otherwise <t>false</t>
+	 */
+	public boolean compactConstantPools() {
+		return compactConstantPools;
+	}
+
+	/**
+	 * Sets whether the constant pools of the classes are compacted when the archive is dumped, dropping the
+	 * entries that nothing references anymore and renumbering the rest. Classes that are copied unmodified
+	 * from the source jar are not rewritten.
+	 *
+	 * @param compactConstantPools <t>true</t> to compact the constant pools, otherwise <t>false</t>
+	 * @see ConstantPoolCompactor
+	 */
+	public void setCompactConstantPools(boolean compactConstantPools) {
+		this.compactConstantPools = compactConstantPools;
+	}
+
+	/**
+	 * Gets the cache that frozen classes are restored from and stored in across runs.
+	 *
+	 * @return the cache, or <t>null</t> if every run freezes the classes again
+	 */
+	public ArchiveCache cache() {
+		return cache;
+	}
+
+	/**
+	 * Sets the cache that frozen classes are restored from and stored in across runs. Only archives whose
+	 * classes all freeze are stored, so failures are reported on every run.
+	 *
+	 * @param cache the cache to use, or <t>null</t> to freeze the classes again on every run
+	 * @see #frozen(Executor, int, boolean)
+	 */
+	public void setCache(ArchiveCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Checks whether the classes of the last call to <tt>frozen</tt> were restored from the cache.
+	 *
+	 * @return <t>true</t> if the classes were restored from the cache, otherwise <t>false</t>
+	 */
+	public boolean cached() {
+		return cached;
+	}
+
 	/**
 	 * Nanoseconds spent during the build process
 	 *
@@ -66,62 +198,483 @@ public class JarArchive {
 	}
 
     /**
-     * Adds bytes to either resources or classes.
+     * Checks whether the classes read by this archive retain the buffer they are parsed from, which is
+     * the case in lazy mode and with raw attributes.
      *
-     * @param entryName a String that is the name of an entry to be added from the jar file
-     * @param inputStream an InputStream to be added to the HashMap with the entryName
+     * @return <t>true</t> if every class needs a buffer of its own, otherwise <t>false</t>
      */
-    private void addInfo(String entryName, InputStream inputStream) {
-        byte[] bytes = Streams.binary(inputStream);
-        ClassInfo classInfo;
-        try {
-            classInfo = new ClassInfo(bytes);
-        } catch (IOException|InvalidByteCodeException e) {
+    private boolean retainsBuffers() {
+        return lazy || parseOptions.rawAttributes();
+    }
+
+    /**
+     * Inflates the entry at the given index and parses it into the matching result slot.
+     *
+     * @param zip the mapped archive that the entry belongs to
+     * @param entry the entry to be inflated
+     * @param classResults the slots for parsed classes, indexed like the central directory
+     * @param resourceResults the slots for kept resources, indexed like the central directory
+     * @param failureResults the slots for per-entry failures, indexed like the central directory
+     */
+    private void addInfo(MappedZipFile zip, MappedZipEntry entry, ClassInfo[] classResults,
+                         Resource[] resourceResults, Throwable[] failureResults) {
+        int index = entry.index();
+        if (!entry.name().endsWith(".class")) {
+            // resources are only read once they are requested or dumped
             if (keepResources)
-                resources.put(entryName, bytes);
+                resourceResults[index] = new Resource(zip, entry);
             return;
         }
-        classes.put(entryName, classInfo);
-
+        byte[] buffer = null;
+        try {
+            int size = entry.arraySize();
+            // classes that retain their buffer cannot take it from the pool
+            buffer = retainsBuffers() ? new byte[size] : pool.acquire(size);
+            zip.read(entry, buffer);
+            try {
+                classResults[index] = new ClassInfo(buffer, 0, size, parseOptions, symbols);
+            } catch (IOException|InvalidByteCodeException|RuntimeException e) {
+                failureResults[index] = e;
+                if (keepResources)
+                    resourceResults[index] = new Resource(zip, entry);
+            }
+        } catch (IOException|RuntimeException e) {
+            failureResults[index] = e;
+        } finally {
+            if (!retainsBuffers() && buffer != null)
+                pool.release(buffer);
+        }
     }
 
     /**
-     * Get a map of every class within the given jar.
+     * Get a map of every class within the given jar, parsing the entries on the given executor.
+     * <p>
+     * Entries are handed out to <tt>parallelism</tt> workers from a shared cursor and every worker
+     * writes only to the slot of the entry it parsed, so no result is lost regardless of thread count.
+     * The resulting maps are filled afterwards in central directory order, which makes their iteration
+     * order deterministic. Entries that cannot be read or parsed are reported through <tt>failures</tt>
+     * instead of failing the whole build; a class that cannot be parsed is still kept as a resource.
      *
-     * @param parallel a boolean that decides if the classes and resources should be built in parallel
+     * @param executor the executor to run the workers on
+     * @param parallelism the amount of workers to submit to the executor
      *
-     * @return a map of every class within the given jar
+     * @return a map of every class within the given jar, or <t>null</t> if the jar could not be opened
      */
-    public Map<String, ClassInfo> build(boolean parallel) {
+    public Map<String, ClassInfo> build(Executor executor, int parallelism) {
         if (!classes.isEmpty())
             return classes;
         long start = System.nanoTime();
-        try (JarFile jar = new JarFile(file)) {
-            ConcurrentHashMap<String, InputStream> entries = new ConcurrentHashMap();
-            for (JarEntry entry : Collections.list(jar.entries())) {
-                String entryName = entry.getName();
-                if (entryName.endsWith(".class")) {
-                    entryName = entryName.replace(".class", "");
-                    classes.put(entryName, null);
-                } else if (keepResources) {
-                    resources.put(entryName, null);
+        failures.clear();
+        MappedZipFile zip;
+        try {
+            zip = new MappedZipFile(file, pool);
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            List<MappedZipEntry> entries = zip.entries();
+            int count = entries.size();
+            ClassInfo[] classResults = new ClassInfo[count];
+            Resource[] resourceResults = new Resource[count];
+            Throwable[] failureResults = new Throwable[count];
+            forEachEntry(executor, parallelism, count,
+                    index -> addInfo(zip, entries.get(index), classResults, resourceResults, failureResults));
+            for (int i = 0; i < count; i++) {
+                MappedZipEntry entry = entries.get(i);
+                String entryName = entry.name();
+                if (classResults[i] != null) {
+                    classes.put(entryName.substring(0, entryName.length() - 6), classResults[i]);
+                    sources.put(classResults[i], entry);
+                }
+                if (resourceResults[i] != null)
+                    resources.put(entryName, resourceResults[i]);
+                if (failureResults[i] != null)
+                    failures.put(entryName, failureResults[i]);
+            }
+        } catch (RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+        // kept open, as resources and unmodified classes are read from it later on
+        source = zip;
+        sourceModified = file.lastModified();
+        long end = System.nanoTime();
+        nanos = (end - start);
+        return classes;
+    }
+
+    /**
+     * Runs the given task for every index below <tt>count</tt>, handing the indices out to
+     * <tt>parallelism</tt> workers from a shared cursor.
+     *
+     * @param executor the executor to run the workers on, or <t>null</t> to run on the calling thread
+     * @param parallelism the amount of workers to submit to the executor
+     * @param count the amount of indices to hand out
+     * @param task the task to run for every index
+     */
+    private static void forEachEntry(Executor executor, int parallelism, int count, IntConsumer task) {
+        AtomicInteger cursor = new AtomicInteger();
+        Runnable worker = () -> {
+            int index;
+            while ((index = cursor.getAndIncrement()) < count)
+                task.accept(index);
+        };
+        int workers = Math.max(1, Math.min(parallelism, count));
+        if (executor == null || workers == 1) {
+            worker.run();
+        } else {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[workers];
+            for (int i = 0; i < workers; i++)
+                futures[i] = CompletableFuture.runAsync(worker, executor);
+            CompletableFuture.allOf(futures).join();
+        }
+    }
+
+    /**
+     * Parses every class within the given jar and hands it to the given consumer, without retaining it.
+     * <p>
+     * Unlike <tt>build</tt>, neither the classes nor the resources are kept by this archive, so at most
+     * <tt>parallelism</tt> classes are alive at once apart from whatever the consumer holds on to.
+     * Classes are handed to the consumer concurrently when <tt>parallelism</tt> is above one, in which
+     * case the consumer has to be thread-safe. Entries that cannot be read or parsed, as well as entries
+     * whose consumer threw, are reported through <tt>failures</tt> instead of stopping the stream.
+     *
+     * @param consumer the consumer to hand every class to
+     * @param executor the executor to run the workers on
+     * @param parallelism the amount of workers to submit to the executor
+     *
+     * @return the amount of classes handed to the consumer, or <t>-1</t> if the jar could not be opened
+     */
+    public int stream(Consumer<ClassInfo> consumer, Executor executor, int parallelism) {
+        long start = System.nanoTime();
+        failures.clear();
+        AtomicInteger consumed = new AtomicInteger();
+        try (MappedZipFile zip = new MappedZipFile(file, pool)) {
+            List<MappedZipEntry> entries = zip.entries();
+            int count = entries.size();
+            Throwable[] failureResults = new Throwable[count];
+            forEachEntry(executor, parallelism, count, index -> {
+                MappedZipEntry entry = entries.get(index);
+                if (!entry.name().endsWith(".class"))
+                    return;
+                byte[] buffer = null;
+                ClassInfo info;
+                try {
+                    int size = entry.arraySize();
+                    buffer = retainsBuffers() ? new byte[size] : pool.acquire(size);
+                    zip.read(entry, buffer);
+                    info = new ClassInfo(buffer, 0, size, parseOptions, symbols);
+                } catch (IOException|InvalidByteCodeException|RuntimeException e) {
+                    failureResults[index] = e;
+                    return;
+                } finally {
+                    if (!retainsBuffers() && buffer != null)
+                        pool.release(buffer);
+                }
+                try {
+                    consumer.accept(info);
+                    consumed.incrementAndGet();
+                } catch (RuntimeException e) {
+                    failureResults[index] = e;
                 }
-                entries.put(entryName, jar.getInputStream(entry));
+            });
+            for (int i = 0; i < count; i++) {
+                if (failureResults[i] != null)
+                    failures.put(entries.get(i).name(), failureResults[i]);
             }
-            entries.forEach((parallel ? 1 : Long.MAX_VALUE), (key, value) -> addInfo(key, value));
-            if (entries.size() != (classes.size() + resources.size())) {
-                classes.clear();
-                resources.clear();
-                return null;
+        } catch (IOException e) {
+            return -1;
+        }
+        long end = System.nanoTime();
+        nanos = (end - start);
+        return consumed.get();
+    }
+
+    /**
+     * Parses every class within the given jar and hands it to the given consumer, without retaining it.
+     *
+     * @param consumer the consumer to hand every class to
+     * @param parallelism the amount of threads to parse and consume classes with
+     *
+     * @return the amount of classes handed to the consumer, or <t>-1</t> if the jar could not be opened
+     */
+    public int stream(Consumer<ClassInfo> consumer, int parallelism) {
+        if (parallelism <= 1)
+            return stream(consumer, null, 1);
+        ForkJoinPool executor = new ForkJoinPool(parallelism);
+        try {
+            return stream(consumer, executor, parallelism);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Parses every class within the given jar on the calling thread and hands it to the given consumer,
+     * without retaining it.
+     *
+     * @param consumer the consumer to hand every class to
+     *
+     * @return the amount of classes handed to the consumer, or <t>-1</t> if the jar could not be opened
+     */
+    public int stream(Consumer<ClassInfo> consumer) {
+        return stream(consumer, null, 1);
+    }
+
+    /**
+     * Reads the header of every class within the given jar, without parsing the rest of the classes.
+     * <p>
+     * Only the version, access flags, name, super class and interfaces of each class are read, which is
+     * all that building a class hierarchy takes. Neither the headers nor the classes are kept by this
+     * archive. Entries that cannot be read are reported through <tt>failures</tt>.
+     *
+     * @param executor the executor to run the workers on
+     * @param parallelism the amount of workers to submit to the executor
+     *
+     * @return a map of the header of every class within the given jar, in central directory order, or
+     * <t>null</t> if the jar could not be opened
+     * @see ClassHeader
+     */
+    public Map<String, ClassHeader> headers(Executor executor, int parallelism) {
+        long start = System.nanoTime();
+        failures.clear();
+        Map<String, ClassHeader> headers = new LinkedHashMap<>();
+        try (MappedZipFile zip = new MappedZipFile(file, pool)) {
+            List<MappedZipEntry> entries = zip.entries();
+            int count = entries.size();
+            ClassHeader[] headerResults = new ClassHeader[count];
+            Throwable[] failureResults = new Throwable[count];
+            forEachEntry(executor, parallelism, count, index -> {
+                MappedZipEntry entry = entries.get(index);
+                if (!entry.name().endsWith(".class"))
+                    return;
+                byte[] buffer = null;
+                try {
+                    int size = entry.arraySize();
+                    buffer = pool.acquire(size);
+                    zip.read(entry, buffer);
+                    headerResults[index] = ClassHeader.read(buffer, 0, size, symbols);
+                } catch (IOException|InvalidByteCodeException|RuntimeException e) {
+                    failureResults[index] = e;
+                } finally {
+                    if (buffer != null)
+                        pool.release(buffer);
+                }
+            });
+            for (int i = 0; i < count; i++) {
+                String entryName = entries.get(i).name();
+                if (headerResults[i] != null)
+                    headers.put(entryName.substring(0, entryName.length() - 6), headerResults[i]);
+                if (failureResults[i] != null)
+                    failures.put(entryName, failureResults[i]);
             }
         } catch (IOException e) {
             return null;
         }
         long end = System.nanoTime();
         nanos = (end - start);
-        return classes;
+        return headers;
+    }
+
+    /**
+     * Reads the header of every class within the given jar on the calling thread, without parsing the rest
+     * of the classes.
+     *
+     * @return a map of the header of every class within the given jar, in central directory order, or
+     * <t>null</t> if the jar could not be opened
+     */
+    public Map<String, ClassHeader> headers() {
+        return headers(null, 1);
     }
 
+    /**
+     * Freezes every class within the given jar into a read-only view over its bits, without parsing it.
+     * <p>
+     * Each view keeps a copy of its class file plus the offsets of its constant pool entries and members,
+     * which is a fraction of what a parsed class holds. Neither the views nor the classes are kept by this
+     * archive. Entries that cannot be read are reported through <tt>failures</tt>.
+     * <p>
+     * When a cache is set and holds this jar, the views are restored from it without inflating or walking a
+     * single class, and <tt>cached</tt> reports so; with <tt>offHeap</tt> they then view the mapped cache
+     * file instead of a copy. Otherwise the classes are frozen and stored in the cache for the next run.
+     *
+     * @param executor the executor to run the workers on
+     * @param parallelism the amount of workers to submit to the executor
+     * @param offHeap <t>true</t> to copy the class files into direct buffers, otherwise <t>false</t>
+     *
+     * @return a map of every frozen class within the given jar, in central directory order, or <t>null</t>
+     * if the jar could not be opened
+     * @see FrozenClass
+     */
+    public Map<String, FrozenClass> frozen(Executor executor, int parallelism, boolean offHeap) {
+        long start = System.nanoTime();
+        failures.clear();
+        cached = false;
+        Map<String, FrozenClass> frozen = new LinkedHashMap<>();
+        try (MappedZipFile zip = new MappedZipFile(file, pool)) {
+            List<MappedZipEntry> entries = zip.entries();
+            int count = entries.size();
+            FrozenClass[] frozenResults = new FrozenClass[count];
+            Throwable[] failureResults = new Throwable[count];
+            ArchiveCache.Snapshot snapshot = cache == null ? null : cache.load(zip);
+            cached = snapshot != null;
+            forEachEntry(executor, parallelism, count, index -> {
+                MappedZipEntry entry = entries.get(index);
+                if (!entry.name().endsWith(".class"))
+                    return;
+                if (snapshot != null) {
+                    try {
+                        frozenResults[index] = snapshot.restore(entry, !offHeap);
+                    } catch (InvalidByteCodeException e) {
+                        failureResults[index] = e;
+                    }
+                    return;
+                }
+                byte[] buffer = null;
+                try {
+                    int size = entry.arraySize();
+                    buffer = pool.acquire(size);
+                    zip.read(entry, buffer);
+                    ByteBuffer bits;
+                    if (offHeap) {
+                        bits = ByteBuffer.allocateDirect(size);
+                        bits.put(buffer, 0, size).flip();
+                    } else {
+                        bits = ByteBuffer.wrap(Arrays.copyOf(buffer, size));
+                    }
+                    frozenResults[index] = FrozenClass.freeze(bits);
+                } catch (IOException|InvalidByteCodeException|RuntimeException e) {
+                    failureResults[index] = e;
+                } finally {
+                    if (buffer != null)
+                        pool.release(buffer);
+                }
+            });
+            for (int i = 0; i < count; i++) {
+                String entryName = entries.get(i).name();
+                if (frozenResults[i] != null)
+                    frozen.put(entryName.substring(0, entryName.length() - 6), frozenResults[i]);
+                if (failureResults[i] != null)
+                    failures.put(entryName, failureResults[i]);
+            }
+            if (cache != null && snapshot == null && failures.isEmpty()) {
+                try {
+                    cache.store(zip, frozenResults);
+                } catch (IOException e) {
+                    // the cache only saves work, the classes are frozen regardless
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        long end = System.nanoTime();
+        nanos = (end - start);
+        return frozen;
+    }
+
+    /**
+     * Freezes every class within the given jar on the calling thread into a read-only view over a heap
+     * copy of its bits, without parsing it.
+     *
+     * @return a map of every frozen class within the given jar, in central directory order, or <t>null</t>
+     * if the jar could not be opened
+     */
+    public Map<String, FrozenClass> frozen() {
+        return frozen(null, 1, false);
+    }
+
+    /**
+     * Get a map of every class within the given jar, parsing the entries on a dedicated pool.
+     *
+     * @param parallelism the amount of threads to parse entries with
+     *
+     * @return a map of every class within the given jar, or <t>null</t> if the jar could not be opened
+     */
+    public Map<String, ClassInfo> build(int parallelism) {
+        if (parallelism <= 1)
+            return build(null, 1);
+        ForkJoinPool executor = new ForkJoinPool(parallelism);
+        try {
+            return build(executor, parallelism);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Get a map of every class within the given jar.
+     *
+     * @param parallel a boolean that decides if the classes and resources should be built in parallel
+     *
+     * @return a map of every class within the given jar
+     */
+    public Map<String, ClassInfo> build(boolean parallel) {
+        if (!parallel)
+            return build(null, 1);
+        ForkJoinPool common = ForkJoinPool.commonPool();
+        return build(common, common.getParallelism());
+    }
+
+    /**
+     * Gets the entries that could not be read or parsed during the last build or stream, mapped to their cause.
+     *
+     * @return the entries that could not be read or parsed, in central directory order
+     */
+    public Map<String, Throwable> failures() {
+        return failures;
+    }
+
+	/**
+	 * Gets the resources of the last build, mapped by entry name. Resources that were read from the jar
+	 * only point at their entry, so they are inflated when their content is requested.
+	 *
+	 * @return the resources of the last build, mapped by entry name
+	 */
+	public Map<String, Resource> resources() {
+		return resources;
+	}
+
+	/**
+	 * Gets the resource with the given entry name.
+	 *
+	 * @param name the entry name of the resource
+	 * @return the resource with the given entry name, or <t>null</t> if there is none
+	 */
+	public Resource resource(String name) {
+		return resources.get(name);
+	}
+
+	/**
+	 * Adds a resource with the given content, replacing any resource with the same entry name.
+	 *
+	 * @param name the entry name of the resource
+	 * @param bytes the content of the resource, which is not copied
+	 * @return the resource that was replaced, or <t>null</t> if there was none
+	 */
+	public Resource putResource(String name, byte[] bytes) {
+		return resources.put(name, new Resource(name, bytes));
+	}
+
+	/**
+	 * Removes the resource with the given entry name.
+	 *
+	 * @param name the entry name of the resource
+	 * @return the resource that was removed, or <t>null</t> if there was none
+	 */
+	public Resource removeResource(String name) {
+		return resources.remove(name);
+	}
+
+	/**
+	 * Releases the inflaters of the jar that the archive was built from. Resources and unmodified
+	 * classes can still be read afterwards, at the cost of a new inflater per read.
+	 */
+	@Override
+	public void close() {
+		if (source != null)
+			source.close();
+	}
+
 	/**
 	 * Get a map of every class within the given jar.
 	 *
@@ -180,34 +733,266 @@ public class JarArchive {
 
 	/**
 	 * Dumps the archive to a new file.
+	 * <p>
+	 * Classes are serialized and compressed by <tt>parallelism</tt> workers, each reusing its own output
+	 * buffer, <tt>Deflater</tt> and checksum, while the calling thread appends the finished entries in the
+	 * order of the class and resource maps. Workers run at most a few entries ahead of the writer, so
+	 * only a bounded amount of compressed output is held in memory, and the resulting archive is the
+	 * same regardless of thread count.
+	 * <p>
+	 * Classes that are not <tt>dirty</tt> and resources that were not replaced are copied from the
+	 * source jar as they were compressed there, without being inflated, serialized or deflated again,
+	 * as long as the policy agrees on whether the entry is stored. This is skipped when the source jar
+	 * changed since it was built. Dumping over the source jar writes to a temporary file first, which
+	 * then replaces the source jar.
 	 *
 	 * @param file the file to dump to.
-	 * @return the file-size of the newly dumped jar.
+	 * @param policy the policy deciding how each entry is compressed.
+	 * @param executor the executor to run the workers on.
+	 * @param parallelism the amount of workers to submit to the executor.
+	 * @return the file-size of the newly dumped jar, or <t>-1</t> if it could not be written.
 	 */
-	public long dump(File file) {
-		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(file))) {
-			for (ClassInfo ci : classes.values()) {
-				jos.putNextEntry(new JarEntry(ci.name() + ".class"));
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				DataOutputStream dos = new DataOutputStream(baos);
-				ci.write(dos);
-				byte[] bytes = baos.toByteArray();
-				jos.write(bytes, 0, bytes.length);
-				jos.closeEntry();
+	public long dump(File file, CompressionPolicy policy, Executor executor, int parallelism) {
+		List<String> names = new ArrayList<>(classes.size() + resources.size());
+		List<ClassInfo> infos = new ArrayList<>(names.size());
+		List<Resource> raws = new ArrayList<>(names.size());
+		List<MappedZipEntry> originals = new ArrayList<>(names.size());
+		boolean passthrough = passthrough();
+		for (ClassInfo ci : classes.values()) {
+			names.add(ci.name() + ".class");
+			infos.add(ci);
+			raws.add(null);
+			originals.add(passthrough && !ci.dirty() ? sources.get(ci) : null);
+		}
+		if (keepResources) {
+			for (Entry<String, Resource> entry : resources.entrySet()) {
+				names.add(entry.getKey());
+				infos.add(null);
+				raws.add(entry.getValue());
+				originals.add(passthrough ? entry.getValue().entry() : null);
 			}
-			if (keepResources) {
-				for (Entry<String, byte[]> entry : resources.entrySet()) {
-					jos.putNextEntry(new JarEntry(entry.getKey()));
-					byte[] bytes = entry.getValue();
-					jos.write(bytes, 0, bytes.length);
-					jos.closeEntry();
+		}
+		int count = names.size();
+		int time = ZipWriter.dosTime(LocalDateTime.now());
+		int workers = Math.max(1, Math.min(parallelism, count));
+		File output;
+		try {
+			// resources and unmodified classes are still read from the source jar while dumping
+			output = overwritesSource(file) ? File.createTempFile(file.getName(), ".tmp",
+					file.getAbsoluteFile().getParentFile()) : file;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return -1L;
+		}
+		try (ZipWriter zip = new ZipWriter(new BufferedOutputStream(new FileOutputStream(output), 1 << 16))) {
+			if (executor == null || workers == 1) {
+				Scratch scratch = new Scratch();
+				try {
+					for (int i = 0; i < count; i++)
+						write(zip, pack(scratch, policy, time, names.get(i), infos.get(i), raws.get(i), originals.get(i)));
+				} finally {
+					scratch.end();
+				}
+			} else {
+				List<CompletableFuture<Packed>> results = new ArrayList<>(count);
+				for (int i = 0; i < count; i++)
+					results.add(new CompletableFuture<>());
+				Semaphore window = new Semaphore(workers * 4);
+				AtomicInteger cursor = new AtomicInteger();
+				AtomicBoolean aborted = new AtomicBoolean();
+				Runnable worker = () -> {
+					Scratch scratch = new Scratch();
+					try {
+						while (true) {
+							window.acquireUninterruptibly();
+							int index = cursor.getAndIncrement();
+							if (index >= count || aborted.get()) {
+								window.release();
+								break;
+							}
+							try {
+								results.get(index).complete(pack(scratch, policy, time, names.get(index), infos.get(index),
+										raws.get(index), originals.get(index)));
+							} catch (Throwable t) {
+								results.get(index).completeExceptionally(t);
+							}
+						}
+					} finally {
+						scratch.end();
+					}
+				};
+				for (int i = 0; i < workers; i++)
+					CompletableFuture.runAsync(worker, executor);
+				try {
+					for (int i = 0; i < count; i++) {
+						Packed packed = results.get(i).join();
+						results.set(i, null);
+						window.release();
+						write(zip, packed);
+					}
+				} finally {
+					// lets workers that are still waiting for the window run out
+					aborted.set(true);
+					window.release(workers);
 				}
 			}
-			jos.flush();
-			return file.length();
-		} catch (IOException | InvalidByteCodeException e) {
+		} catch (IOException | InvalidByteCodeException | RuntimeException e) {
 			e.printStackTrace();
+			if (output != file)
+				output.delete();
 			return -1L;
 		}
+		if (output != file) {
+			try {
+				Files.move(output.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				e.printStackTrace();
+				output.delete();
+				return -1L;
+			}
+		}
+		return file.length();
+	}
+
+	/**
+	 * Dumps the archive to a new file, compressing the entries on a dedicated pool.
+	 *
+	 * @param file the file to dump to.
+	 * @param policy the policy deciding how each entry is compressed.
+	 * @param parallelism the amount of threads to serialize and compress entries with.
+	 * @return the file-size of the newly dumped jar, or <t>-1</t> if it could not be written.
+	 */
+	public long dump(File file, CompressionPolicy policy, int parallelism) {
+		if (parallelism <= 1)
+			return dump(file, policy, null, 1);
+		ForkJoinPool executor = new ForkJoinPool(parallelism);
+		try {
+			return dump(file, policy, executor, parallelism);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Dumps the archive to a new file.
+	 *
+	 * @param file the file to dump to.
+	 * @return the file-size of the newly dumped jar.
+	 */
+	public long dump(File file) {
+		ForkJoinPool common = ForkJoinPool.commonPool();
+		return dump(file, CompressionPolicy.DEFAULT, common, common.getParallelism());
+	}
+
+	private boolean passthrough() {
+		return source != null && source.file().lastModified() == sourceModified && source.file().length() == size;
+	}
+
+	private boolean overwritesSource(File target) {
+		if (source == null)
+			return false;
+		try {
+			return target.getCanonicalFile().equals(source.file().getCanonicalFile());
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	private Packed pack(Scratch scratch, CompressionPolicy policy, int time, String name, ClassInfo info,
+						Resource resource, MappedZipEntry original) throws IOException, InvalidByteCodeException {
+		int level = policy.level(name);
+		if (original != null && (level == CompressionPolicy.STORE) == (original.method() == MappedZipEntry.STORED)) {
+			ByteBuffer data = info != null ? source.rawData(original) : resource.rawData();
+			byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			return new Packed(name, original.method(), original.time(), original.crc(), original.arraySize(),
+					bytes);
+		}
+		byte[] bytes;
+		int size;
+		if (info != null) {
+			scratch.reset();
+			info.write(scratch.data);
+			bytes = scratch.buffer();
+			size = scratch.size();
+			byte[] compacted = compactConstantPools && !info.compactConstantPool()
+					? ConstantPoolCompactor.compact(bytes, size) : null;
+			if (compacted != null) {
+				bytes = compacted;
+				size = compacted.length;
+			}
+		} else {
+			bytes = resource.bytes();
+			size = bytes.length;
+		}
+		scratch.crc.reset();
+		scratch.crc.update(bytes, 0, size);
+		int crc = (int) scratch.crc.getValue();
+		if (level == CompressionPolicy.STORE)
+			return new Packed(name, MappedZipEntry.STORED, time, crc, size, info != null ? Arrays.copyOf(bytes, size) : bytes);
+		return new Packed(name, MappedZipEntry.DEFLATED, time, crc, size, scratch.deflate(bytes, size, level));
+	}
+
+	private static void write(ZipWriter zip, Packed packed) throws IOException {
+		zip.write(packed.name, packed.method, packed.time, packed.crc, packed.size, packed.data, 0, packed.data.length);
+	}
+
+	/**
+	 * The reusable buffers of a single dump worker.
+	 */
+	private static final class Scratch extends ByteArrayOutputStream {
+
+		private final DataOutputStream data = new DataOutputStream(this);
+		private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		private final CRC32 crc = new CRC32();
+		private byte[] deflated = new byte[8192];
+
+		private Scratch() {
+			super(8192);
+		}
+
+		private byte[] buffer() {
+			return buf;
+		}
+
+		private byte[] deflate(byte[] bytes, int size, int level) {
+			deflater.reset();
+			deflater.setLevel(level);
+			deflater.setInput(bytes, 0, size);
+			deflater.finish();
+			int length = 0;
+			while (!deflater.finished()) {
+				if (length == deflated.length)
+					deflated = Arrays.copyOf(deflated, deflated.length * 2);
+				length += deflater.deflate(deflated, length, deflated.length - length);
+			}
+			return Arrays.copyOf(deflated, length);
+		}
+
+		private void end() {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * A serialized and compressed entry that is ready to be written.
+	 */
+	private static final class Packed {
+
+		private final String name;
+		private final int method;
+		private final int time;
+		private final int crc;
+		private final int size;
+		private final byte[] data;
+
+		private Packed(String name, int method, int time, int crc, int size, byte[] data) {
+			this.name = name;
+			this.method = method;
+			this.time = time;
+			this.crc = crc;
+			this.size = size;
+			this.data = data;
+		}
 	}
 }
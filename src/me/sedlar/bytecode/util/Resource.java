@@ -0,0 +1,198 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.bytecode.util;
+
+import me.sedlar.util.io.MappedZipEntry;
+import me.sedlar.util.io.MappedZipFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A non-class entry of an archive.
+ * <p>
+ * A resource that was read from an archive only points at its entry within the mapped archive, and its
+ * bytes are inflated each time they are requested instead of being held for the lifetime of the archive.
+ * A resource that was created from bytes, for example to replace an entry, holds those bytes.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class Resource {
+
+	private final String name;
+	private final MappedZipFile zip;
+	private final MappedZipEntry entry;
+	private final byte[] bytes;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param name the name of the entry
+	 * @param bytes the content of the entry, which is not copied
+	 */
+	public Resource(String name, byte[] bytes) {
+		this.name = name;
+		this.zip = null;
+		this.entry = null;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param zip the mapped archive that the entry belongs to
+	 * @param entry the entry within the archive
+	 */
+	Resource(MappedZipFile zip, MappedZipEntry entry) {
+		this.name = entry.name();
+		this.zip = zip;
+		this.entry = entry;
+		this.bytes = null;
+	}
+
+	/**
+	 * Gets the name of this resource.
+	 *
+	 * @return the name of this resource
+	 */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Gets the uncompressed size of this resource.
+	 *
+	 * @return the uncompressed size of this resource
+	 */
+	public long size() {
+		return bytes != null ? bytes.length : entry.size();
+	}
+
+	/**
+	 * Checks whether this resource was created from bytes rather than read from an archive.
+	 *
+	 * @return <t>true</t> if this resource was created from bytes, otherwise <t>false</t>
+	 */
+	public boolean modified() {
+		return bytes != null;
+	}
+
+	/**
+	 * Gets the entry that this resource was read from.
+	 *
+	 * @return the entry that this resource was read from, or <t>null</t> if it was created from bytes
+	 */
+	public MappedZipEntry entry() {
+		return entry;
+	}
+
+	/**
+	 * Gets the content of this resource. A resource that was read from an archive is inflated into a new
+	 * array on every call; a resource that was created from bytes returns those bytes.
+	 *
+	 * @return the content of this resource
+	 * @throws IOException if the entry cannot be read
+	 */
+	public byte[] bytes() throws IOException {
+		return bytes != null ? bytes : zip.read(entry);
+	}
+
+	/**
+	 * Opens a stream over the content of this resource, inflating it while it is read.
+	 *
+	 * @return a stream over the content of this resource
+	 * @throws IOException if the entry cannot be read
+	 */
+	public InputStream open() throws IOException {
+		if (bytes != null)
+			return new ByteArrayInputStream(bytes);
+		if (entry.method() == MappedZipEntry.STORED)
+			return new BufferInputStream(zip.rawData(entry), false);
+		Inflater inflater = new Inflater(true);
+		return new InflaterInputStream(new BufferInputStream(zip.rawData(entry), true), inflater) {
+
+			private boolean closed;
+
+			@Override
+			public void close() throws IOException {
+				if (!closed) {
+					closed = true;
+					inflater.end();
+				}
+				super.close();
+			}
+		};
+	}
+
+	/**
+	 * Gets a read-only view of the compressed data of this resource within its archive.
+	 *
+	 * @return a read-only view of the compressed data of this resource
+	 * @throws IOException if the entry cannot be located
+	 */
+	ByteBuffer rawData() throws IOException {
+		return zip.rawData(entry);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	private static final class BufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+		private boolean padding;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param buffer the buffer to read
+		 * @param padding <t>true</t> to end with an extra zero byte, which nowrap inflaters may require
+		 */
+		private BufferInputStream(ByteBuffer buffer, boolean padding) {
+			this.buffer = buffer;
+			this.padding = padding;
+		}
+
+		@Override
+		public int read() {
+			if (buffer.hasRemaining())
+				return buffer.get() & 0xff;
+			if (padding) {
+				padding = false;
+				return 0;
+			}
+			return -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!buffer.hasRemaining()) {
+				if (!padding)
+					return -1;
+				padding = false;
+				b[off] = 0;
+				return 1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
@@ -6,16 +6,41 @@
  */
 package me.sedlar.util.collection;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Comparator;
 
 import me.sedlar.util.Filter;
 import me.sedlar.util.Random;
 
 /**
+ * An array-backed list with filter queries. The queries walk the list by
+ * index, which is constant time per element.
+ *
  * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
  **/
-public class QueryableList<T> extends LinkedList<T> {
+public class QueryableList<T> extends ArrayList<T> {
+
+	// replaced and reordered elements, which modCount leaves out so that iterators may set elements
+	private int rearrangements;
+
+	/**
+	 * Constructs an empty list.
+	 */
+	public QueryableList() {
+		super();
+	}
+
+	/**
+	 * Constructs an empty list that holds the given amount of elements
+	 * before it grows.
+	 * 
+	 * @param initialCapacity
+	 *            the initial capacity.
+	 */
+	public QueryableList(int initialCapacity) {
+		super(initialCapacity);
+	}
 
 	/**
 	 * Gets the first element after the given index while matching the given
@@ -151,6 +176,7 @@ public class QueryableList<T> extends LinkedList<T> {
 	 */
 	public void shuffle() {
 		Collections.shuffle(this);
+		rearrangements++;
 	}
 
 	/**
@@ -174,7 +200,11 @@ public class QueryableList<T> extends LinkedList<T> {
 		return isEmpty() ? null : get(0);
 	}
 
-	@Override
+	/**
+	 * Gets the first element in this list.
+	 * 
+	 * @return the first element in this list, or <t>null</t> if it is empty.
+	 */
 	public T getFirst() {
 		return first();
 	}
@@ -188,8 +218,34 @@ public class QueryableList<T> extends LinkedList<T> {
 		return isEmpty() ? null : get(size() - 1);
 	}
 
-	@Override
+	/**
+	 * Gets the last element in this list.
+	 * 
+	 * @return the last element in this list, or <t>null</t> if it is empty.
+	 */
 	public T getLast() {
 		return last();
 	}
+
+	@Override
+	public T set(int index, T element) {
+		rearrangements++;
+		return super.set(index, element);
+	}
+
+	@Override
+	public void sort(Comparator<? super T> c) {
+		super.sort(c);
+		rearrangements++;
+	}
+
+	/**
+	 * Gets the amount of times this list has been modified, including
+	 * replaced elements and reordering.
+	 * 
+	 * @return the amount of times this list has been modified.
+	 */
+	public int modifications() {
+		return modCount + rearrangements;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.util.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread-safe pool of byte arrays bucketed by power-of-two capacity.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class BufferPool {
+
+	private static final int MIN_SHIFT = 10;
+	private static final int MAX_SHIFT = 24;
+
+	private final int limit;
+	private final List<ConcurrentLinkedQueue<byte[]>> buckets;
+	private final AtomicInteger[] counts;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param limit
+	 *            the maximum amount of idle buffers kept per bucket.
+	 */
+	public BufferPool(int limit) {
+		this.limit = limit;
+		int bucketCount = MAX_SHIFT - MIN_SHIFT + 1;
+		this.buckets = new ArrayList<>(bucketCount);
+		this.counts = new AtomicInteger[bucketCount];
+		for (int i = 0; i < bucketCount; i++) {
+			buckets.add(new ConcurrentLinkedQueue<>());
+			counts[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * Constructor.
+	 */
+	public BufferPool() {
+		this(Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	private static int shift(int size) {
+		int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+		return Math.max(shift, MIN_SHIFT);
+	}
+
+	/**
+	 * Gets a buffer that can hold at least the given amount of bytes.
+	 *
+	 * @param size
+	 *            the minimum length of the buffer.
+	 * @return a buffer that can hold at least the given amount of bytes.
+	 */
+	public byte[] acquire(int size) {
+		int shift = shift(size);
+		if (shift > MAX_SHIFT)
+			return new byte[size];
+		byte[] buffer = buckets.get(shift - MIN_SHIFT).poll();
+		if (buffer == null)
+			return new byte[1 << shift];
+		counts[shift - MIN_SHIFT].decrementAndGet();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer obtained through <tt>acquire</tt> to the pool. The
+	 * buffer must not be used by the caller afterwards.
+	 *
+	 * @param buffer
+	 *            the buffer to return.
+	 */
+	public void release(byte[] buffer) {
+		int length = buffer.length;
+		if (Integer.bitCount(length) != 1)
+			return;
+		int shift = Integer.numberOfTrailingZeros(length);
+		if (shift < MIN_SHIFT || shift > MAX_SHIFT)
+			return;
+		AtomicInteger count = counts[shift - MIN_SHIFT];
+		if (count.incrementAndGet() > limit) {
+			count.decrementAndGet();
+			return;
+		}
+		buckets.get(shift - MIN_SHIFT).offer(buffer);
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.util.io;
+
+import java.util.zip.Deflater;
+
+/**
+ * Decides how each entry of a written zip archive is compressed.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+@FunctionalInterface
+public interface CompressionPolicy {
+
+	/**
+	 * Level that stores an entry without compression.
+	 */
+	int STORE = -2;
+
+	/**
+	 * Deflates every entry with the default compression level.
+	 */
+	CompressionPolicy DEFAULT = deflated(Deflater.DEFAULT_COMPRESSION);
+
+	/**
+	 * Stores every entry without compression.
+	 */
+	CompressionPolicy STORED = name -> STORE;
+
+	/**
+	 * Gets the deflate level for the entry with the given name.
+	 *
+	 * @param name
+	 *            the name of the entry.
+	 * @return a <tt>Deflater</tt> level between 0 and 9, or
+	 *         <tt>Deflater.DEFAULT_COMPRESSION</tt>, to deflate the entry, or
+	 *         <tt>STORE</tt> to store it without compression.
+	 */
+	int level(String name);
+
+	/**
+	 * Gets a policy that deflates every entry with the given level.
+	 *
+	 * @param level
+	 *            the <tt>Deflater</tt> level.
+	 * @return a policy that deflates every entry with the given level.
+	 */
+	static CompressionPolicy deflated(int level) {
+		return name -> level;
+	}
+}
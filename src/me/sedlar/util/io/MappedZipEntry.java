@@ -0,0 +1,181 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.util.io;
+
+import java.io.IOException;
+
+/**
+ * A single record of the central directory of a <tt>MappedZipFile</tt>.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class MappedZipEntry {
+
+	/**
+	 * Compression method of entries that are stored without compression.
+	 */
+	public static final int STORED = 0;
+
+	/**
+	 * Compression method of entries that are compressed with deflate.
+	 */
+	public static final int DEFLATED = 8;
+
+	private final int index;
+	private final String name;
+	private final int flags;
+	private final int method;
+	private final int time;
+	private final int crc;
+	private final long compressedSize;
+	private final long size;
+	private final long localHeaderOffset;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param index
+	 *            the position of the record within the central directory.
+	 * @param name
+	 *            the name of the entry.
+	 * @param flags
+	 *            the general purpose bit flags.
+	 * @param method
+	 *            the compression method.
+	 * @param time
+	 *            the last modification time and date in MS-DOS format.
+	 * @param crc
+	 *            the CRC-32 of the uncompressed data.
+	 * @param compressedSize
+	 *            the size of the compressed data.
+	 * @param size
+	 *            the size of the uncompressed data.
+	 * @param localHeaderOffset
+	 *            the offset of the local file header.
+	 */
+	public MappedZipEntry(int index, String name, int flags, int method, int time, int crc, long compressedSize,
+			long size, long localHeaderOffset) {
+		this.index = index;
+		this.name = name;
+		this.flags = flags;
+		this.method = method;
+		this.time = time;
+		this.crc = crc;
+		this.compressedSize = compressedSize;
+		this.size = size;
+		this.localHeaderOffset = localHeaderOffset;
+	}
+
+	/**
+	 * Gets the position of this record within the central directory.
+	 *
+	 * @return the position of this record within the central directory.
+	 */
+	public int index() {
+		return index;
+	}
+
+	/**
+	 * Gets the name of this entry.
+	 *
+	 * @return the name of this entry.
+	 */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Gets the general purpose bit flags of this entry.
+	 *
+	 * @return the general purpose bit flags of this entry.
+	 */
+	public int flags() {
+		return flags;
+	}
+
+	/**
+	 * Gets the compression method of this entry.
+	 *
+	 * @return the compression method of this entry.
+	 */
+	public int method() {
+		return method;
+	}
+
+	/**
+	 * Gets the last modification time and date in MS-DOS format.
+	 *
+	 * @return the last modification time and date in MS-DOS format.
+	 */
+	public int time() {
+		return time;
+	}
+
+	/**
+	 * Gets the CRC-32 of the uncompressed data.
+	 *
+	 * @return the CRC-32 of the uncompressed data.
+	 */
+	public int crc() {
+		return crc;
+	}
+
+	/**
+	 * Gets the size of the compressed data.
+	 *
+	 * @return the size of the compressed data.
+	 */
+	public long compressedSize() {
+		return compressedSize;
+	}
+
+	/**
+	 * Gets the size of the uncompressed data.
+	 *
+	 * @return the size of the uncompressed data.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Gets the size of the uncompressed data as the length of an array to read
+	 * it into.
+	 *
+	 * @return the size of the uncompressed data.
+	 * @throws IOException
+	 *             if the entry is too large to be held in an array.
+	 */
+	public int arraySize() throws IOException {
+		if (size > Integer.MAX_VALUE - 8)
+			throw new IOException("entry too large to read into an array: " + name);
+		return (int) size;
+	}
+
+	/**
+	 * Gets the offset of the local file header of this entry.
+	 *
+	 * @return the offset of the local file header of this entry.
+	 */
+	public long localHeaderOffset() {
+		return localHeaderOffset;
+	}
+
+	/**
+	 * Checks whether this entry is a directory.
+	 *
+	 * @return <t>true</t> if this entry is a directory, otherwise <t>false</t>.
+	 */
+	public boolean directory() {
+		return name.endsWith("/");
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,373 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.util.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only zip archive that is memory-mapped and whose central directory is
+ * parsed directly, without going through <tt>java.util.zip.ZipFile</tt>.
+ * <p>
+ * Entries are inflated straight into caller supplied buffers, so the size of
+ * every entry is known up front and no intermediate stream copies are made.
+ * <p>
+ * Zip64 archives are read as well, that is archives with more than 65535
+ * entries or with sizes and offsets beyond 4 GiB. Files larger than a single
+ * mapping can hold are mapped in segments.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class MappedZipFile implements Closeable {
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_SIZE = 22;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+	private static final int MAX_COMMENT_SIZE = 0xffff;
+	private static final int SEGMENT_SHIFT = 30;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+	private final File file;
+	private final long length;
+	private final MappedByteBuffer[] segments;
+	private final List<MappedZipEntry> entries;
+	private final BufferPool pool;
+	private final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Maps the given zip file and reads its central directory.
+	 *
+	 * @param file
+	 *            the zip file to map.
+	 * @param pool
+	 *            the pool to take scratch buffers from.
+	 * @throws IOException
+	 *             if the file cannot be mapped or is not a valid zip file.
+	 */
+	public MappedZipFile(File file, BufferPool pool) throws IOException {
+		this.file = file;
+		this.pool = pool;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			length = channel.size();
+			segments = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+			for (int i = 0; i < segments.length; i++) {
+				long position = (long) i << SEGMENT_SHIFT;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(SEGMENT_MASK + 1, length - position));
+				segments[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+		entries = Collections.unmodifiableList(readCentralDirectory());
+	}
+
+	/**
+	 * Maps the given zip file and reads its central directory.
+	 *
+	 * @param file
+	 *            the zip file to map.
+	 * @throws IOException
+	 *             if the file cannot be mapped or is not a valid zip file.
+	 */
+	public MappedZipFile(File file) throws IOException {
+		this(file, new BufferPool());
+	}
+
+	/**
+	 * Gets the file this archive was mapped from.
+	 *
+	 * @return the file this archive was mapped from.
+	 */
+	public File file() {
+		return file;
+	}
+
+	/**
+	 * Gets the pool that scratch and entry buffers are taken from.
+	 *
+	 * @return the pool that scratch and entry buffers are taken from.
+	 */
+	public BufferPool pool() {
+		return pool;
+	}
+
+	/**
+	 * Gets the entries of this archive in central directory order.
+	 *
+	 * @return the entries of this archive in central directory order.
+	 */
+	public List<MappedZipEntry> entries() {
+		return entries;
+	}
+
+	private int getByte(long position) {
+		return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK)) & 0xff;
+	}
+
+	private int getShort(long position) {
+		ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+		int offset = (int) (position & SEGMENT_MASK);
+		if (offset + 2 <= segment.limit())
+			return segment.getShort(offset) & 0xffff;
+		return getByte(position) | getByte(position + 1) << 8;
+	}
+
+	private int getInt(long position) {
+		ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+		int offset = (int) (position & SEGMENT_MASK);
+		if (offset + 4 <= segment.limit())
+			return segment.getInt(offset);
+		return getShort(position) | getShort(position + 2) << 16;
+	}
+
+	private long getLong(long position) {
+		return getInt(position) & 0xffffffffL | (long) getInt(position + 4) << 32;
+	}
+
+	private void get(long position, byte[] out, int offset, int length) {
+		while (length > 0) {
+			ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)].duplicate();
+			segment.position((int) (position & SEGMENT_MASK));
+			int chunk = Math.min(length, segment.remaining());
+			segment.get(out, offset, chunk);
+			position += chunk;
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+
+	private void check(long position, long size) throws IOException {
+		if (position < 0 || size < 0 || position > length - size)
+			throw new IOException("invalid zip structure at " + position + ": " + file);
+	}
+
+	private long findEnd() throws IOException {
+		long limit = Math.max(0, length - END_SIZE - MAX_COMMENT_SIZE);
+		for (long position = length - END_SIZE; position >= limit; position--) {
+			if (getInt(position) == END_SIGNATURE)
+				return position;
+		}
+		throw new IOException("end of central directory not found: " + file);
+	}
+
+	private List<MappedZipEntry> readCentralDirectory() throws IOException {
+		long end = findEnd();
+		long count = getShort(end + 10);
+		long offset = getInt(end + 16) & 0xffffffffL;
+		if (count == 0xffff || offset == 0xffffffffL) {
+			// the real values are in the zip64 end of central directory record, found through its locator
+			long locator = end - ZIP64_LOCATOR_SIZE;
+			if (locator >= 0 && getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+				long record = getLong(locator + 8);
+				check(record, 56);
+				if (getInt(record) != ZIP64_END_SIGNATURE)
+					throw new IOException("invalid zip64 end of central directory at " + record + ": " + file);
+				count = getLong(record + 32);
+				offset = getLong(record + 48);
+			}
+		}
+		if (count < 0 || count > Integer.MAX_VALUE)
+			throw new IOException("invalid entry count " + count + ": " + file);
+		List<MappedZipEntry> entries = new ArrayList<>((int) count);
+		long position = offset;
+		for (int i = 0; i < count; i++) {
+			check(position, CENTRAL_HEADER_SIZE);
+			if (getInt(position) != CENTRAL_HEADER_SIGNATURE)
+				throw new IOException("invalid central directory header at " + position + ": " + file);
+			int flags = getShort(position + 8);
+			int method = getShort(position + 10);
+			int time = getInt(position + 12);
+			int crc = getInt(position + 16);
+			long compressedSize = getInt(position + 20) & 0xffffffffL;
+			long size = getInt(position + 24) & 0xffffffffL;
+			int nameLength = getShort(position + 28);
+			int extraLength = getShort(position + 30);
+			int commentLength = getShort(position + 32);
+			long localHeaderOffset = getInt(position + 42) & 0xffffffffL;
+			long extra = position + CENTRAL_HEADER_SIZE + nameLength;
+			check(extra, extraLength + commentLength);
+			byte[] name = new byte[nameLength];
+			get(position + CENTRAL_HEADER_SIZE, name, 0, nameLength);
+			if (size == 0xffffffffL || compressedSize == 0xffffffffL || localHeaderOffset == 0xffffffffL) {
+				// only the values that overflowed their field are in the zip64 extra field, in this order
+				long field = find(extra, extraLength, ZIP64_EXTRA_ID);
+				if (field == -1)
+					throw new IOException("zip64 extra field missing at " + position + ": " + file);
+				if (size == 0xffffffffL) {
+					size = getLong(field);
+					field += 8;
+				}
+				if (compressedSize == 0xffffffffL) {
+					compressedSize = getLong(field);
+					field += 8;
+				}
+				if (localHeaderOffset == 0xffffffffL)
+					localHeaderOffset = getLong(field);
+			}
+			entries.add(new MappedZipEntry(i, new String(name, StandardCharsets.UTF_8), flags, method, time, crc,
+					compressedSize, size, localHeaderOffset));
+			position = extra + extraLength + commentLength;
+		}
+		return entries;
+	}
+
+	private long find(long extra, int extraLength, int id) {
+		long end = extra + extraLength;
+		while (extra + 4 <= end) {
+			int size = getShort(extra + 2);
+			if (getShort(extra) == id)
+				return extra + 4 + size <= end ? extra + 4 : -1;
+			extra += 4 + size;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the offset of the compressed data of the given entry.
+	 *
+	 * @param entry
+	 *            the entry to locate.
+	 * @return the offset of the compressed data of the given entry.
+	 * @throws IOException
+	 *             if the local file header is invalid.
+	 */
+	public long dataOffset(MappedZipEntry entry) throws IOException {
+		long position = entry.localHeaderOffset();
+		check(position, LOCAL_HEADER_SIZE);
+		if (getInt(position) != LOCAL_HEADER_SIGNATURE)
+			throw new IOException("invalid local file header for " + entry.name());
+		int nameLength = getShort(position + 26);
+		int extraLength = getShort(position + 28);
+		long offset = position + LOCAL_HEADER_SIZE + nameLength + extraLength;
+		check(offset, entry.compressedSize());
+		return offset;
+	}
+
+	/**
+	 * Gets a read-only view of the compressed data of the given entry. Data
+	 * that spans two segments of the mapping is copied into a heap buffer.
+	 *
+	 * @param entry
+	 *            the entry to locate.
+	 * @return a read-only view of the compressed data of the given entry.
+	 * @throws IOException
+	 *             if the local file header is invalid, or the compressed
+	 *             data does not fit in a buffer.
+	 */
+	public ByteBuffer rawData(MappedZipEntry entry) throws IOException {
+		long offset = dataOffset(entry);
+		long compressedSize = entry.compressedSize();
+		if (compressedSize > Integer.MAX_VALUE - 8)
+			throw new IOException("entry too large to map: " + entry.name());
+		int segment = (int) (offset >>> SEGMENT_SHIFT);
+		if (segment != (int) ((offset + compressedSize - 1) >>> SEGMENT_SHIFT) && compressedSize > 0) {
+			byte[] data = new byte[(int) compressedSize];
+			get(offset, data, 0, data.length);
+			return ByteBuffer.wrap(data).asReadOnlyBuffer();
+		}
+		ByteBuffer slice = segments[segment].asReadOnlyBuffer();
+		slice.position((int) (offset & SEGMENT_MASK));
+		slice.limit(slice.position() + (int) compressedSize);
+		return slice.slice();
+	}
+
+	/**
+	 * Reads the uncompressed data of the given entry into the given buffer.
+	 *
+	 * @param entry
+	 *            the entry to read.
+	 * @param out
+	 *            the buffer to read into, at least <tt>entry.size()</tt> bytes
+	 *            long.
+	 * @return the amount of bytes read.
+	 * @throws IOException
+	 *             if the entry cannot be read.
+	 */
+	public int read(MappedZipEntry entry, byte[] out) throws IOException {
+		if (out.length < entry.size())
+			throw new IllegalArgumentException("buffer too small for " + entry.name());
+		int size = (int) entry.size();
+		long offset = dataOffset(entry);
+		if (entry.method() == MappedZipEntry.STORED) {
+			get(offset, out, 0, size);
+			return size;
+		}
+		if (entry.method() != MappedZipEntry.DEFLATED)
+			throw new IOException("unsupported compression method " + entry.method() + " for " + entry.name());
+		if (entry.compressedSize() > Integer.MAX_VALUE - 8)
+			throw new IOException("entry too large to inflate: " + entry.name());
+		int compressedSize = (int) entry.compressedSize();
+		byte[] input = pool.acquire(compressedSize + 1);
+		Inflater inflater = inflaters.poll();
+		if (inflater == null)
+			inflater = new Inflater(true);
+		try {
+			get(offset, input, 0, compressedSize);
+			// nowrap inflaters may require an extra dummy byte of input
+			input[compressedSize] = 0;
+			inflater.setInput(input, 0, compressedSize + 1);
+			int read = 0;
+			while (read < size) {
+				int inflated = inflater.inflate(out, read, size - read);
+				if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				read += inflated;
+			}
+			if (read != size)
+				throw new IOException("truncated entry " + entry.name() + ": " + read + "/" + size);
+			return read;
+		} catch (DataFormatException e) {
+			throw new IOException("invalid compressed data for " + entry.name(), e);
+		} finally {
+			inflater.reset();
+			inflaters.offer(inflater);
+			pool.release(input);
+		}
+	}
+
+	/**
+	 * Reads the uncompressed data of the given entry into a new, exactly sized
+	 * array.
+	 *
+	 * @param entry
+	 *            the entry to read.
+	 * @return the uncompressed data of the given entry.
+	 * @throws IOException
+	 *             if the entry cannot be read.
+	 */
+	public byte[] read(MappedZipEntry entry) throws IOException {
+		byte[] bytes = new byte[entry.arraySize()];
+		read(entry, bytes);
+		return bytes;
+	}
+
+	@Override
+	public void close() {
+		Inflater inflater;
+		while ((inflater = inflaters.poll()) != null)
+			inflater.end();
+	}
+}
@@ -49,7 +49,7 @@ public class Streams {
 		while (pos < length) {
 			int readable;
 			if (pos >= output.length) {
-				readable = Math.min(length - pos, output.length + 1024);
+				readable = Math.min(length - pos, Math.max(output.length, 1024));
 				if (output.length < pos + readable)
 					output = Arrays.copyOf(output, pos + readable);
 			} else {
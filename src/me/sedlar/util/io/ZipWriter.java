@@ -0,0 +1,208 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the license, or (at your option) any later version.
+ */
+package me.sedlar.util.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * A zip archive writer for entries whose data has already been compressed.
+ * <p>
+ * The CRC-32 and both sizes of every entry are known before it is written,
+ * so no data descriptors are needed and the data is copied to the output
+ * as-is. The central directory is written on <tt>close</tt>.
+ *
+ * @author <a href="mailto:t@sedlar.me">Tyler Sedlar</a>
+ */
+public class ZipWriter implements Closeable {
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int UTF8_FLAG = 0x800;
+	private static final int JAR_MAGIC = 0xcafe;
+	private static final int MAX_ENTRIES = 0xffff;
+
+	private final OutputStream out;
+	private final ByteArrayOutputStream central = new ByteArrayOutputStream();
+	private final byte[] header = new byte[LOCAL_HEADER_SIZE + 16];
+	private long written;
+	private int count;
+	private boolean closed;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out
+	 *            the stream to write the archive to, closed along with this
+	 *            writer.
+	 */
+	public ZipWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Converts the given time to the MS-DOS format used by zip entries.
+	 *
+	 * @param time
+	 *            the time to convert.
+	 * @return the given time in MS-DOS format.
+	 */
+	public static int dosTime(LocalDateTime time) {
+		if (time.getYear() < 1980)
+			return (1 << 21) | (1 << 16);
+		return ((time.getYear() - 1980) << 25) | (time.getMonthValue() << 21) | (time.getDayOfMonth() << 16)
+				| (time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() >> 1);
+	}
+
+	/**
+	 * Appends an entry to the archive.
+	 *
+	 * @param name
+	 *            the name of the entry.
+	 * @param method
+	 *            the compression method, <tt>MappedZipEntry.STORED</tt> or
+	 *            <tt>MappedZipEntry.DEFLATED</tt>.
+	 * @param time
+	 *            the last modification time and date in MS-DOS format.
+	 * @param crc
+	 *            the CRC-32 of the uncompressed data.
+	 * @param size
+	 *            the size of the uncompressed data.
+	 * @param data
+	 *            the buffer holding the data, compressed with the given method.
+	 * @param offset
+	 *            the offset of the data within the buffer.
+	 * @param length
+	 *            the length of the data.
+	 * @throws IOException
+	 *             if the entry cannot be written.
+	 */
+	public void write(String name, int method, int time, int crc, int size, byte[] data, int offset, int length)
+			throws IOException {
+		if (closed)
+			throw new IOException("zip writer is closed");
+		if (method != MappedZipEntry.STORED && method != MappedZipEntry.DEFLATED)
+			throw new IllegalArgumentException("unsupported compression method " + method + " for " + name);
+		if (method == MappedZipEntry.STORED && length != size)
+			throw new IllegalArgumentException("stored entry " + name + " has differing sizes");
+		if (count == MAX_ENTRIES || written > 0xffffffffL - LOCAL_HEADER_SIZE - length)
+			throw new IOException("zip64 archives are not supported");
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		// the first entry of a jar is marked with an empty extra field, like JarOutputStream does
+		int extraLength = count == 0 ? 4 : 0;
+		int version = method == MappedZipEntry.STORED ? 10 : 20;
+		int position = 0;
+		position = putInt(header, position, LOCAL_HEADER_SIGNATURE);
+		position = putShort(header, position, version);
+		position = putShort(header, position, UTF8_FLAG);
+		position = putShort(header, position, method);
+		position = putInt(header, position, time);
+		position = putInt(header, position, crc);
+		position = putInt(header, position, length);
+		position = putInt(header, position, size);
+		position = putShort(header, position, nameBytes.length);
+		position = putShort(header, position, extraLength);
+		out.write(header, 0, position);
+		out.write(nameBytes);
+		writeExtra(out, extraLength);
+		out.write(data, offset, length);
+
+		position = 0;
+		position = putInt(header, position, CENTRAL_HEADER_SIGNATURE);
+		position = putShort(header, position, 20);
+		position = putShort(header, position, version);
+		position = putShort(header, position, UTF8_FLAG);
+		position = putShort(header, position, method);
+		position = putInt(header, position, time);
+		position = putInt(header, position, crc);
+		position = putInt(header, position, length);
+		position = putInt(header, position, size);
+		position = putShort(header, position, nameBytes.length);
+		position = putShort(header, position, extraLength);
+		// comment length, disk number, internal and external attributes
+		position = putShort(header, position, 0);
+		position = putShort(header, position, 0);
+		position = putShort(header, position, 0);
+		position = putInt(header, position, 0);
+		position = putInt(header, position, (int) written);
+		central.write(header, 0, position);
+		central.write(nameBytes);
+		writeExtra(central, extraLength);
+
+		written += LOCAL_HEADER_SIZE + nameBytes.length + extraLength + length;
+		count++;
+	}
+
+	private static void writeExtra(OutputStream out, int extraLength) throws IOException {
+		if (extraLength != 0) {
+			out.write(JAR_MAGIC & 0xff);
+			out.write(JAR_MAGIC >>> 8);
+			out.write(0);
+			out.write(0);
+		}
+	}
+
+	private static int putShort(byte[] buffer, int position, int value) {
+		buffer[position] = (byte) value;
+		buffer[position + 1] = (byte) (value >>> 8);
+		return position + 2;
+	}
+
+	private static int putInt(byte[] buffer, int position, int value) {
+		buffer[position] = (byte) value;
+		buffer[position + 1] = (byte) (value >>> 8);
+		buffer[position + 2] = (byte) (value >>> 16);
+		buffer[position + 3] = (byte) (value >>> 24);
+		return position + 4;
+	}
+
+	/**
+	 * Gets the amount of entries written so far.
+	 *
+	 * @return the amount of entries written so far.
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * Writes the central directory and closes the underlying stream.
+	 *
+	 * @throws IOException
+	 *             if the central directory cannot be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			if (written > 0xffffffffL - central.size())
+				throw new IOException("zip64 archives are not supported");
+			central.writeTo(out);
+			int position = 0;
+			position = putInt(header, position, END_SIGNATURE);
+			position = putShort(header, position, 0);
+			position = putShort(header, position, 0);
+			position = putShort(header, position, count);
+			position = putShort(header, position, count);
+			position = putInt(header, position, central.size());
+			position = putInt(header, position, (int) written);
+			position = putShort(header, position, 0);
+			out.write(header, 0, position);
+			out.flush();
+		} finally {
+			out.close();
+		}
+	}
+}